@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codeabovelab.dm.cluman.cluster.docker.model.Port;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ProtocolType;
+import com.codeabovelab.dm.cluman.model.DockerContainer;
+import com.codeabovelab.dm.cluman.model.NodeInfoImpl;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+
+/**
+ * Jackson mapping of {@link DockerContainer}. Container is read as its builder, because it is immutable.
+ */
+@State(Scope.Benchmark)
+public class DockerContainerJsonBenchmark {
+
+    /**
+     * Node is interface and can not be read, also container has derived properties which builder does not have.
+     */
+    @JsonIgnoreProperties(value = "node", ignoreUnknown = true)
+    private abstract static class BuilderMixIn {
+    }
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private DockerContainer container;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.addMixIn(DockerContainer.Builder.class, BuilderMixIn.class);
+        writer = mapper.writerFor(DockerContainer.class);
+        reader = mapper.readerFor(DockerContainer.Builder.class);
+        DockerContainer.Builder b = DockerContainer.builder()
+          .id("4f1c2d3e5a6b7c8d9e0f4f1c2d3e5a6b7c8d9e0f4f1c2d3e5a6b7c8d9e0f1234")
+          .name("web-1")
+          .image("nginx:1.11")
+          .imageId("sha256:01f818af747d88b4ebca7cdabd0c581e406e0e790be72678d257735fad84a15f")
+          .command("nginx -g 'daemon off;'")
+          .created(System.currentTimeMillis())
+          .status("Up 2 hours")
+          .node(NodeInfoImpl.builder().name("node-1").address("10.0.0.1:2375").build())
+          .ports(Arrays.asList(new Port("0.0.0.0", 80, 8080, ProtocolType.TCP), new Port("0.0.0.0", 443, 8443, ProtocolType.TCP)));
+        b.getLabels().put("com.codeabovelab.dm.health.type", "http");
+        b.getLabels().put("com.codeabovelab.dm.health.port", "80");
+        b.setState(DockerContainer.State.RUNNING);
+        container = b.build();
+        json = writer.writeValueAsBytes(container);
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        return writer.writeValueAsBytes(container);
+    }
+
+    @Benchmark
+    public DockerContainer.Builder read() throws Exception {
+        return reader.readValue(json);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codahale.metrics.Meter;
+import com.codeabovelab.dm.common.meter.ExpressionLimitChecker;
+import com.codeabovelab.dm.common.meter.LimitCheckContext;
+import com.codeabovelab.dm.common.meter.LimitExcess;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check of watchdog limit by interpreted and compiled expression.
+ */
+@State(Scope.Benchmark)
+public class ExpressionLimitCheckerBenchmark {
+
+    @Param({"OFF", "MIXED"})
+    private SpelCompilerMode mode;
+
+    private ExpressionLimitChecker checker;
+    private LimitCheckContext context;
+
+    @Setup
+    public void setup() {
+        Meter meter = new Meter();
+        meter.mark(20);
+        context = new LimitCheckContext(meter, "meter");
+        SpelExpressionParser parser = new SpelExpressionParser(new SpelParserConfiguration(mode, null));
+        checker = new ExpressionLimitChecker(parser.parseExpression("meter.count > 10L and meter.meanRate > 0.0"),
+          1, TimeUnit.SECONDS, mode != SpelCompilerMode.OFF);
+        // first check resolve types of expression, then it can be compiled
+        checker.check(context);
+        if(checker.isCompiled() != (mode != SpelCompilerMode.OFF)) {
+            throw new IllegalStateException("Unexpected compilation state in " + mode + " mode.");
+        }
+    }
+
+    @Benchmark
+    public LimitExcess check() {
+        return checker.check(context);
+    }
+}
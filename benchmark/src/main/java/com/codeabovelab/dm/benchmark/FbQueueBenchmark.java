@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codeabovelab.dm.common.fc.FbAdapter;
+import com.codeabovelab.dm.common.fc.FbQueue;
+import com.codeabovelab.dm.common.fc.FbStorage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+/**
+ * Push and iteration of file based queue. Storage is placed in temp dir and removed after trial.
+ */
+@State(Scope.Benchmark)
+public class FbQueueBenchmark {
+
+    private static final FbAdapter<String> ADAPTER = new FbAdapter<String>() {
+        @Override
+        public byte[] serialize(String obj) {
+            return obj.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] data, int offset, int len) {
+            return new String(data, offset, len, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Param({"1000"})
+    private int last;
+
+    private File dir;
+    private FbStorage storage;
+    private FbQueue<String> queue;
+    private String item;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("fbqueue-benchmark").toFile();
+        // full queue need about size / FbQueue.getMaxItemsInFile() files
+        storage = FbStorage.builder()
+          .maxFiles(32)
+          .maxFileSize(16 * 1024 * 1024)
+          .path(dir.getAbsolutePath())
+          .build();
+        queue = FbQueue.builder(ADAPTER)
+          .id("benchmark")
+          .maxSize(10_000)
+          .storage(storage)
+          .build();
+        item = "{\"action\":\"start\",\"container\":\"4f1c2d3e5a6b\",\"node\":\"node-1\"}";
+        for(int i = 0; i < last; ++i) {
+            queue.push(item);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        queue.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void push() {
+        queue.push(item);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        Iterator<String> iter = queue.iterator(last);
+        while(iter.hasNext()) {
+            bh.consume(iter.next());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codeabovelab.dm.common.kv.InMemoryKeyValueStorage;
+import com.codeabovelab.dm.common.kv.mapping.KvMap;
+import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
+import com.codeabovelab.dm.common.kv.mapping.KvMapping;
+import com.codeabovelab.dm.common.utils.ExecutorUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.encrypt.Encryptors;
+
+import javax.validation.Validation;
+
+/**
+ * Get and put of {@link KvMap} over {@link InMemoryKeyValueStorage}. Contended benchmarks read map by many threads,
+ * while other map of same path writes same keys, therefore read values become dirty and are reloaded.
+ */
+@State(Scope.Benchmark)
+public class KvMapBenchmark {
+
+    @Data
+    public static class Bean {
+        @KvMapping
+        private String text;
+        @KvMapping
+        private int number;
+    }
+
+    /**
+     * Position in keys of each thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        int next(int size) {
+            int i = index + 1;
+            if(i == size) {
+                i = 0;
+            }
+            index = i;
+            return i;
+        }
+    }
+
+    @Param({"1000"})
+    private int size;
+
+    private KvMap<Bean> map;
+    private KvMap<Bean> writer;
+    private String[] keys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        InMemoryKeyValueStorage storage = InMemoryKeyValueStorage.builder()
+          .eventsExecutor(ExecutorUtils.DIRECT)
+          .build();
+        KvMapperFactory factory = new KvMapperFactory(new ObjectMapper(), storage, Encryptors.noOpText(),
+          Validation.buildDefaultValidatorFactory().getValidator());
+        map = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/benchmark/beans")
+          .build();
+        writer = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/benchmark/beans")
+          .build();
+        keys = new String[size];
+        for(int i = 0; i < size; ++i) {
+            keys[i] = "key" + i;
+            map.put(keys[i], bean(i));
+        }
+    }
+
+    private static Bean bean(int i) {
+        Bean bean = new Bean();
+        bean.setText("text of " + i);
+        bean.setNumber(i);
+        return bean;
+    }
+
+    private String nextKey() {
+        int i = index + 1;
+        if(i == keys.length) {
+            i = 0;
+        }
+        index = i;
+        return keys[i];
+    }
+
+    @Benchmark
+    public Bean get() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public Bean put() {
+        return map.put(nextKey(), bean(index));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Bean getConcurrent(Cursor cursor) {
+        return map.get(keys[cursor.next(size)]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public Bean contendedGet(Cursor cursor) {
+        return map.get(keys[cursor.next(size)]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Bean contendedPut(Cursor cursor) {
+        int i = cursor.next(size);
+        return writer.put(keys[i], bean(i));
+    }
+}
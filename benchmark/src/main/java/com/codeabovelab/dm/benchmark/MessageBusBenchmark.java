@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Dispatch of message to subscribers of bus.
+ */
+@State(Scope.Benchmark)
+public class MessageBusBenchmark {
+
+    @Param({"1", "10"})
+    private int subscribers;
+
+    private MessageBus<String> bus;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        blackhole = bh;
+        bus = MessageBuses.create("benchmark", String.class);
+        for(int i = 0; i < subscribers; ++i) {
+            bus.subscribe(this::consume);
+        }
+    }
+
+    private void consume(String message) {
+        blackhole.consume(message);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        bus.close();
+    }
+
+    @Benchmark
+    public void dispatch() {
+        bus.accept("message");
+    }
+}
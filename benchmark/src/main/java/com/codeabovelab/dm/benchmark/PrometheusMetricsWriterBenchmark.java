@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.meter.MetricNameUtil;
+import com.codeabovelab.dm.common.meter.PrometheusMetricsWriter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Rendering of registry with many tagged series without cache, reciprocal of throughput is time of one scrape.
+ */
+@State(Scope.Benchmark)
+public class PrometheusMetricsWriterBenchmark {
+
+    @Param({"20000"})
+    private int series;
+
+    private PrometheusMetricsWriter writer;
+
+    @Setup
+    public void setup() {
+        MetricRegistry registry = new MetricRegistry();
+        for(int i = 0; i < series; ++i) {
+            registry.counter(MetricNameUtil.withTags("requests", "node", "node-" + (i % 100), "operation", "op" + i)).inc(i);
+        }
+        writer = new PrometheusMetricsWriter(registry, 0);
+    }
+
+    @Benchmark
+    public String render() {
+        return writer.renderText();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codeabovelab.dm.common.utils.SingleValueCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of cached value by many threads.
+ */
+@State(Scope.Benchmark)
+public class SingleValueCacheBenchmark {
+
+    private SingleValueCache<Object> cache;
+
+    @Setup
+    public void setup() {
+        cache = SingleValueCache.builder(Object::new)
+          .timeAfterWrite(TimeUnit.HOURS, 1)
+          .build();
+    }
+
+    @Benchmark
+    public Object get() {
+        return cache.get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object getConcurrent() {
+        return cache.get();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.benchmark;
+
+import com.codeabovelab.dm.common.utils.VersionComparator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sorting of image tags, like it is done for repository tags.
+ */
+@State(Scope.Benchmark)
+public class VersionComparatorBenchmark {
+
+    private static final String[] SUFFIXES = {"", "-SNAPSHOT", "-rc1", "-alpha", "_build42"};
+
+    @Param({"2000"})
+    private int size;
+
+    private final VersionComparator comparator = VersionComparator.builder().addLatest("latest").build();
+    private List<String> tags;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        tags = new ArrayList<>(size);
+        tags.add("latest");
+        while(tags.size() < size) {
+            tags.add(random.nextInt(5) + "." + random.nextInt(20) + "." + random.nextInt(100) +
+              SUFFIXES[random.nextInt(SUFFIXES.length)]);
+        }
+        Collections.shuffle(tags, random);
+    }
+
+    @Benchmark
+    public List<String> sort() {
+        List<String> copy = new ArrayList<>(tags);
+        copy.sort(comparator);
+        return copy;
+    }
+
+    @Benchmark
+    public List<String> sortKeys() {
+        List<String> copy = new ArrayList<>(tags);
+        comparator.sort(copy);
+        return copy;
+    }
+}
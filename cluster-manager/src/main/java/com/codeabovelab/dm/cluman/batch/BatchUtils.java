@@ -32,6 +32,14 @@ public class BatchUtils {
     public static final String JP_CLUSTER = "cluster";
     public static final String JP_ROLLBACK_ENABLE = "rollbackEnable";
     public static final String FILTER = "Filter";
+    /**
+     * Count of containers which updated in one batch, default 1.
+     */
+    public static final String JP_BATCH_SIZE = "rollingUpdate.batchSize";
+    /**
+     * Max count of containers which updated (therefore unavailable) at same time, zero mean 'batchSize'.
+     */
+    public static final String JP_MAX_UNAVAILABLE = "rollingUpdate.maxUnavailable";
 
     /**
      * If result is not an OK then construct and throw exception.
@@ -20,7 +20,6 @@ import com.codeabovelab.dm.cluman.job.JobComponent;
 import com.codeabovelab.dm.cluman.job.JobContext;
 import com.codeabovelab.dm.cluman.job.JobParam;
 import com.codeabovelab.dm.cluman.ui.health.HealthCheckService;
-import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -54,8 +53,6 @@ public class HealthCheckContainerTasklet {
     @JobParam(JP_HEALTH_CHECK_TIMEOUT)
     private long timeout;
 
-    private final int tries = 3;
-
     public boolean execute(ProcessedContainer item) {
         if(!enabled) {
             return true;
@@ -65,26 +62,19 @@ public class HealthCheckContainerTasklet {
         if(timeout < 0) {
             timeout = defaultTimeout;
         }
-        boolean healthy = false;
-        long tryTimeout = timeout / tries;
-        for(int i = 0; i < tries && !healthy; ++i) {
-            healthy = check(item, tryTimeout);
-        }
-        context.fire("Health check result \"{0}\" is {1} (id:{2})", item.getName(), healthy ? "good" : "bad", id);
-        return healthy;
-    }
-
-    private boolean check(ProcessedContainer item, long timeout) {
         boolean healthy;
-        String id = item.getId();
         try {
-            ServiceHealthCheckResult res = healthCheckService.checkContainer(item.getCluster(), id, timeout);
-            healthy = res != null && res.isHealthy();
+            // probes are repeated with interval of container probe until timeout
+            healthy = healthCheckService.waitHealthy(item.getCluster(), id, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            healthy = false;
         } catch (Exception e) {
             log.error("Exception on health check of {}", id, e);
             context.fire("Health check failed with error: {0}", e.toString());
             healthy = false;
         }
+        context.fire("Health check result \"{0}\" is {1} (id:{2})", item.getName(), healthy ? "good" : "bad", id);
         return healthy;
     }
 }
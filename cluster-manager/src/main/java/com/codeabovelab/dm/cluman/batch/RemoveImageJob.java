@@ -34,6 +34,7 @@ import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
 import com.codeabovelab.dm.cluman.job.JobBean;
 import com.codeabovelab.dm.cluman.job.JobContext;
 import com.codeabovelab.dm.cluman.job.JobParam;
+import com.codeabovelab.dm.cluman.job.JobPriority;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
@@ -43,7 +44,7 @@ import java.util.List;
 
 /**
  */
-@JobBean("job.removeImageJob")
+@JobBean(value = "job.removeImageJob", priority = JobPriority.LOW)
 public class RemoveImageJob implements Runnable {
 
     @JobParam(required = true)
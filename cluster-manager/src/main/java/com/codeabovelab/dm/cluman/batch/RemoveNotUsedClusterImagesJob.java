@@ -16,34 +16,97 @@
 
 package com.codeabovelab.dm.cluman.batch;
 
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
 import com.codeabovelab.dm.cluman.cluster.docker.management.argument.RemoveImageArg;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.RemoveImageResult;
-import com.codeabovelab.dm.cluman.cluster.docker.model.ImageItem;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
 import com.codeabovelab.dm.cluman.cluster.filter.FilterFactory;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryRepository;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.ds.images.InventoryImage;
 import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
 import com.codeabovelab.dm.cluman.job.JobBean;
 import com.codeabovelab.dm.cluman.job.JobContext;
 import com.codeabovelab.dm.cluman.job.JobParam;
+import com.codeabovelab.dm.cluman.job.JobPriority;
+import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
+import com.codeabovelab.dm.cluman.model.Node;
+import com.codeabovelab.dm.cluman.model.NodesGroup;
+import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.util.CollectionUtils;
 
-import java.util.List;
-import java.util.function.Predicate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
-import static com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetImagesArg.ALL;
-import static com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode.OK;
-
 /**
- * Clear all not used images from cluster
+ * Clear all not used images from cluster. Unused images are resolved in advance from {@link ImagesInventory},
+ * so images which is referenced by containers are skipped without calls to docker. Images are deleted on several
+ * nodes in parallel, but not more than 'maxPerNode' at once on each node. Image is removed by id, docker reject it
+ * with conflict when image is used by container or has several tags. In last case image is untagged, but usage of
+ * image is checked before each untag, because untag does not fail on used image.
  */
-@JobBean("job.removeClusterImages")
+@JobBean(value = "job.removeClusterImages", priority = JobPriority.LOW)
 public class RemoveNotUsedClusterImagesJob implements Runnable {
 
+    /**
+     * Counter of images and its sizes.
+     */
+    private static final class Counter {
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong size = new AtomicLong();
+
+        void add(InventoryImage image) {
+            count.incrementAndGet();
+            size.addAndGet(image.getSize());
+        }
+
+        @Override
+        public String toString() {
+            return count.get() + " (" + size.get() + " bytes)";
+        }
+    }
+
     @JobParam(required = true)
     private String clusterName;
 
+    /**
+     * Only report images which will be removed.
+     */
+    @JobParam
+    private boolean dryRun;
+
+    /**
+     * Max count of concurrent deletions on one node.
+     */
+    @JobParam
+    private int maxPerNode = 2;
+
+    /**
+     * Max count of concurrent deletions on all nodes.
+     */
+    @JobParam
+    private int parallelism = 8;
+
+    /**
+     * Count of removed images, or count of images which can be removed when dry run.
+     */
+    @JobParam(in = false, out = true)
+    private int removedCount;
+
+    /**
+     * Count of images which is skipped because it used by containers.
+     */
+    @JobParam(in = false, out = true)
+    private int skippedCount;
+
+    @JobParam(in = false, out = true)
+    private int failedCount;
+
     @Autowired
     private JobContext context;
 
@@ -56,30 +119,156 @@ public class RemoveNotUsedClusterImagesJob implements Runnable {
     @Autowired
     private FilterFactory filterFactory;
 
+    @Autowired
+    private DiscoveryStorage discoveryStorage;
+
+    @Autowired
+    private ImagesInventory imagesInventory;
+
+    private Counter removed;
+    private Counter skipped;
+    private Counter failed;
+
     @Override
     public void run() {
-        context.fire("About to delete all not used images from: \"{0}\".", clusterName);
+        context.fire("About to delete all not used images from: \"{0}\", dryRun={1}.", clusterName, dryRun);
+        removed = new Counter();
+        skipped = new Counter();
+        failed = new Counter();
 
-        List<ImageItem> images = dockerServices.getService(clusterName).getImages(ALL);
-
-        if (CollectionUtils.isEmpty(images)) {
-            context.fire("Nothing to remove, skipping");
+        NodesGroup cluster = discoveryStorage.getCluster(clusterName);
+        ExtendedAssert.notFound(cluster, "Cluster was not found by " + clusterName);
+        List<String> nodes = cluster.getNodes().stream().map(Node::getName).collect(Collectors.toList());
+        // inventory know which images is used by containers, so we do not try to remove them
+        Map<String, Queue<InventoryImage>> unused = new HashMap<>();
+        for(InventoryImage image: imagesInventory.getImages(nodes)) {
+            image.getNodes().forEach((node, containers) -> {
+                if(containers > 0) {
+                    skipped.add(image);
+                } else {
+                    unused.computeIfAbsent(node, n -> new ConcurrentLinkedQueue<>()).add(image);
+                }
+            });
+        }
+        if (unused.isEmpty()) {
+            skippedCount = skipped.count.get();
+            context.fire("Nothing to remove, skipping. Used images: {0}", skipped);
             return;
         }
-        List<RemoveImageResult> result = images.stream().map(i -> dockerServices.getService(clusterName)
-                .removeImage(RemoveImageArg.builder()
-                .cluster(clusterName)
-                .imageId(i.getId())
-                .build())).collect(Collectors.toList());
-
-        context.fire("Were deleted: \"{0}\", next images are used: \"{1}\"",
-                filter(result, r -> r.getCode() == OK),
-                filter(result, r -> r.getCode() != OK));
+        if(dryRun) {
+            unused.values().forEach(q -> q.forEach(removed::add));
+        } else {
+            removeAll(unused);
+        }
+        removedCount = removed.count.get();
+        skippedCount = skipped.count.get();
+        failedCount = failed.count.get();
+        context.fire("{0} images: {1}, skipped as used: {2}, failed: {3}",
+          dryRun ? "Can be removed" : "Removed", removed, skipped, failed);
     }
 
-    private List<String> filter(List<RemoveImageResult> result, Predicate<RemoveImageResult> filter) {
-        return result.stream().filter(filter).map(s -> s.getImage()).collect(Collectors.toList());
+    private void removeAll(Map<String, Queue<InventoryImage>> unused) {
+        // each node is served by 'maxPerNode' lanes, each lane remove images of node one by one
+        List<Runnable> lanes = new ArrayList<>();
+        unused.forEach((node, queue) -> {
+            DockerService service = dockerServices.getNodeService(node);
+            if(service == null) {
+                context.fire("Node \"{0}\" does not have docker service, skip it.", node);
+                queue.forEach(failed::add);
+                return;
+            }
+            int count = Math.min(Math.max(1, maxPerNode), queue.size());
+            for(int i = 0; i < count; ++i) {
+                lanes.add(JobContext.wrap(() -> {
+                    InventoryImage image;
+                    while((image = queue.poll()) != null && !Thread.currentThread().isInterrupted()) {
+                        remove(node, service, image);
+                    }
+                }));
+            }
+        });
+        int threads = Math.max(1, Math.min(parallelism, lanes.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setNameFormat(getClass().getName() + "-worker-%d")
+          .setDaemon(true)
+          .build());
+        try {
+            List<Future<?>> futures = lanes.stream().map(executor::submit).collect(Collectors.toList());
+            for(Future<?> future: futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.fire("Removing of images is interrupted.");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-}
+    private void remove(String node, DockerService service, InventoryImage image) {
+        try {
+            ResultCode code = remove(node, service, image, image.getId());
+            if(code != ResultCode.CONFLICT) {
+                if(code != null) {
+                    removed.add(image);
+                }
+                return;
+            }
+            List<String> tags = image.getTags().stream()
+              .filter(t -> !t.contains("<none>"))
+              .collect(Collectors.toList());
+            if(tags.size() < 2) {
+                // image has been used after we load inventory
+                skipped.add(image);
+                return;
+            }
+            // image with several tags can not be removed by id without force, so we untag it,
+            // note that removing of last tag also removes image
+            for(String tag: tags) {
+                if(isUsed(service, image)) {
+                    skipped.add(image);
+                    return;
+                }
+                code = remove(node, service, image, tag);
+                if(code == ResultCode.CONFLICT) {
+                    skipped.add(image);
+                    return;
+                }
+                if(code == null) {
+                    return;
+                }
+            }
+            removed.add(image);
+        } catch (Exception e) {
+            failed.add(image);
+            context.fire("Can not delete \"{0}\" from \"{1}\", due error.", image.getId(), node, e);
+        }
+    }
+
+    private boolean isUsed(DockerService service, InventoryImage image) {
+        return service.getContainers(new GetContainersArg(true)).stream()
+          .anyMatch(c -> image.getId().equals(c.getImageId()));
+    }
 
+    /**
+     * Remove image by tag or id.
+     * @return OK when image was removed or absent, CONFLICT, or null when image is counted as failed
+     */
+    private ResultCode remove(String node, DockerService service, InventoryImage image, String ref) {
+        RemoveImageResult res = service.removeImage(RemoveImageArg.builder()
+          .imageId(ref)
+          .build());
+        ResultCode code = res.getCode();
+        if(code == ResultCode.OK || code == ResultCode.NOT_FOUND) {
+            return ResultCode.OK;
+        }
+        if(code == ResultCode.CONFLICT) {
+            return code;
+        }
+        failed.add(image);
+        context.fire("Can not delete \"{0}\" from \"{1}\", code {2}, error: \"{3}\"", ref, node, code, res.getMessage());
+        return null;
+    }
+}
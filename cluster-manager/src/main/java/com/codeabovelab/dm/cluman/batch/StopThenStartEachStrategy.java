@@ -16,19 +16,50 @@
 
 package com.codeabovelab.dm.cluman.batch;
 
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
 import com.codeabovelab.dm.cluman.job.JobComponent;
 import com.codeabovelab.dm.cluman.job.JobContext;
+import com.codeabovelab.dm.cluman.job.JobParam;
+import com.codeabovelab.dm.cluman.model.ImageDescriptor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
+ * Update containers by batches: all containers of batch are stopped, removed and created with new version
+ * concurrently (but no more than 'maxUnavailable' at same time), next batch is started only when all containers of
+ * previous batch are successfully checked. Before first container is stopped, new images are pulled.
  */
 @JobComponent
 class StopThenStartEachStrategy {
 
+    private static final class Update {
+        private final ProcessedContainer current;
+        private final ProcessedContainer newVersion;
+
+        Update(ProcessedContainer current, ProcessedContainer newVersion) {
+            this.current = current;
+            this.newVersion = newVersion;
+        }
+
+        @Override
+        public String toString() {
+            return current.toString();
+        }
+    }
+
     protected final Logger LOG = LoggerFactory.getLogger(getClass());
 
     @Autowired
@@ -55,6 +86,15 @@ class StopThenStartEachStrategy {
     @Autowired
     private ContainerConfigTasklet containerConfig;
 
+    @Autowired
+    private DockerService dockerService;
+
+    @JobParam(BatchUtils.JP_BATCH_SIZE)
+    private int batchSize = 1;
+
+    @JobParam(BatchUtils.JP_MAX_UNAVAILABLE)
+    private int maxUnavailable;
+
     /**
      *
      * @param predicate filter containers
@@ -66,19 +106,107 @@ class StopThenStartEachStrategy {
     }
 
     protected void updateContainer(List<ProcessedContainer> containers, ContainerProcessor processor) {
-        ProcessedContainer curr = null;
+        if(containers.isEmpty()) {
+            return;
+        }
+        final int batchSize = Math.max(1, this.batchSize);
+        final int parallelism = Math.min(batchSize, maxUnavailable > 0 ? maxUnavailable : batchSize);
+        ExecutorService executor = null;
+        if(parallelism > 1) {
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+              .setNameFormat(getClass().getName() + "-worker-%d")
+              .setDaemon(true)
+              .build());
+        }
         try {
-            for(ProcessedContainer container: containers) {
+            // we must not modify any container before all new versions are resolved and its images are pulled
+            List<Update> updates = forEach(executor, containers, (container) -> {
                 ProcessedContainer withConfig = containerConfig.process(container);
-                containerStopper.execute(withConfig);
-                containerRemover.execute(withConfig);
-                ProcessedContainer newVersion = processor.apply(withConfig);
-                ProcessedContainer newContainer = containerCreator.execute(newVersion);
-                healthchecker.execute(newContainer);
+                return new Update(withConfig, processor.apply(withConfig));
+            });
+            pullImages(executor, updates);
+            for(int from = 0; from < updates.size(); from += batchSize) {
+                List<Update> batch = updates.subList(from, Math.min(from + batchSize, updates.size()));
+                jobContext.fire("Update batch #{0} of {1} containers", from / batchSize, batch.size());
+                forEach(executor, batch, this::updateContainer);
+            }
+        } finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private ProcessedContainer updateContainer(Update update) {
+        containerStopper.execute(update.current);
+        containerRemover.execute(update.current);
+        ProcessedContainer newContainer = containerCreator.execute(update.newVersion);
+        if(!healthchecker.execute(newContainer)) {
+            throw new IllegalStateException("Container " + newContainer.getName() + " is not healthy.");
+        }
+        return newContainer;
+    }
+
+    private void pullImages(ExecutorService executor, List<Update> updates) {
+        Set<String> images = new LinkedHashSet<>();
+        updates.forEach(u -> images.add(u.newVersion.getImage()));
+        forEach(executor, new ArrayList<>(images), (image) -> {
+            ImageDescriptor descriptor = dockerService.pullImage(image, null);
+            jobContext.fire("Pull image \"{0}\" with result \"{1}\"", image, descriptor == null ? null : descriptor.getId());
+            return image;
+        });
+    }
+
+    /**
+     * Apply function to each item, concurrently when executor is present. At first error new items
+     * are not processed, and error is thrown after all running items are completed.
+     */
+    private <I, T> List<T> forEach(ExecutorService executor, List<I> items, Function<I, T> func) {
+        List<T> results = new ArrayList<>(items.size());
+        AtomicReference<I> failed = new AtomicReference<>();
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>(items.size());
+        for(int i = 0; i < items.size(); ++i) {
+            results.add(null);
+        }
+        for(int i = 0; i < items.size(); ++i) {
+            final int index = i;
+            final I item = items.get(i);
+            Runnable task = () -> {
+                if(error.get() != null) {
+                    return;
+                }
+                try {
+                    results.set(index, func.apply(item));
+                } catch (RuntimeException e) {
+                    if(error.compareAndSet(null, e)) {
+                        failed.set(item);
+                    } else {
+                        LOG.error("Error on {}", item, e);
+                    }
+                }
+            };
+            if(executor == null) {
+                task.run();
+            } else {
+                futures.add(executor.submit(JobContext.wrap(task)));
             }
-        } catch (Exception e) {
-            jobContext.fire("Error on container {0}", curr);
+        }
+        for(Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Update was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        RuntimeException e = error.get();
+        if(e != null) {
+            jobContext.fire("Error on {0}, update is halted", failed.get());
             throw e;
         }
+        return results;
     }
 }
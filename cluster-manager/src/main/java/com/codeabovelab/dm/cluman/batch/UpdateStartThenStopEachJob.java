@@ -19,6 +19,7 @@ package com.codeabovelab.dm.cluman.batch;
 import com.codeabovelab.dm.cluman.job.JobBean;
 import com.codeabovelab.dm.cluman.job.JobContext;
 import com.codeabovelab.dm.cluman.job.JobParam;
+import com.codeabovelab.dm.cluman.job.JobPriority;
 import com.codeabovelab.dm.cluman.ui.update.UpdateContainersUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +31,7 @@ import java.util.List;
  * Start newly updated copy of exists container (with new name), stop old container,
  * then repeat for next container.
  */
-@JobBean(UpdateContainersUtil.JOB_PREFIX + "startThenStopEach")
+@JobBean(value = UpdateContainersUtil.JOB_PREFIX + "startThenStopEach", priority = JobPriority.HIGH)
 public class UpdateStartThenStopEachJob implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(UpdateStartThenStopEachJob.class);
@@ -19,6 +19,7 @@ package com.codeabovelab.dm.cluman.batch;
 import com.codeabovelab.dm.cluman.job.JobBean;
 import com.codeabovelab.dm.cluman.job.JobContext;
 import com.codeabovelab.dm.cluman.job.JobParam;
+import com.codeabovelab.dm.cluman.job.JobPriority;
 import com.codeabovelab.dm.cluman.ui.update.UpdateContainersUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +31,7 @@ import java.util.ListIterator;
 /**
  * Stop all containers, then make updated copy for each and start.
  */
-@JobBean(UpdateContainersUtil.JOB_PREFIX + "stopThenStartAll")
+@JobBean(value = UpdateContainersUtil.JOB_PREFIX + "stopThenStartAll", priority = JobPriority.HIGH)
 public class UpdateStopThenStartAllJob implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(UpdateStopThenStartAllJob.class);
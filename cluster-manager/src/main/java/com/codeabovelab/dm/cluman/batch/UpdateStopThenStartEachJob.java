@@ -17,6 +17,7 @@
 package com.codeabovelab.dm.cluman.batch;
 
 import com.codeabovelab.dm.cluman.job.JobBean;
+import com.codeabovelab.dm.cluman.job.JobPriority;
 import com.codeabovelab.dm.cluman.ui.update.UpdateContainersUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +26,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 /**
  * Stop each container, make updated clone with same name then start it, after repeat for next container.
  */
-@JobBean(UpdateContainersUtil.JOB_PREFIX + "stopThenStartEach")
+@JobBean(value = UpdateContainersUtil.JOB_PREFIX + "stopThenStartEach", priority = JobPriority.HIGH)
 public class UpdateStopThenStartEachJob implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(UpdateStopThenStartEachJob.class);
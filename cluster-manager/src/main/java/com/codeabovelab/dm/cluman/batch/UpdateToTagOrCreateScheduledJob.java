@@ -34,7 +34,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -154,9 +153,8 @@ public class UpdateToTagOrCreateScheduledJob implements Runnable {
             log.warn("can't find tags for {}", img);
             Tags tags = registry.getTags(imageName);
             Assert.notNull(tags, "can't find tags for " + img);
-            List<String> tagsList = new ArrayList<>(tags.getTags());
-            tagsList.sort(comparator);
-            String tag = tagsList.get(tagsList.size() - 1);
+            String tag = comparator.max(tags.getTags());
+            Assert.notNull(tag, "can't find tags for " + img);
             ImageDescriptor image = registry.getImage(imageName, tag);
             if (image == null) {
                 return null;
@@ -46,4 +46,10 @@ public interface ApplicationService {
     void addApplication(Application application) throws Exception;
 
     void removeApplication(String cluster, String id) throws Exception;
+
+    /**
+     * Version of applications, it is incremented after each change of stored applications.
+     * @return version
+     */
+    long getVersion();
 }
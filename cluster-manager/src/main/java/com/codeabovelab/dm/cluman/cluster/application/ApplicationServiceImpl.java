@@ -218,6 +218,11 @@ public class ApplicationServiceImpl implements ApplicationService {
 
     }
 
+    @Override
+    public long getVersion() {
+        return map.getVersion();
+    }
+
     @Override
     public ApplicationSource getSource(String cluster, String appId) {
         Application application = getApplication(cluster, appId);
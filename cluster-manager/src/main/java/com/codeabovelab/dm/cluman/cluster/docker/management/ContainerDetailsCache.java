@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.model.StandardActions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Cache of container details (result of 'inspect' call) of single docker service. <p/>
+ * Entries is accessible by full id, short (12 symbols) id and name. Cache does not evict entries by time, instead
+ * it refresh entries in background on docker events and when entry is older than 'maxAge', and
+ * return previous value while refresh is in progress. Refreshes of same container are coalesced.
+ */
+@Slf4j
+public class ContainerDetailsCache {
+
+    private static final int SHORT_ID_LEN = 12;
+
+    private static final class Entry {
+        private final String id;
+        private volatile ContainerDetails details;
+        private volatile long time;
+        /**
+         * Count of requested refreshes, we use it for coalescing refreshes.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        Entry(String id) {
+            this.id = id;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * Map short id and names to full id.
+     */
+    private final ConcurrentMap<String, String> aliases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<ContainerDetails>> loading = new ConcurrentHashMap<>();
+    private final Function<String, ContainerDetails> loader;
+    private final Executor executor;
+    private final long maxAge;
+
+    /**
+     * @param loader function which load details by id or name, it must return null when container is not exists
+     * @param executor executor for background refreshes
+     * @param maxAge time in ms after which entry is refreshed in background
+     */
+    public ContainerDetailsCache(Function<String, ContainerDetails> loader, Executor executor, long maxAge) {
+        Assert.notNull(loader, "loader is null");
+        Assert.notNull(executor, "executor is null");
+        this.loader = loader;
+        this.executor = executor;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Return cached details or load it.
+     * @param key full id, short id or name of container
+     * @return details or null when container is not exists
+     */
+    public ContainerDetails get(String key) {
+        Entry entry = getEntry(key);
+        if(entry != null) {
+            ContainerDetails details = entry.details;
+            if(details != null) {
+                if(System.currentTimeMillis() - entry.time > maxAge) {
+                    scheduleRefresh(entry);
+                }
+                return details;
+            }
+        }
+        return load(key);
+    }
+
+    private Entry getEntry(String key) {
+        String id = aliases.getOrDefault(key, key);
+        return entries.get(id);
+    }
+
+    private ContainerDetails load(String key) {
+        CompletableFuture<ContainerDetails> future = new CompletableFuture<>();
+        CompletableFuture<ContainerDetails> old = loading.putIfAbsent(key, future);
+        if(old != null) {
+            // somebody already load it, so we simply wait result
+            return old.join();
+        }
+        try {
+            ContainerDetails details = loader.apply(key);
+            if(details != null) {
+                put(details);
+            }
+            future.complete(details);
+            return details;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private void put(ContainerDetails details) {
+        String id = details.getId();
+        if(id == null) {
+            return;
+        }
+        Entry entry = entries.computeIfAbsent(id, Entry::new);
+        ContainerDetails old = entry.details;
+        if(old != null && old.getName() != null && !old.getName().equals(details.getName())) {
+            // container has been renamed
+            removeNameAliases(old.getName(), id);
+        }
+        entry.details = details;
+        entry.time = System.currentTimeMillis();
+        if(id.length() > SHORT_ID_LEN) {
+            aliases.put(id.substring(0, SHORT_ID_LEN), id);
+        }
+        String name = details.getName();
+        if(name != null) {
+            aliases.put(name, id);
+            String clearName = clearName(name);
+            if(!clearName.equals(name)) {
+                aliases.put(clearName, id);
+            }
+        }
+    }
+
+    private static String clearName(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    private void removeNameAliases(String name, String id) {
+        aliases.remove(name, id);
+        aliases.remove(clearName(name), id);
+    }
+
+    /**
+     * Handle event of container. Cached container details will be refreshed in background.
+     * @param id id of container
+     * @param action action of event, see {@link StandardActions}
+     */
+    public void onEvent(String id, String action) {
+        if(id == null) {
+            return;
+        }
+        if(StandardActions.DELETE.equals(action)) {
+            invalidate(id);
+            return;
+        }
+        Entry entry = getEntry(id);
+        if(entry != null) {
+            scheduleRefresh(entry);
+        }
+    }
+
+    /**
+     * Remove entry of container from cache.
+     * @param key full id, short id or name of container
+     */
+    public void invalidate(String key) {
+        String id = aliases.getOrDefault(key, key);
+        Entry entry = entries.remove(id);
+        if(entry == null) {
+            return;
+        }
+        if(id.length() > SHORT_ID_LEN) {
+            aliases.remove(id.substring(0, SHORT_ID_LEN), id);
+        }
+        ContainerDetails details = entry.details;
+        if(details != null && details.getName() != null) {
+            removeNameAliases(details.getName(), id);
+        }
+    }
+
+    private void scheduleRefresh(Entry entry) {
+        if(entry.pending.getAndIncrement() == 0) {
+            try {
+                executor.execute(() -> refresh(entry));
+            } catch (RuntimeException e) {
+                entry.pending.set(0);
+                log.error("Can not schedule refresh of '{}' container.", entry.id, e);
+            }
+        }
+    }
+
+    private void refresh(Entry entry) {
+        int seen;
+        do {
+            // events which is appeared while refresh will cause one more refresh
+            seen = entry.pending.get();
+            try {
+                ContainerDetails details = loader.apply(entry.id);
+                if(details == null) {
+                    invalidate(entry.id);
+                } else if(entries.get(entry.id) == entry) {
+                    put(details);
+                }
+            } catch (Exception e) {
+                log.error("Can not refresh details of '{}' container.", entry.id, e);
+            }
+        } while(!entry.pending.compareAndSet(seen, 0));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codeabovelab.dm.common.meter.MetricNameUtil;
+import com.codeabovelab.dm.common.utils.SingleValueCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metrics of calls to docker remote api of one service. Timers are tagged by service, logical operation and outcome,
+ * and cached, so recording of call costs only a map lookup and update of timer.
+ */
+final class DockerClientMetrics {
+
+    enum Outcome {
+        OK, ERROR, TIMEOUT;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    static final String REQUESTS = MetricNameUtil.getName(DockerServiceImpl.class, "requests");
+    static final String INFLIGHT = MetricNameUtil.getName(DockerServiceImpl.class, "inflight");
+    static final String TIMEOUTS = MetricNameUtil.getName(DockerServiceImpl.class, "timeouts");
+    static final String CACHE = MetricNameUtil.getName(DockerServiceImpl.class, "cache");
+
+    private final MetricRegistry registry;
+    private final String tagKey;
+    private final String tagValue;
+    private final ConcurrentMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final Counter timeouts;
+
+    /**
+     * @param registry registry, null disables metrics
+     * @param node node of service or null
+     * @param cluster cluster of service or null
+     */
+    DockerClientMetrics(MetricRegistry registry, String node, String cluster) {
+        this.registry = registry;
+        this.tagKey = node != null ? "node" : "cluster";
+        this.tagValue = node != null ? node : cluster;
+        if(registry == null) {
+            this.timeouts = new Counter();
+            return;
+        }
+        this.timeouts = registry.counter(MetricNameUtil.withTags(TIMEOUTS, tagKey, tagValue));
+        replaceGauge(MetricNameUtil.withTags(INFLIGHT, tagKey, tagValue), inflight::get);
+    }
+
+    /**
+     * Register hits, misses and stale hits of cache as gauges.
+     * @param name name of cache, like 'info'
+     * @param cache cache
+     */
+    void registerCache(String name, SingleValueCache<?> cache) {
+        if(registry == null) {
+            return;
+        }
+        replaceGauge(MetricNameUtil.withTags(CACHE, tagKey, tagValue, "cache", name, "result", "hit"), cache::getHits);
+        replaceGauge(MetricNameUtil.withTags(CACHE, tagKey, tagValue, "cache", name, "result", "miss"), cache::getMisses);
+        replaceGauge(MetricNameUtil.withTags(CACHE, tagKey, tagValue, "cache", name, "result", "stale"), cache::getStaleHits);
+    }
+
+    /**
+     * Remove metrics of all services of specified node from registry.
+     * @param registry registry
+     * @param node name of node
+     */
+    static void removeNode(MetricRegistry registry, String node) {
+        String prefix = MetricNameUtil.getName(DockerServiceImpl.class, "") + ".";
+        String tags = MetricNameUtil.withTags("", "node", node);
+        // '{node=name' which must be followed by ',' or '}'
+        String tag = tags.substring(0, tags.length() - 1);
+        registry.removeMatching((name, metric) -> {
+            if(!name.startsWith(prefix)) {
+                return false;
+            }
+            int i = name.indexOf(tag);
+            if(i < 0) {
+                return false;
+            }
+            int end = i + tag.length();
+            return end < name.length() && (name.charAt(end) == ',' || name.charAt(end) == '}');
+        });
+    }
+
+    private <T> void replaceGauge(String name, Gauge<T> gauge) {
+        // service may be recreated, so we replace gauge of previous instance
+        registry.remove(name);
+        registry.register(name, gauge);
+    }
+
+    /**
+     * Mark start of call.
+     * @return start time for {@link #end(String, Outcome, long)}
+     */
+    long start() {
+        inflight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark end of call.
+     * @param operation logical operation, like 'inspectContainer'
+     * @param outcome outcome of call
+     * @param start value returned by {@link #start()}
+     */
+    void end(String operation, Outcome outcome, long start) {
+        long duration = System.nanoTime() - start;
+        inflight.decrementAndGet();
+        if(outcome == Outcome.TIMEOUT) {
+            timeouts.inc();
+        }
+        if(registry == null) {
+            return;
+        }
+        Timer[] byOutcome = timers.get(operation);
+        if(byOutcome == null) {
+            byOutcome = timers.computeIfAbsent(operation, this::createTimers);
+        }
+        byOutcome[outcome.ordinal()].update(duration, TimeUnit.NANOSECONDS);
+    }
+
+    int getInflight() {
+        return inflight.get();
+    }
+
+    long getTimeouts() {
+        return timeouts.getCount();
+    }
+
+    private Timer[] createTimers(String operation) {
+        Outcome[] outcomes = Outcome.values();
+        Timer[] arr = new Timer[outcomes.length];
+        for(Outcome outcome: outcomes) {
+            arr[outcome.ordinal()] = registry.timer(MetricNameUtil.withTags(REQUESTS,
+              tagKey, tagValue,
+              "operation", operation,
+              "outcome", outcome.tag));
+        }
+        return arr;
+    }
+}
@@ -36,7 +36,6 @@ import java.util.function.Consumer;
  */
 public interface DockerService {
 
-    String CACHE_CONTAINER_DETAILS = "ContainerDetails";
     String DS_PREFIX = "ds:";
 
     /**
@@ -78,12 +77,11 @@ public interface DockerService {
     List<DockerContainer> getContainers(GetContainersArg arg);
 
     /**
-     * Retrieve details info about one container.
+     * Retrieve details info about one container. Implementation may return cached value which is refreshed
+     * on docker events, see {@link ContainerDetailsCache}.
      * @param id
      * @return container or null if not found
      */
-    @Cacheable(CACHE_CONTAINER_DETAILS)
-    @DefineCache(expireAfterWrite = 30_000L, invalidator = DockerCacheInvalidator.class)
     ContainerDetails getContainer(String id);
 
     /**
@@ -16,6 +16,7 @@
 
 package com.codeabovelab.dm.cluman.cluster.docker.management;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codeabovelab.dm.cluman.utils.ContainerUtils;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfig;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfigImpl;
@@ -53,6 +54,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -83,6 +85,19 @@ public class DockerServiceImpl implements DockerService {
          * At this interceptor you may modify building of {@link DockerServiceInfo}
          */
         private Consumer<DockerServiceInfo.Builder> infoInterceptor;
+        /**
+         * Executor for background refreshing of cached container details. When it null then
+         * container details is not cached.
+         */
+        private Executor cacheExecutor;
+        /**
+         * Time in ms after which cached container details is refreshed in background.
+         */
+        private long containerDetailsMaxAge = 60_000L;
+        /**
+         * Registry for metrics of docker api calls, when it null then metrics are not registered.
+         */
+        private MetricRegistry metricRegistry;
 
         public Builder node(String node) {
             setNode(node);
@@ -119,6 +134,21 @@ public class DockerServiceImpl implements DockerService {
             return this;
         }
 
+        public Builder cacheExecutor(Executor cacheExecutor) {
+            setCacheExecutor(cacheExecutor);
+            return this;
+        }
+
+        public Builder containerDetailsMaxAge(long containerDetailsMaxAge) {
+            setContainerDetailsMaxAge(containerDetailsMaxAge);
+            return this;
+        }
+
+        public Builder metricRegistry(MetricRegistry metricRegistry) {
+            setMetricRegistry(metricRegistry);
+            return this;
+        }
+
         public DockerServiceImpl build() {
             return new DockerServiceImpl(this);
         }
@@ -132,6 +162,7 @@ public class DockerServiceImpl implements DockerService {
     private volatile DockerServiceInfo oldInfo;
     private final AtomicReference<OfflineCause> offlineRef = new AtomicReference<>(OfflineCause.INITIAL);
     private final SingleValueCache<DockerServiceInfo> infoCache;
+    private final ContainerDetailsCache containerDetailsCache;
     private final NodeInfoProvider nodeInfoProvider;
     private final ProcessEventProcessor frameStreamProcessor = new ProcessEventProcessor();
     private final JsonStreamProcessor<DockerEvent> eventStreamProcessor = new JsonStreamProcessor<>(DockerEvent.class);
@@ -142,6 +173,7 @@ public class DockerServiceImpl implements DockerService {
     private final String cluster;
     private final String id;
     private final long maxTimeout;
+    private final DockerClientMetrics metrics;
 
     @SuppressWarnings("unchecked")
     public DockerServiceImpl(Builder b) {
@@ -159,11 +191,18 @@ public class DockerServiceImpl implements DockerService {
         this.eventConsumer = b.eventConsumer;
         Assert.notNull(this.eventConsumer, "eventConsumer is null");
         this.infoInterceptor = b.infoInterceptor;
+        this.metrics = new DockerClientMetrics(b.metricRegistry, this.node, this.cluster);
 
         this.maxTimeout = Math.max(TimeUnit.SECONDS.toMillis(clusterConfig.getDockerTimeout()), FAST_TIMEOUT * 10);
         this.infoCache = SingleValueCache.builder(this::getInfoForCache)
                 .timeAfterWrite(TimeUnit.SECONDS, this.clusterConfig.getCacheTimeAfterWrite())
                 .build();
+        this.metrics.registerCache("info", this.infoCache);
+        if(b.cacheExecutor != null) {
+            this.containerDetailsCache = new ContainerDetailsCache(this::loadContainer, b.cacheExecutor, b.containerDetailsMaxAge);
+        } else {
+            this.containerDetailsCache = null;
+        }
     }
 
     public static Builder builder() {
@@ -190,7 +229,7 @@ public class DockerServiceImpl implements DockerService {
         Assert.notNull(arg, "arg is null");
         UriComponentsBuilder builder = makeUrl("containers/" + SUFF_JSON);
         builder.queryParam("all", arg.isAll() ? "1" : "0");
-        ResponseEntity<Container[]> containers = getFast(() -> restTemplate.getForEntity(builder.toUriString(), Container[].class));
+        ResponseEntity<Container[]> containers = getFast("listContainers", () -> restTemplate.getForEntity(builder.toUriString(), Container[].class));
         ImmutableList.Builder<DockerContainer> lb = ImmutableList.builder();
         for (Container c : containers.getBody()) {
             DockerContainer.Builder dcb = DockerContainer.builder();
@@ -200,7 +239,7 @@ public class DockerServiceImpl implements DockerService {
         return lb.build();
     }
 
-    private <T> T getFast(Supplier<Future<T>> future) {
+    private <T> T getFast(String operation, Supplier<Future<T>> future) {
         // readonly ops interpreted as fast and use reduced timeout
         long timeout = FAST_TIMEOUT;
         if(getCluster() != null) {
@@ -208,33 +247,41 @@ public class DockerServiceImpl implements DockerService {
             timeout *= 3; //we simply multiple it, but also may considering sount of nodes
         }
         timeout = Math.min(timeout, maxTimeout);
-        return get(timeout, future);
+        return get(operation, timeout, future);
     }
 
-    private <T> T getSlow(Supplier<Future<T>> future) {
-        return get(maxTimeout, future);
+    private <T> T getSlow(String operation, Supplier<Future<T>> future) {
+        return get(operation, maxTimeout, future);
     }
 
 
-    private <T> T get(long timeout, Supplier<Future<T>> supplier) {
+    private <T> T get(String operation, long timeout, Supplier<Future<T>> supplier) {
         OfflineCause offlineCause = offlineRef.get();
         if(offlineCause != null) {
             offlineCause.throwIfActual(this);
         }
+        DockerClientMetrics.Outcome outcome = DockerClientMetrics.Outcome.ERROR;
+        long start = metrics.start();
         try {
             if(timeout == 0) {
                 timeout = maxTimeout;
             }
             Future<T> future = supplier.get();
             T val = future.get(timeout, TimeUnit.MILLISECONDS);
+            outcome = DockerClientMetrics.Outcome.OK;
             online();
             return val;
         } catch (ExecutionException | TimeoutException e) {
             Throwable cause = (e instanceof ExecutionException)? e.getCause() : e;
+            if(cause instanceof TimeoutException) {
+                outcome = DockerClientMetrics.Outcome.TIMEOUT;
+            }
             checkOffline(cause);
             throw Throwables.asRuntime(cause);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
+        } finally {
+            metrics.end(operation, outcome, start);
         }
     }
 
@@ -285,7 +332,7 @@ public class DockerServiceImpl implements DockerService {
 
             //filter - support only full image name with repo, not mask or substring
             builder.queryParam("filter", arg.getName());
-            ResponseEntity<ImageItem[]> entity = getFast(() -> restTemplate.getForEntity(builder.toUriString(), ImageItem[].class));
+            ResponseEntity<ImageItem[]> entity = getFast("listImages", () -> restTemplate.getForEntity(builder.toUriString(), ImageItem[].class));
             return Arrays.asList(entity.getBody());
         } catch (HttpClientErrorException e) {
             processStatusCodeException(e, new ServiceCallResult());
@@ -315,7 +362,7 @@ public class DockerServiceImpl implements DockerService {
         try {
             UriComponentsBuilder ub = makeUrl("images/")
                     .path(ContainerUtils.buildImageName(cmd.getRepository(), cmd.getImageName(), cmd.getCurrentTag())).path("/tag");
-            ResponseEntity<String> res = getSlow(() -> restTemplate.exchange(ub
+            ResponseEntity<String> res = getSlow("tagImage", () -> restTemplate.exchange(ub
                             .queryParam("force", cmd.getForce())
                             .queryParam("repo", cmd.getRepository() + "/" + cmd.getImageName())
                             .queryParam("tag", cmd.getNewTag())
@@ -323,9 +370,9 @@ public class DockerServiceImpl implements DockerService {
                     null, String.class));
             if (Boolean.TRUE.equals(cmd.getRemote())) {
                 HttpAuthInterceptor.setCurrentName(cmd.getRepository());
-                restTemplate.exchange(makeUrl("images/").path(ContainerUtils.buildImageName(cmd.getRepository(), cmd.getImageName(), null))
+                getSlow("pushImage", () -> restTemplate.exchange(makeUrl("images/").path(ContainerUtils.buildImageName(cmd.getRepository(), cmd.getImageName(), null))
                         .path("/push").queryParam("tag", cmd.getNewTag())
-                        .toUriString(), HttpMethod.POST, null, String.class);
+                        .toUriString(), HttpMethod.POST, null, String.class));
             }
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
@@ -402,11 +449,36 @@ public class DockerServiceImpl implements DockerService {
         dcb.setNode(node);
     }
 
+    /**
+     * Cache of container details, it must be notified about container events through
+     * {@link ContainerDetailsCache#onEvent(String, String)}.
+     * @return cache or null when caching is disabled
+     */
+    public ContainerDetailsCache getContainerDetailsCache() {
+        return containerDetailsCache;
+    }
+
+    /**
+     * Remove metrics of services of removed node from registry.
+     * @param registry registry
+     * @param node name of node
+     */
+    public static void removeNodeMetrics(MetricRegistry registry, String node) {
+        DockerClientMetrics.removeNode(registry, node);
+    }
+
     @Override
     public ContainerDetails getContainer(String id) {
         Assert.notNull(id, "id is null");
+        if(containerDetailsCache != null) {
+            return containerDetailsCache.get(id);
+        }
+        return loadContainer(id);
+    }
+
+    private ContainerDetails loadContainer(String id) {
         try {
-            ResponseEntity<ContainerDetails> containers = getFast(() -> restTemplate.getForEntity(getUrlContainer(id, SUFF_JSON).toUriString(), ContainerDetails.class));
+            ResponseEntity<ContainerDetails> containers = getFast("inspectContainer", () -> restTemplate.getForEntity(getUrlContainer(id, SUFF_JSON).toUriString(), ContainerDetails.class));
             return containers.getBody();
         } catch (HttpMessageNotReadableException e) {
             //with container was removed,request can receive incorrect JSON data with correct HTTP Code and content type
@@ -432,19 +504,22 @@ public class DockerServiceImpl implements DockerService {
                 statisticsProcessor.processResponseStream(context);
                 return null;
             });
-            waitFuture(callResult, future);
+            waitFuture("containerStats", callResult, future);
         } catch (HttpStatusCodeException e) {
             processStatusCodeException(e, callResult);
         }
         return callResult;
     }
 
-    private void waitFuture(ServiceCallResult callResult, ListenableFuture<Object> future) {
+    private void waitFuture(String operation, ServiceCallResult callResult, ListenableFuture<Object> future) {
+        DockerClientMetrics.Outcome outcome = DockerClientMetrics.Outcome.ERROR;
+        long start = metrics.start();
         //wait response
         try {
             // we need call get in any way, else response extractor will newer called
             // also, we can not use timeout here, because it must wait until client disconnect or interruption.
             future.get();
+            outcome = DockerClientMetrics.Outcome.OK;
             online();
             callResult.setCode(ResultCode.OK);
         } catch (InterruptedException e) {
@@ -458,6 +533,8 @@ public class DockerServiceImpl implements DockerService {
             } else {
                 throw Throwables.asRuntime(cause);
             }
+        } finally {
+            metrics.end(operation, outcome, start);
         }
     }
 
@@ -469,7 +546,7 @@ public class DockerServiceImpl implements DockerService {
     }
 
     private DockerServiceInfo getInfoForCache() {
-        Info info = getFast(() -> restTemplate.getForEntity(makeBaseUrl().path("/info").build().toUri(), Info.class)).getBody();
+        Info info = getFast("info", () -> restTemplate.getForEntity(makeBaseUrl().path("/info").build().toUri(), Info.class)).getBody();
         DockerServiceInfo.Builder dib = SwarmInfoParser.parse(info);
         ListIterator<NodeInfo> i = dib.getNodeList().listIterator();
         while (i.hasNext()) {
@@ -504,17 +581,26 @@ public class DockerServiceImpl implements DockerService {
         eventConsumer.accept(dockerServiceEvent);
     }
 
+    private void invalidateContainer(String id) {
+        // events from docker will refresh cache too, but they may come later than next read
+        if(containerDetailsCache != null && id != null) {
+            containerDetailsCache.invalidate(id);
+        }
+    }
+
     @Override
     public ServiceCallResult startContainer(String id) {
         Assert.notNull(id, "id is null");
         try {
             log.info("trying to start container {}", id);
-            ResponseEntity<String> res = getSlow(() -> restTemplate.postForEntity(getUrlContainer(id, "start").toUriString(), null, String.class));
+            ResponseEntity<String> res = getSlow("startContainer", () -> restTemplate.postForEntity(getUrlContainer(id, "start").toUriString(), null, String.class));
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
             ServiceCallResult callResult = new ServiceCallResult();
             processStatusCodeException(e, callResult);
             return callResult;
+        } finally {
+            invalidateContainer(id);
         }
     }
 
@@ -539,13 +625,18 @@ public class DockerServiceImpl implements DockerService {
                     .queryParam("since", arg.getSince())
                     .queryParam("tail", arg.getTail())
                     .queryParam("timestamps", arg.isTimestamps()).toUriString();
+            final FrameHandler frameHandler = arg.getFrameHandler();
             ListenableFuture<Object> future = restTemplate.execute(url, HttpMethod.GET, null, response -> {
                 StreamContext<ProcessEvent> context = new StreamContext<>(response.getBody(), watcher);
                 context.getInterrupter().setFuture(arg.getInterrupter());
-                frameStreamProcessor.processResponseStream(context);
+                if(frameHandler != null) {
+                    ProcessEventProcessor.processFrames(context.getStream(), context.getInterrupter(), frameHandler);
+                } else {
+                    frameStreamProcessor.processResponseStream(context);
+                }
                 return null;
             });
-            waitFuture(callResult, future);
+            waitFuture("containerLogs", callResult, future);
         } catch (HttpStatusCodeException e) {
             processStatusCodeException(e, callResult);
         }
@@ -575,7 +666,7 @@ public class DockerServiceImpl implements DockerService {
                 eventStreamProcessor.processResponseStream(context);
                 return null;
             });
-            waitFuture(callResult, future);
+            waitFuture("events", callResult, future);
         } catch (HttpStatusCodeException e) {
             processStatusCodeException(e, callResult);
         }
@@ -607,7 +698,7 @@ public class DockerServiceImpl implements DockerService {
     public CreateContainerResponse createContainer(CreateContainerCmd cmd) {
         try {
             UriComponentsBuilder ub = makeUrl("/containers/create").queryParam("name", cmd.getName());
-            ResponseEntity<CreateContainerResponse> res = getSlow(() -> restTemplate.exchange(ub.toUriString(), HttpMethod.POST, wrapEntity(cmd), CreateContainerResponse.class));
+            ResponseEntity<CreateContainerResponse> res = getSlow("createContainer", () -> restTemplate.exchange(ub.toUriString(), HttpMethod.POST, wrapEntity(cmd), CreateContainerResponse.class));
             CreateContainerResponse response = res.getBody();
             DockerUtils.setCode(res, response);
             return response;
@@ -629,7 +720,7 @@ public class DockerServiceImpl implements DockerService {
     public ServiceCallResult updateContainer(UpdateContainerCmd cmd) {
         try {
             UriComponentsBuilder ub = getUrlContainer(cmd.getId(), "update");
-            ResponseEntity<UpdateContainerResponse> res = getSlow(() -> restTemplate.exchange(ub.toUriString(), HttpMethod.POST,
+            ResponseEntity<UpdateContainerResponse> res = getSlow("updateContainer", () -> restTemplate.exchange(ub.toUriString(), HttpMethod.POST,
                     wrapEntity(cmd), UpdateContainerResponse.class));
             UpdateContainerResponse body = res.getBody();
             ServiceCallResult scr = DockerUtils.getServiceCallResult(res);
@@ -646,6 +737,8 @@ public class DockerServiceImpl implements DockerService {
             ServiceCallResult res = new ServiceCallResult();
             processStatusCodeException(e, res);
             return res;
+        } finally {
+            invalidateContainer(cmd.getId());
         }
     }
 
@@ -653,12 +746,14 @@ public class DockerServiceImpl implements DockerService {
     public ServiceCallResult renameContainer(String id, String newName) {
         try {
             UriComponentsBuilder ub = getUrlContainer(id, "rename").queryParam("name", newName);
-            ResponseEntity<String> res = getSlow(() -> restTemplate.postForEntity(ub.toUriString(), null, String.class));
+            ResponseEntity<String> res = getSlow("renameContainer", () -> restTemplate.postForEntity(ub.toUriString(), null, String.class));
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
             ServiceCallResult res = new ServiceCallResult();
             processStatusCodeException(e, res);
             return res;
+        } finally {
+            invalidateContainer(id);
         }
     }
 
@@ -668,7 +763,7 @@ public class DockerServiceImpl implements DockerService {
         UriComponentsBuilder ub = makeBaseUrl();
         ub.pathSegment("networks", "create");
         try {
-            ResponseEntity<String> res = getSlow(() -> restTemplate.exchange(ub.toUriString(), HttpMethod.POST, wrapEntity(createNetworkCmd), String.class));
+            ResponseEntity<String> res = getSlow("createNetwork", () -> restTemplate.exchange(ub.toUriString(), HttpMethod.POST, wrapEntity(createNetworkCmd), String.class));
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
             ServiceCallResult res = new ServiceCallResult();
@@ -680,7 +775,7 @@ public class DockerServiceImpl implements DockerService {
     ///networks?filters={"type":{"custom":true}}
     @Override
     public List<Network> getNetworks() {
-        ResponseEntity<Network[]> networks = getFast(() -> restTemplate.getForEntity(makeBaseUrl().pathSegment("networks").toUriString(), Network[].class));
+        ResponseEntity<Network[]> networks = getFast("listNetworks", () -> restTemplate.getForEntity(makeBaseUrl().pathSegment("networks").toUriString(), Network[].class));
         Network[] body = networks.getBody();
         if (body != null) {
             return Arrays.asList(body);
@@ -696,13 +791,15 @@ public class DockerServiceImpl implements DockerService {
             ub.queryParam("t", time);
         }
         try {
-            ResponseEntity<String> res = getSlow(() -> restTemplate.postForEntity(ub.toUriString(), null, String.class));
+            ResponseEntity<String> res = getSlow(action + "Container", () -> restTemplate.postForEntity(ub.toUriString(), null, String.class));
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
             log.warn("In {}, can't \"{}\" container: {}, code: {}, message: {}", getId(), action, id, e.getStatusCode(), e.getResponseBodyAsString());
             ServiceCallResult callResult = new ServiceCallResult();
             processStatusCodeException(e, callResult);
             return callResult;
+        } finally {
+            invalidateContainer(id);
         }
     }
 
@@ -715,13 +812,15 @@ public class DockerServiceImpl implements DockerService {
             if (signal != null) {
                 ub.queryParam("signal", signal);
             }
-            ResponseEntity<String> res = getSlow(() -> restTemplate.postForEntity(ub.toUriString(), null, String.class));
+            ResponseEntity<String> res = getSlow("killContainer", () -> restTemplate.postForEntity(ub.toUriString(), null, String.class));
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
             log.error("can't delete container: " + arg, e);
             ServiceCallResult callResult = new ServiceCallResult();
             processStatusCodeException(e, callResult);
             return callResult;
+        } finally {
+            invalidateContainer(arg.getId());
         }
 
     }
@@ -734,7 +833,7 @@ public class DockerServiceImpl implements DockerService {
             UriComponentsBuilder builder = makeUrl("images/" + arg.getImageId())
                     .queryParam("force", arg.getForce())
                     .queryParam("noprune", arg.getNoPrune());
-            ResponseEntity<String> res = getSlow(() -> restTemplate.exchange(builder.toUriString(), HttpMethod.DELETE, null, String.class));
+            ResponseEntity<String> res = getSlow("removeImage", () -> restTemplate.exchange(builder.toUriString(), HttpMethod.DELETE, null, String.class));
             log.info("image was deleted {}", arg);
             return DockerUtils.getServiceCallResult(res, rir);
         } catch (HttpStatusCodeException e) {
@@ -755,13 +854,15 @@ public class DockerServiceImpl implements DockerService {
             if (arg.isKill()) {
                 ub.queryParam("force", "1");
             }
-            ResponseEntity<String> res = getSlow(() -> restTemplate.exchange(ub.toUriString(), HttpMethod.DELETE, null, String.class));
+            ResponseEntity<String> res = getSlow("deleteContainer", () -> restTemplate.exchange(ub.toUriString(), HttpMethod.DELETE, null, String.class));
             return DockerUtils.getServiceCallResult(res);
         } catch (HttpStatusCodeException e) {
             log.error("can't delete container: {} {}", arg, e);
             ServiceCallResult callResult = new ServiceCallResult();
             processStatusCodeException(e, callResult);
             return callResult;
+        } finally {
+            invalidateContainer(arg.getId());
         }
     }
 
@@ -781,7 +882,7 @@ public class DockerServiceImpl implements DockerService {
             }
             return null;
         });
-        getSlow(puller);//wait while image begin pulled from repo
+        getSlow("pullImage", puller);//wait while image begin pulled from repo
         ProcessEvent.watch(watcher, "trying to get image info {0}", name);
         ImageDescriptor image = getImage(name);
         ProcessEvent.watch(watcher, "image info fetched {0}", image);
@@ -793,7 +894,7 @@ public class DockerServiceImpl implements DockerService {
         Image image;
         URI url = makeUrl("images/" + name + "/" + SUFF_JSON).build().toUri();
         try {
-            image = getFast(() -> restTemplate.getForEntity(url, Image.class)).getBody();
+            image = getFast("inspectImage", () -> restTemplate.getForEntity(url, Image.class)).getBody();
             log.info("image info fetched {}", image);
         } catch (HttpStatusCodeException e) {
             if(e.getStatusCode() == HttpStatus.NOT_FOUND) {
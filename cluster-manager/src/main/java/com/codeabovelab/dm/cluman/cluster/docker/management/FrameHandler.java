@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codeabovelab.dm.cluman.cluster.docker.model.StreamType;
+
+import java.io.IOException;
+
+/**
+ * Handler of frames which is produced by {@link FrameReader}. <p/>
+ * Note that buffer is owned by reader and reused for next frames, therefore handler must not
+ * retain it after return.
+ */
+public interface FrameHandler {
+
+    /**
+     * Invoked for each read frame.
+     * @param streamType type of stream
+     * @param buffer buffer with payload, it valid only until method return
+     * @param offset offset of payload in buffer
+     * @param length length of payload
+     * @throws IOException
+     */
+    void onFrame(StreamType streamType, byte[] buffer, int offset, int length) throws IOException;
+}
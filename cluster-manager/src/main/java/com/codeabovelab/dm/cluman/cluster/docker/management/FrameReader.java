@@ -23,24 +23,38 @@ import com.codeabovelab.dm.cluman.cluster.docker.model.StreamType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Breaks the input into frame. Similar to how a buffered reader would readLies.
  * <p/>
+ * Reader does not allocate memory for each frame, it use buffer which is borrowed from pool and
+ * returned back at {@link #close()}. For zero-copy reading use {@link #readFrame(FrameHandler)}.
+ * <p/>
  * See: {@link }http://docs.docker.com/v1.6/reference/api/docker_remote_api_v1.13/#attach-to-a-container}
  */
 public class FrameReader implements AutoCloseable {
 
     private static final int HEADER_SIZE = 8;
+    /**
+     * Size of pooled buffers, buffers grown above this size is not returned to pool.
+     */
+    static final int BUFFER_SIZE = 8 * 1024;
+    private static final int POOL_SIZE = 64;
+    private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
 
     private final InputStream inputStream;
 
     private boolean rawStreamDetected = false;
 
-    private final byte[] rawBuffer = new byte[1000];
+    private final byte[] header = new byte[HEADER_SIZE];
+    private byte[] buffer;
 
     public FrameReader(InputStream inputStream) {
         this.inputStream = inputStream;
+        byte[] pooled = POOL.poll();
+        this.buffer = pooled == null ? new byte[BUFFER_SIZE] : pooled;
     }
 
     private static StreamType streamType(byte streamType) {
@@ -57,69 +71,89 @@ public class FrameReader implements AutoCloseable {
     }
 
     /**
+     * Read frame and copy its payload into new {@link Frame}.
      * @return A frame, or null if no more frames.
+     * @see #readFrame(FrameHandler)
      */
     public Frame readFrame() throws IOException {
+        Frame[] holder = new Frame[1];
+        boolean read = readFrame((type, buf, offset, length) -> {
+            holder[0] = new Frame(type, Arrays.copyOfRange(buf, offset, offset + length));
+        });
+        return read ? holder[0] : null;
+    }
 
+    /**
+     * Read next frame and pass it to handler. Buffer passed to handler is reused by next invocations.
+     * @param handler handler of frame
+     * @return false if no more frames
+     */
+    public boolean readFrame(FrameHandler handler) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Reader is closed.");
+        }
         if (rawStreamDetected) {
 
-            int read = inputStream.read(rawBuffer);
+            int read = inputStream.read(buffer);
             if (read == -1) {
-                return null;
+                return false;
             }
 
-            return new Frame(StreamType.RAW, Arrays.copyOf(rawBuffer, read));
-
-        } else {
-
-            byte[] header = new byte[HEADER_SIZE];
-
-            int actualHeaderSize = 0;
-
-            do {
-                int headerCount = inputStream.read(header, actualHeaderSize, HEADER_SIZE - actualHeaderSize);
-
-                if (headerCount == -1) {
-                    return null;
-                }
-                actualHeaderSize += headerCount;
-            } while (actualHeaderSize < HEADER_SIZE);
+            handler.onFrame(StreamType.RAW, buffer, 0, read);
+            return true;
+        }
 
-            // HexDump.dump(header, 0, System.err, 0);
+        int actualHeaderSize = 0;
 
-            StreamType streamType = streamType(header[0]);
+        do {
+            int headerCount = inputStream.read(header, actualHeaderSize, HEADER_SIZE - actualHeaderSize);
 
-            if (streamType.equals(StreamType.RAW)) {
-                rawStreamDetected = true;
-                return new Frame(StreamType.RAW, Arrays.copyOf(header, HEADER_SIZE));
+            if (headerCount == -1) {
+                return false;
             }
+            actualHeaderSize += headerCount;
+        } while (actualHeaderSize < HEADER_SIZE);
 
-            int payloadSize = ((header[4] & 0xff) << 24) + ((header[5] & 0xff) << 16) + ((header[6] & 0xff) << 8)
-                    + (header[7] & 0xff);
+        StreamType streamType = streamType(header[0]);
 
-            byte[] payload = new byte[payloadSize];
-            int actualPayloadSize = 0;
-
-            do {
-                int count = inputStream.read(payload, actualPayloadSize, payloadSize - actualPayloadSize);
+        if (streamType.equals(StreamType.RAW)) {
+            rawStreamDetected = true;
+            handler.onFrame(StreamType.RAW, header, 0, HEADER_SIZE);
+            return true;
+        }
 
-                if (count == -1) {
-                    if (actualPayloadSize != payloadSize) {
-                        throw new IOException(String.format("payload must be %d bytes long, but was %d", payloadSize,
-                                actualPayloadSize));
-                    }
-                    break;
-                }
-                actualPayloadSize += count;
-            } while (actualPayloadSize < payloadSize);
+        int payloadSize = ((header[4] & 0xff) << 24) + ((header[5] & 0xff) << 16) + ((header[6] & 0xff) << 8)
+                + (header[7] & 0xff);
+        if (payloadSize < 0) {
+            throw new IOException("Invalid payload size: " + (payloadSize & 0xffffffffL));
+        }
+        if (payloadSize > buffer.length) {
+            // it is rare case, so we simply allocate enough buffer, it will not returned into pool
+            buffer = new byte[Math.max(payloadSize, buffer.length * 2)];
+        }
 
-            return new Frame(streamType, payload);
+        int actualPayloadSize = 0;
+        while (actualPayloadSize < payloadSize) {
+            int count = inputStream.read(buffer, actualPayloadSize, payloadSize - actualPayloadSize);
+            if (count == -1) {
+                throw new IOException(String.format("payload must be %d bytes long, but was %d", payloadSize,
+                        actualPayloadSize));
+            }
+            actualPayloadSize += count;
         }
+
+        handler.onFrame(streamType, buffer, 0, payloadSize);
+        return true;
     }
 
     @Override
     public void close() throws IOException {
+        byte[] buf = buffer;
+        buffer = null;
+        if (buf != null && buf.length == BUFFER_SIZE) {
+            POOL.offer(buf);
+        }
         inputStream.close();
     }
 
-}
\ No newline at end of file
+}
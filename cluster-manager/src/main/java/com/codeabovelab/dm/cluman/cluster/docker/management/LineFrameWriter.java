@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codeabovelab.dm.cluman.cluster.docker.model.StreamType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Frame handler which write payload of each frame as separate line into output stream without any intermediate
+ * objects. Payload is trimmed like {@link String#trim()} does, and terminated with '\n'.
+ */
+public class LineFrameWriter implements FrameHandler {
+
+    private final OutputStream out;
+
+    public LineFrameWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onFrame(StreamType streamType, byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        int start = trimStart(buffer, offset, end);
+        end = trimEnd(buffer, start, end);
+        out.write(buffer, start, end - start);
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Skip leading whitespaces. Note that it work correct with utf-8 because any byte of multibyte
+     * sequence is greater than 0x7f.
+     * @return index of first non whitespace byte or 'end'
+     */
+    static int trimStart(byte[] buffer, int start, int end) {
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Skip trailing whitespaces.
+     * @return index after last non whitespace byte or 'start'
+     */
+    static int trimEnd(byte[] buffer, int start, int end) {
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
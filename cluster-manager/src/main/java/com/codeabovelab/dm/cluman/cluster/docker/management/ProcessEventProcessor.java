@@ -17,15 +17,18 @@
 package com.codeabovelab.dm.cluman.cluster.docker.management;
 
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ProcessEvent;
-import com.codeabovelab.dm.cluman.cluster.docker.model.Frame;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
 
+/**
+ * Process multiplexed stream of frames into {@link ProcessEvent}s, one event per frame.
+ */
 public class ProcessEventProcessor implements ResponseStreamProcessor<ProcessEvent> {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProcessEventProcessor.class);
@@ -33,24 +36,72 @@ public class ProcessEventProcessor implements ResponseStreamProcessor<ProcessEve
     @Override
     public void processResponseStream(StreamContext<ProcessEvent> context) {
         Consumer<ProcessEvent> watcher = context.getWatcher();
-        InputStream response = context.getStream();
-        SettableFuture<Boolean> interrupter = context.getInterrupter();
-        interrupter.addListener(() -> Thread.currentThread().interrupt(), MoreExecutors.directExecutor());
-        try (FrameReader frameReader = new FrameReader(response)) {
+        processFrames(context.getStream(), context.getInterrupter(), (type, buf, offset, length) -> {
+            int end = offset + length;
+            int start = LineFrameWriter.trimStart(buf, offset, end);
+            end = LineFrameWriter.trimEnd(buf, start, end);
+            ProcessEvent.watchRaw(watcher, new String(buf, start, end - start, StandardCharsets.UTF_8), false);
+        });
+    }
 
-            Frame frame = frameReader.readFrame();
-            while (frame != null && !interrupter.isDone()) {
-                try {
-                    ProcessEvent.watchRaw(watcher, frame.getMessage(), false);
-                } catch (Exception e) {
-                    LOG.error("Cannot read body", e);
-                } finally {
-                    frame = frameReader.readFrame();
-                }
+    /**
+     * Read frames from stream and pass them to handler without copying, until end of stream or interruption.
+     * Interrupter stops reading by interruption of current thread, it does not interrupt thread after return.
+     * @param response stream
+     * @param interrupter future which interrupt reading
+     * @param handler handler of frames
+     */
+    public static void processFrames(InputStream response, SettableFuture<Boolean> interrupter, FrameHandler handler) {
+        Interruption interruption = new Interruption(Thread.currentThread());
+        interrupter.addListener(interruption, MoreExecutors.directExecutor());
+        FrameHandler safeHandler = (type, buf, offset, length) -> {
+            try {
+                handler.onFrame(type, buf, offset, length);
+            } catch (Exception e) {
+                LOG.error("Cannot read body", e);
+            }
+        };
+        try (FrameReader frameReader = new FrameReader(response)) {
+            boolean read = true;
+            while (read && !interrupter.isDone()) {
+                read = frameReader.readFrame(safeHandler);
             }
         } catch (Exception t) {
             LOG.error("Cannot close reader", t);
+        } finally {
+            interruption.finish();
+        }
+    }
+
+    /**
+     * Listener of interrupter, it can not be removed from future, so it must not interrupt thread after processing.
+     */
+    private static final class Interruption implements Runnable {
+        private final Thread thread;
+        private boolean processing = true;
+        private boolean interrupted;
+
+        Interruption(Thread thread) {
+            this.thread = thread;
         }
 
+        @Override
+        public synchronized void run() {
+            if(processing) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Must be called by processing thread.
+         */
+        synchronized void finish() {
+            processing = false;
+            if(interrupted) {
+                // clear interruption which is made by us
+                Thread.interrupted();
+            }
+        }
     }
-}
\ No newline at end of file
+}
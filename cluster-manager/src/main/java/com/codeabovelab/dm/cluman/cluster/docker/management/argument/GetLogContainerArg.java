@@ -16,6 +16,7 @@
 
 package com.codeabovelab.dm.cluman.cluster.docker.management.argument;
 
+import com.codeabovelab.dm.cluman.cluster.docker.management.FrameHandler;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ProcessEvent;
 import com.google.common.base.MoreObjects;
 import com.google.common.util.concurrent.SettableFuture;
@@ -36,6 +37,12 @@ public class GetLogContainerArg implements WithInterrupter {
 
     private final Consumer<ProcessEvent> watcher;
 
+    /**
+     * Handler which receive raw log frames without conversion to {@link ProcessEvent}.
+     * When it is specified, then 'watcher' is not used.
+     */
+    private final FrameHandler frameHandler;
+
     /**
      * show stdout log. Default true
      */
@@ -69,6 +76,7 @@ public class GetLogContainerArg implements WithInterrupter {
         return MoreObjects.toStringHelper(this)
                 .add("id", id)
                 .add("watcher", watcher)
+                .add("frameHandler", frameHandler)
                 .add("stdout", stdout)
                 .add("stderr", stderr)
                 .add("follow", follow)
@@ -52,4 +52,25 @@ public class ContainerState {
     private String status;
     @JsonProperty("OOMKilled")
     private boolean oomKilled;
+
+    /**
+     * Result of HEALTHCHECK which is defined in image, null when container does not have it.
+     */
+    @JsonProperty("Health")
+    private Health health;
+
+    @Data
+    @JsonAutoDetect(fieldVisibility = ANY, getterVisibility = NONE, setterVisibility = NONE)
+    public static class Health {
+        public static final String HEALTHY = "healthy";
+
+        /**
+         * One of 'starting', 'healthy' or 'unhealthy'.
+         */
+        @JsonProperty("Status")
+        private String status;
+
+        @JsonProperty("FailingStreak")
+        private int failingStreak;
+    }
 }
\ No newline at end of file
@@ -160,7 +160,7 @@ abstract class AbstractV2RegistryService implements RegistryService {
             online();
             List<String> tagList = tags.getTags();
             if (tagList != null) {
-                tagList.sort(ImageNameComparator.getTagsComparator());
+                ImageNameComparator.getTagsComparator().sort(tagList);
             }
             return tags;
         } catch (Exception e) {
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.registry;
+
+import com.codeabovelab.dm.cluman.model.ImageDescriptor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent loader of image descriptors from registries. Count of concurrent requests to each registry is
+ * limited, and the limit is shared by all callers.
+ */
+@Slf4j
+public class ImageDescriptorLoader implements AutoCloseable {
+
+    /**
+     * Descriptor of tag or error of its loading.
+     */
+    @Data
+    public static class Result {
+        private final String tag;
+        private final ImageDescriptor image;
+        private final String error;
+    }
+
+    private final int maxConcurrentRequests;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Semaphore> limits = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxConcurrentRequests max count of concurrent requests to one registry
+     */
+    public ImageDescriptorLoader(int maxConcurrentRequests) {
+        Assert.isTrue(maxConcurrentRequests > 0, "maxConcurrentRequests must be greater than zero");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .setDaemon(true)
+          .build());
+    }
+
+    /**
+     * Load descriptors of specified tags.
+     * @param registry registry
+     * @param name name of image without registry
+     * @param tags tags
+     * @return results in order of tags, failed tags have null image and error message
+     */
+    public List<Result> load(RegistryService registry, String name, List<String> tags) {
+        final int size = tags.size();
+        final Result[] results = new Result[size];
+        final Semaphore limit = limits.computeIfAbsent(registry.getConfig().getName(),
+          (n) -> new Semaphore(maxConcurrentRequests));
+        final AtomicInteger next = new AtomicInteger();
+        // each lane loads tags one by one, so we use no more threads than limit of registry
+        Runnable lane = () -> {
+            int i;
+            while((i = next.getAndIncrement()) < size && !Thread.currentThread().isInterrupted()) {
+                results[i] = loadTag(limit, registry, name, tags.get(i));
+            }
+        };
+        int lanes = Math.min(maxConcurrentRequests, size);
+        List<Future<?>> futures = new ArrayList<>(lanes);
+        for(int i = 1; i < lanes; ++i) {
+            futures.add(executor.submit(lane));
+        }
+        try {
+            // current thread is a lane too
+            lane.run();
+            for(Future<?> future: futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error in loading of images from {}", registry, e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+        for(int i = 0; i < size; ++i) {
+            if(results[i] == null) {
+                results[i] = new Result(tags.get(i), null, "Not loaded.");
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private Result loadTag(Semaphore limit, RegistryService registry, String name, String tag) {
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(tag, null, "Interrupted.");
+        }
+        try {
+            ImageDescriptor image = registry.getImage(name, tag);
+            return new Result(tag, image, image == null ? "Image not found." : null);
+        } catch (Exception e) {
+            log.error("Can not load image {}:{} from {}: {}", name, tag, registry.getConfig().getName(), e.toString());
+            return new Result(tag, null, e.getMessage() == null ? e.toString() : e.getMessage());
+        } finally {
+            limit.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
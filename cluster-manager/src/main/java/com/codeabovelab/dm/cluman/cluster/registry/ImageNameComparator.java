@@ -44,7 +44,7 @@ public final class ImageNameComparator {
      * because we may configure it in future.
      * @return instance of {@link VersionComparator }
      */
-    public static Comparator<String> getTagsComparator() {
+    public static VersionComparator getTagsComparator() {
         return vc;
     }
 
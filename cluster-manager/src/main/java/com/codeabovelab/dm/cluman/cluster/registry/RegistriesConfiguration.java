@@ -82,6 +82,11 @@ public class RegistriesConfiguration {
 
     }
 
+    @Bean(destroyMethod = "close")
+    ImageDescriptorLoader imageDescriptorLoader(RegistriesProperties regProps) {
+        return new ImageDescriptorLoader(regProps.getMaxConcurrentRequests());
+    }
+
     @Bean(name = RegistryEvent.BUS)
     MessageBus<RegistryEvent> registryEventMessageBus() {
         return MessageBuses.create(RegistryEvent.BUS, RegistryEvent.class);
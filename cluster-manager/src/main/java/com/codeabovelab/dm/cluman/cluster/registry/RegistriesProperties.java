@@ -35,6 +35,11 @@ public class RegistriesProperties {
      */
     private boolean syncInit = false;
 
+    /**
+     * Max count of concurrent requests to one registry, which are used for loading of image details.
+     */
+    private int maxConcurrentRequests = 8;
+
     private List<PrivateRegistryConfig> privateRegistry;
     private List<HubRegistryConfig> hubRegistry;
     private List<AwsRegistryConfig> awsRegistry;
@@ -221,6 +221,14 @@ public class RegistryRepository implements SupportSearch {
         return collect;
     }
 
+    /**
+     * Version of registries configuration, it is incremented after each change of registries.
+     * @return version
+     */
+    public long getVersion() {
+        return map.getVersion();
+    }
+
     public Collection<String> getAvailableRegistries() {
         return ImmutableSet.<String>builder()
           .addAll(map.list())
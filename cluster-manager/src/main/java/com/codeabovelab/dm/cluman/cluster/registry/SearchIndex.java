@@ -94,7 +94,7 @@ class SearchIndex implements SupportSearch, AutoCloseable {
                     List<String> list = tags.getTags();
                     if(!CollectionUtils.isEmpty(list)) {
                         //order of tags is sometime random and we need to sort them
-                        list.sort(ImageNameComparator.getTagsComparator());
+                        ImageNameComparator.getTagsComparator().sort(list);
                         latestTag = list.get(list.size() - 1);
                         descriptor = this.service.getImage(image, latestTag);
                     }
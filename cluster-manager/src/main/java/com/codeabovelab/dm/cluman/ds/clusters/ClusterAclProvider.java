@@ -55,6 +55,12 @@ public class ClusterAclProvider implements AclProvider {
         cluster.updateAcl(operator);
     }
 
+    @Override
+    public long getVersion() {
+        // acl is a part of cluster config, so any its change, include changes from KV storage, change version
+        return discoveryStorage.getObject().getVersion();
+    }
+
     private void checkExistence(NodesGroup cluster, Serializable id) {
         if(cluster == null) {
             throw new NotFoundException("Can not found nodes group for id: " + id);
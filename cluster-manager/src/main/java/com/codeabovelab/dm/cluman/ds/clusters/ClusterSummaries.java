@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.clusters;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceEvent;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.codeabovelab.dm.common.utils.RescheduledTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keep in memory state of containers on nodes, and compute {@link ClusterSummary summary} of cluster from it. State
+ * is updated by docker events and periodically reconciled by listing of containers, so obtaining of summary
+ * never waits for docker.
+ */
+@Slf4j
+@Component
+public class ClusterSummaries implements SmartLifecycle {
+
+    /**
+     * Containers of single node, mapped to its 'running' flag.
+     */
+    private static final class NodeContainers {
+        private final Map<String, Boolean> containers = new HashMap<>();
+        private LocalDateTime updated;
+
+        synchronized void setContainers(List<DockerContainer> list) {
+            containers.clear();
+            for(DockerContainer dc: list) {
+                containers.put(dc.getId(), dc.isRun());
+            }
+            updated = LocalDateTime.now();
+        }
+
+        synchronized void setRunning(String id, boolean running) {
+            containers.put(id, running);
+        }
+
+        synchronized void remove(String id) {
+            containers.remove(id);
+        }
+
+        synchronized boolean contains(String id) {
+            return containers.containsKey(id);
+        }
+
+        synchronized int getRunning() {
+            int running = 0;
+            for(Boolean run: containers.values()) {
+                if(run) {
+                    running++;
+                }
+            }
+            return running;
+        }
+
+        synchronized int getCount() {
+            return containers.size();
+        }
+
+        synchronized LocalDateTime getUpdated() {
+            return updated;
+        }
+    }
+
+    private final Function<String, DockerService> nodeServices;
+    private final ImagesInventory imagesInventory;
+    private final ScheduledExecutorService scheduledService;
+    private final ConcurrentMap<String, NodeContainers> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RescheduledTask> scheduledNodes = new ConcurrentHashMap<>();
+    private DockerServices dockerServices;
+    private volatile boolean started;
+
+    @Autowired
+    public ClusterSummaries(DockerServices dockerServices,
+                            ImagesInventory imagesInventory,
+                            @Qualifier(NodeEvent.BUS) Subscriptions<NodeEvent> nodeSubs,
+                            @Qualifier(DockerServiceEvent.BUS) Subscriptions<DockerServiceEvent> dockerSubs,
+                            @Qualifier(DockerLogEvent.BUS) Subscriptions<DockerLogEvent> dockerLogSubs) {
+        this(dockerServices::getNodeService, imagesInventory, Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(ClusterSummaries.class.getSimpleName() + "-%d")
+          .build()));
+        this.dockerServices = dockerServices;
+        nodeSubs.subscribe(this::onNodeEvent);
+        dockerSubs.subscribe(this::onDockerEvent);
+        dockerLogSubs.subscribe(this::onDockerLogEvent);
+    }
+
+    ClusterSummaries(Function<String, DockerService> nodeServices, ImagesInventory imagesInventory,
+                     ScheduledExecutorService scheduledService) {
+        this.nodeServices = nodeServices;
+        this.imagesInventory = imagesInventory;
+        this.scheduledService = scheduledService;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public void start() {
+        this.started = true;
+        if(dockerServices != null) {
+            dockerServices.getNodeServices().forEach(n -> scheduleLoad(n, 0));
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.started = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return started;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Compute summary of cluster from in memory state.
+     * @param cluster cluster
+     * @return summary, never null
+     */
+    public ClusterSummary getSummary(NodesGroup cluster) {
+        ClusterSummary.ClusterSummaryBuilder b = ClusterSummary.builder();
+        int on = 0;
+        int off = 0;
+        int running = 0;
+        int stopped = 0;
+        int cpus = 0;
+        long memory = 0;
+        long memoryUsed = 0;
+        boolean complete = true;
+        LocalDateTime updated = null;
+        List<String> names = new ArrayList<>();
+        for(NodeInfo node: cluster.getNodes()) {
+            String name = node.getName();
+            names.add(name);
+            if(node.isOn()) {
+                on++;
+            } else {
+                off++;
+            }
+            NodeMetrics health = node.getHealth();
+            if(health != null) {
+                cpus += orZero(health.getSwarmCpusTotal());
+                memory += orZero(health.getSysMemTotal());
+                memoryUsed += orZero(health.getSysMemUsed());
+            }
+            NodeContainers nc = nodes.get(name);
+            if(nc == null) {
+                complete &= !node.isOn();
+                continue;
+            }
+            int count = nc.getCount();
+            int nodeRunning = nc.getRunning();
+            running += nodeRunning;
+            stopped += count - nodeRunning;
+            LocalDateTime nodeUpdated = nc.getUpdated();
+            if(updated == null || nodeUpdated.isBefore(updated)) {
+                updated = nodeUpdated;
+            }
+        }
+        return b.nodes(on)
+          .offNodes(off)
+          .containers(running)
+          .offContainers(stopped)
+          .images(imagesInventory.getLoadedImages(names).size())
+          .cpus(cpus)
+          .memory(memory)
+          .memoryUsed(memoryUsed)
+          .updated(updated)
+          .complete(complete)
+          .build();
+    }
+
+    private static int orZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static long orZero(Long value) {
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Reconcile state with docker.
+     */
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void reconcile() {
+        if(dockerServices == null) {
+            return;
+        }
+        for(String node: dockerServices.getNodeServices()) {
+            load(node);
+        }
+    }
+
+    void load(String node) {
+        DockerService service = nodeServices.apply(node);
+        if(service == null) {
+            return;
+        }
+        try(TempAuth ta = TempAuth.asSystem()) {
+            List<DockerContainer> containers = service.getContainers(new GetContainersArg(true));
+            nodes.computeIfAbsent(node, n -> new NodeContainers()).setContainers(containers);
+        } catch (Exception e) {
+            log.warn("Can not load containers of node '{}': {}", node, e.toString());
+        }
+    }
+
+    private void scheduleLoad(String node, long delaySeconds) {
+        RescheduledTask task = scheduledNodes.computeIfAbsent(node, (n) -> RescheduledTask.builder()
+          .service(scheduledService)
+          .runnable(() -> this.load(n))
+          .maxDelay(1L, TimeUnit.MINUTES)
+          .build());
+        task.schedule(delaySeconds, TimeUnit.SECONDS);
+    }
+
+    void onDockerLogEvent(DockerLogEvent e) {
+        String node = e.getNode();
+        if(node == null || e.getType() != EventType.CONTAINER) {
+            return;
+        }
+        NodeContainers nc = nodes.get(node);
+        if(nc == null) {
+            return;
+        }
+        String id = e.getContainer().getId();
+        // 'stop' is also produced by 'kill' which does not always stop container, so we wait 'die'
+        switch (e.getAction()) {
+            case StandardActions.CREATE:
+            case StandardActions.DIE:
+                nc.setRunning(id, false);
+                break;
+            case StandardActions.START:
+            case "restart":
+            case "unpause":
+                nc.setRunning(id, true);
+                break;
+            case StandardActions.DELETE:
+                nc.remove(id);
+                break;
+            default:
+                if(!nc.contains(id)) {
+                    scheduleLoad(node, 10);
+                }
+        }
+    }
+
+    void onNodeEvent(NodeEvent e) {
+        String action = e.getAction();
+        String node = e.getNode().getName();
+        if(StandardActions.OFFLINE.equals(action) || StandardActions.DELETE.equals(action)) {
+            nodes.remove(node);
+        } else if(StandardActions.ONLINE.equals(action)) {
+            scheduleLoad(node, 10);
+        }
+    }
+
+    private void onDockerEvent(DockerServiceEvent e) {
+        String node = e.getNode();
+        if(node == null || StandardActions.UPDATE.equals(e.getAction()) || StandardActions.OFFLINE.equals(e.getAction())) {
+            return;
+        }
+        scheduleLoad(node, 10);
+    }
+}
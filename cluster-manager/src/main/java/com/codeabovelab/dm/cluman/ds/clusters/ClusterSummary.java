@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.clusters;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot of cluster state from {@link ClusterSummaries}, it is computed from memory and never calls docker.
+ */
+@Value
+@Builder
+public class ClusterSummary {
+    private final int nodes;
+    private final int offNodes;
+    private final int containers;
+    private final int offContainers;
+    private final int images;
+    private final int cpus;
+    private final long memory;
+    private final long memoryUsed;
+    /**
+     * Time of oldest container list from which summary is computed, null when no one node is loaded.
+     */
+    private final LocalDateTime updated;
+    /**
+     * False when containers of some online nodes are not loaded yet.
+     */
+    private final boolean complete;
+}
@@ -317,6 +317,11 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
         });
     }
 
+    @Override
+    public long getVersion() {
+        return clusters.getVersion();
+    }
+
     @Override
     public List<NodesGroup> getClusters() {
         ImmutableList.Builder<NodesGroup> ilb = ImmutableList.builder();
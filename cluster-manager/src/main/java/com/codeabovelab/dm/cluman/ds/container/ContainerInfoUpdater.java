@@ -123,6 +123,7 @@ class ContainerInfoUpdater implements SmartLifecycle {
                 }
             }
         }
+        containerStorage.changed();
     }
 
     private void scheduleNodeUpdate(String node) {
@@ -24,31 +24,42 @@ import com.codeabovelab.dm.cluman.cluster.docker.management.argument.CreateConta
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.CreateAndStartContainerResult;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ProcessEvent;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ScaleContainerResult;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
 import com.codeabovelab.dm.cluman.cluster.docker.model.*;
 import com.codeabovelab.dm.cluman.configs.container.ConfigProvider;
 import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
 import com.codeabovelab.dm.cluman.ds.SwarmUtils;
 import com.codeabovelab.dm.cluman.ds.swarm.NetworkManager;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
 import com.codeabovelab.dm.cluman.model.ContainerSource;
 import com.codeabovelab.dm.cluman.model.ImageDescriptor;
 import com.codeabovelab.dm.cluman.model.NodeInfo;
 import com.codeabovelab.dm.cluman.model.NodeRegistry;
+import com.codeabovelab.dm.cluman.security.TempAuth;
 import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
 import com.codeabovelab.dm.cluman.utils.ContainerUtils;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.utils.Consumers;
 import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -65,6 +76,8 @@ import static com.google.common.base.MoreObjects.firstNonNull;
 public class ContainerManager {
     private static final Logger LOG = LoggerFactory.getLogger(DockerServiceImpl.class);
     private static final int CREATE_CONTAINER_TRIES = 3;
+    private static final int SCALE_PARALLELISM = 8;
+    private static final int SCALE_PER_NODE = 2;
     private final DockerServiceRegistry dockerServiceRegistry;
     private final NodeRegistry nodeRegistry;
     private final ConfigProvider configProvider;
@@ -72,6 +85,7 @@ public class ContainerManager {
     private final ContainerStorage containerStorage;
     private final NetworkManager networkManager;
     private final ContainerSourceFactory containerSourceFactory;
+    private final ImagesInventory imagesInventory;
 
     /**
      * Create container by image information (image name, tag) also can be specified optional params <p/>
@@ -149,10 +163,14 @@ public class ContainerManager {
                 return response;
             }
             boolean weCanTryAgain = response.getCode() == ResultCode.CONFLICT &&
-                    !StringUtils.hasText(cc.arg.getContainer().getName());
+                    (cc.generatedName || !StringUtils.hasText(cc.arg.getContainer().getName()));
             if (!weCanTryAgain) {
                 break;
             }
+            if (cc.generatedName) {
+                // name was allocated by us in advance, but it is already used, so we allocate another
+                cc.arg.getContainer().setName(null);
+            }
         }
         if (ResultCode.OK != response.getCode()) {
             throw new IllegalStateException("Can't create container, due: " + response.getCode() + " " + response.getMessage());
@@ -161,41 +179,134 @@ public class ContainerManager {
     }
 
     /**
+     * Create new instances of container. Placement of all instances is planned at once, then instances are created
+     * concurrently, with limit of concurrent creations on each node. Failed instances are not retried, therefore
+     * count of created instances never exceeds specified factor. <p/>
      * add scalable to doc
      * @param clusterId
-     * @param scaleFactor
+     * @param scaleFactor count of new instances
      * @param id
-     * @return
+     * @return result with results of each instance
      */
-    public ServiceCallResult scale(String clusterId, Integer scaleFactor, String id) {
+    public ScaleContainerResult scale(String clusterId, Integer scaleFactor, String id) {
         DockerService docker = getDockerForCluster(clusterId);
         ContainerDetails container = docker.getContainer(id);
         ExtendedAssert.notFound(container, "Can not find container: " + id);
         String scalable = container.getConfig().getLabels().get(SCALABLE);
-        if (scalable == null || "true".equals(scalable)) {
-            int scale = scaleFactor == null ? 1 : scaleFactor;
-            for (int i = 0; i < scale; i++) {
-                ContainerSource nc = new ContainerSource();
-                containerSourceFactory.toSource(container, nc);
-                nc.setCluster(clusterId);
-                nc.setNode(null);
-                nc.setName(null);
-                nc.setHostname(null);
-                nc.setDomainname(null);
-                SwarmUtils.clearLabels(nc.getLabels());
-                CreateContainerArg arg = CreateContainerArg.builder().container(nc).build();
-                CreateContainerContext cc = new CreateContainerContext(arg, docker);
-                CreateAndStartContainerResult containerInternal = createContainerInternal(cc);
-                if (containerInternal.getCode() == ResultCode.ERROR) {
-                    return containerInternal;
+        ScaleContainerResult result = new ScaleContainerResult();
+        if (scalable != null && !"true".equals(scalable)) {
+            result.code(ResultCode.ERROR)
+                    .message("Image not scalable " + container.getConfig().getImage());
+            return result;
+        }
+        int scale = scaleFactor == null ? 1 : scaleFactor;
+        ExtendedAssert.badRequest(scale > 0, "Scale factor must be greater than zero: {0}", scale);
+        ContainerSource template = new ContainerSource();
+        containerSourceFactory.toSource(container, template);
+        template.setCluster(clusterId);
+        template.setNode(null);
+        template.setName(null);
+        template.setHostname(null);
+        template.setDomainname(null);
+        SwarmUtils.clearLabels(template.getLabels());
+        String imageName = template.getImage();
+
+        // plan placement and names of all instances in one pass
+        List<String> nodes = DockerUtils.listNodes(docker.getInfo());
+        Map<String, Integer> counts = getContainersPerNode(nodes, imageName);
+        int maxCount = docker.getClusterConfig().getMaxCountOfInstances();
+        List<String> plan = ContainerStarterHelper.planPlacement(nodes, counts, maxCount, scale);
+        List<String> names = containersNameService.calculateNames(CalcNameArg.builder()
+                .allocate(true)
+                .imageName(imageName)
+                .dockerService(docker).build(), plan.size());
+
+        CreateAndStartContainerResult[] results = new CreateAndStartContainerResult[scale];
+        Map<String, List<Integer>> byNode = new LinkedHashMap<>();
+        for (int i = 0; i < plan.size(); i++) {
+            String node = plan.get(i);
+            byNode.computeIfAbsent(node == null ? "" : node, (n) -> new ArrayList<>()).add(i);
+        }
+        for (int i = plan.size(); i < scale; i++) {
+            CreateAndStartContainerResult r = new CreateAndStartContainerResult();
+            r.setCode(ResultCode.ERROR);
+            r.setMessage("Can't schedule container, all nodes contains at least " + maxCount);
+            results[i] = r;
+        }
+        // each lane creates instances on its node one by one
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        List<Runnable> lanes = new ArrayList<>();
+        byNode.values().forEach(indexes -> {
+            AtomicInteger next = new AtomicInteger();
+            Runnable lane = () -> {
+                int i;
+                while ((i = next.getAndIncrement()) < indexes.size() && !Thread.currentThread().isInterrupted()) {
+                    int index = indexes.get(i);
+                    ContainerSource nc = template.clone();
+                    nc.setName(names.get(index));
+                    ContainerStarterHelper.calculatePlannedConstraints(plan.get(index), nodes, counts, maxCount,
+                            nc.getEnvironment());
+                    CreateContainerArg arg = CreateContainerArg.builder().container(nc).build();
+                    CreateContainerContext cc = new CreateContainerContext(arg, docker);
+                    cc.generatedName = true;
+                    results[index] = createContainerInternal(cc);
                 }
+            };
+            for (int i = Math.min(SCALE_PER_NODE, indexes.size()); i > 0; i--) {
+                lanes.add(withAuth(auth, lane));
             }
-            return new ServiceCallResult()
-                    .code(ResultCode.OK).message("Created " + scale + " instances");
-        } else {
-            return new ServiceCallResult()
-                    .code(ResultCode.ERROR)
-                    .message("Image not scalable " + container.getConfig().getImage());
+        });
+        runLanes(lanes);
+        int created = 0;
+        for (CreateAndStartContainerResult r : results) {
+            if (r == null) {
+                // lane was interrupted
+                r = new CreateAndStartContainerResult();
+                r.setCode(ResultCode.ERROR);
+                r.setMessage("Interrupted");
+            } else if (r.getCode() == ResultCode.OK) {
+                created++;
+            }
+            result.getContainers().add(r);
+        }
+        result.code(created == scale ? ResultCode.OK : ResultCode.ERROR)
+                .message("Created " + created + " of " + scale + " instances");
+        return result;
+    }
+
+    private static Runnable withAuth(Authentication auth, Runnable task) {
+        if (auth == null) {
+            return task;
+        }
+        return () -> {
+            try (TempAuth ta = TempAuth.open(auth)) {
+                task.run();
+            }
+        };
+    }
+
+    private void runLanes(List<Runnable> lanes) {
+        if (lanes.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(SCALE_PARALLELISM, lanes.size()),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(getClass().getSimpleName() + "-scale-%d")
+                        .setDaemon(true)
+                        .build());
+        try {
+            List<Future<?>> futures = new ArrayList<>(lanes.size());
+            lanes.forEach(l -> futures.add(executor.submit(l)));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // createContainerInternal does not throw exceptions, so it unexpected
+            LOG.error("Error on scale", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -215,15 +326,18 @@ public class ContainerManager {
         if (cc.arg.isEnrichConfigs()) {
             result = configProvider.resolveProperties(nc.getCluster(), image, imageName, nc);
         }
-        Map<String, Integer> appCountPerNode = getContainersPerNodeForImage(cc, imageName);
-        List<String> existsNodes = DockerUtils.listNodes(dockerService.getInfo());
         // we want to save order of entries, but skip duplicates
         LinkedHashSet<String> env = new LinkedHashSet<>();
         env.addAll(result.getEnvironment());
-        ContainerStarterHelper.calculateConstraints(existsNodes,
-          result.getNode(),
-          appCountPerNode,
-          dockerService.getClusterConfig().getMaxCountOfInstances(), env);
+        if (!ContainerStarterHelper.hasNodeConstraint(env)) {
+            // placement is not planned yet
+            Map<String, Integer> appCountPerNode = getContainersPerNodeForImage(cc, imageName);
+            List<String> existsNodes = DockerUtils.listNodes(dockerService.getInfo());
+            ContainerStarterHelper.calculateConstraints(existsNodes,
+              result.getNode(),
+              appCountPerNode,
+              dockerService.getClusterConfig().getMaxCountOfInstances(), env);
+        }
         LOG.info("Env: {}", env);
         ProcessEvent.watch(cc.watcher, "Environment: {0}", env);
 
@@ -278,15 +392,20 @@ public class ContainerManager {
         if (service == null) {
             service = cc.dockerService;
         }
-        Map<String, Integer> map = new HashMap<>();
+        List<String> nodes = new ArrayList<>();
         for (NodeInfo ni : service.getInfo().getNodeList()) {
-            String nodeName = ni.getName();
-            List<ContainerRegistration> containers = containerStorage.getContainersByNode(ni.getName());
-            if(CollectionUtils.isEmpty(containers)) {
-                continue;
+            nodes.add(ni.getName());
+        }
+        return getContainersPerNode(nodes, imageName);
+    }
+
+    private Map<String, Integer> getContainersPerNode(Collection<String> nodes, String imageName) {
+        Map<String, Integer> map = new HashMap<>();
+        for (String nodeName : nodes) {
+            int count = imagesInventory.getContainersCount(nodeName, imageName);
+            if(count > 0) {
+                map.put(nodeName, count);
             }
-            int count = (int) containers.stream().filter(c -> imageName.equals(c.getContainer().getImage())).count();
-            map.put(nodeName, count);
         }
         return map;
     }
@@ -361,6 +480,10 @@ public class ContainerManager {
          */
         final DockerService dockerService;
         private String name;
+        /**
+         * Name of container was generated by us, therefore it can be replaced on conflict.
+         */
+        private boolean generatedName;
 
         CreateContainerContext(CreateContainerArg arg, DockerService service) {
             this.arg = arg;
@@ -79,6 +79,77 @@ public final class ContainerStarterHelper {
         }
     }
 
+    /**
+     * Check that list of env has node constraints.
+     * @param env env of container
+     * @return true when node constraint is present
+     */
+    public static boolean hasNodeConstraint(Collection<String> env) {
+        for(String i: env) {
+            if(i.startsWith(CONSTRAINT_NODE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plan placement of new containers in one pass. Each container is placed on node with min count of containers,
+     * and count of node is incremented after each placement, so containers are spread between nodes.
+     * @param existsNodes nodes
+     * @param appCountPerNode count of containers on nodes
+     * @param maxCount max count of containers on one node, zero or less mean unlimited
+     * @param count count of new containers
+     * @return node for each new container, it shorter than count when nodes does not have place for all containers,
+     *   when list of nodes is empty it contains nulls
+     */
+    public static List<String> planPlacement(Collection<String> existsNodes,
+                                             Map<String, Integer> appCountPerNode,
+                                             int maxCount,
+                                             int count) {
+        List<String> plan = new ArrayList<>(count);
+        if(existsNodes.isEmpty()) {
+            plan.addAll(Collections.nCopies(count, null));
+            return plan;
+        }
+        PriorityQueue<NodePriority> queue = new PriorityQueue<>(processServicesCount(appCountPerNode, existsNodes));
+        while(plan.size() < count && !queue.isEmpty()) {
+            NodePriority np = queue.poll();
+            if(maxCount > 0 && np.countOfApps >= maxCount) {
+                // all other nodes have same or greater count
+                break;
+            }
+            plan.add(np.name);
+            queue.add(new NodePriority(np.name, np.countOfApps + 1));
+        }
+        LOG.info("Placement plan of {} containers: {}", count, plan);
+        return plan;
+    }
+
+    /**
+     * Calculate constraints for container which is placed by {@link #planPlacement(Collection, Map, int, int)}.
+     * @param node planned node, may be null
+     * @param existsNodes nodes
+     * @param appCountPerNode count of containers on nodes before placement
+     * @param maxCount max count of containers on one node
+     * @param dest env of container, existed node constraints will be replaced
+     */
+    public static void calculatePlannedConstraints(String node,
+                                                   Collection<String> existsNodes,
+                                                   Map<String, Integer> appCountPerNode,
+                                                   int maxCount,
+                                                   Collection<String> dest) {
+        dest.removeIf(i -> i.startsWith(CONSTRAINT_NODE));
+        if(node == null) {
+            return;
+        }
+        dest.add(CONSTRAINT_NODE + "==~" + node);
+        String forbidden = calculateFullNodeExpression(getFullNodes(processServicesCount(appCountPerNode, existsNodes), maxCount));
+        if(forbidden != null) {
+            dest.add(forbidden);
+        }
+    }
+
     private static String calculateFullNodeExpression(List<NodePriority> fullNodes) {
         if (!fullNodes.isEmpty()) {
             StringBuilder nodes = new StringBuilder(CONSTRAINT_NODE + "!=/");
@@ -133,7 +204,11 @@ public final class ContainerStarterHelper {
 
         @Override
         public int compareTo(NodePriority o) {
-            return Integer.compare(countOfApps, o.countOfApps);
+            int res = Integer.compare(countOfApps, o.countOfApps);
+            if(res == 0) {
+                res = name.compareTo(o.name);
+            }
+            return res;
         }
 
         @Override
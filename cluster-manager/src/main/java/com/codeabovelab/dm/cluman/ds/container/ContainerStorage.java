@@ -41,4 +41,11 @@ public interface ContainerStorage {
      */
     ContainerRegistration updateAndGetContainer(ContainerBaseIface container, String node);
 
+    /**
+     * Version of containers, it is incremented after each change of stored containers and after each docker
+     * event about container, because state of containers is not stored.
+     * @return version
+     */
+    long getVersion();
+
 }
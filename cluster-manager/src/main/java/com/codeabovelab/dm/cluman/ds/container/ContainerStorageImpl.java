@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -37,6 +38,10 @@ import java.util.stream.Stream;
 public class ContainerStorageImpl implements ContainerStorage, InitializingBean {
 
     final KvMap<ContainerRegistration> map;
+    /**
+     * Count of changes which are not visible in map: updates of registrations and container events.
+     */
+    private final AtomicLong changes = new AtomicLong();
 
     @Autowired
     public ContainerStorageImpl(KvMapperFactory kvmf) {
@@ -112,11 +117,21 @@ public class ContainerStorageImpl implements ContainerStorage, InitializingBean
     public ContainerRegistration updateAndGetContainer(ContainerBaseIface container, String node) {
         ContainerRegistration cr = map.computeIfAbsent(container.getId(), s -> new ContainerRegistration(this, s));
         cr.from(container, node);
+        changed();
         ContainerBase cb = cr.getContainer();
         log.info("Update container: {} '{}', of '{}'", cr.getId(), cb.getName(), cb.getImage());
         return cr;
     }
 
+    @Override
+    public long getVersion() {
+        return map.getVersion() + changes.get();
+    }
+
+    void changed() {
+        changes.incrementAndGet();
+    }
+
     void remove(Set<String> ids) {
         ids.forEach(this::deleteContainer);
     }
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -62,6 +63,37 @@ public class ContainersNameService {
         return name;
     }
 
+    /**
+     * Calculates specified count of unique names by pattern [image-name w/o any suffixes]-[number]. Unlike
+     * sequential calls of {@link #calculateName(CalcNameArg)} it obtain names of containers only once.
+     * @param calcNameArg - all needed data, container name must be empty
+     * @param count count of names
+     * @return list of names
+     */
+    public List<String> calculateNames(CalcNameArg calcNameArg, int count) {
+        Assert.isTrue(!org.springframework.util.StringUtils.hasText(calcNameArg.getContainerName()),
+          "Can not calculate multiple names for specified container name.");
+        String applicationName = ContainerUtils.getApplicationName(calcNameArg.getImageName()).toLowerCase();
+        int last = getMaxNumber(applicationName, calcNameArg.getDockerService());
+        List<String> names = new ArrayList<>(count);
+        for(int i = 0; i < count; ++i) {
+            String name;
+            if(last == -1) {
+                name = applicationName;
+                last = 0;
+            } else {
+                last++;
+                name = applicationName + "-" + last;
+            }
+            if(calcNameArg.isAllocate()) {
+                storeRecentName(name);
+            }
+            names.add(name);
+        }
+        LOG.info("names of containers: {}", names);
+        return names;
+    }
+
     private String internalProcess(CalcNameArg calcNameArg) {
         if (org.springframework.util.StringUtils.hasText(calcNameArg.getContainerName())) {
             return calcNameArg.getContainerName();
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.images;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceEvent;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetImagesArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ImageItem;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.codeabovelab.dm.common.utils.RescheduledTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Inventory of images on nodes. It know which images (ids and tags) are present on each node and count of
+ * containers which use each image. Inventory of node is loaded once by bulk listing of images and containers,
+ * and then updated by docker events of images and containers.
+ */
+@Slf4j
+@Component
+public class ImagesInventory implements SmartLifecycle {
+
+    private static final class ContainerRef {
+        private final String image;
+        private final String imageId;
+
+        ContainerRef(String image, String imageId) {
+            this.image = image;
+            this.imageId = imageId;
+        }
+    }
+
+    /**
+     * Container event which is received while node is loaded.
+     */
+    private static final class ContainerEvent {
+        private final boolean create;
+        private final String id;
+        private final String image;
+
+        ContainerEvent(boolean create, String id, String image) {
+            this.create = create;
+            this.id = id;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Images and containers of single node.
+     */
+    private static final class NodeImages {
+        private Map<String, ImageItem> images = Collections.emptyMap();
+        private Map<String, String> tags = Collections.emptyMap();
+        private final Map<String, ContainerRef> containers = new HashMap<>();
+        private final Map<String, Integer> usage = new HashMap<>();
+        private final Map<String, Integer> usageByName = new HashMap<>();
+        /**
+         * Events of each running load, they are applied again over loaded lists, which may be older than events.
+         */
+        private final List<List<ContainerEvent>> journals = new ArrayList<>();
+        private boolean loaded;
+
+        synchronized List<ContainerEvent> beginLoad() {
+            List<ContainerEvent> journal = new ArrayList<>();
+            journals.add(journal);
+            return journal;
+        }
+
+        synchronized void endLoad(List<ContainerEvent> journal) {
+            // lists of different loads may be equal
+            journals.removeIf(j -> j == journal);
+        }
+
+        /**
+         * Set loaded lists and apply events which are received while loading.
+         * @return false when some of replayed events have unknown image
+         */
+        synchronized boolean setLoaded(List<ContainerEvent> journal, List<ImageItem> images, List<DockerContainer> containers) {
+            endLoad(journal);
+            setImages(images);
+            setContainers(containers);
+            boolean known = true;
+            for(ContainerEvent e: journal) {
+                known &= onEvent(e);
+            }
+            loaded = true;
+            return known;
+        }
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        /**
+         * Apply event of container.
+         * @return false when image of created container is unknown
+         */
+        synchronized boolean onEvent(ContainerEvent e) {
+            for(List<ContainerEvent> journal: journals) {
+                journal.add(e);
+            }
+            if(!e.create) {
+                removeContainer(e.id);
+                return true;
+            }
+            String imageId = resolve(e.image);
+            addContainer(e.id, e.image, imageId);
+            return imageId != null;
+        }
+
+        private void setImages(List<ImageItem> list) {
+            Map<String, ImageItem> images = new HashMap<>();
+            Map<String, String> tags = new HashMap<>();
+            for(ImageItem item: list) {
+                images.put(item.getId(), item);
+                for(String tag: item.getRepoTags()) {
+                    if(!tag.contains(ImageName.NONE)) {
+                        tags.put(tag, item.getId());
+                    }
+                }
+            }
+            this.images = images;
+            this.tags = tags;
+        }
+
+        private void setContainers(List<DockerContainer> list) {
+            containers.clear();
+            usage.clear();
+            usageByName.clear();
+            for(DockerContainer dc: list) {
+                addContainer(dc.getId(), dc.getImage(), dc.getImageId());
+            }
+        }
+
+        synchronized void addContainer(String id, String image, String imageId) {
+            removeContainer(id);
+            ContainerRef ref = new ContainerRef(image, imageId);
+            containers.put(id, ref);
+            if(imageId != null) {
+                usage.merge(imageId, 1, Integer::sum);
+            }
+            if(image != null) {
+                usageByName.merge(image, 1, Integer::sum);
+            }
+        }
+
+        synchronized void removeContainer(String id) {
+            ContainerRef ref = containers.remove(id);
+            if(ref == null) {
+                return;
+            }
+            if(ref.imageId != null) {
+                usage.computeIfPresent(ref.imageId, (k, c) -> c > 1 ? c - 1 : null);
+            }
+            if(ref.image != null) {
+                usageByName.computeIfPresent(ref.image, (k, c) -> c > 1 ? c - 1 : null);
+            }
+        }
+
+        /**
+         * Resolve id of image by its name or id.
+         * @param image name with or without tag, or id
+         * @return id or null
+         */
+        synchronized String resolve(String image) {
+            if(!StringUtils.hasText(image)) {
+                return null;
+            }
+            if(ImageName.isId(image)) {
+                for(String id: images.keySet()) {
+                    if(id.equals(image) || ImageName.nameFromId(id).startsWith(image)) {
+                        return id;
+                    }
+                }
+                return null;
+            }
+            String id = tags.get(image);
+            if(id == null && ImageName.parse(image).getTag().isEmpty()) {
+                id = tags.get(image + ":" + ImageName.TAG_LATEST);
+            }
+            return id;
+        }
+
+        synchronized int getContainers(String image) {
+            return usageByName.getOrDefault(image, 0);
+        }
+
+        synchronized void collect(String node, Map<String, ImageBuilder> result) {
+            images.forEach((id, item) -> {
+                ImageBuilder ib = result.computeIfAbsent(id, ImageBuilder::new);
+                ib.add(node, item, usage.getOrDefault(id, 0));
+            });
+        }
+    }
+
+    private static final class ImageBuilder {
+        private final String id;
+        private Date created;
+        private long size;
+        private final Set<String> tags = new TreeSet<>();
+        private final Map<String, Integer> nodes = new TreeMap<>();
+
+        ImageBuilder(String id) {
+            this.id = id;
+        }
+
+        void add(String node, ImageItem item, int containers) {
+            created = item.getCreated();
+            size = item.getSize();
+            item.getRepoTags().stream().filter(t -> !t.contains(ImageName.NONE)).forEach(tags::add);
+            nodes.put(node, containers);
+        }
+
+        InventoryImage build() {
+            return new InventoryImage(id, created, size, tags, nodes);
+        }
+    }
+
+    private final Function<String, DockerService> nodeServices;
+    private final ScheduledExecutorService scheduledService;
+    private final ConcurrentMap<String, NodeImages> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RescheduledTask> scheduledNodes = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private DockerServices dockerServices;
+    private volatile boolean started;
+
+    @Autowired
+    public ImagesInventory(DockerServices dockerServices,
+                           @Qualifier(NodeEvent.BUS) Subscriptions<NodeEvent> nodeSubs,
+                           @Qualifier(DockerServiceEvent.BUS) Subscriptions<DockerServiceEvent> dockerSubs,
+                           @Qualifier(DockerLogEvent.BUS) Subscriptions<DockerLogEvent> dockerLogSubs) {
+        this(dockerServices::getNodeService, Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(ImagesInventory.class.getSimpleName() + "-%d")
+          .build()));
+        this.dockerServices = dockerServices;
+        nodeSubs.subscribe(this::onNodeEvent);
+        dockerSubs.subscribe(this::onDockerEvent);
+        dockerLogSubs.subscribe(this::onDockerLogEvent);
+    }
+
+    ImagesInventory(Function<String, DockerService> nodeServices, ScheduledExecutorService scheduledService) {
+        this.nodeServices = nodeServices;
+        this.scheduledService = scheduledService;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public void start() {
+        this.started = true;
+        if(dockerServices != null) {
+            // load inventory in background, so first query does not wait for it
+            dockerServices.getNodeServices().forEach(n -> scheduleLoad(n, 0));
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.started = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return started;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Images of specified nodes. Nodes which is not loaded yet are loaded on demand.
+     * @param nodeNames names of nodes
+     * @return list of images with usage on specified nodes
+     */
+    public List<InventoryImage> getImages(Collection<String> nodeNames) {
+        return getImages(nodeNames, true);
+    }
+
+    /**
+     * Images of specified nodes which is already loaded, this method never call docker.
+     * @param nodeNames names of nodes
+     * @return list of images with usage on specified nodes
+     */
+    public List<InventoryImage> getLoadedImages(Collection<String> nodeNames) {
+        return getImages(nodeNames, false);
+    }
+
+    private List<InventoryImage> getImages(Collection<String> nodeNames, boolean load) {
+        Map<String, ImageBuilder> builders = new HashMap<>();
+        for(String node: nodeNames) {
+            NodeImages ni = load ? getNode(node) : nodes.get(node);
+            if(ni != null && ni.isLoaded()) {
+                ni.collect(node, builders);
+            }
+        }
+        List<InventoryImage> list = new ArrayList<>(builders.size());
+        builders.values().forEach(ib -> list.add(ib.build()));
+        return list;
+    }
+
+    /**
+     * Count of containers on node which is created from image with specified name.
+     * @param node name of node
+     * @param image name of image, as it specified at container creation
+     * @return count of containers
+     */
+    public int getContainersCount(String node, String image) {
+        NodeImages ni = getNode(node);
+        return ni == null ? 0 : ni.getContainers(image);
+    }
+
+    /**
+     * Version of inventory, it is incremented after each change of images or containers on any node.
+     * @return version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Reload inventory of node from docker.
+     * @param node name of node
+     */
+    public void refresh(String node) {
+        load(node);
+    }
+
+    private NodeImages getNode(String node) {
+        NodeImages ni = nodes.get(node);
+        if(ni == null || !ni.isLoaded()) {
+            ni = load(node);
+        }
+        return ni;
+    }
+
+    private NodeImages load(String node) {
+        DockerService service = nodeServices.apply(node);
+        if(service == null) {
+            return null;
+        }
+        // node is registered before listing, so events which come during loading are not lost
+        NodeImages ni = nodes.computeIfAbsent(node, n -> new NodeImages());
+        List<ContainerEvent> journal = ni.beginLoad();
+        try(TempAuth ta = TempAuth.asSystem()) {
+            List<ImageItem> images = service.getImages(GetImagesArg.ALL);
+            List<DockerContainer> containers = service.getContainers(new GetContainersArg(true));
+            boolean known = ni.setLoaded(journal, images, containers);
+            if(nodes.get(node) != ni) {
+                log.debug("Node '{}' is removed while its inventory is loaded.", node);
+                return null;
+            }
+            if(!known) {
+                scheduleLoad(node, 2);
+            }
+            version.incrementAndGet();
+            log.debug("Load inventory of node '{}', images:{}, containers:{}", node, images.size(), containers.size());
+            return ni;
+        } catch (Exception e) {
+            ni.endLoad(journal);
+            if(!ni.isLoaded()) {
+                nodes.remove(node, ni);
+            }
+            log.warn("Can not load images of node '{}': {}", node, e.toString());
+            return null;
+        }
+    }
+
+    private void scheduleLoad(String node, long delaySeconds) {
+        RescheduledTask task = scheduledNodes.computeIfAbsent(node, (n) -> RescheduledTask.builder()
+          .service(scheduledService)
+          .runnable(() -> this.load(n))
+          .maxDelay(1L, TimeUnit.MINUTES)
+          .build());
+        task.schedule(delaySeconds, TimeUnit.SECONDS);
+    }
+
+    void onDockerLogEvent(DockerLogEvent e) {
+        String node = e.getNode();
+        if(node == null) {
+            return;
+        }
+        NodeImages ni = nodes.get(node);
+        if(e.getType() == EventType.IMAGE) {
+            // image events does not have tags and sizes, so we reload images of node
+            if(ni != null) {
+                scheduleLoad(node, 2);
+            }
+            return;
+        }
+        if(e.getType() != EventType.CONTAINER || ni == null) {
+            return;
+        }
+        ContainerBase container = e.getContainer();
+        String action = e.getAction();
+        if(!StandardActions.CREATE.equals(action) && !StandardActions.DELETE.equals(action)) {
+            return;
+        }
+        boolean known = ni.onEvent(new ContainerEvent(StandardActions.CREATE.equals(action), container.getId(), container.getImage()));
+        if(!known && ni.isLoaded()) {
+            // container created from unknown image, it happen when image is pulled just now
+            scheduleLoad(node, 2);
+        }
+        version.incrementAndGet();
+    }
+
+    void onNodeEvent(NodeEvent e) {
+        String action = e.getAction();
+        String node = e.getNode().getName();
+        if(StandardActions.OFFLINE.equals(action) || StandardActions.DELETE.equals(action)) {
+            RescheduledTask task = scheduledNodes.remove(node);
+            if(task != null) {
+                try {
+                    task.close();
+                } catch (Exception ex) {
+                    log.error("Can not cancel load of node '{}'", node, ex);
+                }
+            }
+            if(nodes.remove(node) != null) {
+                version.incrementAndGet();
+            }
+        } else if(StandardActions.ONLINE.equals(action) && nodes.containsKey(node)) {
+            scheduleLoad(node, 10);
+        }
+    }
+
+    private void onDockerEvent(DockerServiceEvent e) {
+        String node = e.getNode();
+        if(node == null || StandardActions.UPDATE.equals(e.getAction()) || StandardActions.OFFLINE.equals(e.getAction())) {
+            return;
+        }
+        scheduleLoad(node, 10);
+    }
+}
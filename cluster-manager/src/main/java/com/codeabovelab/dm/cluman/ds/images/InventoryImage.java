@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.images;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import lombok.Value;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Image from {@link ImagesInventory}, it is immutable snapshot of image state on set of nodes.
+ */
+@Value
+public class InventoryImage {
+    private final String id;
+    private final Date created;
+    private final long size;
+    /**
+     * Repository tags like 'registry/name:tag' of image on all nodes.
+     */
+    private final Set<String> tags;
+    /**
+     * Names of nodes which have this image mapped to count of containers which use it.
+     */
+    private final Map<String, Integer> nodes;
+
+    InventoryImage(String id, Date created, long size, Set<String> tags, Map<String, Integer> nodes) {
+        this.id = id;
+        this.created = created;
+        this.size = size;
+        this.tags = ImmutableSet.copyOf(tags);
+        this.nodes = ImmutableMap.copyOf(nodes);
+    }
+
+    /**
+     * Count of containers which use this image on all nodes.
+     * @return count of containers
+     */
+    public int getContainers() {
+        int sum = 0;
+        for(Integer count: nodes.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * @return true when any container use this image
+     */
+    public boolean isUsed() {
+        return getContainers() > 0;
+    }
+}
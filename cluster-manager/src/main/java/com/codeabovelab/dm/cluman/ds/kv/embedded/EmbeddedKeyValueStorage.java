@@ -0,0 +1,853 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+import com.codeabovelab.dm.common.kv.*;
+import com.codeabovelab.dm.common.mb.ConditionalSubscriptions;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Embedded key value storage, it allow to run application without etcd. <p/>
+ * Data is kept in concurrent tree: readers do not take any locks, writers are serialized by single lock which is
+ * held only for in memory modification. Changes are recorded into {@link WriteAheadLog}, waiting of commit is done
+ * outside of lock, so concurrent writers share one fsync. Change is visible to readers before its commit, when
+ * commit fails all not committed changes are rolled back and storage stops accepting writes until restart, because
+ * log is fail-stop. Log is periodically compacted into snapshot. Nodes with
+ * ttl are expired through {@link TimingWheel}. Modification indexes have same meaning as in etcd: each change
+ * increment global index of storage. <p/>
+ * When 'dataDir' is not specified storage keep data only in memory.
+ */
+@Slf4j
+public class EmbeddedKeyValueStorage implements KeyValueStorage, AutoCloseable {
+
+    @Data
+    public static class Builder {
+        private String prefix = "/cluman";
+        /**
+         * Directory for log and snapshots, when null storage does not persist data.
+         */
+        private File dataDir;
+        /**
+         * Do fsync of log on each commit.
+         */
+        private boolean syncWrites = true;
+        /**
+         * Count of log records after which snapshot is made.
+         */
+        private long snapshotThreshold = 10_000;
+        /**
+         * Interval in ms between checks of snapshot threshold.
+         */
+        private long snapshotCheckInterval = 60_000;
+        /**
+         * Resolution of ttl in ms.
+         */
+        private long ttlTick = 1000;
+        /**
+         * Override default single thread executor of this storage events.
+         */
+        private Executor eventsExecutor;
+
+        public Builder prefix(String prefix) {
+            setPrefix(prefix);
+            return this;
+        }
+
+        public Builder dataDir(File dataDir) {
+            setDataDir(dataDir);
+            return this;
+        }
+
+        public Builder syncWrites(boolean syncWrites) {
+            setSyncWrites(syncWrites);
+            return this;
+        }
+
+        public Builder snapshotThreshold(long snapshotThreshold) {
+            setSnapshotThreshold(snapshotThreshold);
+            return this;
+        }
+
+        public Builder snapshotCheckInterval(long snapshotCheckInterval) {
+            setSnapshotCheckInterval(snapshotCheckInterval);
+            return this;
+        }
+
+        public Builder ttlTick(long ttlTick) {
+            setTtlTick(ttlTick);
+            return this;
+        }
+
+        public Builder eventsExecutor(Executor eventsExecutor) {
+            setEventsExecutor(eventsExecutor);
+            return this;
+        }
+
+        public EmbeddedKeyValueStorage build() {
+            return new EmbeddedKeyValueStorage(this);
+        }
+    }
+
+    /**
+     * Node of tree. Leafs are immutable and replaced on change, directories keep its children in concurrent map.
+     */
+    private static final class Node {
+        private final String key;
+        private final String value;
+        private final long index;
+        private final long expiresAt;
+        private final ConcurrentMap<String, Node> children;
+
+        private Node(String key, String value, long index, long expiresAt, boolean dir) {
+            this.key = key;
+            this.value = value;
+            this.index = index;
+            this.expiresAt = expiresAt;
+            this.children = dir ? new ConcurrentHashMap<>() : null;
+        }
+
+        boolean isDir() {
+            return children != null;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+
+        String childKey(String name) {
+            return "/".equals(key) ? "/" + name : key + "/" + name;
+        }
+    }
+
+    private static final class Expiration {
+        private final String key;
+        private final long index;
+
+        Expiration(String key, long index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Change of children of directory, it is used for roll back.
+     */
+    private static final class Change {
+        private final Node parent;
+        private final String name;
+        private final Node old;
+
+        Change(Node parent, String name, Node old) {
+            this.parent = parent;
+            this.name = name;
+            this.old = old;
+        }
+
+        void undo() {
+            if(old == null) {
+                parent.children.remove(name);
+            } else {
+                parent.children.put(name, old);
+            }
+        }
+    }
+
+    /**
+     * Applied record which is not committed yet.
+     */
+    private static final class Pending {
+        private final long index;
+        private final long prevIndex;
+        private final List<Change> changes;
+
+        Pending(long index, long prevIndex, List<Change> changes) {
+            this.index = index;
+            this.prevIndex = prevIndex;
+            this.changes = changes;
+        }
+    }
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final String prefix;
+    private final File dataDir;
+    private final MessageBus<KvStorageEvent> bus;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final TimingWheel<Expiration> wheel;
+    private final long snapshotThreshold;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Node root = new Node("/", null, 0, 0, true);
+    private final WriteAheadLog wal;
+    /**
+     * Applied but not committed records in order of indexes. Guarded by lock.
+     */
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private volatile Throwable failure;
+    private volatile long index;
+    private volatile boolean closed;
+
+    public EmbeddedKeyValueStorage(Builder builder) {
+        this.prefix = builder.prefix;
+        this.dataDir = builder.dataDir;
+        this.snapshotThreshold = builder.snapshotThreshold;
+        String name = getClass().getSimpleName();
+        this.bus = MessageBuses.createConditional(getClass().getName(), KvStorageEvent.class, KvStorageEvent::getKey, KvUtils::predicate);
+        if(builder.eventsExecutor != null) {
+            this.executor = builder.eventsExecutor;
+            this.ownExecutor = null;
+        } else {
+            this.ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+              .setNameFormat(name + "-bus-%d")
+              .setDaemon(true)
+              .build());
+            this.executor = this.ownExecutor;
+        }
+        this.wheel = new TimingWheel<>(builder.ttlTick, WHEEL_SIZE, this::expire, System.currentTimeMillis());
+        if(dataDir != null) {
+            try {
+                long startIndex = recover();
+                this.wal = new WriteAheadLog(name, dataDir, startIndex, builder.syncWrites);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can not open storage at " + dataDir, e);
+            }
+        } else {
+            this.wal = null;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat(name + "-scheduler-%d")
+          .setDaemon(true)
+          .build());
+        this.scheduler.scheduleAtFixedRate(() -> wheel.advance(System.currentTimeMillis()),
+          builder.ttlTick, builder.ttlTick, TimeUnit.MILLISECONDS);
+        if(this.wal != null) {
+            this.scheduler.scheduleWithFixedDelay(this::checkSnapshot,
+              builder.snapshotCheckInterval, builder.snapshotCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Load snapshot and replay log. Segments after damaged record are moved aside, because its records can not be
+     * applied.
+     * @return index of first record of new log segment
+     */
+    private long recover() throws IOException {
+        if(!dataDir.exists() && !dataDir.mkdirs()) {
+            throw new IOException("Can not create " + dataDir);
+        }
+        List<File> snapshots = KvSnapshots.list(dataDir);
+        if(!snapshots.isEmpty()) {
+            File snapshot = snapshots.get(snapshots.size() - 1);
+            this.index = KvSnapshots.read(snapshot, r -> apply(r, null));
+            log.info("Load snapshot {} with index {}", snapshot, this.index);
+        }
+        long snapshotIndex = this.index;
+        int[] replayed = new int[1];
+        boolean damaged = false;
+        for(File segment : WriteAheadLog.segments(dataDir)) {
+            if(damaged) {
+                // records after damaged one can not be applied
+                quarantine(segment);
+                continue;
+            }
+            if(segment.length() == 0) {
+                // it has no records, but may collide with new segment
+                delete(segment);
+                continue;
+            }
+            boolean complete = WriteAheadLog.replay(segment, r -> {
+                if(r.getIndex() <= this.index) {
+                    return;
+                }
+                apply(r, null);
+                this.index = r.getIndex();
+                replayed[0]++;
+            });
+            damaged = !complete;
+        }
+        log.info("Replay {} records of log after snapshot {}, index of storage is {}", replayed[0], snapshotIndex, this.index);
+        scheduleExpirations(root);
+        // new segment must not be appended to existed one
+        long startIndex = this.index + 1;
+        for(File segment : WriteAheadLog.segments(dataDir)) {
+            startIndex = Math.max(startIndex, WriteAheadLog.segmentIndex(segment) + 1);
+        }
+        return startIndex;
+    }
+
+    private static void quarantine(File segment) throws IOException {
+        File dest = new File(segment.getPath() + "." + System.currentTimeMillis() + ".damaged");
+        if(!segment.renameTo(dest)) {
+            throw new IOException("Can not move " + segment + " which follows damaged record to " + dest);
+        }
+        log.warn("Segment {} follows damaged record, it is moved to {}", segment, dest);
+    }
+
+    private void scheduleExpirations(Node node) {
+        for(Node child : node.children.values()) {
+            if(child.expiresAt > 0) {
+                wheel.schedule(new Expiration(child.key, child.index), child.expiresAt);
+            }
+            if(child.isDir()) {
+                scheduleExpirations(child);
+            }
+        }
+    }
+
+    /**
+     * Apply record to tree. It does not do any checks, because it used for replay of log.
+     * @param changes collector of changes for roll back, may be null
+     */
+    private void apply(KvLogRecord r, List<Change> changes) {
+        List<String> path = split(r.getKey());
+        if(path.isEmpty()) {
+            return;
+        }
+        String name = path.get(path.size() - 1);
+        switch (r.getOp()) {
+            case SET: {
+                Node parent = mkdirs(path, r.getIndex(), changes);
+                put(parent, name, new Node(parent.childKey(name), r.getValue(), r.getIndex(), r.getExpiresAt(), false), changes);
+                break;
+            }
+            case SETDIR: {
+                Node parent = mkdirs(path, r.getIndex(), changes);
+                Node old = parent.children.get(name);
+                if(old == null || !old.isDir()) {
+                    put(parent, name, new Node(parent.childKey(name), null, r.getIndex(), r.getExpiresAt(), true), changes);
+                }
+                break;
+            }
+            case DELETE: {
+                Node parent = find(path.subList(0, path.size() - 1));
+                if(parent != null && parent.isDir()) {
+                    Node old = parent.children.remove(name);
+                    if(old != null && changes != null) {
+                        changes.add(new Change(parent, name, old));
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    private static void put(Node parent, String name, Node node, List<Change> changes) {
+        Node old = parent.children.put(name, node);
+        if(changes != null) {
+            changes.add(new Change(parent, name, old));
+        }
+    }
+
+    /**
+     * Make all parent directories of path.
+     * @return parent of last path element
+     */
+    private Node mkdirs(List<String> path, long index, List<Change> changes) {
+        Node node = root;
+        for(int i = 0; i < path.size() - 1; ++i) {
+            String name = path.get(i);
+            Node child = node.children.get(name);
+            if(child == null || !child.isDir()) {
+                child = new Node(node.childKey(name), null, index, 0, true);
+                put(node, name, child, changes);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private static List<String> split(String key) {
+        Assert.notNull(key, "key is null");
+        List<String> path = new ArrayList<>();
+        int start = 0;
+        final int length = key.length();
+        while(start < length) {
+            int end = key.indexOf('/', start);
+            if(end < 0) {
+                end = length;
+            }
+            if(end > start) {
+                path.add(key.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return path;
+    }
+
+    /**
+     * Find node without checking of expiration.
+     */
+    private Node find(List<String> path) {
+        Node node = root;
+        for(String name : path) {
+            if(!node.isDir()) {
+                return null;
+            }
+            node = node.children.get(name);
+            if(node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Find node, expired nodes (and its children) are treated as absent.
+     */
+    private Node findLive(List<String> path) {
+        final long now = System.currentTimeMillis();
+        Node node = root;
+        for(String name : path) {
+            if(!node.isDir()) {
+                return null;
+            }
+            node = node.children.get(name);
+            if(node == null || node.isExpired(now)) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    @Override
+    public KvNode get(String key) {
+        Node node = findLive(split(key));
+        if(node == null) {
+            return null;
+        }
+        return node.isDir() ? KvNode.dir(node.index) : KvNode.leaf(node.index, node.value);
+    }
+
+    @Override
+    public KvNode set(String key, String value, WriteOptions ops) {
+        List<String> path = split(key);
+        Assert.isTrue(!path.isEmpty(), "Can not set value of root.");
+        final long ttl = ops == null ? -1 : ops.getTtl();
+        KvNode result;
+        CompletableFuture<Void> commit;
+        lock.lock();
+        try {
+            final long now = prepareWrite(path);
+            Node old = find(path);
+            if(old != null && old.isDir()) {
+                throw new IllegalStateException("The " + key + " is a directory.");
+            }
+            checkOptions(key, old, ops);
+            final long index = this.index + 1;
+            final long expiresAt = ttl > 0 ? now + TimeUnit.SECONDS.toMillis(ttl) : 0;
+            KvLogRecord record = new KvLogRecord(KvLogRecord.Op.SET, index, toKey(path), value, expiresAt);
+            commit = write(record, new KvStorageEvent(index, record.getKey(), value, ttl,
+              old == null ? KvStorageEvent.Crud.CREATE : KvStorageEvent.Crud.UPDATE));
+            result = KvNode.leaf(index, value);
+        } finally {
+            lock.unlock();
+        }
+        await(commit);
+        return result;
+    }
+
+    @Override
+    public KvNode setdir(String key, WriteOptions ops) {
+        List<String> path = split(key);
+        if(path.isEmpty()) {
+            return KvNode.dir(root.index);
+        }
+        final long ttl = ops == null ? -1 : ops.getTtl();
+        KvNode result;
+        CompletableFuture<Void> commit;
+        lock.lock();
+        try {
+            final long now = prepareWrite(path);
+            Node old = find(path);
+            if(old != null) {
+                if(!old.isDir()) {
+                    throw new IllegalStateException("The " + key + " is not a directory.");
+                }
+                if(ops != null && ops.isFailIfExists()) {
+                    throw new IllegalStateException("The " + key + " already exists.");
+                }
+                return KvNode.dir(old.index);
+            }
+            checkOptions(key, null, ops);
+            final long index = this.index + 1;
+            final long expiresAt = ttl > 0 ? now + TimeUnit.SECONDS.toMillis(ttl) : 0;
+            KvLogRecord record = new KvLogRecord(KvLogRecord.Op.SETDIR, index, toKey(path), null, expiresAt);
+            commit = write(record, new KvStorageEvent(index, record.getKey(), null, ttl, KvStorageEvent.Crud.CREATE));
+            result = KvNode.dir(index);
+        } finally {
+            lock.unlock();
+        }
+        await(commit);
+        return result;
+    }
+
+    @Override
+    public KvNode deletedir(String key, DeleteDirOptions ops) {
+        List<String> path = split(key);
+        Assert.isTrue(!path.isEmpty(), "Can not delete root.");
+        KvNode result;
+        CompletableFuture<Void> commit;
+        lock.lock();
+        try {
+            prepareWrite(path);
+            Node old = find(path);
+            if(old == null) {
+                if(ops != null && ops.isFailIfAbsent()) {
+                    throw new IllegalStateException("The " + key + " is not found.");
+                }
+                return KvNode.leaf(index, null);
+            }
+            if(!old.isDir()) {
+                throw new IllegalStateException("The " + key + " is not a directory.");
+            }
+            if((ops == null || !ops.isRecursive()) && !old.children.isEmpty()) {
+                throw new IllegalStateException("The " + key + " is not empty.");
+            }
+            checkOptions(key, old, ops);
+            commit = remove(old);
+            result = KvNode.leaf(index, null);
+        } finally {
+            lock.unlock();
+        }
+        await(commit);
+        return result;
+    }
+
+    @Override
+    public KvNode delete(String key, WriteOptions ops) {
+        List<String> path = split(key);
+        Assert.isTrue(!path.isEmpty(), "Can not delete root.");
+        KvNode result;
+        CompletableFuture<Void> commit;
+        lock.lock();
+        try {
+            prepareWrite(path);
+            Node old = find(path);
+            if(old == null) {
+                throw new IllegalStateException("The " + key + " is not found.");
+            }
+            if(old.isDir()) {
+                throw new IllegalStateException("The " + key + " is a directory.");
+            }
+            checkOptions(key, old, ops);
+            commit = remove(old);
+            result = KvNode.leaf(index, null);
+        } finally {
+            lock.unlock();
+        }
+        await(commit);
+        return result;
+    }
+
+    @Override
+    public List<String> list(String key) {
+        Node node = findLive(split(key));
+        if(node == null || !node.isDir()) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        List<String> list = new ArrayList<>(node.children.size());
+        for(Node child : node.children.values()) {
+            if(!child.isExpired(now)) {
+                list.add(child.key);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public Map<String, String> map(String key) {
+        Node node = findLive(split(key));
+        if(node == null || !node.isDir()) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        Map<String, String> map = new HashMap<>();
+        for(Node child : node.children.values()) {
+            if(!child.isExpired(now)) {
+                map.put(child.key, child.value);
+            }
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public ConditionalSubscriptions<KvStorageEvent, String> subscriptions() {
+        return (ConditionalSubscriptions<KvStorageEvent, String>) bus.asSubscriptions();
+    }
+
+    @Override
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Current modification index of storage.
+     * @return index
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    private static String toKey(List<String> path) {
+        StringBuilder sb = new StringBuilder();
+        for(String name : path) {
+            sb.append('/').append(name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Check state, parents of path and remove expired nodes of path. Must be called under lock.
+     * @return current time
+     */
+    private long prepareWrite(List<String> path) {
+        if(closed) {
+            throw new IllegalStateException("Storage is closed.");
+        }
+        final long now = System.currentTimeMillis();
+        Node node = root;
+        for(int i = 0; i < path.size(); ++i) {
+            Node child = node.children.get(path.get(i));
+            if(child == null) {
+                break;
+            }
+            if(child.isExpired(now)) {
+                // we must record expiration before change, otherwise replay of log give different result
+                remove(child);
+                break;
+            }
+            if(!child.isDir()) {
+                if(i < path.size() - 1) {
+                    throw new IllegalStateException("The " + child.key + " is not a directory.");
+                }
+                break;
+            }
+            node = child;
+        }
+        return now;
+    }
+
+    private void checkOptions(String key, Node old, WriteOptions ops) {
+        if(ops == null) {
+            return;
+        }
+        if(ops.isFailIfExists() && old != null) {
+            throw new IllegalStateException("The " + key + " already exists.");
+        }
+        if(ops.isFailIfAbsent() && old == null) {
+            throw new IllegalStateException("The " + key + " is not found.");
+        }
+        int prevIndex = ops.getPrevIndex();
+        if(prevIndex > 0 && (old == null || old.index != prevIndex)) {
+            throw new IllegalStateException("The " + key + " has index " + (old == null ? null : old.index) +
+              " but expected " + prevIndex + ".");
+        }
+    }
+
+    private CompletableFuture<Void> remove(Node node) {
+        final long index = this.index + 1;
+        KvLogRecord record = new KvLogRecord(KvLogRecord.Op.DELETE, index, node.key, null, 0);
+        return write(record, new KvStorageEvent(index, node.key, node.value, -1, KvStorageEvent.Crud.DELETE));
+    }
+
+    /**
+     * Apply and log record, must be called under lock.
+     * @return future of commit or null
+     */
+    private CompletableFuture<Void> write(KvLogRecord record, KvStorageEvent event) {
+        if(failure != null) {
+            throw new IllegalStateException("Storage can not commit changes, it must be restarted.", failure);
+        }
+        List<Change> changes = wal == null ? null : new ArrayList<>(2);
+        final long prevIndex = this.index;
+        apply(record, changes);
+        this.index = record.getIndex();
+        if(record.getExpiresAt() > 0) {
+            // expiration checks index of node, so it does nothing after roll back
+            wheel.schedule(new Expiration(record.getKey(), record.getIndex()), record.getExpiresAt());
+        }
+        Runnable fire = () -> executor.execute(() -> bus.accept(event));
+        if(wal == null) {
+            fire.run();
+            return null;
+        }
+        pending.addLast(new Pending(record.getIndex(), prevIndex, changes));
+        // events are sent only after commit, and writer is released only after roll back of failed change
+        return wal.append(record, fire).whenComplete((r, e) -> onCommit(record.getIndex(), e));
+    }
+
+    /**
+     * Invoked in order of records, when record is committed or failed.
+     */
+    private void onCommit(long index, Throwable error) {
+        lock.lock();
+        try {
+            if(error == null) {
+                Pending head = pending.peekFirst();
+                if(head != null && head.index == index) {
+                    pending.removeFirst();
+                }
+                return;
+            }
+            if(failure == null) {
+                failure = error;
+                log.error("Can not commit record with index {}, storage must be restarted.", index, error);
+            }
+            // log is fail-stop, so no one of pending records will be committed
+            Pending p;
+            while((p = pending.pollLast()) != null) {
+                for(int i = p.changes.size() - 1; i >= 0; --i) {
+                    p.changes.get(i).undo();
+                }
+                this.index = p.prevIndex;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await(CompletableFuture<Void> commit) {
+        if(commit == null) {
+            return;
+        }
+        try {
+            commit.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Can not commit change.", e.getCause());
+        }
+    }
+
+    private void expire(Expiration expiration) {
+        lock.lock();
+        try {
+            if(closed) {
+                return;
+            }
+            Node node = find(split(expiration.key));
+            // node may be updated after scheduling
+            if(node != null && node.index == expiration.index) {
+                log.debug("Expire {}", node.key);
+                remove(node);
+            }
+        } catch (Exception e) {
+            log.error("Can not expire {}", expiration.key, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkSnapshot() {
+        try {
+            if(wal.getRecords() >= snapshotThreshold) {
+                snapshot();
+            }
+        } catch (Exception e) {
+            log.error("Can not make snapshot.", e);
+        }
+    }
+
+    /**
+     * Write snapshot of storage and remove log records which precede it. Does nothing when storage is not persistent.
+     */
+    public void snapshot() throws IOException {
+        if(wal == null) {
+            return;
+        }
+        List<KvLogRecord> records = new ArrayList<>();
+        long snapshotIndex;
+        CompletableFuture<Void> rolled;
+        lock.lock();
+        try {
+            if(closed) {
+                return;
+            }
+            collect(root, records);
+            snapshotIndex = this.index;
+            rolled = wal.roll(snapshotIndex + 1);
+        } finally {
+            lock.unlock();
+        }
+        await(rolled);
+        KvSnapshots.write(dataDir, snapshotIndex, records);
+        for(File segment : WriteAheadLog.segments(dataDir)) {
+            if(WriteAheadLog.segmentIndex(segment) <= snapshotIndex) {
+                delete(segment);
+            }
+        }
+        for(File snapshot : KvSnapshots.list(dataDir)) {
+            if(KvSnapshots.index(snapshot) < snapshotIndex) {
+                delete(snapshot);
+            }
+        }
+        log.info("Make snapshot with index {} and {} nodes.", snapshotIndex, records.size());
+    }
+
+    private static void delete(File file) {
+        if(!file.delete()) {
+            log.warn("Can not delete {}", file);
+        }
+    }
+
+    private void collect(Node node, List<KvLogRecord> records) {
+        for(Node child : node.children.values()) {
+            KvLogRecord.Op op = child.isDir() ? KvLogRecord.Op.SETDIR : KvLogRecord.Op.SET;
+            records.add(new KvLogRecord(op, child.index, child.key, child.value, child.expiresAt));
+            if(child.isDir()) {
+                collect(child, records);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if(closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        scheduler.shutdownNow();
+        if(wal != null) {
+            wal.close();
+        }
+        if(ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+import com.codeabovelab.dm.cluman.ds.swarm.SwarmDiscoveryUrlFunction;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+
+/**
+ * Configuration of embedded key value storage, it is used instead of etcd when 'dm.kv.embedded.enabled=true'.
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = EmbeddedKvConfiguration.ENABLED, havingValue = "true")
+@EnableConfigurationProperties(EmbeddedKvConfiguration.Config.class)
+public class EmbeddedKvConfiguration {
+
+    public static final String ENABLED = "dm.kv.embedded.enabled";
+
+    @ConfigurationProperties("dm.kv.embedded")
+    @Data
+    public static class Config {
+        private boolean enabled;
+        /**
+         * Directory for data of storage.
+         */
+        private String path = "data/kv";
+        /**
+         * Do fsync on each commit.
+         */
+        private boolean syncWrites = true;
+        /**
+         * Count of log records after which snapshot is made.
+         */
+        private long snapshotThreshold = 10_000;
+    }
+
+    @Value("${dm.kv.prefix:/cluman}")
+    private String prefix;
+
+    @Bean
+    public EmbeddedKeyValueStorage embeddedKeyValueStorage(Config config) {
+        File dir = new File(config.getPath());
+        log.info("Use embedded key value storage at: {}", dir.getAbsolutePath());
+        return EmbeddedKeyValueStorage.builder()
+          .prefix(prefix.trim())
+          .dataDir(dir)
+          .syncWrites(config.isSyncWrites())
+          .snapshotThreshold(config.getSnapshotThreshold())
+          .build();
+    }
+
+    @Bean
+    SwarmDiscoveryUrlFunction swarmDiscoveryUrlFunction() {
+        return (proc) -> {
+            throw new UnsupportedOperationException("Swarm discovery of cluster '" + proc.getCluster()
+              + "' requires etcd, it is not supported by embedded key value storage.");
+        };
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+import lombok.Data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Record of write ahead log and snapshot. <p/>
+ * Binary format: int length of payload, int crc32 of payload, payload.
+ */
+@Data
+class KvLogRecord {
+
+    enum Op {
+        /**
+         * Set value of leaf, parent directories are created implicitly.
+         */
+        SET,
+        /**
+         * Make directory.
+         */
+        SETDIR,
+        /**
+         * Delete leaf or directory with all its children.
+         */
+        DELETE
+    }
+
+    private final Op op;
+    /**
+     * Modification index of node.
+     */
+    private final long index;
+    private final String key;
+    private final String value;
+    /**
+     * Time in ms when node expires, or zero.
+     */
+    private final long expiresAt;
+
+    void write(DataOutputStream out, ByteArrayOutputStream buffer) throws IOException {
+        buffer.reset();
+        DataOutputStream payload = new DataOutputStream(buffer);
+        payload.writeByte(op.ordinal());
+        payload.writeLong(index);
+        payload.writeLong(expiresAt);
+        payload.writeUTF(key);
+        writeString(payload, value);
+        payload.flush();
+        CRC32 crc = new CRC32();
+        byte[] bytes = buffer.toByteArray();
+        crc.update(bytes, 0, bytes.length);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    /**
+     * Read record.
+     * @param in input
+     * @return record or null at end of stream
+     * @throws IOException also when record is truncated or damaged
+     */
+    static KvLogRecord read(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        int crcValue = in.readInt();
+        if(length < 0) {
+            throw new IOException("Invalid length of record: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        if((int) crc.getValue() != crcValue) {
+            throw new IOException("Invalid crc of record.");
+        }
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+        Op op = Op.values()[payload.readUnsignedByte()];
+        long index = payload.readLong();
+        long expiresAt = payload.readLong();
+        String key = payload.readUTF();
+        String value = readString(payload);
+        return new KvLogRecord(op, index, key, value, expiresAt);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if(str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        // we can not use writeUTF, because values may be greater than 64k
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if(len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
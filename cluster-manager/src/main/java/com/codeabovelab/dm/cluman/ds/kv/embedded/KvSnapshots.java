@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Snapshots of storage: 'snapshot-&lt;index&gt;.snap' files which contain records of all nodes, index is
+ * last modification index of storage at snapshot time. Snapshot is written into temporary file and
+ * atomically renamed, so existed snapshot is always complete.
+ */
+final class KvSnapshots {
+
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int MAGIC = 0x4b56534e;
+
+    private KvSnapshots() {
+    }
+
+    static String name(long index) {
+        return String.format("%s%016x%s", PREFIX, index, SUFFIX);
+    }
+
+    static long index(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+    }
+
+    /**
+     * List snapshots in order of its indexes.
+     * @param dir directory
+     * @return list of snapshots
+     */
+    static List<File> list(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if(files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Write snapshot.
+     * @param dir directory
+     * @param index index of storage
+     * @param records records of nodes, parents must precede its children
+     * @return snapshot file
+     */
+    static File write(File dir, long index, List<KvLogRecord> records) throws IOException {
+        File tmp = new File(dir, name(index) + ".tmp");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeLong(index);
+            out.writeInt(records.size());
+            for(KvLogRecord record : records) {
+                record.write(out, buffer);
+            }
+            out.flush();
+            fos.getChannel().force(false);
+        }
+        File file = new File(dir, name(index));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Read snapshot.
+     * @param file snapshot
+     * @param consumer consumer of records
+     * @return index of storage
+     */
+    static long read(File file, Consumer<KvLogRecord> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Invalid header of snapshot: " + file);
+            }
+            long index = in.readLong();
+            int count = in.readInt();
+            for(int i = 0; i < count; ++i) {
+                KvLogRecord record = KvLogRecord.read(in);
+                if(record == null) {
+                    throw new EOFException("Unexpected end of snapshot: " + file);
+                }
+                consumer.accept(record);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel. Schedule and cancel (items simply ignored by consumer) is O(1), expired items are
+ * passed to consumer on {@link #advance(long)} outside of wheel lock. Items which deadline is greater than
+ * one rotation of wheel stay in slot until their round.
+ */
+class TimingWheel<T> {
+
+    private static final class Timeout<T> {
+        private final T item;
+        private final long deadline;
+
+        Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickMs;
+    private final ArrayDeque<Timeout<T>>[] slots;
+    private final Consumer<T> consumer;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMs duration of tick in ms
+     * @param wheelSize count of slots
+     * @param consumer consumer of expired items
+     * @param now current time in ms
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMs, int wheelSize, Consumer<T> consumer, long now) {
+        Assert.isTrue(tickMs > 0, "tickMs must be greater than zero");
+        Assert.isTrue(wheelSize > 0, "wheelSize must be greater than zero");
+        this.tickMs = tickMs;
+        this.consumer = consumer;
+        this.slots = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; ++i) {
+            this.slots[i] = new ArrayDeque<>();
+        }
+        this.currentTick = now / tickMs;
+    }
+
+    /**
+     * Schedule item.
+     * @param item item
+     * @param deadline time in ms
+     */
+    synchronized void schedule(T item, long deadline) {
+        // round up, so item is expired at first visit of its slot, items with past deadline go into next tick
+        long tick = Math.max((deadline + tickMs - 1) / tickMs, currentTick + 1);
+        slots[(int) (tick % slots.length)].add(new Timeout<>(item, deadline));
+        size++;
+    }
+
+    /**
+     * Process all ticks up to specified time.
+     * @param now current time in ms
+     */
+    void advance(long now) {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            long nowTick = now / tickMs;
+            // when we lag more than one rotation, we need to visit each slot only once
+            long from = Math.max(currentTick + 1, nowTick - slots.length + 1);
+            for (long tick = from; tick <= nowTick; ++tick) {
+                ArrayDeque<Timeout<T>> slot = slots[(int) (tick % slots.length)];
+                int count = slot.size();
+                for (int i = 0; i < count; ++i) {
+                    Timeout<T> timeout = slot.poll();
+                    if(timeout.deadline <= now) {
+                        expired.add(timeout.item);
+                        size--;
+                    } else {
+                        // it is for one of next rounds
+                        slot.add(timeout);
+                    }
+                }
+            }
+            currentTick = Math.max(currentTick, nowTick);
+        }
+        expired.forEach(consumer);
+    }
+
+    /**
+     * Count of scheduled items.
+     * @return count
+     */
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Write ahead log with group commit. <p/>
+ * Records are appended into queue (caller must append them in order of indexes) and written by single
+ * flusher thread, which flush (and fsync when 'sync' is enabled) all records of queue at once, then run its
+ * callbacks in same order. Log consists of segments 'wal-&lt;index of first record&gt;.log', segments are rolled
+ * at snapshot, so segments before snapshot can be removed. <p/>
+ * Log is fail-stop: after first error of write all following records are failed too, because log can not
+ * contain gaps.
+ */
+@Slf4j
+class WriteAheadLog implements AutoCloseable {
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int MAX_BATCH = 1024;
+
+    private static final class Entry {
+        private final KvLogRecord record;
+        private final Runnable callback;
+        private final long rollTo;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Entry(KvLogRecord record, Runnable callback, long rollTo) {
+            this.record = record;
+            this.callback = callback;
+            this.rollTo = rollTo;
+        }
+    }
+
+    private static final Entry POISON = new Entry(null, null, -1);
+
+    private final File dir;
+    private final boolean sync;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private final AtomicLong records = new AtomicLong();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private FileOutputStream fileStream;
+    private DataOutputStream out;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * @param name name for thread
+     * @param dir directory of log
+     * @param startIndex index of first record in new segment
+     * @param sync do fsync on commit
+     */
+    WriteAheadLog(String name, File dir, long startIndex, boolean sync) throws IOException {
+        this.dir = dir;
+        this.sync = sync;
+        openSegment(startIndex);
+        this.flusher = new ThreadFactoryBuilder()
+          .setNameFormat(name + "-wal-%d")
+          .setDaemon(true)
+          .build()
+          .newThread(this::flushLoop);
+        this.flusher.start();
+    }
+
+    static String segmentName(long startIndex) {
+        // hex with fixed length give us same order for names and indexes
+        return String.format("%s%016x%s", PREFIX, startIndex, SUFFIX);
+    }
+
+    static long segmentIndex(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+    }
+
+    /**
+     * List segments of log in order of its indexes.
+     * @param dir directory of log
+     * @return list of segments
+     */
+    static List<File> segments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if(files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Read all records of segment. Damaged tail of segment (usual it is result of crash in middle of write)
+     * is truncated.
+     * @param file segment
+     * @param consumer consumer of records
+     * @return false when segment has damaged tail
+     */
+    static boolean replay(File file, Consumer<KvLogRecord> consumer) throws IOException {
+        long good = 0;
+        boolean damaged = false;
+        try (CountingInputStream cis = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+             DataInputStream in = new DataInputStream(cis)) {
+            while(true) {
+                KvLogRecord record;
+                try {
+                    record = KvLogRecord.read(in);
+                } catch (IOException e) {
+                    log.warn("Damaged record in {} at {}, tail of log will be truncated: {}", file, good, e.toString());
+                    damaged = true;
+                    break;
+                }
+                if(record == null) {
+                    break;
+                }
+                consumer.accept(record);
+                good = cis.getCount();
+            }
+        }
+        if(damaged) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            }
+        }
+        return !damaged;
+    }
+
+    /**
+     * Append record to log.
+     * @param record record
+     * @param callback callback which is invoked after commit of record, in order of records, may be null
+     * @return future which is completed after commit
+     */
+    CompletableFuture<Void> append(KvLogRecord record, Runnable callback) {
+        return enqueue(new Entry(record, callback, -1));
+    }
+
+    /**
+     * Close current segment and start new one.
+     * @param startIndex index of first record in new segment
+     * @return future which is completed when new segment is opened
+     */
+    CompletableFuture<Void> roll(long startIndex) {
+        return enqueue(new Entry(null, null, startIndex));
+    }
+
+    private CompletableFuture<Void> enqueue(Entry entry) {
+        if(closed) {
+            throw new IllegalStateException("Log is closed.");
+        }
+        queue.add(entry);
+        return entry.future;
+    }
+
+    /**
+     * Count of records after last roll.
+     * @return count of records
+     */
+    long getRecords() {
+        return records.get();
+    }
+
+    private void openSegment(long startIndex) throws IOException {
+        File file = new File(dir, segmentName(startIndex));
+        fileStream = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileStream));
+        records.set(0);
+    }
+
+    private void commit() throws IOException {
+        out.flush();
+        if(sync) {
+            fileStream.getChannel().force(false);
+        }
+    }
+
+    private void flushLoop() {
+        List<Entry> batch = new ArrayList<>();
+        boolean stop = false;
+        while(!stop) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH);
+            IOException error = failure;
+            if(error == null) {
+                try {
+                    for(Entry entry : batch) {
+                        if(entry == POISON) {
+                            stop = true;
+                        } else if(entry.record != null) {
+                            entry.record.write(out, buffer);
+                            records.incrementAndGet();
+                        } else {
+                            commit();
+                            out.close();
+                            openSegment(entry.rollTo);
+                        }
+                    }
+                    commit();
+                } catch (IOException e) {
+                    log.error("Can not write log, all following records will be failed.", e);
+                    error = failure = e;
+                }
+            }
+            if(error != null) {
+                stop = batch.contains(POISON);
+            }
+            for(Entry entry : batch) {
+                if(entry == POISON) {
+                    continue;
+                }
+                if(error != null) {
+                    entry.future.completeExceptionally(error);
+                    continue;
+                }
+                if(entry.callback != null) {
+                    try {
+                        entry.callback.run();
+                    } catch (Exception e) {
+                        log.error("Error in callback of log.", e);
+                    }
+                }
+                entry.future.complete(null);
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.error("Can not close log.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        queue.add(POISON);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Entry> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.forEach(e -> e.future.completeExceptionally(new IllegalStateException("Log is closed.")));
+    }
+}
@@ -16,7 +16,13 @@
 
 package com.codeabovelab.dm.cluman.ds.kv.etcd;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.codeabovelab.dm.common.kv.*;
+import com.codeabovelab.dm.common.meter.MetricNameUtil;
 import com.codeabovelab.dm.common.mb.ConditionalMessageBusWrapper;
 import com.codeabovelab.dm.common.mb.ConditionalSubscriptions;
 import com.codeabovelab.dm.common.mb.MessageBus;
@@ -30,45 +36,101 @@ import mousio.etcd4j.requests.EtcdKeyDeleteRequest;
 import mousio.etcd4j.requests.EtcdKeyGetRequest;
 import mousio.etcd4j.requests.EtcdKeyPutRequest;
 import mousio.etcd4j.requests.EtcdKeyRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
 import mousio.etcd4j.responses.EtcdException;
 import mousio.etcd4j.responses.EtcdKeysResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import javax.annotation.PreDestroy;
+import java.util.*;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Etcd backed storage. <p/>
+ * It watch all changes in etcd and publish them into bus. Etcd v2 watch return one event per request, therefore
+ * when watcher is lagged (etcd index is greater than index of received event) it send window of concurrent
+ * requests for all pending indexes, and dispatch continuous prefix of received events as soon as it arrived, so
+ * slow request does not delay events which is already received before it. Events are delivered by
+ * {@link PartitionedEventDispatcher} which keep order of events for each key.
+ */
 @Slf4j
 public class EtcdClientWrapper implements KeyValueStorage {
     private static final int KEY_NOT_FOUND = 100;
     private static final int NOT_A_FILE = 102;
     private static final int KEY_ALREADY_EXISTS = 105;
+    /**
+     * Count of dispatch workers, we use count of main top level dirs: nodes, containers and clusters.
+     */
+    private static final int DISPATCH_WORKERS = 3;
+    /**
+     * Max count of concurrent watch requests when watcher drain pending events.
+     */
+    private static final int MAX_WINDOW = 64;
+    private static final long RETRY_DELAY_MS = 1000;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final EtcdClient etcd;
     private final String prefix;
     private final MessageBus<KvStorageEvent> bus;
-    private final ExecutorService executor;
+    private final PartitionedEventDispatcher dispatcher;
+    private final ScheduledExecutorService retryExecutor;
+    /**
+     * Index of last received event.
+     */
+    private volatile long lastIndex;
+    /**
+     * Max known index of etcd.
+     */
+    private volatile long etcdIndex;
+    private final Meter eventsMeter = new Meter();
+    private final Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
 
     public EtcdClientWrapper(EtcdClient etcd, String prefix) {
+        this(etcd, prefix, null);
+    }
+
+    /**
+     * @param etcd client
+     * @param prefix prefix of keys
+     * @param metricRegistry registry for watcher metrics, allow null
+     */
+    public EtcdClientWrapper(EtcdClient etcd, String prefix, MetricRegistry metricRegistry) {
         this.etcd = etcd;
         this.prefix = prefix;
         //possibly we need to create better id ob bus
         this.bus = MessageBusImpl.builder(KvStorageEvent.class, (s) -> new ConditionalMessageBusWrapper<>(s, KvStorageEvent::getKey, KvUtils::predicate))
           .id(getClass().getName())
           .build();
-        this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
-          .setNameFormat(getClass().getName() + "-bus-%d")
+        this.dispatcher = new PartitionedEventDispatcher(getClass().getName(), prefix, DISPATCH_WORKERS, bus);
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat(getClass().getName() + "-retry-%d")
           .setDaemon(true)
           .build());
-        eventWhirligig(-1);
+        if(metricRegistry != null) {
+            registerMetrics(metricRegistry);
+        }
+        watch(-1);
     }
 
+    private void registerMetrics(MetricRegistry registry) {
+        registry.register(MetricNameUtil.getName(getClass(), "watch.lag"), (Gauge<Long>) this::getIndexLag);
+        registry.register(MetricNameUtil.getName(getClass(), "dispatch.pending"), (Gauge<Long>) dispatcher::getPending);
+        registry.register(MetricNameUtil.getName(getClass(), "watch.events"), eventsMeter);
+        registry.register(MetricNameUtil.getName(getClass(), "watch.batchSize"), batchSizes);
+    }
 
+    /**
+     * Count of changes in etcd which is not yet received by watcher.
+     * @return lag in count of etcd indexes
+     */
+    public long getIndexLag() {
+        return Math.max(0, etcdIndex - lastIndex);
+    }
 
-    private void eventWhirligig(final long index) {
+    private void watch(final long index) {
         try {
             // getAll() - not working
             EtcdKeyGetRequest req = this.etcd.get("").recursive();
@@ -78,44 +140,207 @@ public class EtcdClientWrapper implements KeyValueStorage {
                 req.waitForChange();
             }
             EtcdResponsePromise<EtcdKeysResponse> promise = req.send();
-            final boolean debug = log.isDebugEnabled();
             promise.addListener(rp -> {
                 try {
                     EtcdKeysResponse r = rp.get();
-                    //immediate subscribe for next events
-                    eventWhirligig(r.node.modifiedIndex + 1);
-                    //in future we must to remove this logging, but not now
-                    if(debug) {
-                        log.debug("{} {}={} (ttl:{}) {}", r.etcdIndex, r.node.key, r.node.value, r.node.ttl, r.action);
-                    }
+                    onResponses(Collections.singletonList(r));
+                } catch (Exception e) {
+                    onWatchError(index, e);
+                }
+            });
+        } catch (Exception e) {
+            onWatchError(index, e);
+        }
+    }
+
+    /**
+     * Window of concurrent watch requests. Note that 'wait' request with index return first event with same or greater
+     * index, so when response for index is received, then all events before it are known too.
+     */
+    private final class Window {
+        private final long from;
+        private final EtcdKeysResponse[] responses;
+        private final Exception[] errors;
+        /**
+         * Position of first request in window which is not dispatched yet.
+         */
+        private int next;
+        private long last;
+        private boolean done;
 
-                    KvStorageEvent.Crud action = null;
-                    switch (r.action) {
-                        case compareAndDelete:
-                        case delete:
-                        case expire:
-                            action = KvStorageEvent.Crud.DELETE;
-                            break;
-                        case create:
-                            action = KvStorageEvent.Crud.CREATE;
-                            break;
-                        case compareAndSwap:
-                        case set:
-                        case update:
-                            action = KvStorageEvent.Crud.UPDATE;
-                            break;
+        Window(long from, int size) {
+            this.from = from;
+            this.responses = new EtcdKeysResponse[size];
+            this.errors = new Exception[size];
+            this.last = from - 1;
+        }
+
+        void onResponse(int i, EtcdKeysResponse response, Exception error) {
+            Runnable then;
+            synchronized (this) {
+                if(done || i < next) {
+                    // event of this request is already dispatched
+                    return;
+                }
+                responses[i] = response;
+                errors[i] = error;
+                List<EtcdKeysResponse> batch = new ArrayList<>();
+                Exception e = null;
+                while(next < responses.length) {
+                    e = errors[next];
+                    EtcdKeysResponse r = responses[next];
+                    if(e != null || r == null) {
+                        break;
                     }
-                    if(action != null) {
-                        KvStorageEvent e = new KvStorageEvent(r.node.modifiedIndex, r.node.key, r.node.value, r.node.ttl, action);
-                        this.executor.submit(() -> bus.accept(e));
+                    batch.add(r);
+                    last = Math.max(last, r.node.modifiedIndex);
+                    // response contains first event after index, so requests till its index are served
+                    next = (int) Math.min(responses.length, Math.max(next + 1, last - from + 1));
+                }
+                if(!batch.isEmpty()) {
+                    last = dispatch(batch, last);
+                }
+                if(e != null) {
+                    done = true;
+                    final Exception cause = e;
+                    final long index = last + 1;
+                    then = () -> onWatchError(index, cause);
+                } else if(next >= responses.length) {
+                    done = true;
+                    final long index = last + 1;
+                    then = () -> watchFrom(index);
+                } else {
+                    return;
+                }
+            }
+            then.run();
+        }
+    }
+
+    /**
+     * Send concurrent requests for each index in window, and dispatch continuous prefix of responses as soon as
+     * it arrived.
+     */
+    private void drain(final long from, final long to) {
+        final int size = (int) Math.min(to - from + 1, MAX_WINDOW);
+        final Window window = new Window(from, size);
+        for(int i = 0; i < size; ++i) {
+            final int pos = i;
+            try {
+                EtcdKeyGetRequest req = this.etcd.get("").recursive().waitForChange(from + i);
+                req.send().addListener(rp -> {
+                    EtcdKeysResponse r = null;
+                    Exception error = null;
+                    try {
+                        r = rp.get();
+                    } catch (Exception e) {
+                        error = e;
                     }
-                } catch (Exception e) {
-                    logger.error("Error when process event response", e);
+                    window.onResponse(pos, r, error);
+                });
+            } catch (Exception e) {
+                window.onResponse(pos, null, e);
+            }
+        }
+    }
+
+    private void onResponses(List<EtcdKeysResponse> responses) {
+        watchFrom(dispatch(responses, this.lastIndex) + 1);
+    }
+
+    /**
+     * Dispatch events of responses.
+     * @param responses responses
+     * @param last index of last processed event, it returned when processing is failed
+     * @return index of last dispatched event
+     */
+    private long dispatch(List<EtcdKeysResponse> responses, long last) {
+        try {
+            // map is used for ordering and removing of duplicates
+            SortedMap<Long, EtcdKeysResponse> sorted = new TreeMap<>();
+            long maxEtcdIndex = this.etcdIndex;
+            for(EtcdKeysResponse r : responses) {
+                sorted.put(r.node.modifiedIndex, r);
+                if(r.etcdIndex != null) {
+                    maxEtcdIndex = Math.max(maxEtcdIndex, r.etcdIndex);
                 }
-            });
+            }
+            List<KvStorageEvent> events = new ArrayList<>(sorted.size());
+            for(EtcdKeysResponse r : sorted.values()) {
+                KvStorageEvent e = toEvent(r);
+                if(e != null) {
+                    events.add(e);
+                }
+            }
+            last = sorted.lastKey();
+            this.lastIndex = last;
+            this.etcdIndex = Math.max(maxEtcdIndex, last);
+            eventsMeter.mark(events.size());
+            batchSizes.update(events.size());
+            dispatcher.dispatch(events);
         } catch (Exception e) {
-            logger.error("Error when process events", e);
+            logger.error("Error when process event response", e);
+        }
+        return last;
+    }
+
+    private void watchFrom(long next) {
+        //immediate subscribe for next events
+        if(this.etcdIndex >= next) {
+            drain(next, this.etcdIndex);
+        } else {
+            watch(next);
+        }
+    }
+
+    private KvStorageEvent toEvent(EtcdKeysResponse r) {
+        //in future we must to remove this logging, but not now
+        if(log.isDebugEnabled()) {
+            log.debug("{} {}={} (ttl:{}) {}", r.etcdIndex, r.node.key, r.node.value, r.node.ttl, r.action);
         }
+        KvStorageEvent.Crud action = null;
+        switch (r.action) {
+            case compareAndDelete:
+            case delete:
+            case expire:
+                action = KvStorageEvent.Crud.DELETE;
+                break;
+            case create:
+                action = KvStorageEvent.Crud.CREATE;
+                break;
+            case compareAndSwap:
+            case set:
+            case update:
+                action = KvStorageEvent.Crud.UPDATE;
+                break;
+        }
+        if(action == null) {
+            return null;
+        }
+        return new KvStorageEvent(r.node.modifiedIndex, r.node.key, r.node.value, r.node.ttl, action);
+    }
+
+    private void onWatchError(long index, Exception e) {
+        if(retryExecutor.isShutdown()) {
+            return;
+        }
+        if(e instanceof EtcdException) {
+            EtcdException ee = (EtcdException) e;
+            if(ee.isErrorCode(EtcdErrorCode.EventIndexCleared) && ee.index != null) {
+                // etcd keep only limited history of events, so we can not receive missed events
+                logger.warn("Events from {} to {} was lost, because watcher is lagged.", index, ee.index);
+                watch(ee.index + 1);
+                return;
+            }
+        }
+        logger.error("Error when process events, retry from {} after {} ms.", index, RETRY_DELAY_MS, e);
+        retryExecutor.schedule(() -> watch(index), RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        retryExecutor.shutdown();
+        dispatcher.close();
     }
 
     private KvNode toNode(EtcdKeysResponse resp) {
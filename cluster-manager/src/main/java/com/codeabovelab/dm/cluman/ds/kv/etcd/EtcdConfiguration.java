@@ -16,10 +16,14 @@
 
 package com.codeabovelab.dm.cluman.ds.kv.etcd;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.cluman.ds.kv.embedded.EmbeddedKvConfiguration;
 import com.codeabovelab.dm.cluman.ds.swarm.SwarmDiscoveryUrlFunction;
 import lombok.extern.slf4j.Slf4j;
 import mousio.etcd4j.EtcdClient;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -31,6 +35,7 @@ import java.util.stream.Collectors;
 
 @Configuration
 @Slf4j
+@ConditionalOnProperty(name = EmbeddedKvConfiguration.ENABLED, havingValue = "false", matchIfMissing = true)
 public class EtcdConfiguration {
 
 
@@ -41,6 +46,9 @@ public class EtcdConfiguration {
     @Value("${dm.kv.prefix:/cluman}")
     private String prefix;
 
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
     @Bean
     public EtcdClientWrapper client() {
         List<URI> uris = new ArrayList<>();
@@ -49,7 +57,7 @@ public class EtcdConfiguration {
         }
         log.info("About to connect to etcd: {}", (Object)etcdUrls);
         EtcdClient etcd = new EtcdClient(uris.toArray(new URI[uris.size()]));
-        EtcdClientWrapper etcdClientWrapper = new EtcdClientWrapper(etcd, prefix.trim());
+        EtcdClientWrapper etcdClientWrapper = new EtcdClientWrapper(etcd, prefix.trim(), metricRegistry);
         return etcdClientWrapper;
     }
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Dispatch batches of events to consumer on small pool of workers. Events are partitioned by top level
+ * directory of key (like 'nodes', 'containers' and etc.), each partition is served by single worker,
+ * therefore order of events for each key is kept.
+ */
+@Slf4j
+class PartitionedEventDispatcher implements AutoCloseable {
+
+    private final String prefix;
+    private final Consumer<KvStorageEvent> consumer;
+    private final ExecutorService[] workers;
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * @param name name used in threads
+     * @param prefix prefix of keys, it is skipped when resolving partition
+     * @param workers count of workers
+     * @param consumer consumer of events
+     */
+    PartitionedEventDispatcher(String name, String prefix, int workers, Consumer<KvStorageEvent> consumer) {
+        Assert.isTrue(workers > 0, "workers must be greater than zero");
+        this.prefix = prefix == null ? "" : prefix;
+        this.consumer = consumer;
+        this.workers = new ExecutorService[workers];
+        for (int i = 0; i < workers; ++i) {
+            this.workers[i] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+              .setNameFormat(name + "-bus-" + i)
+              .setDaemon(true)
+              .build());
+        }
+    }
+
+    /**
+     * Dispatch events, events in list must be ordered by its index.
+     * @param events ordered list of events
+     */
+    void dispatch(List<KvStorageEvent> events) {
+        if(events.isEmpty()) {
+            return;
+        }
+        List<List<KvStorageEvent>> batches = new ArrayList<>(workers.length);
+        for (int i = 0; i < workers.length; ++i) {
+            batches.add(null);
+        }
+        for (KvStorageEvent event : events) {
+            int worker = getWorker(event.getKey());
+            List<KvStorageEvent> batch = batches.get(worker);
+            if(batch == null) {
+                batch = new ArrayList<>();
+                batches.set(worker, batch);
+            }
+            batch.add(event);
+        }
+        for (int i = 0; i < workers.length; ++i) {
+            List<KvStorageEvent> batch = batches.get(i);
+            if(batch == null) {
+                continue;
+            }
+            pending.addAndGet(batch.size());
+            workers[i].execute(() -> deliver(batch));
+        }
+    }
+
+    private void deliver(List<KvStorageEvent> batch) {
+        for (KvStorageEvent event : batch) {
+            try {
+                consumer.accept(event);
+            } catch (Exception e) {
+                log.error("Error on dispatching event {}", event, e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    int getWorker(String key) {
+        return Math.floorMod(getPartition(key).hashCode(), workers.length);
+    }
+
+    /**
+     * Resolve partition: first path segment of key after prefix.
+     * @param key key
+     * @return partition name
+     */
+    String getPartition(String key) {
+        if(key == null) {
+            return "";
+        }
+        int start = key.startsWith(prefix) ? prefix.length() : 0;
+        while(start < key.length() && key.charAt(start) == '/') {
+            start++;
+        }
+        int end = key.indexOf('/', start);
+        return end < 0 ? key.substring(start) : key.substring(start, end);
+    }
+
+    /**
+     * Count of events which is submitted but not yet delivered.
+     * @return count of pending events
+     */
+    long getPending() {
+        return pending.get();
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.springframework.util.StringUtils;
 import javax.annotation.PostConstruct;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 /**
@@ -62,6 +63,10 @@ public class NodeStorage implements NodeInfoProvider {
     private final MessageBus<NodeEvent> nodeEventBus;
     private final PersistentBusFactory persistentBusFactory;
     private final ExecutorService executorService;
+    /**
+     * Count of changes which are not visible in map of nodes: changes of registrations and health.
+     */
+    private final AtomicLong changes = new AtomicLong();
 
     @Autowired
     public NodeStorage(KvMapperFactory kvmf,
@@ -118,6 +123,7 @@ public class NodeStorage implements NodeInfoProvider {
     }
 
     private void fireNodeModification(NodeRegistrationImpl nr, String action, NodeInfoImpl ni) {
+        changes.incrementAndGet();
         // NodeRegistrationImpl - may be null in some cases
         NodeEvent ne = NodeEvent.builder()
           .action(action)
@@ -139,6 +145,7 @@ public class NodeStorage implements NodeInfoProvider {
                 NodeRegistrationImpl reg = getOrCreateNodeRegistration(node.getName());
                 if(reg != null) {
                     reg.updateHealth(node.getHealth());
+                    changes.incrementAndGet();
                 }
             }
         }
@@ -301,6 +308,15 @@ public class NodeStorage implements NodeInfoProvider {
         return instance.getNodeInfo();
     }
 
+    /**
+     * Version of nodes, it is incremented after each change of nodes list or node info, including health and
+     * online status.
+     * @return version
+     */
+    public long getVersion() {
+        return nodes.getVersion() + changes.get();
+    }
+
     /**
      *
      * @param predicate functor which is return true for InstanceInfo's which will be passed to result.
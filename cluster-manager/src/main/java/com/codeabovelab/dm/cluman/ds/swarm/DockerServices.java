@@ -16,9 +16,11 @@
 
 package com.codeabovelab.dm.cluman.ds.swarm;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfig;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfigImpl;
 import com.codeabovelab.dm.cluman.cluster.docker.HttpAuthInterceptor;
+import com.codeabovelab.dm.cluman.cluster.docker.management.ContainerDetailsCache;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceEvent;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceImpl;
@@ -77,6 +79,11 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
     private final MessageBus<DockerServiceEvent> dockerServiceEventMessageBus;
     private final AccessContextFactory aclContextFactory;
     private final Map<String, ScheduledFuture> watchingFutures = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ContainerDetailsCache> clusterCaches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ContainerDetailsCache> nodeCaches = new ConcurrentHashMap<>();
+    private final ExecutorService cacheExecutor;
+    private final DockerServicesConfig configuration;
+    private volatile MetricRegistry metricRegistry;
 
     @Autowired
     public DockerServices(DockerServicesConfig configuration,
@@ -87,8 +94,10 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
                           DockerEventsConfig dockerMonitoringConfig,
                           AccessContextFactory aclContextFactory,
                           @Qualifier(NodeEvent.BUS) MessageBus<NodeEvent> nodeInfoMessageBus,
+                          @Qualifier(NodesGroupEvent.BUS) MessageBus<NodesGroupEvent> nodesGroupMessageBus,
                           @Qualifier(DockerLogEvent.BUS) MessageBus<DockerLogEvent> dockerEventMessageBus,
                           @Qualifier(DockerServiceEvent.BUS) MessageBus<DockerServiceEvent> dockerServiceEventMessageBus) {
+        this.configuration = configuration;
         this.containerStorage = containerStorage;
         this.registryRepository = registryRepository;
         this.swarmProcesses = swarmProcesses;
@@ -105,16 +114,25 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
                     break;
                 }
                 case StandardActions.DELETE: {
-                    //TODO unregisterNode(e.getNode());
+                    unregisterNode(e.getNode().getName());
                     break;
                 }
             }
         });
+        nodesGroupMessageBus.asSubscriptions().subscribe((e) -> {
+            if(StandardActions.DELETE.equals(e.getAction())) {
+                unregisterCluster(e.getCluster());
+            }
+        });
         String classPrefix = getClass().getSimpleName();
         this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
           .setDaemon(true)
           .setNameFormat(classPrefix + "-executor-%d")
           .build());
+        this.cacheExecutor = Executors.newFixedThreadPool(configuration.getCountOfCacheThreads(), new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(classPrefix + "-cache-%d")
+          .build());
         scheduledExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
                 .setDaemon(true)
                 .setNameFormat(classPrefix + "-scheduled-%d")
@@ -128,6 +146,32 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
                 .setNameFormat(classPrefix + "-eventsFetcher-%d")
                 .build());
         dockerServiceEventMessageBus.asSubscriptions().subscribe(this::serviceListener);
+        dockerEventMessageBus.asSubscriptions().subscribe(this::onDockerLogEvent);
+    }
+
+    @Autowired(required = false)
+    void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    private void onDockerLogEvent(DockerLogEvent e) {
+        ContainerBase container = e.getContainer();
+        if(e.getType() != EventType.CONTAINER || container == null) {
+            return;
+        }
+        // we refresh container details in both node and cluster services
+        notifyCache(nodeCaches, e.getNode(), container.getId(), e.getAction());
+        notifyCache(clusterCaches, e.getCluster(), container.getId(), e.getAction());
+    }
+
+    private void notifyCache(Map<String, ContainerDetailsCache> caches, String key, String id, String action) {
+        if(key == null) {
+            return;
+        }
+        ContainerDetailsCache cache = caches.get(key);
+        if(cache != null) {
+            cache.onEvent(id, action);
+        }
     }
 
     private void updateInfo() {
@@ -244,6 +288,40 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
 
     }
 
+    /**
+     * Forget service of removed node, its cached container details and metrics, and stop fetching of its events.
+     * @param nodeName name of node
+     */
+    void unregisterNode(String nodeName) {
+        if(nodeName == null) {
+            return;
+        }
+        ScheduledFuture future = watchingFutures.remove(nodeName);
+        if(future != null) {
+            future.cancel(true);
+        }
+        nodeCaches.remove(nodeName);
+        MetricRegistry metricRegistry = this.metricRegistry;
+        if(metricRegistry != null) {
+            DockerServiceImpl.removeNodeMetrics(metricRegistry, nodeName);
+        }
+        if(nodes.remove(nodeName) != null) {
+            log.info("Unregister service of removed node: {}", nodeName);
+        }
+    }
+
+    /**
+     * Forget service of removed cluster and its cached container details.
+     * @param cluster name of cluster
+     */
+    void unregisterCluster(String cluster) {
+        if(cluster == null) {
+            return;
+        }
+        clusters.remove(cluster);
+        clusterCaches.remove(cluster);
+    }
+
     private DockerLogEvent convertToLogEvent(final String nodeName, final DockerEvent e) {
         // see https://docs.docker.com/engine/reference/commandline/events/
         DockerLogEvent.Builder logEvent = DockerLogEvent.builder();
@@ -316,12 +394,22 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
         b.setRestTemplate(createNewRestTemplate());
         b.setEventConsumer(this::dockerEventConsumer);
         b.setNodeInfoProvider(nodeInfoProvider);
+        b.setCacheExecutor(cacheExecutor);
+        b.setContainerDetailsMaxAge(configuration.getContainerDetailsMaxAge());
+        b.setMetricRegistry(metricRegistry);
         if (dockerConsumer != null) {
             dockerConsumer.accept(b);
         }
-        DockerService ds = b.build();
-        ds = securityWrapper(ds);
-        return ds;
+        DockerServiceImpl dsi = b.build();
+        ContainerDetailsCache cache = dsi.getContainerDetailsCache();
+        if(cache != null) {
+            if(dsi.getNode() != null) {
+                nodeCaches.put(dsi.getNode(), cache);
+            } else {
+                clusterCaches.put(dsi.getCluster(), cache);
+            }
+        }
+        return securityWrapper(dsi);
     }
 
     private void dockerEventConsumer(DockerServiceEvent dockerServiceEvent) {
@@ -394,6 +482,7 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
     public void shutdown() {
         scheduledExecutor.shutdown();
         scheduledExecutorService.shutdown();
+        cacheExecutor.shutdown();
     }
 
     public DockerService securityWrapper(DockerService dockerService) {
@@ -27,4 +27,12 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class DockerServicesConfig {
     private final long cacheTimeout = 60_000;
     private final long refreshInfoSeconds = 10;
+    /**
+     * Count of threads which refresh cached container details on docker events.
+     */
+    private int countOfCacheThreads = 2;
+    /**
+     * Time in ms after which cached container details is refreshed in background.
+     */
+    private long containerDetailsMaxAge = 60_000L;
 }
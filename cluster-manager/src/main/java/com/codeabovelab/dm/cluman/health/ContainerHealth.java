@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Health of container, computed by results of its probes.
+ */
+@Value
+@Builder
+public class ContainerHealth {
+    private final String id;
+    private final String name;
+    private final String cluster;
+    private final String node;
+    private final HealthProbe.Type type;
+    /**
+     * Container is healthy after first successful probe and until count of consecutive failures reach
+     * threshold of probe.
+     */
+    private final boolean healthy;
+    /**
+     * Count of consecutive failures.
+     */
+    private final int failures;
+    /**
+     * Message of last probe.
+     */
+    private final String message;
+    private final LocalDateTime time;
+}
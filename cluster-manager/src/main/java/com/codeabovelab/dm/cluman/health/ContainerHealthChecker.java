@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerState;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ExposedPort;
+import com.codeabovelab.dm.cluman.cluster.docker.model.InternetProtocol;
+import com.codeabovelab.dm.cluman.cluster.docker.model.NetworkSettings;
+import com.codeabovelab.dm.cluman.cluster.docker.model.Node;
+import com.codeabovelab.dm.cluman.cluster.docker.model.Ports;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.cluman.utils.ContainerUtils;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.codeabovelab.dm.common.utils.RescheduledTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Probes health of running containers which declare {@link HealthProbe probe} in labels. Changes of health are
+ * sent to {@link ContainerHealthEvent#BUS}. Set of probed containers is updated by docker events and
+ * periodically reconciled by listing of containers.
+ */
+@Slf4j
+@Component
+public class ContainerHealthChecker implements SmartLifecycle {
+
+    /**
+     * Count of threads for all probes, network probes do not hold thread while waiting for io.
+     */
+    private static final int THREADS = 4;
+    /**
+     * Count of threads for exec probes, they block on calls to docker.
+     */
+    private static final int EXEC_THREADS = 4;
+
+    private final DockerServices dockerServices;
+    private final NodeInfoProvider nodeInfoProvider;
+    private final MessageBus<ContainerHealthEvent> bus;
+    private final ProbeEngine engine;
+    private final ScheduledExecutorService scheduledService;
+    private final ConcurrentMap<String, RescheduledTask> scheduledNodes = new ConcurrentHashMap<>();
+    private volatile boolean started;
+
+    @Autowired
+    public ContainerHealthChecker(DockerServices dockerServices,
+                                  NodeInfoProvider nodeInfoProvider,
+                                  @Qualifier(ContainerHealthEvent.BUS) MessageBus<ContainerHealthEvent> bus,
+                                  @Qualifier(NodeEvent.BUS) Subscriptions<NodeEvent> nodeSubs,
+                                  @Qualifier(DockerLogEvent.BUS) Subscriptions<DockerLogEvent> dockerLogSubs) {
+        this.dockerServices = dockerServices;
+        this.nodeInfoProvider = nodeInfoProvider;
+        this.bus = bus;
+        this.engine = new ProbeEngine(getClass().getSimpleName(), THREADS, EXEC_THREADS, this::checkExec, this::onHealthChanged);
+        this.scheduledService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-loader-%d")
+          .build());
+        nodeSubs.subscribe(this::onNodeEvent);
+        dockerLogSubs.subscribe(this::onDockerLogEvent);
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public void start() {
+        this.started = true;
+        dockerServices.getNodeServices().forEach(n -> scheduleLoad(n, 0));
+    }
+
+    @Override
+    public void stop() {
+        this.started = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return started;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduledService.shutdownNow();
+        engine.close();
+    }
+
+    /**
+     * Last health of container.
+     * @param id id of container
+     * @return health or null when container is not probed
+     */
+    public ContainerHealth getHealth(String id) {
+        return engine.getHealth(id);
+    }
+
+    /**
+     * Last health of all probed containers.
+     * @return list of health
+     */
+    public List<ContainerHealth> getHealths() {
+        return engine.getHealths();
+    }
+
+    /**
+     * Probe container immediately. It use probe from labels of container, or exec probe when labels do not
+     * declare it.
+     * @param cluster cluster of container
+     * @param container container
+     * @return future of health
+     */
+    public CompletableFuture<ContainerHealth> check(String cluster, ContainerDetails container) {
+        Map<String, String> labels = container.getConfig() == null ? null : container.getConfig().getLabels();
+        HealthProbe probe = HealthProbe.fromLabels(labels);
+        if(probe == null) {
+            probe = HealthProbe.exec();
+        }
+        // node is present only in details which are obtained from swarm
+        Node node = container.getNode();
+        String nodeName = node == null ? null : node.getName();
+        ProbeTarget target = toTarget(cluster, nodeName, container, probe);
+        HealthProbe.Type type = probe.getType();
+        return engine.probe(target, probe).thenApply(r -> ContainerHealth.builder()
+          .id(target.getId())
+          .name(target.getName())
+          .cluster(target.getCluster())
+          .node(target.getNode())
+          .type(type)
+          .healthy(r.isHealthy())
+          .failures(r.isHealthy() ? 0 : 1)
+          .message(r.getMessage())
+          .time(LocalDateTime.now())
+          .build());
+    }
+
+    /**
+     * Reconcile probed containers with docker.
+     */
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void reconcile() {
+        dockerServices.getNodeServices().forEach(this::load);
+    }
+
+    private void load(String node) {
+        DockerService service = dockerServices.getNodeService(node);
+        if(service == null) {
+            return;
+        }
+        Set<String> present = new HashSet<>();
+        try(TempAuth ta = TempAuth.asSystem()) {
+            List<DockerContainer> containers = service.getContainers(new GetContainersArg(false));
+            for(DockerContainer dc: containers) {
+                HealthProbe probe;
+                try {
+                    probe = HealthProbe.fromLabels(dc.getLabels());
+                } catch (IllegalArgumentException e) {
+                    log.warn("Container '{}' has invalid health probe: {}", dc.getName(), e.getMessage());
+                    continue;
+                }
+                if(probe == null) {
+                    continue;
+                }
+                present.add(dc.getId());
+                ContainerDetails details = service.getContainer(dc.getId());
+                if(details != null) {
+                    engine.register(toTarget(nodeInfoProvider.getNodeCluster(node), node, details, probe), probe);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Can not load containers of node '{}': {}", node, e.toString());
+            return;
+        }
+        for(ProbeTarget target: engine.getTargets()) {
+            if(node.equals(target.getNode()) && !present.contains(target.getId())) {
+                engine.unregister(target.getId());
+            }
+        }
+    }
+
+    private void unregisterNode(String node) {
+        for(ProbeTarget target: engine.getTargets()) {
+            if(node.equals(target.getNode())) {
+                engine.unregister(target.getId());
+            }
+        }
+    }
+
+    private void scheduleLoad(String node, long delaySeconds) {
+        RescheduledTask task = scheduledNodes.computeIfAbsent(node, (n) -> RescheduledTask.builder()
+          .service(scheduledService)
+          .runnable(() -> this.load(n))
+          .maxDelay(1L, TimeUnit.MINUTES)
+          .build());
+        task.schedule(delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private ProbeTarget toTarget(String cluster, String node, ContainerDetails container, HealthProbe probe) {
+        ProbeTarget.ProbeTargetBuilder b = ProbeTarget.builder()
+          .id(container.getId())
+          .name(container.getName() == null ? null : ContainerUtils.fixContainerName(container.getName()))
+          .cluster(cluster)
+          .node(node);
+        if(probe.getType() == HealthProbe.Type.EXEC) {
+            return b.build();
+        }
+        NetworkSettings ns = container.getNetworkSettings();
+        if(ns == null) {
+            return b.build();
+        }
+        // published port is preferred, because manager usually can not reach network of containers
+        Ports.Binding binding = getBinding(ns.getPorts(), probe.getPort());
+        if(binding != null) {
+            String host = binding.getHostIp();
+            if(!StringUtils.hasText(host) || "0.0.0.0".equals(host) || "::".equals(host)) {
+                host = getNodeHost(node);
+            }
+            if(host != null) {
+                return b.host(host).port(Integer.parseInt(binding.getHostPortSpec())).build();
+            }
+        }
+        return b.host(getContainerIp(ns)).port(probe.getPort()).build();
+    }
+
+    private static Ports.Binding getBinding(Ports ports, int port) {
+        if(ports == null) {
+            return null;
+        }
+        for(Map.Entry<ExposedPort, Ports.Binding[]> e: ports.getBindings().entrySet()) {
+            ExposedPort ep = e.getKey();
+            Ports.Binding[] bindings = e.getValue();
+            if(ep.getPort() != port || ep.getProtocol() != InternetProtocol.TCP || bindings == null) {
+                continue;
+            }
+            for(Ports.Binding binding: bindings) {
+                String spec = binding.getHostPortSpec();
+                if(spec != null && spec.matches("\\d+")) {
+                    return binding;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String getNodeHost(String node) {
+        NodeInfo nodeInfo = node == null ? null : nodeInfoProvider.getNodeInfo(node);
+        String address = nodeInfo == null ? null : nodeInfo.getAddress();
+        if(address == null) {
+            return null;
+        }
+        int schemeEnd = address.indexOf("://");
+        if(schemeEnd >= 0) {
+            address = address.substring(schemeEnd + 3);
+        }
+        return address.indexOf(':') > 0 ? ContainerUtils.getHost(address) : address;
+    }
+
+    private static String getContainerIp(NetworkSettings ns) {
+        if(StringUtils.hasText(ns.getIpAddress())) {
+            return ns.getIpAddress();
+        }
+        Map<String, NetworkSettings.Network> networks = ns.getNetworks();
+        if(networks != null) {
+            for(NetworkSettings.Network network: networks.values()) {
+                if(StringUtils.hasText(network.getIpAddress())) {
+                    return network.getIpAddress();
+                }
+            }
+        }
+        return null;
+    }
+
+    private ProbeResult checkExec(ProbeTarget target) {
+        DockerService service = target.getNode() == null ? null : dockerServices.getNodeService(target.getNode());
+        if(service == null && target.getCluster() != null) {
+            service = dockerServices.getService(target.getCluster());
+        }
+        if(service == null) {
+            return ProbeResult.unhealthy("Can not find service of node '" + target.getNode() + "'.");
+        }
+        ContainerDetails details;
+        try(TempAuth ta = TempAuth.asSystem()) {
+            // details are cached and refreshed on docker events, including 'health_status'
+            details = service.getContainer(target.getId());
+        }
+        ContainerState state = details == null ? null : details.getState();
+        if(state == null) {
+            return ProbeResult.unhealthy("Container is not found.");
+        }
+        ContainerState.Health health = state.getHealth();
+        if(health != null) {
+            String message = "Status: " + health.getStatus() + ", failing streak: " + health.getFailingStreak();
+            boolean healthy = ContainerState.Health.HEALTHY.equals(health.getStatus());
+            return healthy ? ProbeResult.healthy(message) : ProbeResult.unhealthy(message);
+        }
+        return state.isRunning() && !state.isPaused() ?
+          ProbeResult.healthy("Running.") : ProbeResult.unhealthy("Status: " + state.getStatus());
+    }
+
+    private void onHealthChanged(ContainerHealth health) {
+        log.info("Health of container '{}' on '{}' is {}: {}", health.getName(), health.getNode(),
+          health.isHealthy() ? "good" : "bad", health.getMessage());
+        bus.accept(ContainerHealthEvent.builder().health(health).build());
+    }
+
+    private void onDockerLogEvent(DockerLogEvent e) {
+        String node = e.getNode();
+        if(node == null || e.getType() != EventType.CONTAINER || e.getContainer() == null) {
+            return;
+        }
+        switch (e.getAction()) {
+            case StandardActions.START:
+            case "restart":
+            case "unpause":
+                scheduleLoad(node, 2);
+                break;
+            case StandardActions.DIE:
+            case StandardActions.DELETE:
+                engine.unregister(e.getContainer().getId());
+                break;
+        }
+    }
+
+    private void onNodeEvent(NodeEvent e) {
+        String action = e.getAction();
+        String node = e.getNode().getName();
+        if(StandardActions.OFFLINE.equals(action) || StandardActions.DELETE.equals(action)) {
+            unregisterNode(node);
+        } else if(StandardActions.ONLINE.equals(action)) {
+            scheduleLoad(node, 10);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import com.codeabovelab.dm.cluman.model.Event;
+import com.codeabovelab.dm.cluman.model.WithCluster;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Event of container health change, it is not sent on each probe.
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+public final class ContainerHealthEvent extends Event implements WithCluster {
+
+    @EqualsAndHashCode(callSuper = true)
+    @Data
+    public static class Builder extends Event.Builder<Builder, ContainerHealthEvent> {
+
+        private ContainerHealth health;
+
+        public Builder health(ContainerHealth health) {
+            setHealth(health);
+            return this;
+        }
+
+        @Override
+        public ContainerHealthEvent build() {
+            return new ContainerHealthEvent(this);
+        }
+    }
+
+    /**
+     * Id of message bus
+     */
+    public static final String BUS = "bus.cluman.health";
+    private final ContainerHealth health;
+
+    @JsonCreator
+    public ContainerHealthEvent(Builder b) {
+        super(b);
+        this.health = b.health;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String getCluster() {
+        return health.getCluster();
+    }
+}
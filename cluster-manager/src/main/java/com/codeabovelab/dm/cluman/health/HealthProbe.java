@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Definition of container health probe. It usually declared by container labels:
+ * <pre>
+ * com.codeabovelab.dm.health.type=http|tcp|exec
+ * com.codeabovelab.dm.health.port=8080
+ * com.codeabovelab.dm.health.path=/health
+ * com.codeabovelab.dm.health.interval=10
+ * com.codeabovelab.dm.health.timeout=2
+ * com.codeabovelab.dm.health.threshold=3
+ * </pre>
+ * Interval and timeout are in seconds.
+ */
+@Value
+@Builder
+public class HealthProbe {
+
+    public enum Type {
+        /**
+         * GET request to port and path, 2xx and 3xx codes mean healthy.
+         */
+        HTTP,
+        /**
+         * Connection to port.
+         */
+        TCP,
+        /**
+         * Result of exec based HEALTHCHECK which docker run in container, or running state when image
+         * does not define it.
+         */
+        EXEC
+    }
+
+    public static final String LABEL_PREFIX = "com.codeabovelab.dm.health.";
+    public static final String LABEL_TYPE = LABEL_PREFIX + "type";
+    public static final String LABEL_PORT = LABEL_PREFIX + "port";
+    public static final String LABEL_PATH = LABEL_PREFIX + "path";
+    public static final String LABEL_INTERVAL = LABEL_PREFIX + "interval";
+    public static final String LABEL_TIMEOUT = LABEL_PREFIX + "timeout";
+    public static final String LABEL_THRESHOLD = LABEL_PREFIX + "threshold";
+
+    public static final long DEFAULT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    public static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(2);
+    public static final int DEFAULT_THRESHOLD = 3;
+
+    private final Type type;
+    private final int port;
+    private final String path;
+    /**
+     * Interval between probes in ms.
+     */
+    private final long interval;
+    /**
+     * Timeout of single probe in ms.
+     */
+    private final long timeout;
+    /**
+     * Count of consecutive failures after which container is unhealthy.
+     */
+    private final int threshold;
+
+    /**
+     * Exec probe with default settings, it used for containers without probe labels.
+     * @return probe
+     */
+    public static HealthProbe exec() {
+        return HealthProbe.builder()
+          .type(Type.EXEC)
+          .interval(DEFAULT_INTERVAL)
+          .timeout(DEFAULT_TIMEOUT)
+          .threshold(DEFAULT_THRESHOLD)
+          .build();
+    }
+
+    /**
+     * Parse probe from container labels.
+     * @param labels labels, may be null
+     * @return probe or null when labels does not declare it
+     * @throws IllegalArgumentException when labels are invalid
+     */
+    public static HealthProbe fromLabels(Map<String, String> labels) {
+        String typeStr = labels == null ? null : labels.get(LABEL_TYPE);
+        if(!StringUtils.hasText(typeStr)) {
+            return null;
+        }
+        Type type = Type.valueOf(typeStr.trim().toUpperCase());
+        int port = 0;
+        if(type != Type.EXEC) {
+            port = (int) getNumber(labels, LABEL_PORT, 0);
+            if(port <= 0 || port > 0xffff) {
+                throw new IllegalArgumentException("Invalid value of '" + LABEL_PORT + "': " + labels.get(LABEL_PORT));
+            }
+        }
+        String path = null;
+        if(type == Type.HTTP) {
+            path = labels.get(LABEL_PATH);
+            if(!StringUtils.hasText(path)) {
+                path = "/";
+            } else if(!path.startsWith("/")) {
+                path = "/" + path;
+            }
+        }
+        return HealthProbe.builder()
+          .type(type)
+          .port(port)
+          .path(path)
+          .interval(TimeUnit.SECONDS.toMillis(getNumber(labels, LABEL_INTERVAL, TimeUnit.MILLISECONDS.toSeconds(DEFAULT_INTERVAL))))
+          .timeout(TimeUnit.SECONDS.toMillis(getNumber(labels, LABEL_TIMEOUT, TimeUnit.MILLISECONDS.toSeconds(DEFAULT_TIMEOUT))))
+          .threshold((int) getNumber(labels, LABEL_THRESHOLD, DEFAULT_THRESHOLD))
+          .build();
+    }
+
+    private static long getNumber(Map<String, String> labels, String key, long def) {
+        String str = labels.get(key);
+        if(!StringUtils.hasText(str)) {
+            return def;
+        }
+        long val;
+        try {
+            val = Long.parseLong(str.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of '" + key + "': " + str, e);
+        }
+        if(val <= 0) {
+            throw new IllegalArgumentException("Value of '" + key + "' must be greater than zero: " + str);
+        }
+        return val;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Runs probes of registered containers. Network probes use asynchronous channels, so threads are busy only while
+ * completion of io is handled, and count of threads does not depend on count of containers. Exec probes make blocking
+ * calls, so they are run in separate threads and do not delay completion of network probes.
+ */
+@Slf4j
+class ProbeEngine implements AutoCloseable {
+
+    /**
+     * Check of exec probe, it is run in exec thread and may block.
+     */
+    interface ExecCheck {
+        ProbeResult check(ProbeTarget target) throws Exception;
+    }
+
+    private static final int MAX_STATUS_LINE = 1024;
+
+    private final class Entry implements Runnable {
+        private final ProbeTarget target;
+        private final HealthProbe probe;
+        private volatile ContainerHealth health;
+        private volatile ScheduledFuture<?> next;
+        private volatile boolean cancelled;
+        private int failures;
+        private boolean healthy;
+
+        Entry(ProbeTarget target, HealthProbe probe) {
+            this.target = target;
+            this.probe = probe;
+        }
+
+        void schedule(long delay) {
+            if(cancelled) {
+                return;
+            }
+            try {
+                next = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // engine is closed
+            }
+        }
+
+        @Override
+        public void run() {
+            if(cancelled) {
+                return;
+            }
+            probe(target, probe).thenAccept(result -> {
+                if(cancelled) {
+                    return;
+                }
+                onResult(this, result);
+                schedule(probe.getInterval());
+            });
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> future = next;
+            if(future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final ExecutorService execWorkers;
+    private final AsynchronousChannelGroup group;
+    private final ScheduledExecutorService scheduler;
+    private final ExecCheck execCheck;
+    private final Consumer<ContainerHealth> listener;
+
+    /**
+     * @param name name of threads
+     * @param threads count of threads which handle io completion
+     * @param execThreads count of threads which run exec checks
+     * @param execCheck check of exec probes
+     * @param listener consumer of health changes
+     */
+    ProbeEngine(String name, int threads, int execThreads, ExecCheck execCheck, Consumer<ContainerHealth> listener) {
+        Assert.isTrue(threads > 0, "threads must be greater than zero");
+        Assert.isTrue(execThreads > 0, "execThreads must be greater than zero");
+        this.execCheck = execCheck;
+        this.listener = listener;
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(name + "-%d")
+          .build());
+        try {
+            this.group = AsynchronousChannelGroup.withThreadPool(workers);
+        } catch (IOException e) {
+            workers.shutdownNow();
+            throw new IllegalStateException("Can not create channel group.", e);
+        }
+        this.execWorkers = Executors.newFixedThreadPool(execThreads, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(name + "-exec-%d")
+          .build());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(name + "-scheduler-%d")
+          .build());
+    }
+
+    /**
+     * Register container for periodic probes, it does nothing when container is already registered with same
+     * target and probe.
+     * @param target container
+     * @param probe probe
+     */
+    synchronized void register(ProbeTarget target, HealthProbe probe) {
+        Entry old = entries.get(target.getId());
+        if(old != null && old.target.equals(target) && old.probe.equals(probe)) {
+            return;
+        }
+        if(old != null) {
+            old.cancel();
+        }
+        Entry entry = new Entry(target, probe);
+        entries.put(target.getId(), entry);
+        // spread first probes of many containers over interval
+        entry.schedule(ThreadLocalRandom.current().nextLong(probe.getInterval()));
+    }
+
+    synchronized boolean unregister(String id) {
+        Entry entry = entries.remove(id);
+        if(entry == null) {
+            return false;
+        }
+        entry.cancel();
+        return true;
+    }
+
+    List<ProbeTarget> getTargets() {
+        List<ProbeTarget> targets = new ArrayList<>(entries.size());
+        entries.values().forEach(e -> targets.add(e.target));
+        return targets;
+    }
+
+    HealthProbe getProbe(String id) {
+        Entry entry = entries.get(id);
+        return entry == null ? null : entry.probe;
+    }
+
+    /**
+     * Last health of registered container.
+     * @param id id of container
+     * @return health or null when container is not registered or is not probed yet
+     */
+    ContainerHealth getHealth(String id) {
+        Entry entry = entries.get(id);
+        return entry == null ? null : entry.health;
+    }
+
+    List<ContainerHealth> getHealths() {
+        List<ContainerHealth> list = new ArrayList<>(entries.size());
+        for(Entry entry: entries.values()) {
+            ContainerHealth health = entry.health;
+            if(health != null) {
+                list.add(health);
+            }
+        }
+        return list;
+    }
+
+    int getCount() {
+        return entries.size();
+    }
+
+    private void onResult(Entry entry, ProbeResult result) {
+        ContainerHealth health;
+        boolean changed;
+        synchronized (entry) {
+            if(result.isHealthy()) {
+                entry.failures = 0;
+                entry.healthy = true;
+            } else if(++entry.failures >= entry.probe.getThreshold()) {
+                entry.healthy = false;
+            }
+            ContainerHealth old = entry.health;
+            ProbeTarget target = entry.target;
+            health = ContainerHealth.builder()
+              .id(target.getId())
+              .name(target.getName())
+              .cluster(target.getCluster())
+              .node(target.getNode())
+              .type(entry.probe.getType())
+              .healthy(entry.healthy)
+              .failures(entry.failures)
+              .message(result.getMessage())
+              .time(LocalDateTime.now())
+              .build();
+            entry.health = health;
+            changed = old == null || old.isHealthy() != health.isHealthy();
+        }
+        if(changed) {
+            try {
+                listener.accept(health);
+            } catch (Exception e) {
+                log.error("Error on health change of {}", health.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Run single probe, it does not affect registered containers.
+     * @param target container
+     * @param probe probe
+     * @return future of result, it never completes exceptionally
+     */
+    CompletableFuture<ProbeResult> probe(ProbeTarget target, HealthProbe probe) {
+        CompletableFuture<ProbeResult> future = new CompletableFuture<>();
+        try {
+            long timeout = probe.getTimeout();
+            ScheduledFuture<?> timer = scheduler.schedule(() -> {
+                future.complete(ProbeResult.unhealthy("Timeout of " + timeout + "ms is exceeded."));
+            }, timeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((r, e) -> timer.cancel(false));
+            if(probe.getType() == HealthProbe.Type.EXEC) {
+                execWorkers.execute(() -> {
+                    try {
+                        future.complete(execCheck.check(target));
+                    } catch (Exception e) {
+                        future.complete(ProbeResult.unhealthy(e.toString()));
+                    }
+                });
+            } else {
+                connect(target, probe, future);
+            }
+        } catch (Exception e) {
+            future.complete(ProbeResult.unhealthy(e.toString()));
+        }
+        return future;
+    }
+
+    private void connect(ProbeTarget target, HealthProbe probe, CompletableFuture<ProbeResult> future) throws IOException {
+        if(target.getHost() == null) {
+            future.complete(ProbeResult.unhealthy("Can not resolve address of container."));
+            return;
+        }
+        AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(group);
+        // also interrupt io on timeout
+        future.whenComplete((r, e) -> close(channel));
+        InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+        channel.connect(address, null, new CompletionHandler<Void, Void>() {
+            @Override
+            public void completed(Void result, Void attachment) {
+                if(probe.getType() == HealthProbe.Type.TCP) {
+                    future.complete(ProbeResult.healthy("Connected to " + address));
+                } else {
+                    request(channel, target, probe, future);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                future.complete(ProbeResult.unhealthy("Can not connect to " + address + ": " + exc));
+            }
+        });
+    }
+
+    private void request(AsynchronousSocketChannel channel, ProbeTarget target, HealthProbe probe,
+                         CompletableFuture<ProbeResult> future) {
+        String request = "GET " + probe.getPath() + " HTTP/1.0\r\n" +
+          "Host: " + target.getHost() + ":" + target.getPort() + "\r\n" +
+          "Connection: close\r\n\r\n";
+        ByteBuffer buffer = ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+        channel.write(buffer, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer buf) {
+                if(buf.hasRemaining()) {
+                    channel.write(buf, buf, this);
+                } else {
+                    readStatus(channel, future);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer buf) {
+                future.complete(ProbeResult.unhealthy("Can not send request: " + exc));
+            }
+        });
+    }
+
+    private void readStatus(AsynchronousSocketChannel channel, CompletableFuture<ProbeResult> future) {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_STATUS_LINE);
+        channel.read(buffer, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer buf) {
+                int end = indexOfLineEnd(buf);
+                if(end >= 0) {
+                    future.complete(parseStatus(new String(buf.array(), 0, end, StandardCharsets.US_ASCII)));
+                } else if(result < 0 || !buf.hasRemaining()) {
+                    future.complete(ProbeResult.unhealthy("Response does not have status line."));
+                } else {
+                    channel.read(buf, buf, this);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer buf) {
+                future.complete(ProbeResult.unhealthy("Can not read response: " + exc));
+            }
+        });
+    }
+
+    private static int indexOfLineEnd(ByteBuffer buf) {
+        byte[] array = buf.array();
+        for(int i = 0; i < buf.position(); ++i) {
+            if(array[i] == '\n') {
+                return i > 0 && array[i - 1] == '\r' ? i - 1 : i;
+            }
+        }
+        return -1;
+    }
+
+    static ProbeResult parseStatus(String line) {
+        // HTTP/1.1 200 OK
+        String[] parts = line.split(" ", 3);
+        if(parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            return ProbeResult.unhealthy("Invalid status line: " + line);
+        }
+        int code;
+        try {
+            code = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return ProbeResult.unhealthy("Invalid status line: " + line);
+        }
+        return code >= 200 && code < 400 ? ProbeResult.healthy(line) : ProbeResult.unhealthy(line);
+    }
+
+    private static void close(AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            entries.values().forEach(Entry::cancel);
+            entries.clear();
+        }
+        scheduler.shutdownNow();
+        try {
+            group.shutdownNow();
+        } catch (IOException e) {
+            log.warn("Can not close channel group: {}", e.toString());
+        }
+        workers.shutdownNow();
+        execWorkers.shutdownNow();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import lombok.Value;
+
+/**
+ * Result of single probe.
+ */
+@Value
+public class ProbeResult {
+    private final boolean healthy;
+    private final String message;
+
+    public static ProbeResult healthy(String message) {
+        return new ProbeResult(true, message);
+    }
+
+    public static ProbeResult unhealthy(String message) {
+        return new ProbeResult(false, message);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.health;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Container which is probed, with address resolved for network probes.
+ */
+@Value
+@Builder
+public class ProbeTarget {
+    private final String id;
+    private final String name;
+    private final String cluster;
+    private final String node;
+    /**
+     * Host which is reachable from manager, null for exec probes.
+     */
+    private final String host;
+    /**
+     * Port on {@link #getHost() host}, it may differ from port of probe when container port is published.
+     */
+    private final int port;
+}
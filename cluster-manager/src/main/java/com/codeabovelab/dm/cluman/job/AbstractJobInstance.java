@@ -19,6 +19,7 @@ package com.codeabovelab.dm.cluman.job;
 import com.codeabovelab.dm.cluman.security.TempAuth;
 import com.codeabovelab.dm.common.utils.SafeCloseable;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.SettableFuture;
@@ -31,10 +32,9 @@ import org.springframework.util.Assert;
 
 import java.text.MessageFormat;
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -54,6 +54,10 @@ public abstract class AbstractJobInstance implements JobInstance {
          * Flag from {@link JobBean#repeatable()}, when true then context between iterations will not cleared.
          */
         protected boolean repeatable;
+        /**
+         * Priority from {@link JobBean#priority()}.
+         */
+        protected JobPriority priority = JobPriority.NORMAL;
 
         public Config jobsManager(JobsManagerImpl jobsManager) {
             setJobsManager(jobsManager);
@@ -89,10 +93,15 @@ public abstract class AbstractJobInstance implements JobInstance {
             setRepeatable(repeatable);
             return this;
         }
+
+        public Config priority(JobPriority priority) {
+            setPriority(priority);
+            return this;
+        }
     }
 
     /**
-     * We cannot save all events because it cause memory leak for scheduled jobs.
+     * We cannot save all events because it cause memory leak for scheduled jobs. Full log is kept in {@link JobHistory}.
      */
     private static final int MAX_EVENTS = 1024;
     private static final Logger LOG = LoggerFactory.getLogger(JobInstanceImpl.class);
@@ -107,7 +116,8 @@ public abstract class AbstractJobInstance implements JobInstance {
     protected volatile Future<?> executeHandle;
     private final Authentication authentication;
     private final JobWatcher watcher;
-    private final List<JobEvent> events = new CopyOnWriteArrayList<>();
+    private final JobPriority priority;
+    private final ArrayDeque<JobEvent> events = new ArrayDeque<>();
 
     public AbstractJobInstance(Config config) {
         Assert.notNull(config.parameters, "parameters is null");
@@ -122,6 +132,7 @@ public abstract class AbstractJobInstance implements JobInstance {
         this.job = config.job;
         this.authentication = config.authentication;
         this.watcher = config.watcher;
+        this.priority = config.priority;
         this.cancelFuture = ListenableFutureTask.create(this::innerCancel);
         this.startFuture = ListenableFutureTask.create(this::innerStart);
     }
@@ -166,11 +177,14 @@ public abstract class AbstractJobInstance implements JobInstance {
     }
 
     private void sendEvent(JobEvent event) {
-        this.events.add(event);
-        this.manager.getBus().accept(event);
-        while(this.events.size() > MAX_EVENTS) {
-            this.events.remove(0);
+        synchronized (this.events) {
+            this.events.add(event);
+            while(this.events.size() > MAX_EVENTS) {
+                this.events.removeFirst();
+            }
         }
+        this.manager.getHistory().append(event);
+        this.manager.getBus().accept(event);
         // we use watcher instead of subscription on bus, because it binds with concrete instance
         //  and also receive instance reference (event does not have reference to instance)
         if(watcher != null) {
@@ -178,6 +192,14 @@ public abstract class AbstractJobInstance implements JobInstance {
         }
     }
 
+    /**
+     * Priority of job in queue of executor.
+     * @return priority
+     */
+    public JobPriority getPriority() {
+        return priority;
+    }
+
     @Override
     public JobContext getJobContext() {
         return jobContext;
@@ -249,7 +271,9 @@ public abstract class AbstractJobInstance implements JobInstance {
 
     @Override
     public List<JobEvent> getLog() {
-        return Collections.unmodifiableList(this.events);
+        synchronized (this.events) {
+            return ImmutableList.copyOf(this.events);
+        }
     }
 
     @Override
@@ -283,6 +307,11 @@ public abstract class AbstractJobInstance implements JobInstance {
 
         @Override
         public void run() {
+            if(!markStarted()) {
+                // job is cancelled after worker take it from queue
+                atEndFuture.set(AbstractJobInstance.this);
+                return;
+            }
             jobContext.nextIteration();
             JobContext.set(jobContext);
             SafeCloseable scopeIterationLocal = JobScopeIteration.open(jobContext);
@@ -291,7 +320,6 @@ public abstract class AbstractJobInstance implements JobInstance {
                 if(authentication != null) {
                     auth = TempAuth.open(authentication);
                 }
-                setStatus(JobStatus.STARTED);
                 loadAttributesFromResult();
                 // we must reset rollback, for cases when job does not change it,
                 // otherwise user may rollback previous execution of this job
@@ -315,6 +343,23 @@ public abstract class AbstractJobInstance implements JobInstance {
             }
         }
 
+        /**
+         * Change status to {@link JobStatus#STARTED} unless job is already ended (for example cancelled).
+         * @return false when job must not be run
+         */
+        private boolean markStarted() {
+            while(true) {
+                JobStatus status = statusRef.get();
+                if(status.isEnd()) {
+                    return false;
+                }
+                if(statusRef.compareAndSet(status, JobStatus.STARTED)) {
+                    statusChanged(status, JobStatus.STARTED, null).close();
+                    return true;
+                }
+            }
+        }
+
         private void loadAttributesFromResult() {
             jobContext.getAttributes().putAll(jobContext.getResult());
         }
@@ -46,4 +46,10 @@ public @interface JobBean {
      */
     boolean repeatable() default false;
 
+    /**
+     * Priority of job in queue of executor.
+     * @return
+     */
+    JobPriority priority() default JobPriority.NORMAL;
+
 }
@@ -30,6 +30,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 
 import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -51,11 +54,43 @@ public class JobConfiguration {
          * Max number of concurrently executed jobs
          */
         private int executorPoolSize = 100;
+        /**
+         * Max number of concurrently executed jobs on one cluster, zero - unlimited
+         */
+        private int maxJobsPerCluster = 4;
+        /**
+         * Max number of concurrently executed jobs on one node, zero - unlimited
+         */
+        private int maxJobsPerNode = 2;
+        /**
+         * Names of job parameters which contains name (or list of names) of cluster used by job
+         */
+        private List<String> clusterParameters = new ArrayList<>(Arrays.asList("cluster", "clusterName"));
+        /**
+         * Names of job parameters which contains name (or list of names) of node used by job
+         */
+        private List<String> nodeParameters = new ArrayList<>(Arrays.asList("node", "nodes"));
         /**
          * Time which executed job remaining in system.
          * @see java.time.Duration#parse(CharSequence)
          */
         private String executedJobLifetime = "P1D";
+        /**
+         * Max number of executed jobs remaining in system.
+         */
+        private int maxExecutedJobs = 1000;
+        /**
+         * Directory of job history, when it empty history is kept in memory and lost on restart.
+         */
+        private String historyPath;
+        /**
+         * Size of history segment file in bytes.
+         */
+        private long historySegmentSize = 16 * 1024 * 1024;
+        /**
+         * Max number of events kept in history for each job, older events are removed.
+         */
+        private int maxJobEvents = 10000;
     }
 
     @Autowired
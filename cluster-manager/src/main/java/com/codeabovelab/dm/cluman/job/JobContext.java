@@ -16,6 +16,10 @@
 
 package com.codeabovelab.dm.cluman.job;
 
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -74,6 +78,34 @@ public final class JobContext /* we cannot use AutoCloseable on this bean, so it
         return context;
     }
 
+    /**
+     * Wrap task for running in another thread (for example in pool of job), task will see current context,
+     * beans of current iteration and credentials of job.
+     * @param task task
+     * @return wrapped task
+     */
+    public static Runnable wrap(Runnable task) {
+        final JobContext context = getCurrent();
+        final ScopeBeans beans = JobScopeIteration.getBeans();
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return () -> {
+            final JobContext oldContext = getCurrent();
+            final ScopeBeans oldBeans = JobScopeIteration.getBeans();
+            TL.set(context);
+            JobScopeIteration.setBeans(beans);
+            TempAuth tempAuth = auth == null ? null : TempAuth.open(auth);
+            try {
+                task.run();
+            } finally {
+                if(tempAuth != null) {
+                    tempAuth.close();
+                }
+                TL.set(oldContext);
+                JobScopeIteration.setBeans(oldBeans);
+            }
+        };
+    }
+
     /**
      * Remove context from thread local. <p/>
      * Note that this method does not close context.
@@ -29,12 +29,26 @@ import java.time.ZoneOffset;
 @Data
 public class JobEvent implements JobEventCriteria, EventWithTime {
     public static final String BUS = "bus.cluman.job";
-    private final LocalDateTime time = LocalDateTime.now();
+    private final LocalDateTime time;
     private final JobInfo info;
     private final String message;
     @JsonSerialize(converter = StringConverter.class)
     private final Throwable exception;
 
+    public JobEvent(JobInfo info, String message, Throwable exception) {
+        this(LocalDateTime.now(), info, message, exception);
+    }
+
+    /**
+     * Constructor for events restored from history.
+     */
+    public JobEvent(LocalDateTime time, JobInfo info, String message, Throwable exception) {
+        this.time = time;
+        this.info = info;
+        this.message = message;
+        this.exception = exception;
+    }
+
     @Override
     public long getTimeInMilliseconds() {
         return time.toEpochSecond(ZoneOffset.UTC);
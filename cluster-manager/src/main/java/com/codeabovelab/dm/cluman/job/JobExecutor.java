@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.job;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codeabovelab.dm.common.meter.MetricNameUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded executor of jobs. Jobs are waiting in queue ordered by {@link JobPriority priority} and time of submit,
+ * free worker takes first job which does not exceed limits of concurrently running jobs on its clusters and nodes.
+ */
+@Slf4j
+class JobExecutor implements AutoCloseable {
+
+    private static final String CLUSTER = "cluster:";
+    private static final String NODE = "node:";
+
+    private final class Task extends FutureTask<Void> implements Comparable<Task> {
+        private final JobPriority priority;
+        private final long seq;
+        private final Set<String> keys;
+        private final long submitTime = System.nanoTime();
+
+        Task(Runnable runnable, JobPriority priority, Set<String> keys) {
+            super(runnable, null);
+            this.priority = priority == null ? JobPriority.NORMAL : priority;
+            this.seq = counter.getAndIncrement();
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if(cancelled) {
+                dequeue(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            int res = priority.compareTo(o.priority);
+            if(res == 0) {
+                res = Long.compare(seq, o.seq);
+            }
+            return res;
+        }
+    }
+
+    private final AtomicLong counter = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeSet<Task> queue = new TreeSet<>();
+    private final Map<String, Integer> running = new HashMap<>();
+    private final int perCluster;
+    private final int perNode;
+    private final List<Thread> workers;
+    private final Timer waitTimer = new Timer();
+    private int active;
+    private boolean closed;
+
+    /**
+     * @param name name of threads
+     * @param threads count of workers
+     * @param perCluster max count of concurrently running jobs of one cluster, zero or less mean unlimited
+     * @param perNode max count of concurrently running jobs of one node, zero or less mean unlimited
+     */
+    JobExecutor(String name, int threads, int perCluster, int perNode) {
+        Assert.isTrue(threads > 0, "threads must be greater than zero");
+        this.perCluster = perCluster;
+        this.perNode = perNode;
+        ThreadFactory tf = new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(name + "-%d")
+          .build();
+        List<Thread> workers = new ArrayList<>(threads);
+        for(int i = 0; i < threads; ++i) {
+            Thread thread = tf.newThread(this::work);
+            workers.add(thread);
+            thread.start();
+        }
+        this.workers = Collections.unmodifiableList(workers);
+    }
+
+    void registerMetrics(MetricRegistry registry) {
+        registry.register(MetricNameUtil.getName(JobsManagerImpl.class, "queue.size"), (Gauge<Integer>) this::getQueueSize);
+        registry.register(MetricNameUtil.getName(JobsManagerImpl.class, "queue.wait"), waitTimer);
+        registry.register(MetricNameUtil.getName(JobsManagerImpl.class, "active"), (Gauge<Integer>) this::getActive);
+    }
+
+    /**
+     * Submit job into queue.
+     * @param job job
+     * @param priority priority, null mean {@link JobPriority#NORMAL}
+     * @param clusters clusters which is used by job
+     * @param nodes nodes which is used by job
+     * @return future of job
+     */
+    Future<?> submit(Runnable job, JobPriority priority, Collection<String> clusters, Collection<String> nodes) {
+        Set<String> keys = new HashSet<>();
+        if(perCluster > 0) {
+            clusters.forEach(c -> keys.add(CLUSTER + c));
+        }
+        if(perNode > 0) {
+            nodes.forEach(n -> keys.add(NODE + n));
+        }
+        Task task = new Task(job, priority, keys);
+        lock.lock();
+        try {
+            if(closed) {
+                throw new IllegalStateException("Executor is closed.");
+            }
+            queue.add(task);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
+    private void dequeue(Task task) {
+        lock.lock();
+        try {
+            queue.remove(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count of jobs in queue.
+     * @return count of waiting jobs
+     */
+    int getQueueSize() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count of running jobs.
+     * @return count of running jobs
+     */
+    int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Timer getWaitTimer() {
+        return waitTimer;
+    }
+
+    private boolean isAllowed(Task task) {
+        for(String key: task.keys) {
+            int limit = key.startsWith(CLUSTER) ? perCluster : perNode;
+            if(running.getOrDefault(key, 0) >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while(!closed) {
+                for(Task task: queue) {
+                    if(isAllowed(task)) {
+                        queue.remove(task);
+                        task.keys.forEach(k -> running.merge(k, 1, Integer::sum));
+                        active++;
+                        return task;
+                    }
+                }
+                changed.await();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Task task) {
+        lock.lock();
+        try {
+            task.keys.forEach(k -> running.computeIfPresent(k, (key, count) -> count > 1 ? count - 1 : null));
+            active--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while(true) {
+            Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if(task == null) {
+                break;
+            }
+            try {
+                waitTimer.update(System.nanoTime() - task.submitTime, TimeUnit.NANOSECONDS);
+                task.run();
+            } catch (Throwable e) {
+                log.error("Error in job {}", task, e);
+            } finally {
+                // clear interrupted flag of cancelled job
+                Thread.interrupted();
+                release(task);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        List<Task> rest;
+        lock.lock();
+        try {
+            closed = true;
+            rest = new ArrayList<>(queue);
+            queue.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        rest.forEach(t -> t.cancel(false));
+        workers.forEach(Thread::interrupt);
+    }
+}
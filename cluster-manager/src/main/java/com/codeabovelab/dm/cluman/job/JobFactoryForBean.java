@@ -45,8 +45,13 @@ class JobFactoryForBean implements JobFactory {
 
     @Override
     public JobInstance create(JobParameters parameters) {
+        String id;
+        do {
+            id = jobName + "-" + counter.getAndIncrement();
+            // history may contain jobs from previous runs of application
+        } while(jobManager.getHistory().contains(id));
         JobInfo info = JobInfo.builder()
-          .id(jobName + "-" + counter.getAndIncrement())
+          .id(id)
           .title(parameters.getTitle())
           .type(jobName)
           .createTime(LocalDateTime.now())
@@ -55,6 +60,7 @@ class JobFactoryForBean implements JobFactory {
         boolean repeatable = ann.repeatable();
         AbstractJobInstance.Config config = new AbstractJobInstance.Config();
         config.setRepeatable(repeatable);
+        config.setPriority(ann.priority());
         config.setJob(new JobBeanTask(jobManager.getBeanFactory(), jobName));
         config.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
         config.setJobsManager(this.jobManager);
@@ -0,0 +1,841 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.job;
+
+import com.codeabovelab.dm.common.utils.Throwables;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only history of job instances and its events. <p/>
+ * Events are appended to segments 'jobs-&lt;number&gt;.log' in directory (or in memory when directory is null),
+ * index of event positions by job instance id and index of instance ids by job type are kept in memory and
+ * restored from segments at start. Ended jobs are removed by size and age policy, segments which contain mostly
+ * removed events are compacted. <p/>
+ * Each record has sequence number, because compaction moves events between segments, records are replayed in order
+ * of sequence. Writes are buffered in memory and flushed by {@link #flush()}, when buffer is full, or before read
+ * of not flushed record.
+ */
+@Slf4j
+public class JobHistory implements AutoCloseable {
+
+    private static final String PREFIX = "jobs-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 8;
+    private static final int WRITE_BUFFER = 64 * 1024;
+    private static final byte VERSION = 2;
+    /**
+     * Offset of sequence and ordinal of event in record, they are set at append.
+     */
+    private static final int SEQ_OFFSET = 1;
+    private static final int ORDINAL_OFFSET = SEQ_OFFSET + 8;
+    /**
+     * Mark of record which is written on deletion of job, it prevents restoring of job events on replay.
+     */
+    private static final byte TOMBSTONE = 0x7F;
+
+    /**
+     * Throwable restored from history, it has only text of original stack trace.
+     */
+    public static final class StoredException extends Exception {
+        private final String trace;
+
+        StoredException(String trace) {
+            super(firstLine(trace), null, false, false);
+            this.trace = trace;
+        }
+
+        private static String firstLine(String trace) {
+            int end = trace.indexOf('\n');
+            return end < 0 ? trace : trace.substring(0, end).trim();
+        }
+
+        @Override
+        public void printStackTrace(PrintStream s) {
+            s.print(trace);
+        }
+
+        @Override
+        public void printStackTrace(PrintWriter s) {
+            s.print(trace);
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    private static final class Segment {
+        private final int number;
+        private final File file;
+        private final FileChannel channel;
+        private final List<byte[]> memory;
+        private final ByteArrayOutputStream pending;
+        private long size;
+        private long flushed;
+        private int total;
+        private int live;
+        private int tombs;
+
+        Segment(int number, File file) throws IOException {
+            this.number = number;
+            this.file = file;
+            if(file == null) {
+                this.channel = null;
+                this.memory = new ArrayList<>();
+                this.pending = null;
+            } else {
+                this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                  StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.memory = null;
+                this.pending = new ByteArrayOutputStream(WRITE_BUFFER);
+                this.size = channel.size();
+                this.flushed = this.size;
+            }
+        }
+
+        /**
+         * @return offset of record in segment
+         */
+        int write(byte[] data) throws IOException {
+            total++;
+            live++;
+            if(channel == null) {
+                memory.add(data);
+                size += data.length;
+                return memory.size() - 1;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(data.length);
+            header.putInt(crc(data));
+            pending.write(header.array());
+            pending.write(data);
+            long pos = size;
+            size += HEADER + data.length;
+            if(pending.size() >= WRITE_BUFFER) {
+                flush();
+            }
+            return (int) pos;
+        }
+
+        void flush() throws IOException {
+            if(channel == null || pending.size() == 0) {
+                return;
+            }
+            ByteBuffer bb = ByteBuffer.wrap(pending.toByteArray());
+            while(bb.hasRemaining()) {
+                flushed += channel.write(bb, flushed);
+            }
+            pending.reset();
+        }
+
+        byte[] read(int offset) throws IOException {
+            if(channel == null) {
+                return memory.get(offset);
+            }
+            if(offset >= flushed) {
+                flush();
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            readFully(header, offset);
+            header.flip();
+            int len = header.getInt();
+            int crc = header.getInt();
+            ByteBuffer data = ByteBuffer.allocate(len);
+            readFully(data, offset + HEADER);
+            byte[] arr = data.array();
+            if(crc != crc(arr)) {
+                throw new IOException("Bad checksum of record at " + offset + " in " + file);
+            }
+            return arr;
+        }
+
+        private void readFully(ByteBuffer bb, long pos) throws IOException {
+            while(bb.hasRemaining()) {
+                int read = channel.read(bb, pos + bb.position());
+                if(read < 0) {
+                    throw new EOFException("Unexpected end of " + file);
+                }
+            }
+        }
+
+        void delete() {
+            close();
+            if(file != null && !file.delete()) {
+                log.warn("Can not delete {}", file);
+            }
+        }
+
+        void close() {
+            if(channel != null) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    log.error("Can not flush {}", file, e);
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.error("Can not close {}", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tombstone is live while any segment with events of deleted job exists.
+     */
+    private static final class Tomb {
+        private final int segment;
+        private final int oldest;
+
+        Tomb(int segment, int oldest) {
+            this.segment = segment;
+            this.oldest = oldest;
+        }
+    }
+
+    /**
+     * Record which is read from segment at replay.
+     */
+    private static final class Record {
+        private final long seq;
+        private final long position;
+        private final JobInfo info;
+        private final int ordinal;
+        private final String deleted;
+
+        Record(long seq, long position, JobInfo info, int ordinal, String deleted) {
+            this.seq = seq;
+            this.position = position;
+            this.info = info;
+            this.ordinal = ordinal;
+            this.deleted = deleted;
+        }
+    }
+
+    private static final class Entry {
+        private volatile JobInfo info;
+        private long[] positions = new long[4];
+        private int count;
+        /**
+         * Ordinal of first kept event, it is count of events which is removed from head of log. Ordinals are
+         * stored in records, so offsets of events are stable after trimming and restart.
+         */
+        private int skipped;
+
+        int next() {
+            return skipped + count;
+        }
+
+        void add(int ordinal, long pos) {
+            if(count == 0) {
+                skipped = ordinal;
+            }
+            if(count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = pos;
+        }
+
+        void trim(int max, Consumer<Long> onRemove) {
+            int remove = count - max;
+            if(remove <= 0) {
+                return;
+            }
+            for(int i = 0; i < remove; ++i) {
+                onRemove.accept(positions[i]);
+            }
+            System.arraycopy(positions, remove, positions, 0, count - remove);
+            count -= remove;
+            skipped += remove;
+        }
+    }
+
+    private final File dir;
+    private final long segmentSize;
+    private final int maxJobs;
+    private final long maxAge;
+    private final int maxEvents;
+    private final Object lock = new Object();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> byType = new ConcurrentHashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final List<Tomb> tombs = new ArrayList<>();
+    /**
+     * Ids of jobs which is deleted before their end, later events of these jobs are not appended.
+     */
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    private Segment current;
+    private long seq;
+    private boolean closed;
+
+    /**
+     * @param dir directory of history, when null history is stored in memory
+     * @param segmentSize size of segment in bytes
+     * @param maxJobs max count of ended jobs in history
+     * @param maxAge max age of ended jobs in seconds
+     * @param maxEvents max count of events for one job, older events are removed
+     */
+    public JobHistory(File dir, long segmentSize, int maxJobs, long maxAge, int maxEvents) throws IOException {
+        Assert.isTrue(segmentSize > 0 && segmentSize < Integer.MAX_VALUE, "segmentSize must be in (0, 2GB)");
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxJobs = maxJobs;
+        this.maxAge = maxAge;
+        this.maxEvents = maxEvents;
+        int last = 0;
+        if(dir != null) {
+            if(!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Can not create " + dir);
+            }
+            last = load();
+        }
+        this.current = openSegment(last + 1);
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        File file = dir == null ? null : new File(dir, String.format("%s%08x%s", PREFIX, number, SUFFIX));
+        Segment segment = new Segment(number, file);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private int load() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if(files == null) {
+            return 0;
+        }
+        Arrays.sort(files);
+        int last = 0;
+        List<Record> records = new ArrayList<>();
+        for(File file: files) {
+            String name = file.getName();
+            int number = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), 16);
+            Segment segment = openSegment(number);
+            last = Math.max(last, number);
+            read(segment, records);
+        }
+        // compaction moves events to newer segments, so file order is not order of events
+        records.sort(Comparator.comparingLong(r -> r.seq));
+        for(Record record: records) {
+            int number = segmentOf(record.position);
+            if(record.deleted != null) {
+                Entry entry = unindex(record.deleted);
+                tombs.add(new Tomb(number, entry == null ? number : oldestSegment(entry)));
+            } else {
+                index(record.info, record.ordinal, record.position);
+            }
+            seq = Math.max(seq, record.seq);
+        }
+        removeUnused();
+        return last;
+    }
+
+    private void read(Segment segment, List<Record> records) throws IOException {
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)))) {
+            while(true) {
+                int len;
+                try {
+                    len = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                Record record;
+                try {
+                    int crc = in.readInt();
+                    byte[] data = new byte[len];
+                    in.readFully(data);
+                    if(crc != crc(data)) {
+                        throw new IOException("Bad checksum");
+                    }
+                    long position = position(segment.number, (int) good);
+                    if(data.length > 0 && data[0] == TOMBSTONE) {
+                        record = new Record(readSeq(data), position, null, 0, decodeTombstone(data));
+                    } else {
+                        JobEvent event = decode(data);
+                        record = new Record(readSeq(data), position, event.getInfo(), readOrdinal(data), null);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Damaged record in {} at {}, tail will be truncated: {}", segment.file, good, e.toString());
+                    break;
+                }
+                segment.total++;
+                segment.live++;
+                if(record.deleted != null) {
+                    segment.tombs++;
+                }
+                records.add(record);
+                good += HEADER + len;
+            }
+        }
+        if(good != segment.size) {
+            segment.channel.truncate(good);
+            segment.size = good;
+            segment.flushed = good;
+        }
+    }
+
+    /**
+     * Append event to history.
+     * @param event event
+     */
+    public void append(JobEvent event) {
+        JobInfo info = event.getInfo();
+        if(deleted.contains(info.getId())) {
+            return;
+        }
+        byte[] data = encode(event);
+        synchronized (lock) {
+            if(closed || deleted.contains(info.getId())) {
+                return;
+            }
+            try {
+                Entry entry = entries.get(info.getId());
+                int ordinal = entry == null ? 0 : entry.next();
+                ByteBuffer.wrap(data).putLong(SEQ_OFFSET, ++seq).putInt(ORDINAL_OFFSET, ordinal);
+                int offset = writeCurrent(data);
+                index(info, ordinal, position(current.number, offset));
+            } catch (IOException e) {
+                log.error("Can not append event of {} to history", event.getId(), e);
+            }
+        }
+    }
+
+    private int writeCurrent(byte[] data) throws IOException {
+        if(current.size > 0 && current.size + data.length > segmentSize) {
+            current.flush();
+            current = openSegment(current.number + 1);
+        }
+        return current.write(data);
+    }
+
+    /**
+     * Write buffered records to disk.
+     */
+    public void flush() {
+        synchronized (lock) {
+            if(closed) {
+                return;
+            }
+            try {
+                current.flush();
+            } catch (IOException e) {
+                log.error("Can not flush {}", current.file, e);
+            }
+        }
+    }
+
+    private void index(JobInfo info, int ordinal, long position) {
+        Entry entry = entries.computeIfAbsent(info.getId(), (id) -> new Entry());
+        entry.info = info;
+        entry.add(ordinal, position);
+        if(maxEvents > 0) {
+            entry.trim(maxEvents, this::unref);
+        }
+        byType.computeIfAbsent(info.getType(), (t) -> ConcurrentHashMap.newKeySet()).add(info.getId());
+    }
+
+    private void unref(long position) {
+        Segment segment = segments.get(segmentOf(position));
+        if(segment != null) {
+            segment.live--;
+        }
+    }
+
+    /**
+     * Check that history contains job instance with specified id.
+     * @param id id of job instance
+     * @return true when job is present
+     */
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Last known info of job instance.
+     * @param id id of job instance
+     * @return info or null
+     */
+    public JobInfo getInfo(String id) {
+        Entry entry = entries.get(id);
+        return entry == null ? null : entry.info;
+    }
+
+    /**
+     * Infos of all job instances in history.
+     * @return list of infos
+     */
+    public List<JobInfo> getInfos() {
+        return entries.values().stream().map(e -> e.info).collect(Collectors.toList());
+    }
+
+    /**
+     * Infos of job instances of specified type.
+     * @param type type of job
+     * @return list of infos
+     */
+    public List<JobInfo> getInfosByType(String type) {
+        Set<String> ids = byType.get(type);
+        if(ids == null) {
+            return Collections.emptyList();
+        }
+        List<JobInfo> infos = new ArrayList<>(ids.size());
+        for(String id: ids) {
+            JobInfo info = getInfo(id);
+            if(info != null) {
+                infos.add(info);
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * Offset after last event of job, it equal to count of all events which has been appended for job.
+     * @param id id of job instance
+     * @return offset or zero when job is absent
+     */
+    public int getEventsEnd(String id) {
+        Entry entry = entries.get(id);
+        if(entry == null) {
+            return 0;
+        }
+        synchronized (lock) {
+            return entry.next();
+        }
+    }
+
+    /**
+     * Read page of job events.
+     * @param id id of job instance
+     * @param offset offset of first event, events before {@link #getEventsEnd(String)} - maxEvents may be removed
+     * @param limit max count of events, zero or less mean unlimited
+     * @return list of events, or empty list when job is absent
+     */
+    public List<JobEvent> getEvents(String id, int offset, int limit) {
+        Entry entry = entries.get(id);
+        if(entry == null) {
+            return Collections.emptyList();
+        }
+        List<JobEvent> events = new ArrayList<>();
+        synchronized (lock) {
+            int from = Math.max(0, offset - entry.skipped);
+            int to = entry.count;
+            if(limit > 0) {
+                to = Math.min(to, from + limit);
+            }
+            for(int i = from; i < to; ++i) {
+                long position = entry.positions[i];
+                Segment segment = segments.get(segmentOf(position));
+                try {
+                    events.add(decode(segment.read(offsetOf(position))));
+                } catch (IOException e) {
+                    log.error("Can not read event of {} from history", id, e);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Remove job from history. When job is not ended, its later events are not appended.
+     * @param id id of job instance
+     * @return true when job was present
+     */
+    public boolean delete(String id) {
+        synchronized (lock) {
+            Entry entry = unindex(id);
+            if(entry == null) {
+                return false;
+            }
+            if(!entry.info.getStatus().isEnd()) {
+                deleted.add(id);
+            }
+            if(dir != null && !closed && entry.count > 0) {
+                try {
+                    writeCurrent(encodeTombstone(++seq, id));
+                    current.tombs++;
+                    tombs.add(new Tomb(current.number, oldestSegment(entry)));
+                } catch (IOException e) {
+                    log.error("Can not write deletion of {} to history", id, e);
+                }
+            }
+            return true;
+        }
+    }
+
+    private Entry unindex(String id) {
+        Entry entry = entries.remove(id);
+        if(entry == null) {
+            return null;
+        }
+        for(int i = 0; i < entry.count; ++i) {
+            unref(entry.positions[i]);
+        }
+        Set<String> ids = byType.get(entry.info.getType());
+        if(ids != null) {
+            ids.remove(id);
+        }
+        return entry;
+    }
+
+    private static int oldestSegment(Entry entry) {
+        int oldest = Integer.MAX_VALUE;
+        for(int i = 0; i < entry.count; ++i) {
+            oldest = Math.min(oldest, segmentOf(entry.positions[i]));
+        }
+        return oldest;
+    }
+
+    /**
+     * Remove ended jobs which is older than max age or exceed max count, then compact segments.
+     */
+    public void clean() {
+        List<JobInfo> ended = getInfos().stream()
+          .filter(i -> i.getStatus().isEnd())
+          .sorted(Comparator.comparing(JobInfo::getEndTime).reversed())
+          .collect(Collectors.toList());
+        LocalDateTime oldest = LocalDateTime.now().minusSeconds(maxAge);
+        for(int i = 0; i < ended.size(); ++i) {
+            JobInfo info = ended.get(i);
+            if((maxJobs > 0 && i >= maxJobs) || (maxAge > 0 && info.getEndTime().isBefore(oldest))) {
+                delete(info.getId());
+            }
+        }
+        synchronized (lock) {
+            removeUnused();
+            compact();
+        }
+    }
+
+    private void removeUnused() {
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            Iterator<Segment> i = segments.values().iterator();
+            while(i.hasNext()) {
+                Segment segment = i.next();
+                if(segment != current && segment.live <= 0) {
+                    segment.delete();
+                    i.remove();
+                }
+            }
+            // tombstone is not needed when all segments with events of deleted job are removed
+            Iterator<Tomb> ti = tombs.iterator();
+            while(ti.hasNext()) {
+                Tomb tomb = ti.next();
+                if(!segments.subMap(tomb.oldest, true, tomb.segment, false).isEmpty()) {
+                    continue;
+                }
+                ti.remove();
+                Segment segment = segments.get(tomb.segment);
+                if(segment != null) {
+                    segment.live--;
+                    segment.tombs--;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Move live events of sparse segments to current segment.
+     */
+    private void compact() {
+        List<Segment> sparse = segments.values().stream()
+          .filter(s -> s != current && s.tombs == 0 && s.live * 2 < s.total)
+          .collect(Collectors.toList());
+        if(sparse.isEmpty()) {
+            return;
+        }
+        Set<Integer> numbers = sparse.stream().map(s -> s.number).collect(Collectors.toSet());
+        for(Entry entry: entries.values()) {
+            for(int i = 0; i < entry.count; ++i) {
+                long position = entry.positions[i];
+                if(!numbers.contains(segmentOf(position))) {
+                    continue;
+                }
+                Segment from = segments.get(segmentOf(position));
+                try {
+                    byte[] data = from.read(offsetOf(position));
+                    // record keeps its sequence, so replay order is not changed
+                    entry.positions[i] = position(current.number, writeCurrent(data));
+                    from.live--;
+                } catch (IOException e) {
+                    log.error("Can not move event to {}", current.file, e);
+                    return;
+                }
+            }
+        }
+        removeUnused();
+    }
+
+    private static byte[] encode(JobEvent event) {
+        JobInfo info = event.getInfo();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(VERSION);
+            // place for sequence and ordinal
+            out.writeLong(0);
+            out.writeInt(0);
+            writeString(out, info.getId());
+            writeString(out, info.getType());
+            writeString(out, info.getTitle());
+            writeString(out, info.getStatus().name());
+            writeTime(out, info.getCreateTime());
+            writeTime(out, info.getStartTime());
+            writeTime(out, info.getEndTime());
+            writeTime(out, event.getTime());
+            writeString(out, event.getMessage());
+            writeString(out, Throwables.printToString(event.getException()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] encodeTombstone(long seq, String id) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(TOMBSTONE);
+            out.writeLong(seq);
+            writeString(out, id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static String decodeTombstone(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            in.readByte();
+            in.readLong();
+            return readString(in);
+        }
+    }
+
+    private static long readSeq(byte[] data) {
+        return ByteBuffer.wrap(data).getLong(SEQ_OFFSET);
+    }
+
+    private static int readOrdinal(byte[] data) {
+        return ByteBuffer.wrap(data).getInt(ORDINAL_OFFSET);
+    }
+
+    private static JobEvent decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if(version != VERSION) {
+                throw new IOException("Unsupported version of record: " + version);
+            }
+            in.readLong();
+            in.readInt();
+            JobInfo info = JobInfo.builder()
+              .id(readString(in))
+              .type(readString(in))
+              .title(readString(in))
+              .status(JobStatus.valueOf(readString(in)))
+              .createTime(readTime(in))
+              .startTime(readTime(in))
+              .endTime(readTime(in))
+              .build();
+            LocalDateTime time = readTime(in);
+            String message = readString(in);
+            String trace = readString(in);
+            return new JobEvent(time, info, message, trace == null ? null : new StoredException(trace));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if(str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if(len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if(time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            segments.values().forEach(Segment::close);
+        }
+    }
+}
@@ -54,7 +54,7 @@ public interface JobInstance {
     ListenableFuture<JobInstance> atEnd();
 
     /**
-     * immutable list of job events
+     * immutable list of last job events, full log can be read from {@link JobsManager#getHistory()}
      * @return
      */
     List<JobEvent> getLog();
@@ -26,7 +26,18 @@ class JobInstanceImpl extends AbstractJobInstance {
 
     @Override
     protected boolean innerCancel() throws Exception {
-        Boolean res = compareAndSetStatus(JobStatus.STARTED, JobStatus.CANCELLED, () -> {
+        Boolean res = compareAndSetStatus(JobStatus.QUEUED, JobStatus.CANCELLED, () -> {
+            // job is not started, so nobody complete its future
+            boolean cancelled = this.executeHandle.cancel(false);
+            if(cancelled) {
+                atEndFuture.set(this);
+            }
+            return cancelled;
+        });
+        if(res != null) {
+            return res;
+        }
+        res = compareAndSetStatus(JobStatus.STARTED, JobStatus.CANCELLED, () -> {
             this.executeHandle.cancel(true);
             return true;
         });
@@ -37,8 +48,9 @@ class JobInstanceImpl extends AbstractJobInstance {
     protected boolean innerStart() throws Exception {
         Boolean res = compareAndSetStatus(JobStatus.CREATED, JobStatus.STARTING, () -> {
             try {
-                this.executeHandle = manager.execute(new JobWrapper(this.job));
-                setStatus(JobStatus.STARTED);
+                this.executeHandle = manager.submit(this, new JobWrapper(this.job));
+                // job may be already started by executor, so we can not simply set status
+                compareAndSetStatus(JobStatus.STARTING, JobStatus.QUEUED, null);
                 return true;
             } catch (Throwable t) {
                 setStatus(JobStatus.FAILED_JOB);
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.job;
+
+/**
+ * Priority of job in queue of executor. Jobs with higher priority are started first.
+ */
+public enum JobPriority {
+    /**
+     * Jobs which is started by user and he wait its results, like deploy or update.
+     */
+    HIGH,
+    NORMAL,
+    /**
+     * Housekeeping jobs, like cleanup of images.
+     */
+    LOW
+}
@@ -39,6 +39,14 @@ public class JobScopeIteration extends AbstractJobScope {
         return TL.get();
     }
 
+    static void setBeans(ScopeBeans beans) {
+        if(beans == null) {
+            TL.remove();
+        } else {
+            TL.set(beans);
+        }
+    }
+
     public static SafeCloseable open(JobContext jobContext) {
         final ScopeBeans old = TL.get();
         if(old != null) {
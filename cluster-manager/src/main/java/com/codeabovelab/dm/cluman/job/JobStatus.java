@@ -22,6 +22,10 @@ public enum JobStatus {
     CREATED(false),
     SCHEDULING(false),
     SCHEDULED(false),
+    /**
+     * Job is waiting in queue of executor.
+     */
+    QUEUED(false),
     STARTING(false),
     STARTED(false),
     FAILED_STEP(false),
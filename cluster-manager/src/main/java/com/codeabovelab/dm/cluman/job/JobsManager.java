@@ -45,4 +45,10 @@ public interface JobsManager extends JobFactory {
      * @return job instance or null
      */
     JobInstance getJob(String id);
+
+    /**
+     * History of job instances and its events, it also contains jobs which has been ended before restart.
+     * @return history
+     */
+    JobHistory getHistory();
 }
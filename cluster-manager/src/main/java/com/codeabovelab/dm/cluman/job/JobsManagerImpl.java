@@ -20,6 +20,7 @@ import com.codeabovelab.dm.common.mb.ConditionalMessageBusWrapper;
 import com.codeabovelab.dm.common.mb.ConditionalSubscriptions;
 import com.codeabovelab.dm.common.mb.MessageBus;
 import com.codeabovelab.dm.common.mb.MessageBusImpl;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
@@ -30,15 +31,17 @@ import org.springframework.context.SmartLifecycle;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 /**
  */
@@ -48,7 +51,13 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
     private Map<String, JobFactory> factories;
     private final MessageBus<JobEvent> bus;
     private final ConcurrentMap<JobParameters, JobInstance> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, JobInstance> jobsById = new ConcurrentHashMap<>();
+    private final JobHistory history;
+    private final int maxExecutedJobs;
     private final ExecutorService executor;
+    private final JobExecutor jobExecutor;
+    private final List<String> clusterParameters;
+    private final List<String> nodeParameters;
     private final ListableBeanFactory beanFactory;
     private final JobBeanDescriptionFactory descFactory;
     private final TaskScheduler scheduler;
@@ -67,10 +76,36 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
             this.bus.subscribe((e) -> log.debug("Job event: {}", e));
         }
         this.jobLifetime = parseJobLifetime(configuration.getExecutedJobLifetime());
+        this.maxExecutedJobs = configuration.getMaxExecutedJobs();
+        this.history = makeHistory(configuration);
+        // executor for short tasks like start or cancel of job
         this.executor = Executors.newCachedThreadPool(makeThreadFactory("executor"));
+        int poolSize = configuration.getExecutorPoolSize();
+        this.jobExecutor = new JobExecutor(getClass().getSimpleName() + "-jobs",
+          poolSize < 1 ? 100 : poolSize,
+          configuration.getMaxJobsPerCluster(),
+          configuration.getMaxJobsPerNode());
+        this.clusterParameters = configuration.getClusterParameters();
+        this.nodeParameters = configuration.getNodeParameters();
         this.scheduler = makeScheduler(configuration.getSchedulerPoolSize());
     }
 
+    @Autowired(required = false)
+    void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.jobExecutor.registerMetrics(metricRegistry);
+    }
+
+    private JobHistory makeHistory(JobConfiguration.JobsManagerConfiguration configuration) {
+        String path = configuration.getHistoryPath();
+        File dir = StringUtils.hasText(path) ? new File(path) : null;
+        try {
+            return new JobHistory(dir, configuration.getHistorySegmentSize(), this.maxExecutedJobs,
+              this.jobLifetime, configuration.getMaxJobEvents());
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not open job history in " + dir, e);
+        }
+    }
+
     private long parseJobLifetime(String expr) {
         if(StringUtils.hasText(expr)) {
             try {
@@ -103,14 +138,33 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
 
     @Scheduled(fixedRate = 60_000L)
     public void cleanJobs() {
-        List<JobInstance> list = new ArrayList<>(this.jobs.values());
-        // we remove jobs which has been ended at more than one day ago
+        // ended jobs, newest first
+        List<JobInstance> list = this.jobs.values().stream()
+          .filter(ji -> ji.getInfo().getStatus().isEnd())
+          .sorted(Comparator.comparing((JobInstance ji) -> ji.getInfo().getEndTime()).reversed())
+          .collect(Collectors.toList());
+        // we remove jobs which has been ended at more than lifetime ago, or exceed max count
         LocalDateTime last = LocalDateTime.now().minusSeconds(jobLifetime);
-        for(JobInstance jobInstance: list) {
-            if(last.isAfter(jobInstance.getInfo().getEndTime())) {
-                this.jobs.remove(jobInstance.getJobContext().getParameters());
+        for(int i = 0; i < list.size(); ++i) {
+            JobInstance jobInstance = list.get(i);
+            if(last.isAfter(jobInstance.getInfo().getEndTime()) || (maxExecutedJobs > 0 && i >= maxExecutedJobs)) {
+                removeJob(jobInstance);
             }
         }
+        this.history.clean();
+    }
+
+    /**
+     * History buffers events in memory, so we write them to disk periodically.
+     */
+    @Scheduled(fixedDelay = 1_000L)
+    public void flushHistory() {
+        this.history.flush();
+    }
+
+    private void removeJob(JobInstance jobInstance) {
+        this.jobs.remove(jobInstance.getJobContext().getParameters(), jobInstance);
+        this.jobsById.remove(jobInstance.getInfo().getId(), jobInstance);
     }
 
     private Map<String, JobFactory> loadFactories(ListableBeanFactory beanFactory) {
@@ -151,16 +205,23 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
 
     @Override
     public JobInstance getJob(String id) {
-        return jobs.values().stream().filter(j -> j.getInfo().getId().equals(id)).findFirst().orElse(null);
+        return jobsById.get(id);
+    }
+
+    @Override
+    public JobHistory getHistory() {
+        return history;
     }
 
     @Override
     public JobInstance deleteJob(String id) {
+        history.delete(id);
         JobInstance job = getJob(id);
         if(job == null) {
             return null;
         }
-        return jobs.remove(job.getJobContext().getParameters());
+        removeJob(job);
+        return job;
     }
 
     @Override
@@ -168,7 +229,9 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
         return jobs.computeIfAbsent(parameters, (params) -> {
             String type = parameters.getType();
             JobFactory jobFactory = getFactory(type);
-            return jobFactory.create(parameters);
+            JobInstance instance = jobFactory.create(parameters);
+            jobsById.put(instance.getInfo().getId(), instance);
+            return instance;
         });
     }
 
@@ -192,8 +255,51 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
         return this.executor.submit(run);
     }
 
-    ScheduledFuture<?> schedule(Runnable run, String schedule) {
-        return this.scheduler.schedule(run, new CronTrigger(schedule));
+    /**
+     * Submit job into queue of bounded executor.
+     * @param instance job instance, used for resolving of priority, clusters and nodes
+     * @param run task
+     * @return future of task
+     */
+    Future<?> submit(AbstractJobInstance instance, Runnable run) {
+        Map<String, Object> params = instance.getJobContext().getParameters().getParameters();
+        return this.jobExecutor.submit(run, instance.getPriority(),
+          getValues(params, clusterParameters),
+          getValues(params, nodeParameters));
+    }
+
+    private static Set<String> getValues(Map<String, Object> params, List<String> names) {
+        Set<String> values = new HashSet<>();
+        if(names == null || params == null) {
+            return values;
+        }
+        for(String name: names) {
+            Object value = params.get(name);
+            if(value instanceof Collection) {
+                ((Collection<?>) value).forEach(v -> addValue(values, v));
+            } else {
+                addValue(values, value);
+            }
+        }
+        return values;
+    }
+
+    private static void addValue(Set<String> values, Object value) {
+        if(value != null && StringUtils.hasText(value.toString())) {
+            values.add(value.toString());
+        }
+    }
+
+    /**
+     * Count of jobs which wait in queue of executor.
+     * @return count of jobs
+     */
+    int getQueueSize() {
+        return this.jobExecutor.getQueueSize();
+    }
+
+    ScheduledFuture<?> schedule(Runnable run, Date startTime) {
+        return this.scheduler.schedule(run, startTime);
     }
 
     ListableBeanFactory getBeanFactory() {
@@ -226,6 +332,8 @@ public class JobsManagerImpl implements JobsManager, SmartLifecycle {
     public void stop() {
         this.running = false;
         this.executor.shutdownNow();
+        this.jobExecutor.close();
+        this.history.close();
     }
 
     @Override
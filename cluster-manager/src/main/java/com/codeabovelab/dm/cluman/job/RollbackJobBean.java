@@ -23,7 +23,7 @@ import org.springframework.beans.factory.annotation.Autowired;
  * Rollback any job which is support it.
  * @see RollbackHandle
  */
-@JobBean(RollbackHandle.ROLLBACK_JOB)
+@JobBean(value = RollbackHandle.ROLLBACK_JOB, priority = JobPriority.HIGH)
 public class RollbackJobBean implements Runnable {
 
     /**
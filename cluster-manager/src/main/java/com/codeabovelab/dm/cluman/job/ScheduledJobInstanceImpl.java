@@ -46,14 +46,15 @@ class ScheduledJobInstanceImpl extends AbstractJobInstance {
         updateNextStart(calculateNextStart(schedule));
     }
 
-    private void updateNextStart(LocalDateTime startTime) {
+    private void updateNextStart(Date startTime) {
         JobInfo info = getInfo();
-        setInfo(info, JobInfo.builder().from(info).startTime(startTime).build());
+        setInfo(info, JobInfo.builder().from(info)
+          .startTime(LocalDateTime.ofInstant(startTime.toInstant(), ZoneId.systemDefault()))
+          .build());
     }
 
-    private LocalDateTime calculateNextStart(String schedule) {
-        Date next = new CronSequenceGenerator(schedule).next(new Date());
-        return LocalDateTime.ofInstant(next.toInstant(), ZoneId.systemDefault());
+    private Date calculateNextStart(String schedule) {
+        return new CronSequenceGenerator(schedule).next(new Date());
     }
 
     @Override
@@ -66,9 +67,9 @@ class ScheduledJobInstanceImpl extends AbstractJobInstance {
             Boolean res = compareAndSetStatus(status, JobStatus.CANCELLED, () -> {
                 cancel(this.scheduleHandle);
                 cancel(this.executeHandle);
-                // context not cleaned for if repeatable == true, therefore we need clean it there
-                JobScopeIteration.getBeans().close();
-                JobScope.getBeans().close();
+                // context not cleaned for if repeatable == true, therefore we need clean it there,
+                //  note that cancel is run out of job thread, and iteration scope is cleaned by running iteration
+                this.jobContext.getScopeBeans().close();
                 return true;
             });
             if(res != null) {
@@ -81,9 +82,8 @@ class ScheduledJobInstanceImpl extends AbstractJobInstance {
     protected boolean innerStart() throws Exception {
         Boolean res = compareAndSetStatus(JobStatus.CREATED, JobStatus.SCHEDULING, () -> {
             try {
-                // we cannot schedule execution in another executor, because it hide real time of job execution and cause conflicts
-                this.scheduleHandle = manager.schedule(new JobWrapper(this.job), this.getJobContext().getParameters().getSchedule());
                 setStatus(JobStatus.SCHEDULED);
+                scheduleNext();
                 return true;
             } catch (Throwable t) {
                 fail(JobStatus.FAILED_JOB, t);
@@ -93,6 +93,32 @@ class ScheduledJobInstanceImpl extends AbstractJobInstance {
         return res != null && res;
     }
 
+    private void scheduleNext() {
+        Date next = calculateNextStart(this.getJobContext().getParameters().getSchedule());
+        this.scheduleHandle = manager.schedule(this::runIteration, next);
+        if(this.statusRef.get().isEnd()) {
+            // job was cancelled while we schedule it
+            cancel(this.scheduleHandle);
+        }
+    }
+
+    /**
+     * Iteration is run on executor of jobs, so it follow its limits. Next iteration is scheduled at end of current,
+     * therefore iterations do not overlap and scheduler thread does not wait for them.
+     */
+    private void runIteration() {
+        JobWrapper wrapper = new JobWrapper(this.job);
+        this.executeHandle = manager.submit(this, () -> {
+            try {
+                wrapper.run();
+            } finally {
+                if(!this.statusRef.get().isEnd()) {
+                    scheduleNext();
+                }
+            }
+        });
+    }
+
     @Override
     protected JobStatus completedStatus() {
         return JobStatus.SCHEDULED;
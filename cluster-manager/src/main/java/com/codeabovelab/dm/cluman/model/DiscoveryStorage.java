@@ -71,4 +71,10 @@ public interface DiscoveryStorage extends DockerServiceRegistry {
     void deleteNodeGroup(String clusterId);
 
     List<NodesGroup> getClusters();
+
+    /**
+     * Version of clusters, it is incremented after each change of stored clusters.
+     * @return version
+     */
+    long getVersion();
 }
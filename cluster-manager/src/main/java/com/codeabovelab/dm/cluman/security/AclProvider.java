@@ -30,4 +30,12 @@ public interface AclProvider {
     void update(Serializable id, AclModifier operator);
 
     void list(Consumer<AclSource> consumer);
+
+    /**
+     * Version of provided ACLs, it is incremented after each their change.
+     * @return version, or zero when provider does not track changes
+     */
+    default long getVersion() {
+        return 0L;
+    }
 }
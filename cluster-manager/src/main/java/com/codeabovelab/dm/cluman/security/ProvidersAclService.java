@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
@@ -32,6 +33,7 @@ public class ProvidersAclService extends AbstractAclService {
 
     private final PermissionGrantingStrategy pgs;
     private final ConcurrentMap<String, AclProvider> providers = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
 
     public ProvidersAclService(PermissionGrantingStrategy permissionGrantingStrategy) {
         this.pgs = permissionGrantingStrategy;
@@ -73,6 +75,23 @@ public class ProvidersAclService extends AbstractAclService {
 
     public void updateAclSource(ObjectIdentity oid, AclModifier modifier) {
         AclProvider provider = getAclProvider(oid);
-        provider.update(oid.getIdentifier(), modifier);
+        try {
+            provider.update(oid.getIdentifier(), modifier);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Version of all ACLs, it is incremented after each change of any ACL. Note that versions of providers only
+     * grow, so their sum is changed at each change of any provider.
+     * @return version
+     */
+    public long getVersion() {
+        long sum = version.get();
+        for(AclProvider provider : providers.values()) {
+            sum += provider.getVersion();
+        }
+        return sum;
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.source;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.model.DockerContainer;
+import com.codeabovelab.dm.cluman.model.Node;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.common.utils.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inspect containers in parallel with limit of concurrent inspections on each node. Details are obtained through
+ * {@link DockerService#getContainer(String)}, therefore details which is already cached by service are reused.
+ */
+class ContainersInspector implements AutoCloseable {
+
+    private final int maxPerNode;
+    private final ExecutorService executor;
+
+    /**
+     * @param parallelism max count of concurrent inspections
+     * @param maxPerNode max count of concurrent inspections on one node
+     */
+    ContainersInspector(int parallelism, int maxPerNode) {
+        Assert.isTrue(parallelism > 0, "parallelism must be greater than zero");
+        Assert.isTrue(maxPerNode > 0, "maxPerNode must be greater than zero");
+        this.maxPerNode = maxPerNode;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .setDaemon(true)
+          .build());
+    }
+
+    /**
+     * Inspect specified containers, it run with credentials of current user.
+     * @param service service
+     * @param containers containers
+     * @return details in order of containers, null for containers which is not exists
+     */
+    List<ContainerDetails> inspect(DockerService service, List<DockerContainer> containers) {
+        final int size = containers.size();
+        final ContainerDetails[] results = new ContainerDetails[size];
+        Map<String, List<Integer>> byNode = new HashMap<>();
+        for(int i = 0; i < size; ++i) {
+            Node node = containers.get(i).getNode();
+            byNode.computeIfAbsent(node == null ? "" : node.getName(), (n) -> new ArrayList<>()).add(i);
+        }
+        final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        List<Future<?>> futures = new ArrayList<>();
+        for(List<Integer> indexes: byNode.values()) {
+            final AtomicInteger next = new AtomicInteger();
+            // each lane inspects containers of node one by one, so node never has more than 'maxPerNode' inspections
+            Runnable lane = () -> {
+                int i;
+                while((i = next.getAndIncrement()) < indexes.size() && !Thread.currentThread().isInterrupted()) {
+                    int index = indexes.get(i);
+                    results[index] = service.getContainer(containers.get(index).getId());
+                }
+            };
+            int lanes = Math.min(maxPerNode, indexes.size());
+            for(int i = 0; i < lanes; ++i) {
+                futures.add(executor.submit(withAuth(auth, lane)));
+            }
+        }
+        try {
+            for(Future<?> future: futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw Throwables.asRuntime(e.getCause());
+        }
+        return Arrays.asList(results);
+    }
+
+    private static Runnable withAuth(Authentication auth, Runnable task) {
+        if(auth == null) {
+            return task;
+        }
+        return () -> {
+            try(TempAuth ta = TempAuth.open(auth)) {
+                task.run();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
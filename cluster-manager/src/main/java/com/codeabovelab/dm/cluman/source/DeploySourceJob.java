@@ -18,11 +18,14 @@ package com.codeabovelab.dm.cluman.source;
 
 import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceEvent;
 import com.codeabovelab.dm.cluman.cluster.docker.management.argument.CreateContainerArg;
 import com.codeabovelab.dm.cluman.cluster.docker.management.argument.DeleteContainerArg;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.CreateAndStartContainerResult;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
 import com.codeabovelab.dm.cluman.ds.SwarmUtils;
 import com.codeabovelab.dm.cluman.ds.clusters.NodesGroupConfig;
 import com.codeabovelab.dm.cluman.ds.clusters.RealCluster;
@@ -35,24 +38,40 @@ import com.codeabovelab.dm.cluman.ds.swarm.NetworkManager;
 import com.codeabovelab.dm.cluman.job.JobBean;
 import com.codeabovelab.dm.cluman.job.JobContext;
 import com.codeabovelab.dm.cluman.job.JobParam;
+import com.codeabovelab.dm.cluman.job.JobPriority;
 import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.utils.ContainerUtils;
+import com.codeabovelab.dm.common.mb.Subscriptions;
 import com.codeabovelab.dm.common.utils.Joiner;
 import com.codeabovelab.dm.common.utils.Throwables;
 import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * A job which do deploying of system source.
+ * A job which do deploying of system source. Containers are deployed concurrently, except containers which depend on
+ * others (through links or volumes), they wait until its dependencies are running. Dependencies of all containers
+ * are checked before deploying, so source with cyclic dependencies is not deployed at all.
  */
-@JobBean(DeploySourceJob.NAME)
+@JobBean(value = DeploySourceJob.NAME, priority = JobPriority.HIGH)
 public class DeploySourceJob implements Runnable {
 
     public static final String NAME = "job.deploySource";
+    private static final long NODES_TIMEOUT = 90;
+    private static final long NETWORK_TIMEOUT = 90;
+    private static final long READY_TIMEOUT = 60;
+    private static final long MIN_POLL = 1;
+    private static final long MAX_POLL = 15;
 
     public enum ConflictResolution {
         /**
@@ -101,6 +120,12 @@ public class DeploySourceJob implements Runnable {
     @JobParam("options")
     private DeployOptions options = DeployOptions.DEFAULT;
 
+    /**
+     * Max count of concurrently deployed containers.
+     */
+    @JobParam("parallelism")
+    private int parallelism = 4;
+
     @Autowired
     private DiscoveryStorage discoveryStorage;
 
@@ -122,20 +147,53 @@ public class DeploySourceJob implements Runnable {
     @Autowired
     private JobContext jobContext;
 
+    @Autowired
+    @Qualifier(NodeEvent.BUS)
+    private Subscriptions<NodeEvent> nodeSubscriptions;
+
+    @Autowired
+    @Qualifier(DockerServiceEvent.BUS)
+    private Subscriptions<DockerServiceEvent> dockerServiceSubscriptions;
+
+    @Autowired
+    @Qualifier(DockerLogEvent.BUS)
+    private Subscriptions<DockerLogEvent> dockerLogSubscriptions;
+
+    private ExecutorService executor;
+
     @Override
     public void run() {
         SourceUtil.validateSource(source);
         options.validate();
-        Ctx dc = new Ctx();
         for(ClusterSource clusterSource: source.getClusters()) {
-            try {
+            Ctx vc = new Ctx();
+            vc.setCluster(clusterSource);
+            sortByDependencies(vc, clusterSource.getContainers());
+            for(ApplicationSource appSrc: clusterSource.getApplications()) {
+                vc.setApp(appSrc);
+                sortByDependencies(vc, appSrc.getContainers());
+            }
+        }
+        Ctx dc = new Ctx();
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactoryBuilder()
+          .setNameFormat(getClass().getName() + "-worker-%d")
+          .setDaemon(true)
+          .build());
+        try {
+            for(ClusterSource clusterSource: source.getClusters()) {
                 doCluster(dc, clusterSource);
-            } catch (Exception e) {
-                throw Throwables.asRuntime(e);
             }
+        } catch (Exception e) {
+            throw Throwables.asRuntime(e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    private EventWaiter newWaiter() {
+        return new EventWaiter(MIN_POLL, MAX_POLL, TimeUnit.SECONDS);
+    }
+
     private void doCluster(Ctx dc, ClusterSource clusterSource) throws Exception {
         dc.setCluster(clusterSource);
         String cluster = clusterSource.getName();
@@ -162,54 +220,54 @@ public class DeploySourceJob implements Runnable {
         jobContext.fire("Try to add nodes: {0}, to cluster: {1}", Joiner.on(", ").join(nodes).toString(), clusterName);
         nodes.forEach((node) -> nodeStorage.setNodeCluster(node, clusterName));
 
-        // below code (very terrible, and need rewrite)
-        // is wait up to minute when node joined into cluster
-        // after that it wait for creation of cluster-wide network
+        // wait when nodes joined into cluster, after that wait for creation of cluster-wide network
         // TODO we need calculate timeout as 'max(nodeUpdatePeriod)*2'
         DockerService service = dc.getService();
-        int i = 0;
-        int unexists = nodes.size();
-        while(i < 3) {
-            i++;
-            List<NodeInfo> exists = service.getInfo().getNodeList();
-            for(NodeInfo ni: exists) {
-                String name = ni.getName();
-                if(nodes.contains(name)) {
-                    unexists--;
-                }
-            }
-            if(unexists == 0) {
-                break;
-            }
-            Thread.sleep(30_000L);
-            unexists = nodes.size();
+        boolean joined;
+        try(EventWaiter waiter = newWaiter()
+          .on(nodeSubscriptions, e -> nodes.contains(e.getNode().getName()))
+          .on(dockerServiceSubscriptions, e -> isClusterEvent(clusterName, nodes, e))) {
+            joined = waiter.await(() -> hasNodes(service, nodes), NODES_TIMEOUT, TimeUnit.SECONDS);
         }
-        if(unexists > 0) {
+        if(!joined) {
             //TODO which nodes we can not add?
             throw new RuntimeException("Can not add nodes " + nodes + " to cluster: " + clusterName);
         }
         if(nodes.isEmpty()) {
             return;
         }
-        i = 0;
-        while(true) {
-            i++;
-            ServiceCallResult res = networkManager.createNetwork(clusterName);
-            ResultCode code = res.getCode();
-            if(code == ResultCode.OK || code == ResultCode.NOT_MODIFIED) {
-                break;
-            }
-            if(i > 3) {
-                throw new RuntimeException("Can not create network for cluster: " + clusterName);
-            }
-            Thread.sleep(30_000L);
+        boolean created;
+        try(EventWaiter waiter = newWaiter()
+          .on(dockerServiceSubscriptions, e -> isClusterEvent(clusterName, nodes, e))) {
+            created = waiter.await(() -> createNetwork(clusterName), NETWORK_TIMEOUT, TimeUnit.SECONDS);
+        }
+        if(!created) {
+            throw new RuntimeException("Can not create network for cluster: " + clusterName);
+        }
+    }
+
+    private static boolean isClusterEvent(String cluster, List<String> nodes, DockerServiceEvent e) {
+        return cluster.equals(e.getCluster()) || nodes.contains(e.getNode());
+    }
+
+    private static boolean hasNodes(DockerService service, List<String> nodes) {
+        Set<String> exists = new HashSet<>();
+        for(NodeInfo ni: service.getInfo().getNodeList()) {
+            exists.add(ni.getName());
         }
+        return exists.containsAll(nodes);
+    }
+
+    private boolean createNetwork(String clusterName) {
+        ServiceCallResult res = networkManager.createNetwork(clusterName);
+        ResultCode code = res.getCode();
+        return code == ResultCode.OK || code == ResultCode.NOT_MODIFIED;
     }
 
     private void deployApp(Ctx dc, ApplicationSource appSrc) throws Exception {
         dc.setApp(appSrc);
         jobContext.fire("Begin create app {0}", appSrc.getName());
-        List<String> containerNames = new ArrayList<>();
+        List<String> containerNames = Collections.synchronizedList(new ArrayList<>());
         ContainerHandler ch = (cs, cr) -> {
             containerNames.add(cr.getName());
         };
@@ -224,17 +282,173 @@ public class DeploySourceJob implements Runnable {
         jobContext.fire("End create app {0}", appSrc.getName());
     }
 
-    private void deployContainers(Ctx ctx, ApplicationSource containersSrc, ContainerHandler ch) {
-        for(ContainerSource containerSource: containersSrc.getContainers()) {
-            deployContainer(ctx, containerSource, ch);
+    private void deployContainers(Ctx ctx, ApplicationSource containersSrc, ContainerHandler ch) throws InterruptedException {
+        List<ContainerSource> containers = containersSrc.getContainers();
+        Map<ContainerSource, Set<String>> deps = getDependencies(containers);
+        Set<String> required = new HashSet<>();
+        deps.values().forEach(required::addAll);
+        Map<String, CompletableFuture<Void>> byName = new HashMap<>();
+        Map<ContainerSource, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        // dependencies are scheduled before containers which depend on them
+        for(ContainerSource cs: sortByDependencies(ctx, containers)) {
+            CompletableFuture<Void> future = schedule(ctx, cs, ch, required, deps.get(cs).stream()
+              .map(byName::get)
+              .toArray(CompletableFuture[]::new));
+            futures.put(cs, future);
+            if(cs.getName() != null) {
+                byName.put(cs.getName(), future);
+            }
+        }
+        // wait all containers, even when some of them failed
+        Throwable error = null;
+        for(CompletableFuture<Void> future: futures.values()) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if(error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+        if(error != null) {
+            throw Throwables.asRuntime(error);
+        }
+    }
+
+    private CompletableFuture<Void> schedule(Ctx ctx, ContainerSource cs, ContainerHandler ch, Set<String> required,
+                                             CompletableFuture<?>[] depsFutures) {
+        Runnable task = JobContext.wrap(() -> {
+            String id = deployContainer(ctx, cs, ch);
+            if(id != null && required.contains(cs.getName())) {
+                waitRunning(ctx, cs.getName(), id);
+            }
+        });
+        return CompletableFuture.allOf(depsFutures).thenRunAsync(task, executor);
+    }
+
+    /**
+     * Names of containers from which each container depends, only containers of list are counted.
+     * @param containers containers
+     * @return map of container to names of its dependencies
+     */
+    private static Map<ContainerSource, Set<String>> getDependencies(List<ContainerSource> containers) {
+        Set<String> names = new HashSet<>();
+        for(ContainerSource cs: containers) {
+            if(cs.getName() != null) {
+                names.add(cs.getName());
+            }
+        }
+        Map<ContainerSource, Set<String>> deps = new HashMap<>();
+        for(ContainerSource cs: containers) {
+            Set<String> csDeps = getDependencies(cs);
+            csDeps.retainAll(names);
+            csDeps.remove(cs.getName());
+            deps.put(cs, csDeps);
+        }
+        return deps;
+    }
+
+    /**
+     * Sort containers in order where each container is placed after its dependencies.
+     * @param ctx context, used for error message
+     * @param containers containers
+     * @return sorted list
+     * @throws IllegalArgumentException when containers have cyclic dependencies
+     */
+    private static List<ContainerSource> sortByDependencies(Ctx ctx, List<ContainerSource> containers) {
+        Map<ContainerSource, Set<String>> deps = getDependencies(containers);
+        Map<String, List<ContainerSource>> dependents = new HashMap<>();
+        Map<ContainerSource, Integer> remain = new HashMap<>();
+        Deque<ContainerSource> ready = new ArrayDeque<>();
+        for(ContainerSource cs: containers) {
+            Set<String> csDeps = deps.get(cs);
+            csDeps.forEach(dep -> dependents.computeIfAbsent(dep, k -> new ArrayList<>()).add(cs));
+            remain.put(cs, csDeps.size());
+            if(csDeps.isEmpty()) {
+                ready.add(cs);
+            }
+        }
+        List<ContainerSource> sorted = new ArrayList<>(containers.size());
+        while(!ready.isEmpty()) {
+            ContainerSource cs = ready.poll();
+            sorted.add(cs);
+            for(ContainerSource dependent: dependents.getOrDefault(cs.getName(), Collections.emptyList())) {
+                if(remain.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if(sorted.size() < containers.size()) {
+            List<String> cyclic = new ArrayList<>();
+            for(ContainerSource cs: containers) {
+                if(remain.get(cs) > 0) {
+                    cyclic.add(ctx.getPath(cs.getName()));
+                }
+            }
+            throw new IllegalArgumentException("Containers " + cyclic + " have cyclic dependencies.");
+        }
+        return sorted;
+    }
+
+    /**
+     * Names of containers from which specified container depends.
+     * @param cs container
+     * @return modifiable set of names
+     */
+    private static Set<String> getDependencies(ContainerSource cs) {
+        Set<String> names = new HashSet<>();
+        for(String link: cs.getLinks().values()) {
+            names.add(ContainerUtils.fixContainerName(link));
+        }
+        for(String volumesFrom: cs.getVolumesFrom()) {
+            // 'container[:ro|rw]'
+            int pos = volumesFrom.indexOf(':');
+            names.add(pos < 0 ? volumesFrom : volumesFrom.substring(0, pos));
         }
+        return names;
     }
 
-    private void deployContainer(Ctx ctx, ContainerSource containerSource, ContainerHandler ch) {
+    private void waitRunning(Ctx ctx, String name, String id) {
+        String containerLogId = ctx.getPath(name);
+        DockerService service = ctx.getService();
+        AtomicBoolean started = new AtomicBoolean();
+        boolean running;
+        try(EventWaiter waiter = newWaiter()
+          .on(dockerLogSubscriptions, e -> {
+              if(e.getType() != EventType.CONTAINER || e.getContainer() == null || !id.equals(e.getContainer().getId())) {
+                  return false;
+              }
+              if(StandardActions.START.equals(e.getAction())) {
+                  started.set(true);
+              }
+              return true;
+          })) {
+            running = waiter.await(() -> started.get() || isRunning(service, id), READY_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Waiting of container " + containerLogId + " is interrupted.");
+        }
+        if(!running) {
+            throw new RuntimeException("Container " + containerLogId + " (" + id + ") is not running after "
+              + READY_TIMEOUT + " seconds.");
+        }
+        jobContext.fire("Container {0} is running", containerLogId);
+    }
+
+    private static boolean isRunning(DockerService service, String id) {
+        ContainerDetails details = service.getContainer(id);
+        return details != null && details.getState() != null && details.getState().isRunning();
+    }
+
+    /**
+     * Deploy container.
+     * @return id of created container or null when container was not created
+     */
+    private String deployContainer(Ctx ctx, ContainerSource containerSource, ContainerHandler ch) {
         String name = containerSource.getName();
         String containerLogId = ctx.getPath(name);
         if (checkContainerConflicts(ctx, containerSource)) {
-            return;
+            return null;
         }
         jobContext.fire("Begin create container {0}", containerLogId);
         ContainerSource clone = containerSource.clone();
@@ -247,6 +461,7 @@ public class DeploySourceJob implements Runnable {
         ch.handle(clone, ccr);
         String containerId = ccr.getContainerId();
         jobContext.fire("End create container {0} with id {1} and result {2}", containerLogId, containerId, ccr);
+        return ccr.getCode() == ResultCode.OK ? containerId : null;
     }
 
     private boolean checkContainerConflicts(Ctx ctx, ContainerSource containerSource) {
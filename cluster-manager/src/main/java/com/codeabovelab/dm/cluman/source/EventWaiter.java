@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.source;
+
+import com.codeabovelab.dm.common.mb.Subscription;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Wait of condition which is checked on each suitable event from buses. Also condition is polled with
+ * exponential backoff, for cases when event is lost or not exists at all.
+ */
+class EventWaiter implements AutoCloseable {
+
+    private final Object lock = new Object();
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final long minPoll;
+    private final long maxPoll;
+    private long events;
+
+    /**
+     * @param minPoll first interval of polling
+     * @param maxPoll max interval of polling
+     * @param unit unit of intervals
+     */
+    EventWaiter(long minPoll, long maxPoll, TimeUnit unit) {
+        this.minPoll = unit.toNanos(minPoll);
+        this.maxPoll = unit.toNanos(maxPoll);
+    }
+
+    /**
+     * Check condition on each message which is accepted by filter.
+     * @param subscriptions bus
+     * @param filter filter of messages
+     * @param <M> type of messages
+     * @return this
+     */
+    <M> EventWaiter on(Subscriptions<M> subscriptions, Predicate<M> filter) {
+        this.subscriptions.add(subscriptions.openSubscription(m -> {
+            if(filter.test(m)) {
+                signal();
+            }
+        }));
+        return this;
+    }
+
+    /**
+     * Force check of condition.
+     */
+    void signal() {
+        synchronized (lock) {
+            events++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until condition become true.
+     * @param condition condition, it called from waiting thread only
+     * @param timeout timeout
+     * @param unit unit of timeout
+     * @return true when condition is met, false on timeout
+     * @throws InterruptedException when thread is interrupted
+     */
+    boolean await(BooleanSupplier condition, long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long poll = minPoll;
+        while(true) {
+            long seen;
+            synchronized (lock) {
+                seen = events;
+            }
+            if(condition.getAsBoolean()) {
+                return true;
+            }
+            long left = deadline - System.nanoTime();
+            if(left <= 0) {
+                return false;
+            }
+            final long end = System.nanoTime() + Math.min(left, poll);
+            synchronized (lock) {
+                long rest;
+                while(events == seen && (rest = end - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(lock, rest);
+                }
+                if(events == seen) {
+                    // nothing happened, so we poll less frequently
+                    poll = Math.min(poll * 2, maxPoll);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        subscriptions.forEach(Subscription::close);
+        subscriptions.clear();
+    }
+}
@@ -28,10 +28,16 @@ import com.codeabovelab.dm.cluman.job.JobsManager;
 import com.codeabovelab.dm.cluman.model.*;
 import com.codeabovelab.dm.common.utils.Joiner;
 import com.codeabovelab.dm.common.utils.Throwables;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -39,9 +45,18 @@ import java.util.concurrent.ExecutionException;
 @Component
 public class SourceService {
 
+    private static final int INSPECT_PARALLELISM = 16;
+    private static final int MAX_INSPECTS_PER_NODE = 4;
+
     private final DiscoveryStorage discoveryStorage;
     private final ContainerSourceFactory containerSourceFactory;
     private final JobsManager jobsManager;
+    private final ContainersInspector inspector = new ContainersInspector(INSPECT_PARALLELISM, MAX_INSPECTS_PER_NODE);
+
+    @PreDestroy
+    public void shutdown() {
+        inspector.close();
+    }
 
     /**
      * Create source of specified cluster.
@@ -70,12 +85,11 @@ public class SourceService {
         clusterSrc.setConfig(groupCfg.getConfig());
         List<DockerContainer> containers = service.getContainers(new GetContainersArg(true));
         List<ContainerSource> containersSrc = clusterSrc.getContainers();
-        for(DockerContainer dc: containers) {
-            ContainerSource cd = containerSource(service, dc.getId());
-            if(cd == null) {
+        for(ContainerDetails details: inspector.inspect(service, containers)) {
+            if(details == null) {
                 continue;
             }
-            containersSrc.add(cd);
+            containersSrc.add(toSource(service, details));
         }
         containersSrc.sort(null);
         return clusterSrc;
@@ -86,6 +100,10 @@ public class SourceService {
         if(container == null) {
             return null;
         }
+        return toSource(service, container);
+    }
+
+    private ContainerSource toSource(DockerService service, ContainerDetails container) {
         ContainerSource res = new ContainerSource();
         containerSourceFactory.toSource(container, res);
         res.setCluster(service.getCluster());
@@ -98,19 +116,47 @@ public class SourceService {
      */
     public RootSource getRootSource() {
         RootSource root = new RootSource();
-        List<NodesGroup> clusters = discoveryStorage.getClusters();
         List<ClusterSource> clustersSrc = root.getClusters();
-        for(NodesGroup group: clusters) {
-            if(!(group instanceof RealCluster)) {
-                continue;
-            }
-            ClusterSource cs = getClusterSourceInternal((RealCluster) group);
-            clustersSrc.add(cs);
+        for(RealCluster cluster: getRealClusters()) {
+            clustersSrc.add(getClusterSourceInternal(cluster));
         }
-        clustersSrc.sort(null);
         return root;
     }
 
+    /**
+     * Write source for all system into stream. Unlike {@link #getRootSource()} it hold in memory only
+     * one cluster at time.
+     * @param mapper mapper which define format of source, usually json or yaml
+     * @param os stream
+     * @throws IOException on error in stream
+     */
+    public void writeRootSource(ObjectMapper mapper, OutputStream os) throws IOException {
+        try(JsonGenerator gen = mapper.getFactory().createGenerator(os)) {
+            // it must be same as serialized RootSource
+            gen.writeStartObject();
+            gen.writeStringField("version", RootSource.V_1_0);
+            gen.writeObjectFieldStart("clusters");
+            for(RealCluster cluster: getRealClusters()) {
+                ClusterSource cs = getClusterSourceInternal(cluster);
+                gen.writeObjectField(cs.getName(), cs);
+                gen.flush();
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+
+    private List<RealCluster> getRealClusters() {
+        List<RealCluster> list = new ArrayList<>();
+        for(NodesGroup group: discoveryStorage.getClusters()) {
+            if(group instanceof RealCluster) {
+                list.add((RealCluster) group);
+            }
+        }
+        list.sort((l, r) -> l.getName().compareTo(r.getName()));
+        return list;
+    }
+
     /**
      * Run job which deploy root source. <p/>
      * For deploy only one cluster you must simply use RootSource with one cluster.
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.stats;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetStatisticsArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.cluster.docker.model.Statistics;
+import com.codeabovelab.dm.cluman.ds.container.ContainerRegistration;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.model.DockerLogEvent;
+import com.codeabovelab.dm.cluman.model.StandardActions;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.cluman.ui.model.UIStatistics;
+import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Holds single stream of statistics for each watched container and serves all readers from memory. Stream is
+ * started on first request of container statistics and stopped when nobody reads it for idle timeout, count of
+ * streams on each node is limited, when limit is reached statistics is loaded by single call.
+ */
+@Slf4j
+@Component
+public class ContainerStatsSampler {
+
+    private final class Watch implements Runnable {
+        private final String id;
+        private final String node;
+        private final DockerService service;
+        private final GetStatisticsArg arg;
+        private final StatsHistory history = new StatsHistory();
+        private final CompletableFuture<UIStatistics> first = new CompletableFuture<>();
+        private volatile UIStatistics last;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile Future<?> future;
+
+        Watch(String id, String node, DockerService service) {
+            this.id = id;
+            this.node = node;
+            this.service = service;
+            this.arg = GetStatisticsArg.builder()
+              .id(id)
+              .stream(true)
+              .watcher(this::onStatistics)
+              .build();
+        }
+
+        @Override
+        public void run() {
+            try(TempAuth ta = TempAuth.asSystem()) {
+                ServiceCallResult res = service.getStatistics(arg);
+                if(res != null && res.getCode() != ResultCode.OK) {
+                    log.warn("Statistics stream of container '{}' on '{}' is ended with {}: {}", id, node,
+                      res.getCode(), res.getMessage());
+                }
+            } catch (Exception e) {
+                log.warn("Statistics stream of container '{}' on '{}' is failed: {}", id, node, e.toString());
+            } finally {
+                first.complete(null);
+                watches.remove(id, this);
+            }
+        }
+
+        private void onStatistics(Statistics statistics) {
+            UIStatistics uis;
+            try {
+                uis = UIStatistics.from(statistics);
+            } catch (Exception e) {
+                log.warn("Can not convert statistics of container '{}': {}", id, e.toString());
+                return;
+            }
+            last = uis;
+            history.add(toSample(statistics, uis));
+            first.complete(uis);
+        }
+
+        UIStatistics get(long timeout) throws InterruptedException {
+            lastAccess = System.currentTimeMillis();
+            UIStatistics uis = last;
+            if(uis != null) {
+                return uis;
+            }
+            try {
+                return first.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                return null;
+            }
+        }
+
+        List<StatsPoint> getHistory(StatsHistory.Resolution resolution) {
+            lastAccess = System.currentTimeMillis();
+            return history.get(resolution);
+        }
+
+        void stop() {
+            arg.getInterrupter().set(true);
+            Future<?> f = future;
+            if(f != null) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private static final long FIRST_SAMPLE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final DockerServices dockerServices;
+    private final ContainerStorage containerStorage;
+    private final int maxStreamsPerNode;
+    private final long idleTimeout;
+    private final ConcurrentMap<String, Watch> watches = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    @Autowired
+    public ContainerStatsSampler(DockerServices dockerServices,
+                                 ContainerStorage containerStorage,
+                                 @Qualifier(DockerLogEvent.BUS) Subscriptions<DockerLogEvent> dockerLogSubs,
+                                 @Value("${dm.stats.maxStreamsPerNode:16}") int maxStreamsPerNode,
+                                 @Value("${dm.stats.idleTimeout:60000}") long idleTimeout) {
+        Assert.isTrue(maxStreamsPerNode >= 0, "maxStreamsPerNode must not be negative");
+        this.dockerServices = dockerServices;
+        this.containerStorage = containerStorage;
+        this.maxStreamsPerNode = maxStreamsPerNode;
+        this.idleTimeout = idleTimeout;
+        // each stream hold its thread until end
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        dockerLogSubs.subscribe(this::onDockerLogEvent);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watches.values().forEach(Watch::stop);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Last statistics of container, it start stream on first call and wait first sample.
+     * @param id id of container
+     * @return statistics or null when docker does not provide it
+     * @throws InterruptedException when interrupted while waiting first sample
+     */
+    public UIStatistics getStatistics(String id) throws InterruptedException {
+        ContainerRegistration cr = getContainer(id);
+        Watch watch = watch(cr);
+        if(watch == null) {
+            return loadOnce(cr);
+        }
+        return watch.get(FIRST_SAMPLE_TIMEOUT);
+    }
+
+    /**
+     * History of container statistics, it start stream on first call, so history may be empty.
+     * @param id id of container
+     * @param resolution resolution of points
+     * @return list of points ordered by time, last point may be incomplete
+     */
+    public List<StatsPoint> getHistory(String id, StatsHistory.Resolution resolution) {
+        Watch watch = watch(getContainer(id));
+        if(watch == null) {
+            return Collections.emptyList();
+        }
+        return watch.getHistory(resolution);
+    }
+
+    /**
+     * Ids of containers with active streams.
+     * @return list of ids
+     */
+    public List<String> getWatched() {
+        return new ArrayList<>(watches.keySet());
+    }
+
+    /**
+     * Stop streams which are not read for idle timeout.
+     */
+    @Scheduled(fixedDelay = 10_000L)
+    public void stopIdle() {
+        long border = System.currentTimeMillis() - idleTimeout;
+        for(Watch watch: watches.values()) {
+            if(watch.lastAccess < border) {
+                log.debug("Stop idle statistics stream of container '{}'", watch.id);
+                stop(watch);
+            }
+        }
+    }
+
+    private ContainerRegistration getContainer(String id) {
+        ContainerRegistration cr = containerStorage.getContainer(id);
+        ExtendedAssert.notFound(cr, "Can not find container: " + id);
+        return cr;
+    }
+
+    /**
+     * Existed or new watch of container.
+     * @return watch or null when limit of streams on node is reached
+     */
+    private Watch watch(ContainerRegistration cr) {
+        String id = cr.getId();
+        Watch watch = watches.get(id);
+        if(watch != null) {
+            return watch;
+        }
+        String node = cr.getNode();
+        DockerService service = node == null ? null : dockerServices.getNodeService(node);
+        if(service == null) {
+            throw new IllegalStateException("Can not find service of node '" + node + "' for container: " + id);
+        }
+        synchronized (watches) {
+            watch = watches.get(id);
+            if(watch != null) {
+                return watch;
+            }
+            if(getStreams(node) >= maxStreamsPerNode) {
+                log.debug("Limit of {} statistics streams on '{}' is reached.", maxStreamsPerNode, node);
+                return null;
+            }
+            watch = new Watch(id, node, service);
+            watches.put(id, watch);
+        }
+        try {
+            watch.future = executor.submit(watch);
+        } catch (RejectedExecutionException e) {
+            watches.remove(id, watch);
+            throw e;
+        }
+        return watch;
+    }
+
+    private int getStreams(String node) {
+        int count = 0;
+        for(Watch watch: watches.values()) {
+            if(node.equals(watch.node)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private UIStatistics loadOnce(ContainerRegistration cr) throws InterruptedException {
+        DockerService service = dockerServices.getNodeService(cr.getNode());
+        SettableFuture<Statistics> holder = SettableFuture.create();
+        try(TempAuth ta = TempAuth.asSystem()) {
+            service.getStatistics(GetStatisticsArg.builder()
+              .id(cr.getId())
+              .stream(false)
+              .watcher(holder::set)
+              .build());
+        }
+        try {
+            Statistics statistics = holder.get(FIRST_SAMPLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            return UIStatistics.from(statistics);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private void stop(Watch watch) {
+        if(watches.remove(watch.id, watch)) {
+            watch.stop();
+        }
+    }
+
+    private void onDockerLogEvent(DockerLogEvent e) {
+        if(e.getType() != EventType.CONTAINER || e.getContainer() == null) {
+            return;
+        }
+        String action = e.getAction();
+        if(StandardActions.DIE.equals(action) || StandardActions.DELETE.equals(action)) {
+            Watch watch = watches.get(e.getContainer().getId());
+            if(watch != null) {
+                stop(watch);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StatsHistory.Sample toSample(Statistics statistics, UIStatistics uis) {
+        long rx = 0;
+        long tx = 0;
+        Map<String, Object> networks = statistics.getNetworks();
+        if(networks != null) {
+            for(Object value: networks.values()) {
+                if(value instanceof Map) {
+                    Map<String, Object> network = (Map<String, Object>) value;
+                    rx += toLong(network.get("rx_bytes"));
+                    tx += toLong(network.get("tx_bytes"));
+                }
+            }
+        }
+        return new StatsHistory.Sample(System.currentTimeMillis(),
+          uis.getCpuTotalPercents() == null ? 0 : uis.getCpuTotalPercents(),
+          uis.getMemoryMBUsage() == null ? 0 : uis.getMemoryMBUsage(),
+          rx, tx);
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.stats;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling window of container statistics, each sample is aggregated into points of all resolutions, so history
+ * has fixed size and does not depend on time of sampling.
+ */
+public final class StatsHistory {
+
+    public enum Resolution {
+        SECOND(TimeUnit.SECONDS.toMillis(1), 300),
+        MINUTE(TimeUnit.MINUTES.toMillis(1), 180),
+        HOUR(TimeUnit.HOURS.toMillis(1), 168);
+
+        private final long step;
+        private final int capacity;
+
+        Resolution(long step, int capacity) {
+            this.step = step;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Length of interval in ms.
+         * @return ms
+         */
+        public long getStep() {
+            return step;
+        }
+
+        /**
+         * Count of stored points.
+         * @return count
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    private static final class Accumulator {
+        private final long time;
+        private int samples;
+        private double cpuSum;
+        private double cpuMax;
+        private double memorySum;
+        private double memoryMax;
+        private long rxBytes;
+        private long txBytes;
+
+        Accumulator(long time) {
+            this.time = time;
+        }
+
+        void add(Sample sample) {
+            samples++;
+            cpuSum += sample.cpuPercent;
+            cpuMax = Math.max(cpuMax, sample.cpuPercent);
+            memorySum += sample.memoryMB;
+            memoryMax = Math.max(memoryMax, sample.memoryMB);
+            rxBytes = sample.rxBytes;
+            txBytes = sample.txBytes;
+        }
+
+        StatsPoint toPoint() {
+            return StatsPoint.builder()
+              .time(time)
+              .samples(samples)
+              .cpuPercentAvg(cpuSum / samples)
+              .cpuPercentMax(cpuMax)
+              .memoryMBAvg(memorySum / samples)
+              .memoryMBMax(memoryMax)
+              .rxBytes(rxBytes)
+              .txBytes(txBytes)
+              .build();
+        }
+    }
+
+    private static final class Series {
+        private final Resolution resolution;
+        private final ArrayDeque<StatsPoint> points;
+        private Accumulator current;
+
+        Series(Resolution resolution) {
+            this.resolution = resolution;
+            this.points = new ArrayDeque<>(resolution.getCapacity());
+        }
+
+        void add(Sample sample) {
+            long time = sample.time - sample.time % resolution.getStep();
+            if(current != null && current.time != time) {
+                if(points.size() == resolution.getCapacity()) {
+                    points.removeFirst();
+                }
+                points.addLast(current.toPoint());
+                current = null;
+            }
+            if(current == null) {
+                current = new Accumulator(time);
+            }
+            current.add(sample);
+        }
+
+        List<StatsPoint> get() {
+            List<StatsPoint> list = new ArrayList<>(points.size() + 1);
+            list.addAll(points);
+            if(current != null) {
+                list.add(current.toPoint());
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Single sample of statistics.
+     */
+    static final class Sample {
+        private final long time;
+        private final double cpuPercent;
+        private final double memoryMB;
+        private final long rxBytes;
+        private final long txBytes;
+
+        Sample(long time, double cpuPercent, double memoryMB, long rxBytes, long txBytes) {
+            this.time = time;
+            this.cpuPercent = cpuPercent;
+            this.memoryMB = memoryMB;
+            this.rxBytes = rxBytes;
+            this.txBytes = txBytes;
+        }
+    }
+
+    private final Map<Resolution, Series> series = new EnumMap<>(Resolution.class);
+
+    public StatsHistory() {
+        for(Resolution resolution: Resolution.values()) {
+            series.put(resolution, new Series(resolution));
+        }
+    }
+
+    synchronized void add(Sample sample) {
+        for(Series s: series.values()) {
+            s.add(sample);
+        }
+    }
+
+    /**
+     * Points of specified resolution in order of time, last point may be incomplete.
+     * @param resolution resolution
+     * @return copy of points
+     */
+    public synchronized List<StatsPoint> get(Resolution resolution) {
+        return series.get(resolution).get();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.stats;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Statistics of container aggregated over interval of {@link StatsHistory.Resolution resolution}.
+ */
+@Value
+@Builder
+public class StatsPoint {
+    /**
+     * Start of interval in ms since epoch.
+     */
+    private final long time;
+    /**
+     * Count of samples in interval.
+     */
+    private final int samples;
+    private final double cpuPercentAvg;
+    private final double cpuPercentMax;
+    private final double memoryMBAvg;
+    private final double memoryMBMax;
+    /**
+     * Total received bytes at the end of interval.
+     */
+    private final long rxBytes;
+    /**
+     * Total transmitted bytes at the end of interval.
+     */
+    private final long txBytes;
+}
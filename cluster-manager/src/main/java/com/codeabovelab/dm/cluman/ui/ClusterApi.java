@@ -23,6 +23,8 @@ import com.codeabovelab.dm.cluman.cluster.docker.management.DockerUtils;
 import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryRepository;
 import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
+import com.codeabovelab.dm.cluman.ds.clusters.ClusterSummaries;
+import com.codeabovelab.dm.cluman.ds.clusters.ClusterSummary;
 import com.codeabovelab.dm.cluman.ds.clusters.RealCluster;
 import com.codeabovelab.dm.cluman.ds.clusters.SwarmNodesGroupConfig;
 import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
@@ -31,6 +33,7 @@ import com.codeabovelab.dm.cluman.job.JobInstance;
 import com.codeabovelab.dm.cluman.model.*;
 import com.codeabovelab.dm.cluman.security.AccessContext;
 import com.codeabovelab.dm.cluman.security.AccessContextFactory;
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
 import com.codeabovelab.dm.cluman.security.SecuredType;
 import com.codeabovelab.dm.cluman.source.DeployOptions;
 import com.codeabovelab.dm.cluman.source.SourceService;
@@ -39,6 +42,7 @@ import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.cluman.yaml.YamlUtils;
 import com.codeabovelab.dm.common.cache.DefineCache;
 import com.codeabovelab.dm.common.cache.MessageBusCacheInvalidator;
+import com.codeabovelab.dm.common.security.Action;
 import com.codeabovelab.dm.common.security.Authorities;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
@@ -48,12 +52,13 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -69,6 +74,7 @@ import static org.springframework.web.bind.annotation.RequestMethod.*;
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class ClusterApi {
 
+    private static final long STATUS_TTL = TimeUnit.MINUTES.toMillis(1);
     private final DockerServiceRegistry dockerServiceRegistry;
     private final RegistryRepository registryRepository;
 
@@ -79,6 +85,8 @@ public class ClusterApi {
     private final ContainerStorage containerStorage;
     private final FilterApi filterApi;
     private final AccessContextFactory aclContextFactory;
+    private final ClusterSummaries clusterSummaries;
+    private final ProvidersAclService aclService;
 
     @RequestMapping(value = "/clusters/", method = GET)
     public List<UiCluster> listClusters() {
@@ -112,14 +120,16 @@ public class ClusterApi {
             SwarmNodesGroupConfig swarmNodesGroupConfig = (SwarmNodesGroupConfig) cluster.getConfig();
             uc.setConfig(ClusterConfigImpl.builder(swarmNodesGroupConfig.getConfig()));
         }
-        try {
-            DockerServiceInfo info = cluster.getDocker().getInfo();
-            uc.setContainers(new UiCluster.Entry(info.getContainers(), info.getOffContainers()));
-            uc.setNodes(new UiCluster.Entry(info.getNodeCount(), info.getOffNodeCount()));
-        } catch (AccessDeniedException e) {
+        // summary is computed from memory, so listing of clusters does not wait for docker, but it also
+        // bypass checks of secured docker service, therefore we check access here
+        if(ac.isGranted(SecuredType.CLUSTER.id(name), Action.READ)) {
+            ClusterSummary summary = clusterSummaries.getSummary(cluster);
+            uc.setSummary(summary);
+            uc.setContainers(new UiCluster.Entry(summary.getContainers(), summary.getOffContainers()));
+            uc.setNodes(new UiCluster.Entry(summary.getNodes(), summary.getOffNodes()));
+        } else {
             uc.setContainers(new UiCluster.Entry(0, 0));
             uc.setNodes(new UiCluster.Entry(0, 0));
-            //nothing
         }
         try {
             Set<String> apps = uc.getApplications();
@@ -133,7 +143,25 @@ public class ClusterApi {
     }
 
     @RequestMapping(value = "/clusters/{cluster}/containers", method = GET)
-    public ResponseEntity<Collection<UiContainer>> listContainers(@PathVariable("cluster") String cluster) {
+    public ResponseEntity<Collection<UiContainer>> listContainers(@PathVariable("cluster") String cluster,
+                                                                  WebRequest webRequest) {
+        boolean notModified = ETagBuilder.of("cluster-containers")
+          .add(cluster)
+          .add(containerStorage.getVersion())
+          .add(nodeRegistry.getVersion())
+          .add(discoveryStorage.getVersion())
+          .add(applicationService.getVersion())
+          // status of containers contains relative time, like 'Up 5 minutes', so we refresh it once a minute
+          .add(System.currentTimeMillis() / STATUS_TTL)
+          .addAuthentication(aclService)
+          .checkNotModified(webRequest);
+        if(notModified) {
+            return null;
+        }
+        return listContainers(cluster);
+    }
+
+    private ResponseEntity<Collection<UiContainer>> listContainers(String cluster) {
         AccessContext ac = aclContextFactory.getContext();
         List<UiContainer> list = new ArrayList<>();
         GetContainersArg arg = new GetContainersArg(true);
@@ -27,6 +27,7 @@ import com.codeabovelab.dm.cluman.ui.model.UiJob;
 import com.codeabovelab.dm.cluman.yaml.YamlUtils;
 import com.codeabovelab.dm.common.security.Authorities;
 import com.codeabovelab.dm.common.utils.AppInfo;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
@@ -53,6 +54,7 @@ public class ConfigurationApi {
     private final AppConfigService appConfigService;
     private final SourceService sourceService;
     private final JobsManager jobsManager;
+    private final YAMLMapper yamlMapper;
 
     @RequestMapping(path = "config", method = RequestMethod.GET)
     public ResponseEntity<StreamingResponseBody> getConfig() {
@@ -72,11 +74,14 @@ public class ConfigurationApi {
     }
 
     @RequestMapping(path = "source", method = RequestMethod.GET, produces = YamlUtils.MIME_TYPE_VALUE)
-    public ResponseEntity<RootSource> getSource() {
-        RootSource source = sourceService.getRootSource();
+    public ResponseEntity<StreamingResponseBody> getSource() {
         HttpHeaders headers = new HttpHeaders();
+        // 'produces' in annotation does not work with stream
+        headers.setContentType(YamlUtils.MIME_TYPE);
         headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"cluman_source.yaml\"");
-        return new ResponseEntity<>(source, headers, HttpStatus.OK);
+        return new ResponseEntity<>((os) -> {
+            sourceService.writeRootSource(yamlMapper, os);
+        }, headers, HttpStatus.OK);
     }
 
     @Secured(Authorities.ADMIN_ROLE)
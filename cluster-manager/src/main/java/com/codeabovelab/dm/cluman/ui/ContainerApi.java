@@ -19,13 +19,14 @@ package com.codeabovelab.dm.cluman.ui;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfig;
 import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.LineFrameWriter;
 import com.codeabovelab.dm.cluman.cluster.docker.management.argument.*;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.CreateAndStartContainerResult;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ProcessEvent;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ScaleContainerResult;
 import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
 import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
-import com.codeabovelab.dm.cluman.cluster.docker.model.Statistics;
 import com.codeabovelab.dm.cluman.cluster.docker.model.UpdateContainerCmd;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryRepository;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryService;
@@ -42,25 +43,30 @@ import com.codeabovelab.dm.cluman.model.Application;
 import com.codeabovelab.dm.cluman.model.ContainerSource;
 import com.codeabovelab.dm.cluman.model.ImageDescriptor;
 import com.codeabovelab.dm.cluman.model.NodeInfo;
+import com.codeabovelab.dm.cluman.security.DockerServiceSecurityWrapper;
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
 import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
+import com.codeabovelab.dm.cluman.stats.ContainerStatsSampler;
+import com.codeabovelab.dm.cluman.stats.StatsHistory;
+import com.codeabovelab.dm.cluman.stats.StatsPoint;
 import com.codeabovelab.dm.cluman.ui.model.UIContainerDetails;
 import com.codeabovelab.dm.cluman.ui.model.UIStatistics;
 import com.codeabovelab.dm.cluman.ui.model.UiContainer;
 import com.codeabovelab.dm.cluman.ui.model.UiUpdateContainer;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.cache.DefineCache;
+import com.codeabovelab.dm.common.security.Action;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.util.concurrent.SettableFuture;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -97,6 +103,8 @@ public class ContainerApi {
     private final NodeStorage nodeStorage;
     private final ApplicationService applicationService;
     private final ContainerSourceFactory containerSourceFactory;
+    private final ContainerStatsSampler statsSampler;
+    private final ProvidersAclService aclService;
 
     @RequestMapping(value = "/{id}/stop", method = RequestMethod.POST)
     public ResponseEntity<?> stopContainer(@PathVariable("id") String id) {
@@ -134,7 +142,16 @@ public class ContainerApi {
     }
 
     @RequestMapping(value = "/", method = RequestMethod.GET)
-    public List<UiContainer> getAll() {
+    public List<UiContainer> getAll(WebRequest webRequest) {
+        boolean notModified = ETagBuilder.of("containers")
+          .add(containerStorage.getVersion())
+          .add(nodeStorage.getVersion())
+          .add(applicationService.getVersion())
+          .addAuthentication(aclService)
+          .checkNotModified(webRequest);
+        if(notModified) {
+            return null;
+        }
         List<ContainerRegistration> crs = containerStorage.getContainers();
         Map<String, String> app2cont = UiUtils.mapAppContainer(applicationService, null);
         List<UiContainer> containers = crs.stream().map((cr) -> {
@@ -187,19 +204,27 @@ public class ContainerApi {
     }
 
     @RequestMapping(value = "/{id}/statistics", method = RequestMethod.GET)
-    @Cacheable("UIStatistics")
-    @SuppressWarnings("unchecked")
     public UIStatistics getStatistics(@PathVariable("id") String id) throws Exception {
+        checkReadAccess(id);
+        UIStatistics statistics = statsSampler.getStatistics(id);
+        ExtendedAssert.notFound(statistics, "Can not get statistics of container: " + id);
+        return statistics;
+    }
+
+    @ApiOperation("History of container statistics, it is collected only while somebody reads statistics of container.")
+    @RequestMapping(value = "/{id}/statistics/history", method = RequestMethod.GET)
+    public List<StatsPoint> getStatisticsHistory(@PathVariable("id") String id,
+                                                 @RequestParam(value = "resolution", defaultValue = "SECOND") StatsHistory.Resolution resolution) {
+        checkReadAccess(id);
+        return statsSampler.getHistory(id, resolution);
+    }
+
+    private void checkReadAccess(String id) {
+        // statistics is served from memory, therefore we check access here
         DockerService service = getService(id);
-        log.info("got getStatistics request id: {}", id);
-        GetStatisticsArg.Builder argb = GetStatisticsArg.builder();
-        argb.id(id);
-        argb.stream(false);
-        SettableFuture<Statistics> holder = SettableFuture.create();
-        argb.watcher(holder::set);
-        service.getStatistics(argb.build());
-        Statistics statistics = holder.get();
-        return UIStatistics.from(statistics);
+        if (service instanceof DockerServiceSecurityWrapper) {
+            ((DockerServiceSecurityWrapper) service).checkContainerAccess(id, Action.READ);
+        }
     }
 
     private DockerService getService(String id) {
@@ -264,15 +289,9 @@ public class ContainerApi {
                     .stderr(stderr)
                     .timestamps(timestamps)
                     .since(since)
-                    .watcher(processEvent -> {
-                        // we use '\n' as delimiter for log formatter in js
-                        try {
-                            writer.println(processEvent.getMessage());
-                            writer.flush();
-                        } catch (IOException e) {
-                            log.error("", e);
-                        }
-                    }).build();
+                    // we use '\n' as delimiter for log formatter in js
+                    .frameHandler(new LineFrameWriter(writer))
+                    .build();
             ServiceCallResult res = service.getContainerLog(arg);
             objectMapper.writeValue(writer, res);
         }
@@ -405,8 +424,12 @@ public class ContainerApi {
                                    @RequestParam(value = "scaleFactor", required = false, defaultValue = "1") Integer scaleFactor) {
         log.info("got scale request id: {}, count {}", id, scaleFactor);
         String cluster = getClusterForContainer(id);
-        ServiceCallResult res = containerManager.scale(cluster, scaleFactor, id);
-        return UiUtils.createResponse(res);
+        ScaleContainerResult res = containerManager.scale(cluster, scaleFactor, id);
+        if (res.getContainers().isEmpty()) {
+            return UiUtils.createResponse(res);
+        }
+        // we return result of each instance, even when some of them are failed
+        return new ResponseEntity<>(res, res.getCode() == ResultCode.OK ? HttpStatus.OK : UiUtils.toStatus(res.getCode()));
     }
 
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui;
+
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
+import com.codeabovelab.dm.common.security.MultiTenancySupport;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Builder of strong ETag for list endpoints. Tag is a hash of versions of storages which are used for
+ * response, request arguments, identity of caller and version of ACLs, because responses are filtered by
+ * permissions. Versions of storages are restarted with process, so tag also contains random id of process. <p/>
+ * Tag must be checked before any access to storages, so not modified response does not compute body.
+ */
+final class ETagBuilder {
+
+    private static final String PROCESS_ID = UUID.randomUUID().toString();
+    private final Hasher hasher = Hashing.murmur3_128().newHasher();
+
+    private ETagBuilder(String key) {
+        add(PROCESS_ID);
+        add(key);
+    }
+
+    /**
+     * Create builder.
+     * @param key key of endpoint, it must be unique between endpoints
+     * @return builder
+     */
+    static ETagBuilder of(String key) {
+        return new ETagBuilder(key);
+    }
+
+    ETagBuilder add(String str) {
+        if(str == null) {
+            hasher.putByte((byte) 0);
+        } else {
+            hasher.putByte((byte) 1).putString(str, StandardCharsets.UTF_8).putInt(str.length());
+        }
+        return this;
+    }
+
+    ETagBuilder add(long version) {
+        hasher.putLong(version);
+        return this;
+    }
+
+    /**
+     * Add version of ACLs and name, tenant and authorities of current authentication.
+     * @param aclService service of ACLs
+     * @return this
+     */
+    ETagBuilder addAuthentication(ProvidersAclService aclService) {
+        add(aclService.getVersion());
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(auth == null) {
+            return add((String) null);
+        }
+        add(auth.getName());
+        add(MultiTenancySupport.getTenant(auth.getPrincipal()));
+        List<String> authorities = new ArrayList<>();
+        for(GrantedAuthority ga : auth.getAuthorities()) {
+            authorities.add(ga.getAuthority() + "@" + MultiTenancySupport.getTenant(ga));
+        }
+        // order of authorities is not specified
+        Collections.sort(authorities);
+        hasher.putInt(authorities.size());
+        authorities.forEach(this::add);
+        return this;
+    }
+
+    String build() {
+        return "\"" + hasher.hash().toString() + "\"";
+    }
+
+    /**
+     * Build tag and check it against 'If-None-Match' of request. Tag is also set to response.
+     * @param request request
+     * @return true when handler must not compute body
+     */
+    boolean checkNotModified(WebRequest request) {
+        return request != null && request.checkNotModified(build());
+    }
+}
@@ -25,7 +25,9 @@ import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
 import com.codeabovelab.dm.cluman.cluster.docker.model.ImageItem;
 import com.codeabovelab.dm.cluman.cluster.filter.Filter;
 import com.codeabovelab.dm.cluman.cluster.filter.FilterFactory;
+import com.codeabovelab.dm.cluman.cluster.registry.ImageDescriptorLoader;
 import com.codeabovelab.dm.cluman.cluster.registry.ImageFilterContext;
+import com.codeabovelab.dm.cluman.cluster.registry.ImageNameComparator;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryRepository;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistrySearchHelper;
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryService;
@@ -34,12 +36,20 @@ import com.codeabovelab.dm.cluman.cluster.registry.data.SearchResult;
 import com.codeabovelab.dm.cluman.cluster.registry.data.Tags;
 import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
 import com.codeabovelab.dm.cluman.ds.clusters.SwarmNodesGroupConfig;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.ds.images.InventoryImage;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
 import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.security.AccessContext;
+import com.codeabovelab.dm.cluman.security.AccessContextFactory;
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
+import com.codeabovelab.dm.cluman.security.SecuredType;
 import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
 import com.codeabovelab.dm.cluman.ui.model.*;
 import com.codeabovelab.dm.cluman.utils.ContainerUtils;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.cache.DefineCache;
+import com.codeabovelab.dm.common.security.Action;
 import com.google.common.base.Splitter;
 import io.swagger.annotations.ApiOperation;
 import lombok.Data;
@@ -51,8 +61,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
@@ -65,10 +77,20 @@ import static org.springframework.web.bind.annotation.RequestMethod.GET;
 public class ImagesApi {
 
     private static final Splitter SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+    private static final String TOTAL_COUNT = "X-Total-Count";
+    /**
+     * Catalogs of registries have no version, so we consider them actual for this time.
+     */
+    private static final long CATALOG_TTL = TimeUnit.MINUTES.toMillis(1);
     private final DockerServiceRegistry dockerServices;
     private final DiscoveryStorage discoveryStorage;
     private final RegistryRepository registryRepository;
     private final FilterFactory filterFactory;
+    private final ImagesInventory imagesInventory;
+    private final NodeStorage nodeStorage;
+    private final AccessContextFactory aclContextFactory;
+    private final ImageDescriptorLoader imageDescriptorLoader;
+    private final ProvidersAclService aclService;
 
     @RequestMapping(value = "/clusters/{cluster}/list", method = RequestMethod.GET)
     public List<ImageItem> getImages(@PathVariable("cluster") String cluster) {
@@ -228,13 +250,18 @@ public class ImagesApi {
         return filter(tgs, name, registry, imageFilter);
     }
 
-    @ApiOperation("get tags catalog (contains additional information), filter expression is SpEL cluster image filter")
+    @ApiOperation(value = "get tags catalog (contains additional information), filter expression is SpEL cluster image filter",
+      notes = "Only tags of requested page are loaded, total count of tags is returned in '" + TOTAL_COUNT + "' header. " +
+        "Sort is 'asc' or 'desc' by tag version, when it absent tags are in order of registry.")
     @RequestMapping(value = "/tags-detailed", method = GET)
     @Cacheable("UiImageCatalog")
     @DefineCache(expireAfterWrite = 60_000)
-    public List<UiTagCatalog> listTagsDetailed(@RequestParam("imageName") String imageName,
+    public ResponseEntity<List<UiTagCatalog>> listTagsDetailed(@RequestParam("imageName") String imageName,
                                                @RequestParam(value = "filter", required = false) String filter,
-                                               @RequestParam(value = "cluster", required = false) String cluster) {
+                                               @RequestParam(value = "cluster", required = false) String cluster,
+                                               @RequestParam(value = "sort", required = false) String sort,
+                                               @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                               @RequestParam(value = "limit", defaultValue = "0") int limit) {
 
         Filter imageFilter = calculateImageFilter(filter, cluster);
         String name = ContainerUtils.getImageNameWithoutPrefix(imageName);
@@ -242,27 +269,47 @@ public class ImagesApi {
         RegistryService registry = registryRepository.getRegistryByImageName(imageName);
         Tags tgs = registry.getTags(name);
         List<String> tags = filter(tgs, name, registry, imageFilter);
-        return tags.stream().map(t -> {
-            try {
-                ImageDescriptor image = registry.getImage(name, t);
-                return new UiTagCatalog(registry.getConfig().getName(), name, null, t, image != null ? image.getId() : null,
-                        image != null ? image.getCreated() : null,
-                        image != null ? image.getContainerConfig().getLabels() : null);
-            } catch (Exception e) {
-                log.error("can't download image {} / {} : {}, cause: {}", registry, name, t, e.getMessage());
-                return null;
+        if (StringUtils.hasText(sort)) {
+            boolean desc = "desc".equalsIgnoreCase(sort);
+            if (!desc) {
+                ExtendedAssert.badRequest("asc".equalsIgnoreCase(sort), "Unsupported sort: {0}", sort);
             }
-
-        }).filter(Objects::nonNull).collect(Collectors.toList());
-
+            ImageNameComparator.getTagsComparator().sort(tags, desc);
+        }
+        int total = tags.size();
+        int from = Math.min(Math.max(0, offset), total);
+        int to = limit > 0 ? Math.min(from + limit, total) : total;
+        String registryName = registry.getConfig().getName();
+        List<UiTagCatalog> page = imageDescriptorLoader.load(registry, name, tags.subList(from, to)).stream().map(r -> {
+            ImageDescriptor image = r.getImage();
+            return new UiTagCatalog(registryName, name, null, r.getTag(), image != null ? image.getId() : null,
+                    image != null ? image.getCreated() : null,
+                    image != null ? image.getContainerConfig().getLabels() : null,
+                    r.getError());
+        }).collect(Collectors.toList());
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT, Integer.toString(total))
+                .body(page);
     }
 
     @ApiOperation("get images catalogs, filter expression is SpEL cluster image filter")
     @RequestMapping(value = "/", method = GET)
-    @Cacheable("UiImageCatalog")
-    @DefineCache(expireAfterWrite = 60_000)
     public List<UiImageCatalog> listImageCatalogs(@RequestParam(value = "filter", required = false) String filterStr,
-                                                  @RequestParam(value = "cluster", required = false) String cluster) {
+                                                  @RequestParam(value = "cluster", required = false) String cluster,
+                                                  WebRequest webRequest) {
+        boolean notModified = ETagBuilder.of("image-catalogs")
+          .add(filterStr)
+          .add(cluster)
+          .add(imagesInventory.getVersion())
+          .add(nodeStorage.getVersion())
+          .add(discoveryStorage.getVersion())
+          .add(registryRepository.getVersion())
+          .add(System.currentTimeMillis() / CATALOG_TTL)
+          .addAuthentication(aclService)
+          .checkNotModified(webRequest);
+        if(notModified) {
+            return null;
+        }
         final Filter filter = calculateImageFilter(filterStr, cluster);
         Map<String, UiImageCatalog> catalogs = getDownloadedImages(filter);
         Collection<String> registries = registryRepository.getAvailableRegistries();
@@ -317,15 +364,21 @@ public class ImagesApi {
 
     private void processGroup(Filter filter, Map<String, UiImageCatalog> catalogs, NodesGroup nodesGroup) {
         ImageObject io = new ImageObject();
-        GetImagesArg getImagesArg = GetImagesArg.ALL;
-        List<ImageItem> images = nodesGroup.getDocker().getImages(getImagesArg);
         final String clusterName = nodesGroup.getName();
         io.setCluster(clusterName);
-        //note that in some cases not all nodes of cluster have same images set, but we ignore it at this time
         final List<String> nodes = nodesGroup.getNodes().stream().map(Node::getName).collect(Collectors.toList());
         io.setNodes(nodes);
-        for (ImageItem image : images) {
-            for (String tag : image.getRepoTags()) {
+        AccessContext ac = aclContextFactory.getContext();
+        List<InventoryImage> images = imagesInventory.getImages(nodes);
+        for (InventoryImage image : images) {
+            if (!ac.isGranted(SecuredType.LOCAL_IMAGE.id(image.getId()), Action.READ)) {
+                continue;
+            }
+            Collection<String> tags = image.getTags();
+            if (tags.isEmpty()) {
+                tags = Collections.singleton(ImageName.NONE_NAME);
+            }
+            for (String tag : tags) {
                 String imageName = ContainerUtils.getRegistryAndImageName(tag);
                 if (imageName.contains(ImageName.NONE)) {
                     imageName = image.getId();
@@ -351,7 +404,7 @@ public class ImagesApi {
                 if (!ImageName.NONE.equals(version)) {
                     imgData.getTags().add(version);
                 }
-                imgData.getNodes().addAll(nodes);
+                imgData.getNodes().addAll(image.getNodes().keySet());
             }
         }
     }
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
@@ -62,6 +63,16 @@ public class JobApi {
           .collect(Collectors.toList());
     }
 
+    @RequestMapping(value = "/jobs/history/", method = GET)
+    public List<UiJob> listHistory(@RequestParam(value = "type", required = false) String type) {
+        JobHistory history = jobsManager.getHistory();
+        List<JobInfo> infos = StringUtils.hasText(type) ? history.getInfosByType(type) : history.getInfos();
+        return infos.stream()
+          .sorted(Comparator.comparing(JobInfo::getCreateTime))
+          .map(info -> UiJob.toUiBuilder(info).build())
+          .collect(Collectors.toList());
+    }
+
     @RequestMapping(value = "/jobtypes/", method = GET)
     public Set<String> listTypes() {
         return jobsManager.getTypes();
@@ -76,15 +87,31 @@ public class JobApi {
     @RequestMapping(value = "/jobs/{job:.*}", method = GET)
     public UiJob getJob(@PathVariable("job") String job) {
         JobInstance ji = jobsManager.getJob(job);
-        ExtendedAssert.notFound(ji, "Job was not found by id: " + job);
+        if(ji == null) {
+            // job may be already removed from memory, but still present in history
+            JobInfo info = jobsManager.getHistory().getInfo(job);
+            ExtendedAssert.notFound(info, "Job was not found by id: " + job);
+            return UiJob.toUiBuilder(info).build();
+        }
         return UiJob.toUi(ji);
     }
 
+    /**
+     * Page of job log.
+     * @param job id of job
+     * @param offset offset of first event
+     * @param limit max count of events, zero - unlimited
+     * @return events
+     */
     @RequestMapping(value = "/jobs/{job:.*}/log", method = GET)
-    public List<UiJobEvent> getJobLog(@PathVariable("job") String job) {
-        JobInstance ji = jobsManager.getJob(job);
-        ExtendedAssert.notFound(ji, "Job was not found by id: " + job);
-        return ji.getLog().stream().map(JobApi::toUi).collect(Collectors.toList());
+    public List<UiJobEvent> getJobLog(@PathVariable("job") String job,
+                                      @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                      @RequestParam(value = "limit", defaultValue = "0") int limit) {
+        JobHistory history = jobsManager.getHistory();
+        if(!history.contains(job)) {
+            ExtendedAssert.notFound(jobsManager.getJob(job), "Job was not found by id: " + job);
+        }
+        return history.getEvents(job, offset, limit).stream().map(JobApi::toUi).collect(Collectors.toList());
     }
 
     @RequestMapping(value = "/jobs/{job:.*}", method = DELETE)
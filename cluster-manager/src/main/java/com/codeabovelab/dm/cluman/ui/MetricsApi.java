@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.meter.PrometheusMetricsWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+/**
+ * Metrics of application for scrapers.
+ */
+@RestController
+@RequestMapping(value = "/ui/api/")
+public class MetricsApi {
+
+    private static final MediaType PROMETHEUS_TYPE = MediaType.parseMediaType(PrometheusMetricsWriter.CONTENT_TYPE);
+    private final long cacheMillis;
+    private volatile PrometheusMetricsWriter prometheusWriter;
+
+    @Autowired
+    public MetricsApi(@Value("${dm.metrics.prometheus.cacheMillis:5000}") long cacheMillis) {
+        this.cacheMillis = cacheMillis;
+    }
+
+    @Autowired(required = false)
+    void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.prometheusWriter = new PrometheusMetricsWriter(metricRegistry, cacheMillis);
+    }
+
+    @RequestMapping(value = "/metrics/prometheus", method = GET)
+    public ResponseEntity<byte[]> prometheus() {
+        PrometheusMetricsWriter writer = this.prometheusWriter;
+        if(writer == null) {
+            // metrics are disabled
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().contentType(PROMETHEUS_TYPE).body(writer.render());
+    }
+}
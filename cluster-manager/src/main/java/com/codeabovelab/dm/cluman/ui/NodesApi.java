@@ -26,6 +26,7 @@ import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
 import com.codeabovelab.dm.cluman.model.DockerContainer;
 import com.codeabovelab.dm.cluman.model.DockerServiceInfo;
 import com.codeabovelab.dm.cluman.model.NodeInfo;
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
 import com.codeabovelab.dm.cluman.ui.model.UISearchQuery;
 import com.codeabovelab.dm.cluman.ui.model.UiContainer;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
@@ -33,6 +34,7 @@ import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Collection;
 import java.util.List;
@@ -52,9 +54,23 @@ public class NodesApi {
     private final DiscoveryStorage discoveryStorage;
     private final FilterApi filterApi;
     private final ContainerStorage containerStorage;
+    private final ProvidersAclService aclService;
 
     @RequestMapping(value = "/", method = RequestMethod.GET)
-    public Collection<NodeInfo> listNodes() {
+    public Collection<NodeInfo> listNodes(WebRequest webRequest) {
+        boolean notModified = ETagBuilder.of("nodes")
+          .add(nodeStorage.getVersion())
+          // permissions of nodes are depend on clusters
+          .add(discoveryStorage.getVersion())
+          .addAuthentication(aclService)
+          .checkNotModified(webRequest);
+        if(notModified) {
+            return null;
+        }
+        return getNodes();
+    }
+
+    private Collection<NodeInfo> getNodes() {
         Collection<NodeInfo> nodes = nodeStorage.getNodes((ni) -> true);
         return nodes;
     }
@@ -81,7 +97,7 @@ public class NodesApi {
 
     @RequestMapping(value = "/filtered", method = RequestMethod.PUT)
     public Collection<NodeInfo> listNodes(@RequestBody UISearchQuery searchQuery) {
-        Collection<NodeInfo> nodes = listNodes();
+        Collection<NodeInfo> nodes = getNodes();
         Collection<NodeInfo> nodeInfos = filterApi.listNodes(nodes, searchQuery);
         return nodeInfos;
     }
@@ -173,7 +173,7 @@ public final class UiUtils {
      * @param cluster
      * @return
      */
-    static Map<String, String> mapAppContainer(ApplicationService applicationService, NodesGroup cluster) {
+    public static Map<String, String> mapAppContainer(ApplicationService applicationService, NodesGroup cluster) {
         try {
             Map<String, String> containerApp = new HashMap<>();
             if(cluster.getFeatures().contains(NodesGroup.Feature.SWARM)) {
@@ -16,33 +16,48 @@
 
 package com.codeabovelab.dm.cluman.ui.health;
 
-import com.codeabovelab.dm.cluman.cluster.docker.management.DockerUtils;
 import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
 import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
+import com.codeabovelab.dm.cluman.health.ContainerHealth;
+import com.codeabovelab.dm.cluman.health.ContainerHealthChecker;
+import com.codeabovelab.dm.cluman.health.HealthProbe;
+import com.codeabovelab.dm.common.healthcheck.HealthCheckResultDataImpl;
 import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResult;
+import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResultImpl;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 /**
  * Service which doe health check of container.
  */
+@Slf4j
 @Component
 public class HealthCheckService {
 
     private final DockerServiceRegistry dockerServiceRegistry;
+    private final ContainerHealthChecker checker;
 
 
     @Autowired
-    public HealthCheckService(DockerServiceRegistry dockerServiceRegistry) {
+    public HealthCheckService(DockerServiceRegistry dockerServiceRegistry, ContainerHealthChecker checker) {
         this.dockerServiceRegistry = dockerServiceRegistry;
+        this.checker = checker;
     }
 
+    /**
+     * Last results of all probed containers, it does not wait any probes.
+     * @param callback consumer of results
+     */
     public void checkAll(Consumer<ServiceHealthCheckResult> callback) {
-        //TODO we need to implement some hatcheck here
-        throw new UnsupportedOperationException("we need to implement some hatcheck here");
+        checker.getHealths().forEach(h -> callback.accept(toResult(h)));
     }
 
     /**
@@ -52,14 +67,85 @@ public class HealthCheckService {
      * @return null or ServiceHealthCheckResult
      * @throws InterruptedException
      */
-    public ServiceHealthCheckResult checkContainer(String cluster, String id, long timeout) {
+    public ServiceHealthCheckResult checkContainer(String cluster, String id, long timeout) throws InterruptedException {
         Assert.hasText(id, "id is null or empty");
+        ContainerDetails container = getContainer(cluster, id);
+        try {
+            return toResult(checker.check(cluster, container).get(timeout, TimeUnit.MILLISECONDS));
+        } catch (IllegalArgumentException e) {
+            return invalidProbe(id, e);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Can not check health of " + id, e.getCause());
+        }
+    }
+
+    /**
+     * Wait until container become healthy. Probe is repeated with interval which is declared by container.
+     * @param cluster cluster
+     * @param id id of container
+     * @param timeout timeout in ms
+     * @return true when container is healthy, false when it is not healthy after timeout or has invalid probe
+     * @throws InterruptedException
+     */
+    public boolean waitHealthy(String cluster, String id, long timeout) throws InterruptedException {
+        ContainerHealth last = checker.getHealth(id);
+        if(last != null && last.isHealthy()) {
+            return true;
+        }
+        final long deadline = System.currentTimeMillis() + timeout;
+        while(true) {
+            ContainerDetails container = getContainer(cluster, id);
+            HealthProbe probe;
+            try {
+                probe = HealthProbe.fromLabels(container.getConfig() == null ? null : container.getConfig().getLabels());
+            } catch (IllegalArgumentException e) {
+                // misconfigured container never become healthy
+                log.warn("Container '{}' has invalid health probe: {}", id, e.getMessage());
+                return false;
+            }
+            long left = deadline - System.currentTimeMillis();
+            ServiceHealthCheckResult result = checkContainer(cluster, id, Math.max(left, 0));
+            if(result != null && result.isHealthy()) {
+                return true;
+            }
+            long interval = probe == null ? HealthProbe.DEFAULT_INTERVAL : probe.getInterval();
+            left = deadline - System.currentTimeMillis();
+            if(left <= interval) {
+                return false;
+            }
+            Thread.sleep(interval);
+        }
+    }
+
+    private ContainerDetails getContainer(String cluster, String id) {
         ContainerDetails container = dockerServiceRegistry.getService(cluster).getContainer(id);
         if(container == null) {
             throw new RuntimeException("No containers with id: " + id);
         }
-        final String hostname = DockerUtils.getFullHostName(container.getConfig());
-        Assert.hasText(hostname, "container.config.hostname is null or empty, it strange");
-        throw new UnsupportedOperationException("we need to implement some hatcheck here");
+        return container;
+    }
+
+    private static ServiceHealthCheckResult invalidProbe(String id, IllegalArgumentException e) {
+        return ServiceHealthCheckResultImpl.builder()
+          .healthy(false)
+          .results(Collections.singletonList(HealthCheckResultDataImpl.builder()
+            .id(id)
+            .message("Invalid health probe: " + e.getMessage())
+            .healthy(false)
+            .build()))
+          .build();
+    }
+
+    private static ServiceHealthCheckResult toResult(ContainerHealth health) {
+        return ServiceHealthCheckResultImpl.builder()
+          .healthy(health.isHealthy())
+          .results(Collections.singletonList(HealthCheckResultDataImpl.builder()
+            .id(health.getName() == null ? health.getId() : health.getName())
+            .message(health.getType() + ": " + health.getMessage())
+            .healthy(health.isHealthy())
+            .build()))
+          .build();
     }
 }
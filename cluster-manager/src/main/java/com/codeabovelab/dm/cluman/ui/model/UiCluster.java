@@ -16,6 +16,7 @@
 
 package com.codeabovelab.dm.cluman.ui.model;
 
+import com.codeabovelab.dm.cluman.ds.clusters.ClusterSummary;
 import com.codeabovelab.dm.cluman.model.NodesGroup;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -43,6 +44,10 @@ public class UiCluster extends UiClusterEditablePart implements Comparable<UiClu
     private Set<NodesGroup.Feature> features;
     private Entry nodes;
     private Entry containers;
+    /**
+     * Resources and state of cluster, also contains time of its last update.
+     */
+    private ClusterSummary summary;
     private UiPermission permission;
     private Set<String> applications = new HashSet<>();
 
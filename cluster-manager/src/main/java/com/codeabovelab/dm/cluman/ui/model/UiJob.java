@@ -46,7 +46,17 @@ public class UiJob {
     private final JobParameters parameters;
 
     public static UiJobBuilder toUiBuilder(JobInstance ji) {
-        JobInfo jh = ji.getInfo();
+        return toUiBuilder(ji.getInfo())
+                .canRollback(ji.getJobContext().getRollback() != null)
+                .parameters(ji.getJobContext().getParameters());
+    }
+
+    /**
+     * Make builder from info only, it used for jobs from history which is absent in memory.
+     * @param jh job info
+     * @return builder
+     */
+    public static UiJobBuilder toUiBuilder(JobInfo jh) {
         String title = jh.getTitle();
         if (!StringUtils.hasText(title)) {
             title = jh.getType();
@@ -59,8 +69,6 @@ public class UiJob {
                 .startTime(jh.getStartTime())
                 .endTime(jh.getEndTime())
                 .status(status)
-                .canRollback(ji.getJobContext().getRollback() != null)
-                .parameters(ji.getJobContext().getParameters())
                 .running(status == JobStatus.STARTED);
     }
 
@@ -37,6 +37,10 @@ public class UiTagCatalog implements Comparable<UiTagCatalog> {
 
     private final Date created;
     private final Map<String, String> labels;
+    /**
+     * Error of image loading, when it not null other image data is absent.
+     */
+    private final String error;
 
     @Override
     public int compareTo(UiTagCatalog o) {
@@ -40,6 +40,8 @@ public class UiUpdateContainers {
     private final Float percentage;
     private final boolean healthCheckEnabled;
     private final boolean rollbackEnabled;
+    private final Integer batchSize;
+    private final Integer maxUnavailable;
 
 
 }
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.security.AccessContext;
+import com.codeabovelab.dm.cluman.security.SecuredType;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.cluman.ui.UiUtils;
+import com.codeabovelab.dm.cluman.ui.model.UiContainer;
+import com.codeabovelab.dm.cluman.ui.model.UiPermission;
+import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.codeabovelab.dm.common.security.Action;
+import com.codeabovelab.dm.common.utils.RescheduledTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Keeps container lists of clusters which have subscribers and sends to each subscriber snapshot and then only
+ * changes of list. List is reloaded once per burst of container events, and is not reloaded for each client.
+ */
+@Slf4j
+@Component
+class ContainersDeltaTracker {
+
+    /**
+     * Count of changes which are kept for resume of subscription.
+     */
+    static final int MAX_CHANGES = 256;
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private static final class Change {
+        private final long seq;
+        private final UiContainersDelta.Type type;
+        private final String id;
+        private final UiContainer container;
+
+        Change(long seq, UiContainersDelta.Type type, String id, UiContainer container) {
+            this.seq = seq;
+            this.type = type;
+            this.id = id;
+            this.container = container;
+        }
+    }
+
+    private final class Subscriber implements AutoCloseable {
+        private final ClusterState state;
+        private final AccessContext ac;
+        private final Consumer<UiContainersDelta> consumer;
+        /**
+         * Ids of containers which are sent to subscriber.
+         */
+        private final Set<String> visible = new HashSet<>();
+
+        Subscriber(ClusterState state, AccessContext ac, Consumer<UiContainersDelta> consumer) {
+            this.state = state;
+            this.ac = ac;
+            this.consumer = consumer;
+        }
+
+        private boolean isGranted(String id) {
+            return ac.isGranted(SecuredType.CONTAINER.id(id), Action.READ);
+        }
+
+        void sendSnapshot() {
+            visible.clear();
+            List<UiContainer> list = new ArrayList<>();
+            for(UiContainer uc: state.containers.values()) {
+                if(isGranted(uc.getId())) {
+                    visible.add(uc.getId());
+                    list.add(withPermission(uc));
+                }
+            }
+            Collections.sort(list);
+            UiContainersDelta delta = state.delta(state.seq, UiContainersDelta.Type.SNAPSHOT);
+            delta.setContainers(list);
+            send(delta);
+        }
+
+        void resume(long seq) {
+            for(UiContainer uc: state.containers.values()) {
+                if(isGranted(uc.getId())) {
+                    visible.add(uc.getId());
+                }
+            }
+            for(Change change: state.changes) {
+                if(change.seq <= seq) {
+                    continue;
+                }
+                if(change.type == UiContainersDelta.Type.REMOVE) {
+                    if(!visible.contains(change.id) && isGranted(change.id)) {
+                        send(state.removeDelta(change.seq, change.id));
+                    }
+                } else if(visible.contains(change.id)) {
+                    send(state.containerDelta(change.seq, change.type, withPermission(change.container)));
+                }
+            }
+        }
+
+        void onChange(Change change) {
+            String id = change.id;
+            if(change.type == UiContainersDelta.Type.REMOVE) {
+                if(visible.remove(id)) {
+                    send(state.removeDelta(change.seq, id));
+                }
+                return;
+            }
+            if(!isGranted(id)) {
+                if(visible.remove(id)) {
+                    send(state.removeDelta(change.seq, id));
+                }
+                return;
+            }
+            UiContainersDelta.Type type = visible.add(id) ? UiContainersDelta.Type.ADD : UiContainersDelta.Type.UPDATE;
+            send(state.containerDelta(change.seq, type, withPermission(change.container)));
+        }
+
+        private UiContainer withPermission(UiContainer src) {
+            UiContainer uc = copy(src);
+            UiPermission.inject(uc, ac, SecuredType.CONTAINER.id(uc.getId()));
+            return uc;
+        }
+
+        private void send(UiContainersDelta delta) {
+            try {
+                consumer.accept(delta);
+            } catch (Exception e) {
+                log.error("Can not send delta of '{}' containers.", state.cluster, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (state) {
+                state.subscribers.remove(this);
+                if(state.subscribers.isEmpty()) {
+                    state.idleSince = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    private final class ClusterState {
+        private final String cluster;
+        private final long epoch = System.currentTimeMillis();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private final ArrayDeque<Change> changes = new ArrayDeque<>(MAX_CHANGES);
+        private final RescheduledTask refreshTask;
+        private Map<String, UiContainer> containers = Collections.emptyMap();
+        private Set<String> nodes = Collections.emptySet();
+        private boolean loaded;
+        /**
+         * Generation of last started and last applied load, refreshes may overlap so stale loads are dropped.
+         */
+        private long loading;
+        private long applied;
+        private long seq;
+        private long idleSince;
+
+        ClusterState(String cluster) {
+            this.cluster = cluster;
+            this.refreshTask = RescheduledTask.builder()
+              .service(scheduledService)
+              .runnable(() -> refresh(this))
+              .maxDelay(5L, TimeUnit.SECONDS)
+              .build();
+        }
+
+        UiContainersDelta delta(long seq, UiContainersDelta.Type type) {
+            UiContainersDelta delta = new UiContainersDelta();
+            delta.setCluster(cluster);
+            delta.setEpoch(epoch);
+            delta.setSeq(seq);
+            delta.setType(type);
+            return delta;
+        }
+
+        UiContainersDelta containerDelta(long seq, UiContainersDelta.Type type, UiContainer container) {
+            UiContainersDelta delta = delta(seq, type);
+            delta.setContainers(Collections.singletonList(container));
+            return delta;
+        }
+
+        UiContainersDelta removeDelta(long seq, String id) {
+            UiContainersDelta delta = delta(seq, UiContainersDelta.Type.REMOVE);
+            delta.setId(id);
+            return delta;
+        }
+
+        /**
+         * Apply new list of containers and send changes to subscribers. Must be called under lock on state.
+         */
+        void apply(Map<String, UiContainer> newContainers) {
+            Map<String, UiContainer> old = this.containers;
+            this.containers = newContainers;
+            Set<String> newNodes = new HashSet<>();
+            newContainers.values().forEach(uc -> newNodes.add(uc.getNode()));
+            this.nodes = newNodes;
+            if(!loaded) {
+                loaded = true;
+                return;
+            }
+            for(String id: old.keySet()) {
+                if(!newContainers.containsKey(id)) {
+                    change(UiContainersDelta.Type.REMOVE, id, null);
+                }
+            }
+            for(UiContainer uc: newContainers.values()) {
+                UiContainer prev = old.get(uc.getId());
+                if(prev == null) {
+                    change(UiContainersDelta.Type.ADD, uc.getId(), uc);
+                } else if(isChanged(prev, uc)) {
+                    change(UiContainersDelta.Type.UPDATE, uc.getId(), uc);
+                }
+            }
+        }
+
+        private void change(UiContainersDelta.Type type, String id, UiContainer container) {
+            Change change = new Change(++seq, type, id, container);
+            if(changes.size() == MAX_CHANGES) {
+                changes.removeFirst();
+            }
+            changes.addLast(change);
+            for(Subscriber subscriber: subscribers) {
+                subscriber.onChange(change);
+            }
+        }
+
+        /**
+         * Whether client with specified position can receive missed changes from kept history.
+         */
+        boolean canResume(Long epoch, Long seq) {
+            if(epoch == null || seq == null || epoch != this.epoch || seq > this.seq) {
+                return false;
+            }
+            long oldest = changes.isEmpty() ? this.seq + 1 : changes.getFirst().seq;
+            return seq >= oldest - 1;
+        }
+    }
+
+    private final DiscoveryStorage discoveryStorage;
+    private final ContainerStorage containerStorage;
+    private final ApplicationService applicationService;
+    private final ScheduledExecutorService scheduledService;
+    private final ConcurrentMap<String, ClusterState> states = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ContainersDeltaTracker(DiscoveryStorage discoveryStorage,
+                                  ContainerStorage containerStorage,
+                                  ApplicationService applicationService,
+                                  @Qualifier(DockerLogEvent.BUS) Subscriptions<DockerLogEvent> dockerLogSubs,
+                                  @Qualifier(NodeEvent.BUS) Subscriptions<NodeEvent> nodeSubs) {
+        this.discoveryStorage = discoveryStorage;
+        this.containerStorage = containerStorage;
+        this.applicationService = applicationService;
+        this.scheduledService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        dockerLogSubs.subscribe(this::onDockerLogEvent);
+        nodeSubs.subscribe(this::onNodeEvent);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduledService.shutdownNow();
+    }
+
+    /**
+     * Subscribe to containers of cluster. Consumer receives snapshot, or missed changes when subscription can be
+     * resumed, and then changes, it called under lock and must not block.
+     * @param cluster name of cluster
+     * @param ac access context of subscriber, it used for filtering of containers
+     * @param epoch epoch of last received delta, may be null
+     * @param seq sequence number of last received delta, may be null
+     * @param consumer consumer of deltas
+     * @return handle which remove subscription
+     */
+    AutoCloseable subscribe(String cluster, AccessContext ac, Long epoch, Long seq, Consumer<UiContainersDelta> consumer) {
+        while(true) {
+            ClusterState state = states.computeIfAbsent(cluster, ClusterState::new);
+            boolean actual;
+            synchronized (state) {
+                // list of state without subscribers is not refreshed
+                actual = state.loaded && !state.subscribers.isEmpty();
+            }
+            if(!actual) {
+                refresh(state);
+            }
+            synchronized (state) {
+                if(states.get(cluster) != state) {
+                    // state was removed as idle while we load it
+                    continue;
+                }
+                Subscriber subscriber = new Subscriber(state, ac, consumer);
+                if(state.canResume(epoch, seq)) {
+                    subscriber.resume(seq);
+                } else {
+                    subscriber.sendSnapshot();
+                }
+                state.subscribers.add(subscriber);
+                return subscriber;
+            }
+        }
+    }
+
+    /**
+     * Reload lists of clusters with subscribers, and forget clusters without subscribers.
+     */
+    @Scheduled(fixedDelay = 60_000L)
+    public void reconcile() {
+        long border = System.currentTimeMillis() - IDLE_TIMEOUT;
+        for(ClusterState state: states.values()) {
+            synchronized (state) {
+                if(state.subscribers.isEmpty()) {
+                    if(state.idleSince < border) {
+                        states.remove(state.cluster, state);
+                    }
+                    continue;
+                }
+            }
+            refresh(state);
+        }
+    }
+
+    private void refresh(ClusterState state) {
+        long generation;
+        synchronized (state) {
+            generation = ++state.loading;
+        }
+        Map<String, UiContainer> containers;
+        try(TempAuth ta = TempAuth.asSystem()) {
+            containers = load(state.cluster);
+        } catch (Exception e) {
+            log.warn("Can not load containers of cluster '{}': {}", state.cluster, e.toString());
+            return;
+        }
+        synchronized (state) {
+            if(generation <= state.applied) {
+                log.debug("Drop stale list of '{}' containers.", state.cluster);
+                return;
+            }
+            state.applied = generation;
+            state.apply(containers);
+        }
+    }
+
+    private Map<String, UiContainer> load(String cluster) {
+        NodesGroup nodesGroup = discoveryStorage.getCluster(cluster);
+        ExtendedAssert.notFound(nodesGroup, "Cluster was not found by " + cluster);
+        DockerService service = nodesGroup.getDocker();
+        ExtendedAssert.notFound(service, "Service for " + cluster + " is null.");
+        Map<String, String> apps = UiUtils.mapAppContainer(applicationService, nodesGroup);
+        List<DockerContainer> list = service.getContainers(new GetContainersArg(true));
+        Map<String, UiContainer> containers = new HashMap<>();
+        for(DockerContainer container: list) {
+            UiContainer uic = UiContainer.from(container);
+            uic.enrich(discoveryStorage, containerStorage);
+            uic.setApplication(apps.get(uic.getId()));
+            containers.put(uic.getId(), uic);
+        }
+        return containers;
+    }
+
+    private void scheduleRefresh(String cluster, String node) {
+        for(ClusterState state: states.values()) {
+            boolean affected;
+            synchronized (state) {
+                affected = state.cluster.equals(cluster) || (node != null && state.nodes.contains(node));
+            }
+            if(affected) {
+                state.refreshTask.schedule(1L, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void onDockerLogEvent(DockerLogEvent e) {
+        if(e.getType() != EventType.CONTAINER) {
+            return;
+        }
+        scheduleRefresh(e.getCluster(), e.getNode());
+    }
+
+    private void onNodeEvent(NodeEvent e) {
+        NodeInfo node = e.getNode();
+        if(node != null) {
+            scheduleRefresh(node.getCluster(), node.getName());
+        }
+    }
+
+    /**
+     * Status is text like 'Up 5 minutes', so we do not send change when only it is changed.
+     */
+    private static boolean isChanged(UiContainer prev, UiContainer curr) {
+        if(Objects.equals(prev.getStatus(), curr.getStatus())) {
+            return !prev.equals(curr);
+        }
+        UiContainer tmp = copy(prev);
+        tmp.setStatus(curr.getStatus());
+        return !tmp.equals(curr);
+    }
+
+    private static UiContainer copy(UiContainer src) {
+        UiContainer uc = new UiContainer();
+        uc.setId(src.getId());
+        uc.setName(src.getName());
+        uc.setNode(src.getNode());
+        uc.setImage(src.getImage());
+        uc.setImageId(src.getImageId());
+        uc.setApplication(src.getApplication());
+        uc.setCluster(src.getCluster());
+        uc.getCommand().addAll(src.getCommand());
+        uc.getPorts().addAll(src.getPorts());
+        uc.setStatus(src.getStatus());
+        uc.setState(src.getState());
+        uc.setCreated(src.getCreated());
+        uc.setLock(src.isLock());
+        uc.setLockCause(src.getLockCause());
+        uc.getLabels().putAll(src.getLabels());
+        uc.setRun(src.isRun());
+        return uc;
+    }
+}
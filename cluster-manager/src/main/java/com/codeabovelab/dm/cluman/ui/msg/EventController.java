@@ -18,12 +18,19 @@ package com.codeabovelab.dm.cluman.ui.msg;
 
 import com.codeabovelab.dm.cluman.cluster.filter.Filter;
 import com.codeabovelab.dm.cluman.cluster.filter.FilterFactory;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
 import com.codeabovelab.dm.cluman.model.EventWithTime;
+import com.codeabovelab.dm.cluman.model.NodesGroup;
 import com.codeabovelab.dm.cluman.persistent.PersistentBusFactory;
+import com.codeabovelab.dm.cluman.security.AccessContext;
+import com.codeabovelab.dm.cluman.security.AccessContextFactory;
+import com.codeabovelab.dm.cluman.security.DockerServiceSecurityWrapper;
 import com.codeabovelab.dm.cluman.ui.model.UiError;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.fc.FbQueue;
 import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.codeabovelab.dm.common.security.Action;
 import io.swagger.annotations.ApiOperation;
 import lombok.AllArgsConstructor;
 import org.slf4j.Logger;
@@ -53,10 +60,17 @@ import java.util.stream.Collectors;
 public class EventController {
 
     static final String SUBSCRIPTIONS_GET = "/subscriptions/get";
+    /**
+     * Prefix of queue with deltas of cluster containers.
+     */
+    static final String CONTAINERS_PREFIX = "containers:";
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final SessionSubscriptions subscriptions;
     private final EventSources sources;
     private final FilterFactory filterFactory;
+    private final ContainersDeltaTracker containersTracker;
+    private final DiscoveryStorage discoveryStorage;
+    private final AccessContextFactory aclContextFactory;
 
     @MessageMapping(SUBSCRIPTIONS_GET)
     @SendToUser(broadcast = false)
@@ -88,6 +102,24 @@ public class EventController {
         ids.forEach(subscriptions::unsubscribe);
     }
 
+    @MessageMapping("/containers/subscribe")
+    public void subscribeContainers(UiContainersSubscription ucs) {
+        String cluster = ucs.getCluster();
+        NodesGroup ng = discoveryStorage.getCluster(cluster);
+        ExtendedAssert.notFound(ng, "Cluster was not found by " + cluster);
+        DockerService service = ng.getDocker();
+        if(service instanceof DockerServiceSecurityWrapper) {
+            ((DockerServiceSecurityWrapper) service).checkServiceAccess(Action.READ);
+        }
+        AccessContext ac = aclContextFactory.getContext();
+        subscriptions.subscribe(CONTAINERS_PREFIX + cluster,
+          (c) -> containersTracker.subscribe(cluster, ac, ucs.getEpoch(), ucs.getSeq(), c::accept));
+    }
+
+    @MessageMapping("/containers/unsubscribe")
+    public void unsubscribeContainers(String cluster) {
+        subscriptions.unsubscribe(CONTAINERS_PREFIX + cluster);
+    }
 
     @MessageMapping("/subscriptions/available")
     @SendToUser(broadcast = false)
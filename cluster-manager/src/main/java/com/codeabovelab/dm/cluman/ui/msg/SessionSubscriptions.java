@@ -30,6 +30,8 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -65,6 +67,18 @@ public class SessionSubscriptions implements AutoCloseable {
         fire();
     }
 
+    /**
+     * Subscribe current session to source which is not a {@link Subscriptions}, existed subscription with same id
+     * is replaced. Events are sent to '/queue/{id}' of session.
+     * @param id id of subscription
+     * @param opener function which open subscription for consumer of events
+     */
+    public void subscribe(String id, Function<Consumer<Object>, AutoCloseable> opener) {
+        Closeables.close(subs.remove(id));
+        subs.put(id, opener.apply((e) -> stomp.sendToSession(id, e)));
+        fire();
+    }
+
     /**
      * remove and close specified subscription
      * @param id
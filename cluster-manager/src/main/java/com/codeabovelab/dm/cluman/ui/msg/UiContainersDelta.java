@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import com.codeabovelab.dm.cluman.ui.model.UiContainer;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Change of cluster container list. Messages of subscription have growing sequence numbers, but numbers
+ * may have gaps because subscriber does not receive changes of containers which it can not read.
+ */
+@Data
+public class UiContainersDelta {
+
+    public enum Type {
+        /**
+         * Full list of containers, client must replace its list.
+         */
+        SNAPSHOT,
+        ADD,
+        UPDATE,
+        REMOVE
+    }
+
+    private String cluster;
+    /**
+     * Identifier of sequence, it is changed when server lost state, so client can not resume with old seq.
+     */
+    private long epoch;
+    private long seq;
+    private Type type;
+    /**
+     * Containers of snapshot, or single container of add and update.
+     */
+    private List<UiContainer> containers;
+    /**
+     * Id of removed container.
+     */
+    private String id;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import lombok.Data;
+
+/**
+ * Request for subscription to containers of cluster. When epoch and seq are from last received delta, then
+ * server send only missed deltas, otherwise it send snapshot.
+ */
+@Data
+public class UiContainersSubscription {
+    private String cluster;
+    private Long epoch;
+    private Long seq;
+}
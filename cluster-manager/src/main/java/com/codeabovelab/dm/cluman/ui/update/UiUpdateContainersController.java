@@ -77,6 +77,12 @@ public class UiUpdateContainersController {
         b.parameter(BatchUtils.JP_IMAGE_TARGET_VERSION, req.getVersion());
         b.parameter(HealthCheckContainerTasklet.JP_HEALTH_CHECK_ENABLED, req.isHealthCheckEnabled());
         b.parameter(BatchUtils.JP_ROLLBACK_ENABLE, req.isRollbackEnabled());
+        if(req.getBatchSize() != null) {
+            b.parameter(BatchUtils.JP_BATCH_SIZE, req.getBatchSize());
+        }
+        if(req.getMaxUnavailable() != null) {
+            b.parameter(BatchUtils.JP_MAX_UNAVAILABLE, req.getMaxUnavailable());
+        }
         //we pass random id, instead job will be cached
         b.parameter("id", Uuids.liteRandom());
         return b.build();
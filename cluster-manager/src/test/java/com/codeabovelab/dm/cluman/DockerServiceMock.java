@@ -135,11 +135,31 @@ public class DockerServiceMock implements DockerService {
     private final DockerServiceInfo info;
     //we need to make list of nodes
     private final NodeInfo node = NodeInfoImpl.builder().name("test-node").build();
+    private volatile long latency;
 
     public DockerServiceMock(DockerServiceInfo info) {
         this.info = info;
     }
 
+    /**
+     * Emulate latency of docker for stop, delete and create of containers.
+     * @param latency latency in ms
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    private void sleep() {
+        if(latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public String getCluster() {
         return info.getName();
@@ -272,6 +292,7 @@ public class DockerServiceMock implements DockerService {
 
     @Override
     public ServiceCallResult stopContainer(StopContainerArg arg) {
+        sleep();
         synchronized (containers) {
             ContainerHolder ch = getContainerHolder(arg.getId());
             if (ch == null) {
@@ -325,6 +346,7 @@ public class DockerServiceMock implements DockerService {
 
     @Override
     public ServiceCallResult deleteContainer(DeleteContainerArg arg) {
+        sleep();
         synchronized (containers) {
             ContainerHolder ch = getContainerHolder(arg.getId());
             if(ch == null) {
@@ -340,6 +362,7 @@ public class DockerServiceMock implements DockerService {
 
     @Override
     public CreateContainerResponse createContainer(CreateContainerCmd cmd) {
+        sleep();
         synchronized (containers) {
             String name = cmd.getName();
             Assert.notNull(name, "name is null");
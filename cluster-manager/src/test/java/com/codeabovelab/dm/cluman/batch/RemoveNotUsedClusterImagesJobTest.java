@@ -0,0 +1,222 @@
+package com.codeabovelab.dm.cluman.batch;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetImagesArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.RemoveImageArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.RemoveImageResult;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ImageItem;
+import com.codeabovelab.dm.cluman.cluster.filter.FilterFactory;
+import com.codeabovelab.dm.cluman.cluster.registry.RegistryRepository;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.job.*;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = RemoveNotUsedClusterImagesJobTest.TestConfiguration.class)
+public class RemoveNotUsedClusterImagesJobTest {
+
+    private static final String CLUSTER = "cluster";
+    private static final String NODE = "node1";
+
+    @Configuration
+    @Import({JobConfiguration.class, RemoveNotUsedClusterImagesJob.class})
+    public static class TestConfiguration {
+
+        @Bean
+        DockerServices dockerServices() {
+            return mock(DockerServices.class);
+        }
+
+        @Bean
+        DiscoveryStorage discoveryStorage() {
+            return mock(DiscoveryStorage.class);
+        }
+
+        @Bean
+        RegistryRepository registryRepository() {
+            return mock(RegistryRepository.class);
+        }
+
+        @Bean
+        FilterFactory filterFactory() {
+            return mock(FilterFactory.class);
+        }
+
+        @Bean
+        @SuppressWarnings("unchecked")
+        ImagesInventory imagesInventory(DockerServices dockerServices) {
+            return new ImagesInventory(dockerServices, mock(Subscriptions.class), mock(Subscriptions.class),
+              mock(Subscriptions.class));
+        }
+    }
+
+    @Autowired
+    private JobsManager jobsManager;
+
+    @Autowired
+    private DockerServices dockerServices;
+
+    @Autowired
+    private DiscoveryStorage discoveryStorage;
+
+    private final DockerService service = mock(DockerService.class);
+    /**
+     * Result codes of removing by image tag or id, absent mean OK.
+     */
+    private final Map<String, ResultCode> codes = new HashMap<>();
+    private final List<String> removes = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> multiTags = Collections.synchronizedSet(new HashSet<>());
+    /**
+     * Containers which is created after loading of inventory.
+     */
+    private final List<DockerContainer> lateContainers = new ArrayList<>();
+
+    private static ImageItem image(String id, String... tags) {
+        return ImageItem.builder()
+          .id(id)
+          .repoTags(Arrays.asList(tags))
+          .size(100L)
+          .build();
+    }
+
+    @Before
+    public void before() {
+        reset(dockerServices, discoveryStorage);
+        when(dockerServices.getNodeService(NODE)).thenReturn(service);
+        NodesGroup cluster = mock(NodesGroup.class);
+        when(cluster.getNodes()).thenReturn(Collections.singletonList(NodeInfoImpl.builder().name(NODE).build()));
+        when(discoveryStorage.getCluster(CLUSTER)).thenReturn(cluster);
+
+        when(service.getImages(GetImagesArg.ALL)).thenReturn(Arrays.asList(
+          image("sha256:used", "used:1"),
+          image("sha256:multi", "multi:1", "multi:latest"),
+          image("sha256:failed", "failed:1"),
+          image("sha256:dangling", "<none>:<none>")
+        ));
+        when(service.getContainers(any(GetContainersArg.class))).thenAnswer(invocation -> {
+            List<DockerContainer> containers = new ArrayList<>();
+            containers.add(container("c1", "used:1", "sha256:used"));
+            if(!removes.isEmpty()) {
+                containers.addAll(lateContainers);
+            }
+            return containers;
+        });
+        multiTags.addAll(Arrays.asList("multi:1", "multi:latest"));
+        codes.put("sha256:failed", ResultCode.ERROR);
+        when(service.removeImage(any(RemoveImageArg.class))).thenAnswer(invocation -> {
+            String ref = ((RemoveImageArg) invocation.getArguments()[0]).getImageId();
+            removes.add(ref);
+            ResultCode code = codes.get(ref);
+            if(code == null) {
+                code = ResultCode.OK;
+                if(ref.equals("sha256:multi") && multiTags.size() > 1) {
+                    // docker does not remove image with several tags by id
+                    code = ResultCode.CONFLICT;
+                } else {
+                    multiTags.remove(ref);
+                }
+            }
+            RemoveImageResult res = new RemoveImageResult();
+            res.code(code);
+            return res;
+        });
+    }
+
+    private static DockerContainer container(String id, String image, String imageId) {
+        return DockerContainer.builder()
+          .id(id)
+          .name(id)
+          .image(image)
+          .imageId(imageId)
+          .node(NodeInfoImpl.builder().name(NODE).build())
+          .build();
+    }
+
+    private JobContext run(boolean dryRun) throws Exception {
+        JobInstance ji = jobsManager.create(JobParameters.builder()
+          .type("job.removeClusterImages")
+          .parameter("clusterName", CLUSTER)
+          .parameter("dryRun", dryRun)
+          .build());
+        ji.start().get(1L, TimeUnit.SECONDS);
+        ji.atEnd().get(30L, TimeUnit.SECONDS);
+        // manager reuse instance with same parameters, so we remove it for next tests
+        jobsManager.deleteJob(ji.getInfo().getId());
+        assertEquals(JobStatus.COMPLETED, ji.getInfo().getStatus());
+        return ji.getJobContext();
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        JobContext ctx = run(false);
+        // image with several tags is untagged when docker reject removing by id
+        assertTrue(removes.containsAll(Arrays.asList("multi:1", "multi:latest", "sha256:multi", "sha256:dangling")));
+        assertTrue(removes.indexOf("sha256:multi") < removes.indexOf("multi:1"));
+        assertTrue(removes.indexOf("sha256:multi") < removes.indexOf("multi:latest"));
+        assertTrue(multiTags.isEmpty());
+        // used image is never sent to docker
+        assertFalse(removes.contains("used:1"));
+        assertFalse(removes.contains("sha256:used"));
+        assertEquals(2, ctx.getResult("removedCount"));
+        assertEquals(1, ctx.getResult("skippedCount"));
+        assertEquals(1, ctx.getResult("failedCount"));
+    }
+
+    @Test
+    public void testConflict() throws Exception {
+        // image is used by container which is created after loading of inventory
+        lateContainers.add(container("c2", "multi:1", "sha256:multi"));
+        JobContext ctx = run(false);
+        assertTrue(removes.contains("sha256:multi"));
+        // tags of used image must not be removed
+        assertEquals(2, multiTags.size());
+        assertFalse(removes.contains("multi:1"));
+        assertFalse(removes.contains("multi:latest"));
+        assertEquals(1, ctx.getResult("removedCount"));
+        assertEquals(2, ctx.getResult("skippedCount"));
+        assertEquals(1, ctx.getResult("failedCount"));
+    }
+
+    @Test
+    public void testUntagConflict() throws Exception {
+        codes.put("multi:1", ResultCode.CONFLICT);
+        codes.put("multi:latest", ResultCode.CONFLICT);
+        JobContext ctx = run(false);
+        // untagging is stopped at first conflict
+        assertEquals(1, removes.stream().filter(r -> r.startsWith("multi:")).count());
+        assertEquals(1, ctx.getResult("removedCount"));
+        assertEquals(2, ctx.getResult("skippedCount"));
+        assertEquals(1, ctx.getResult("failedCount"));
+    }
+
+    @Test
+    public void testDryRun() throws Exception {
+        JobContext ctx = run(true);
+        verify(service, never()).removeImage(any());
+        assertEquals(3, ctx.getResult("removedCount"));
+        assertEquals(1, ctx.getResult("skippedCount"));
+        assertEquals(0, ctx.getResult("failedCount"));
+    }
+}
@@ -0,0 +1,101 @@
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.model.StandardActions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ContainerDetailsCacheTest {
+
+    private static final String ID = "4fa6e0f0c6786287e131c3852c58a2e01cc697a68231826813597e4994f1d6e2";
+
+    private final ConcurrentMap<String, ContainerDetails> containers = new ConcurrentHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private ContainerDetails load(String key) {
+        loads.incrementAndGet();
+        for (ContainerDetails cd : containers.values()) {
+            if (cd.getId().startsWith(key) || cd.getName().equals("/" + key)) {
+                return cd;
+            }
+        }
+        return null;
+    }
+
+    private ContainerDetailsCache makeCache(long maxAge) {
+        // we run refresh tasks manually
+        return new ContainerDetailsCache(this::load, tasks::add, maxAge);
+    }
+
+    private void putContainer(String name, String status) {
+        ContainerDetails cd = new ContainerDetails();
+        cd.setId(ID);
+        cd.setName("/" + name);
+        cd.setPath(status);
+        containers.put(ID, cd);
+    }
+
+    private void runTasks() {
+        List<Runnable> copy = new ArrayList<>(tasks);
+        tasks.clear();
+        copy.forEach(Runnable::run);
+    }
+
+    @Test
+    public void testAliases() {
+        putContainer("cont", "first");
+        ContainerDetailsCache cache = makeCache(Long.MAX_VALUE);
+        assertEquals("first", cache.get(ID).getPath());
+        assertEquals("first", cache.get(ID.substring(0, 12)).getPath());
+        assertEquals("first", cache.get("cont").getPath());
+        assertEquals("first", cache.get("/cont").getPath());
+        assertEquals(1, loads.get());
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    public void testEvents() {
+        putContainer("cont", "first");
+        ContainerDetailsCache cache = makeCache(Long.MAX_VALUE);
+        cache.get("cont");
+        putContainer("renamed", "second");
+        cache.onEvent(ID, StandardActions.UPDATE);
+        cache.onEvent(ID, StandardActions.START);
+        // refresh is not done yet, so we got stale value
+        assertEquals("first", cache.get(ID).getPath());
+        // events are coalesced into single refresh task
+        assertEquals(1, tasks.size());
+        runTasks();
+        assertEquals(2, loads.get());
+        assertEquals("second", cache.get("renamed").getPath());
+        // old name must not point to renamed container
+        containers.clear();
+        assertNull(cache.get("cont"));
+
+        cache.onEvent(ID, StandardActions.DELETE);
+        assertNull(cache.get(ID));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        putContainer("cont", "first");
+        ContainerDetailsCache cache = makeCache(0);
+        cache.get(ID);
+        Thread.sleep(2);
+        putContainer("cont", "second");
+        assertEquals("first", cache.get(ID).getPath());
+        runTasks();
+        assertEquals("second", cache.get(ID).getPath());
+    }
+}
@@ -45,4 +45,23 @@ public class ContainerStarterHelperTest {
         assertTrue(result.contains("constraint:node==~node4"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPlanPlacement() throws Exception {
+        List<String> existsNodes = Arrays.asList("node1","node2","node3");
+        Map<String, Integer> appCountPerNode = new HashMap<String, Integer>(){{
+            put("node1", 2); put("node2", 1);
+        }};
+        List<String> plan = ContainerStarterHelper.planPlacement(existsNodes, appCountPerNode, 3, 10);
+        // only 6 places are free
+        assertEquals(Arrays.asList("node3", "node2", "node3", "node1", "node2", "node3"), plan);
+        plan = ContainerStarterHelper.planPlacement(existsNodes, appCountPerNode, 0, 4);
+        assertEquals(Arrays.asList("node3", "node2", "node3", "node1"), plan);
+        assertEquals(Arrays.asList(null, null), ContainerStarterHelper.planPlacement(Collections.emptyList(),
+          appCountPerNode, 3, 2));
+
+        List<String> env = new ArrayList<>(Arrays.asList("A=1", "constraint:node==~node1"));
+        ContainerStarterHelper.calculatePlannedConstraints("node3", existsNodes, appCountPerNode, 2, env);
+        assertEquals(Arrays.asList("A=1", "constraint:node==~node3", "constraint:node!=/\\\\Qnode1\\\\E/"), env);
+    }
+}
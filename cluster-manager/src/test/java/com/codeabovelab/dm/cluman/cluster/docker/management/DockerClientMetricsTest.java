@@ -0,0 +1,64 @@
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.utils.SingleValueCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class DockerClientMetricsTest {
+
+    @Test
+    public void test() {
+        MetricRegistry registry = new MetricRegistry();
+        DockerClientMetrics metrics = new DockerClientMetrics(registry, "node-1", null);
+        long first = metrics.start();
+        long second = metrics.start();
+        assertEquals(2, metrics.getInflight());
+        metrics.end("inspectContainer", DockerClientMetrics.Outcome.OK, first);
+        metrics.end("inspectContainer", DockerClientMetrics.Outcome.TIMEOUT, second);
+        metrics.end("inspectContainer", DockerClientMetrics.Outcome.OK, metrics.start());
+        assertEquals(0, metrics.getInflight());
+
+        String ok = DockerClientMetrics.REQUESTS + "{node=node-1,operation=inspectContainer,outcome=ok}";
+        String timeout = DockerClientMetrics.REQUESTS + "{node=node-1,operation=inspectContainer,outcome=timeout}";
+        assertEquals(2, registry.getTimers().get(ok).getCount());
+        assertEquals(1, registry.getTimers().get(timeout).getCount());
+        assertEquals(1, registry.getCounters().get(DockerClientMetrics.TIMEOUTS + "{node=node-1}").getCount());
+        Gauge<?> inflight = registry.getGauges().get(DockerClientMetrics.INFLIGHT + "{node=node-1}");
+        assertEquals(0, inflight.getValue());
+
+        // recreated service of same node shares metrics
+        DockerClientMetrics other = new DockerClientMetrics(registry, "node-1", null);
+        other.end("inspectContainer", DockerClientMetrics.Outcome.OK, other.start());
+        assertEquals(3, registry.getTimers().get(ok).getCount());
+        assertEquals(1, metrics.getTimeouts());
+
+        SingleValueCache<String> cache = SingleValueCache.builder(() -> "value").timeAfterWrite(60_000L).build();
+        metrics.registerCache("info", cache);
+        cache.get();
+        cache.get();
+        String cacheName = DockerClientMetrics.CACHE + "{node=node-1,cache=info,result=";
+        assertEquals(1L, registry.getGauges().get(cacheName + "hit}").getValue());
+        assertEquals(1L, registry.getGauges().get(cacheName + "miss}").getValue());
+        assertEquals(0L, registry.getGauges().get(cacheName + "stale}").getValue());
+
+        // metrics of removed node are unregistered, but metrics of other services are kept
+        new DockerClientMetrics(registry, "node-10", null).end("info", DockerClientMetrics.Outcome.OK, 0);
+        new DockerClientMetrics(registry, null, "cluster").end("info", DockerClientMetrics.Outcome.OK, 0);
+        DockerClientMetrics.removeNode(registry, "node-1");
+        assertTrue(registry.getNames().stream().noneMatch(n -> n.contains("node=node-1,") || n.contains("node=node-1}")));
+        assertNotNull(registry.getGauges().get(DockerClientMetrics.INFLIGHT + "{node=node-10}"));
+        assertNotNull(registry.getGauges().get(DockerClientMetrics.INFLIGHT + "{cluster=cluster}"));
+        // timers of each outcome for "info" operation of two services
+        assertEquals(6, registry.getTimers().size());
+
+        // without registry it only counts
+        DockerClientMetrics noop = new DockerClientMetrics(null, null, "cluster");
+        noop.end("info", DockerClientMetrics.Outcome.TIMEOUT, noop.start());
+        assertEquals(1, noop.getTimeouts());
+    }
+}
@@ -0,0 +1,133 @@
+package com.codeabovelab.dm.cluman.cluster.docker.management;
+
+import com.codeabovelab.dm.cluman.cluster.docker.model.Frame;
+import com.codeabovelab.dm.cluman.cluster.docker.model.StreamType;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class FrameReaderTest {
+
+    private static void writeFrame(ByteArrayOutputStream os, int type, byte[] payload) {
+        os.write(type);
+        os.write(0);
+        os.write(0);
+        os.write(0);
+        int len = payload.length;
+        os.write((len >>> 24) & 0xff);
+        os.write((len >>> 16) & 0xff);
+        os.write((len >>> 8) & 0xff);
+        os.write(len & 0xff);
+        os.write(payload, 0, len);
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMultiplexed() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeFrame(os, 1, bytes("first line\n"));
+        writeFrame(os, 2, bytes("  second line\n"));
+        // it larger than default buffer
+        byte[] large = new byte[FrameReader.BUFFER_SIZE * 3];
+        large[large.length - 1] = 'e';
+        writeFrame(os, 1, large);
+        writeFrame(os, 1, bytes("last"));
+        try (FrameReader reader = new FrameReader(new ByteArrayInputStream(os.toByteArray()))) {
+            assertEquals(new Frame(StreamType.STDOUT, bytes("first line\n")), reader.readFrame());
+            Frame frame = reader.readFrame();
+            assertEquals(StreamType.STDERR, frame.getStreamType());
+            assertEquals("second line", frame.getMessage());
+            assertArrayEquals(large, reader.readFrame().getPayload());
+            assertEquals("last", reader.readFrame().getMessage());
+            assertNull(reader.readFrame());
+        }
+    }
+
+    @Test
+    public void testRaw() throws Exception {
+        String text = "some raw text without any headers";
+        try (FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes(text)))) {
+            StringBuilder sb = new StringBuilder();
+            List<StreamType> types = new ArrayList<>();
+            while (reader.readFrame((type, buf, offset, length) -> {
+                types.add(type);
+                sb.append(new String(buf, offset, length, StandardCharsets.UTF_8));
+            })) {
+                //nothing
+            }
+            assertEquals(text, sb.toString());
+            assertTrue(types.stream().allMatch(StreamType.RAW::equals));
+        }
+    }
+
+    @Test
+    public void testLineWriter() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeFrame(os, 1, bytes("first line\n"));
+        writeFrame(os, 2, bytes("\t second line ©\r\n"));
+        writeFrame(os, 1, bytes("\n"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LineFrameWriter writer = new LineFrameWriter(out);
+        try (FrameReader reader = new FrameReader(new ByteArrayInputStream(os.toByteArray()))) {
+            while (reader.readFrame(writer)) {
+                //nothing
+            }
+        }
+        assertEquals("first line\nsecond line ©\n\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeFrame(os, 1, bytes("some payload"));
+        byte[] data = os.toByteArray();
+        ByteArrayInputStream is = new ByteArrayInputStream(data, 0, data.length - 3);
+        try (FrameReader reader = new FrameReader(is)) {
+            reader.readFrame();
+        }
+    }
+
+    @Test
+    public void testInterrupterAfterProcessing() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeFrame(os, 1, bytes("line"));
+        SettableFuture<Boolean> interrupter = SettableFuture.create();
+        List<String> lines = new ArrayList<>();
+        ProcessEventProcessor.processFrames(new ByteArrayInputStream(os.toByteArray()), interrupter,
+          (type, buf, offset, length) -> lines.add(new String(buf, offset, length, StandardCharsets.UTF_8)));
+        assertEquals(Collections.singletonList("line"), lines);
+        // thread is reused for other work, so it must not be interrupted by completed processing
+        interrupter.set(true);
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    public void testInterrupterWhileProcessing() throws Exception {
+        SettableFuture<Boolean> interrupter = SettableFuture.create();
+        InputStream stream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                interrupter.set(true);
+                assertTrue(Thread.currentThread().isInterrupted());
+                return -1;
+            }
+        };
+        ProcessEventProcessor.processFrames(stream, interrupter, (type, buf, offset, length) -> {});
+        assertFalse(Thread.interrupted());
+    }
+}
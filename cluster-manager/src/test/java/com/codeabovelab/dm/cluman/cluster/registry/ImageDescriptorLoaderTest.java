@@ -0,0 +1,96 @@
+package com.codeabovelab.dm.cluman.cluster.registry;
+
+import com.codeabovelab.dm.cluman.cluster.registry.model.PrivateRegistryConfig;
+import com.codeabovelab.dm.cluman.model.ImageDescriptor;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ImageDescriptorLoaderTest {
+
+    private static final int LATENCY = 30;
+    private final ImageDescriptorLoader loader = new ImageDescriptorLoader(4);
+    private final AtomicInteger current = new AtomicInteger();
+    private final AtomicInteger max = new AtomicInteger();
+
+    @After
+    public void after() {
+        loader.close();
+    }
+
+    /**
+     * Stub of registry which emulate latency of manifest requests.
+     */
+    private RegistryService makeRegistry() {
+        PrivateRegistryConfig config = new PrivateRegistryConfig();
+        config.setName("test-registry");
+        RegistryService registry = mock(RegistryService.class);
+        when(registry.getConfig()).thenReturn(config);
+        when(registry.getImage(anyString(), anyString())).then(invocation -> {
+            String tag = invocation.getArgumentAt(1, String.class);
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(LATENCY);
+            } finally {
+                current.decrementAndGet();
+            }
+            if(tag.equals("broken")) {
+                throw new IllegalStateException("Bad manifest");
+            }
+            ImageDescriptor image = mock(ImageDescriptor.class);
+            when(image.getId()).thenReturn("id-" + tag);
+            return image;
+        });
+        return registry;
+    }
+
+    @Test
+    public void test() {
+        RegistryService registry = makeRegistry();
+        List<String> tags = new ArrayList<>();
+        for(int i = 0; i < 40; ++i) {
+            tags.add(i == 7 ? "broken" : Integer.toString(i));
+        }
+        long begin = System.currentTimeMillis();
+        List<ImageDescriptorLoader.Result> results = loader.load(registry, "image", tags);
+        long time = System.currentTimeMillis() - begin;
+        assertTrue("Too slow: " + time, time < tags.size() * LATENCY / 2);
+        assertEquals(4, max.get());
+        assertEquals(tags.size(), results.size());
+        for(int i = 0; i < tags.size(); ++i) {
+            ImageDescriptorLoader.Result result = results.get(i);
+            assertEquals(tags.get(i), result.getTag());
+            if(i == 7) {
+                assertNull(result.getImage());
+                assertEquals("Bad manifest", result.getError());
+            } else {
+                assertEquals("id-" + i, result.getImage().getId());
+                assertNull(result.getError());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedLimit() throws Exception {
+        RegistryService registry = makeRegistry();
+        List<String> tags = new ArrayList<>();
+        for(int i = 0; i < 12; ++i) {
+            tags.add(Integer.toString(i));
+        }
+        // limit of registry is shared by concurrent callers
+        Thread other = new Thread(() -> loader.load(registry, "other", tags));
+        other.start();
+        loader.load(registry, "image", tags);
+        other.join();
+        assertEquals(4, max.get());
+    }
+}
@@ -0,0 +1,93 @@
+package com.codeabovelab.dm.cluman.ds.clusters;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.model.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ClusterSummariesTest {
+
+    private static final String NODE = "node1";
+    private static final String OFF_NODE = "node2";
+
+    private static DockerContainer container(String id, DockerContainer.State state) {
+        DockerContainer.Builder b = DockerContainer.builder()
+          .id(id)
+          .name(id)
+          .image("nginx")
+          .imageId("sha256:nginx")
+          .node(NodeInfoImpl.builder().name(NODE).build());
+        b.setState(state);
+        return b.build();
+    }
+
+    private static NodeInfo node(String name, boolean on) {
+        NodeMetrics.Builder mb = NodeMetrics.builder().sysMemTotal(1000L).sysMemUsed(400L);
+        mb.setSwarmCpusTotal(2);
+        return NodeInfoImpl.builder().name(name).on(on).health(mb.build()).build();
+    }
+
+    private static DockerLogEvent event(String action, String id) {
+        ContainerBase.Builder cb = ContainerBase.builder();
+        cb.setId(id);
+        return DockerLogEvent.builder()
+          .type(EventType.CONTAINER)
+          .node(NODE)
+          .container(cb.build())
+          .action(action)
+          .build();
+    }
+
+    @Test
+    public void test() {
+        DockerService service = mock(DockerService.class);
+        when(service.getContainers(any(GetContainersArg.class))).thenReturn(Arrays.asList(
+          container("c1", DockerContainer.State.RUNNING),
+          container("c2", DockerContainer.State.EXITED)));
+        ImagesInventory inventory = mock(ImagesInventory.class);
+        when(inventory.getLoadedImages(any())).thenReturn(Collections.emptyList());
+        ClusterSummaries summaries = new ClusterSummaries(n -> NODE.equals(n) ? service : null, inventory,
+          mock(ScheduledExecutorService.class));
+        NodesGroup cluster = mock(NodesGroup.class);
+        when(cluster.getNodes()).thenReturn(Arrays.asList(node(NODE, true), node(OFF_NODE, false)));
+
+        ClusterSummary summary = summaries.getSummary(cluster);
+        assertFalse(summary.isComplete());
+        assertNull(summary.getUpdated());
+        assertEquals(1, summary.getNodes());
+        assertEquals(1, summary.getOffNodes());
+        assertEquals(0, summary.getContainers());
+
+        summaries.load(NODE);
+        summary = summaries.getSummary(cluster);
+        assertTrue(summary.isComplete());
+        assertNotNull(summary.getUpdated());
+        assertEquals(1, summary.getContainers());
+        assertEquals(1, summary.getOffContainers());
+        assertEquals(4, summary.getCpus());
+        assertEquals(2000L, summary.getMemory());
+        assertEquals(800L, summary.getMemoryUsed());
+
+        summaries.onDockerLogEvent(event(StandardActions.CREATE, "c3"));
+        summaries.onDockerLogEvent(event(StandardActions.START, "c3"));
+        summaries.onDockerLogEvent(event(StandardActions.DIE, "c1"));
+        summaries.onDockerLogEvent(event(StandardActions.DELETE, "c2"));
+        summary = summaries.getSummary(cluster);
+        assertEquals(1, summary.getContainers());
+        assertEquals(1, summary.getOffContainers());
+        // docker api is not called by events
+        verify(service, times(1)).getContainers(any(GetContainersArg.class));
+    }
+}
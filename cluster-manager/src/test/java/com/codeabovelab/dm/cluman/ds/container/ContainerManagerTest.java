@@ -0,0 +1,135 @@
+package com.codeabovelab.dm.cluman.ds.container;
+
+import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfig;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.CreateAndStartContainerResult;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ScaleContainerResult;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerConfig;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.cluster.docker.model.CreateContainerCmd;
+import com.codeabovelab.dm.cluman.cluster.docker.model.CreateContainerResponse;
+import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.ds.swarm.NetworkManager;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
+import com.codeabovelab.dm.cluman.ui.HttpException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ContainerManagerTest {
+
+    private static final String CLUSTER = "cluster";
+    private static final String TEMPLATE = "template";
+
+    private final DockerService docker = mock(DockerService.class);
+    /**
+     * Result codes of creation by container name, absent mean OK. Each code is used once.
+     */
+    private final Map<String, ResultCode> codes = new ConcurrentHashMap<>();
+    private final List<String> created = Collections.synchronizedList(new ArrayList<>());
+    private ContainerManager manager;
+
+    @Before
+    public void before() {
+        ContainerDetails details = new ContainerDetails();
+        details.setId(TEMPLATE);
+        details.setConfig(ContainerConfig.builder().image("app").labels(new HashMap<>()).build());
+        when(docker.getContainer(TEMPLATE)).thenReturn(details);
+        when(docker.getInfo()).thenReturn(DockerServiceInfo.builder()
+          .nodeList(Arrays.asList(NodeInfoImpl.builder().name("node1").build(),
+            NodeInfoImpl.builder().name("node2").build()))
+          .build());
+        when(docker.getClusterConfig()).thenReturn(mock(ClusterConfig.class));
+        when(docker.pullImage(anyString(), any())).thenReturn(mock(ImageDescriptor.class));
+        when(docker.startContainer(anyString())).thenReturn(new ServiceCallResult().code(ResultCode.OK));
+        when(docker.createContainer(any())).thenAnswer(invocation -> {
+            String name = ((CreateContainerCmd) invocation.getArguments()[0]).getName();
+            CreateContainerResponse response = new CreateContainerResponse();
+            ResultCode code = codes.remove(name);
+            response.setCode(code == null ? ResultCode.OK : code);
+            if(code == null) {
+                created.add(name);
+                response.setId("id-" + name);
+            }
+            return response;
+        });
+        DockerServiceRegistry registry = mock(DockerServiceRegistry.class);
+        when(registry.getService(CLUSTER)).thenReturn(docker);
+        ContainerSourceFactory sourceFactory = mock(ContainerSourceFactory.class);
+        doAnswer(invocation -> {
+            ((ContainerSource) invocation.getArguments()[1]).setImage("app");
+            return null;
+        }).when(sourceFactory).toSource(any(), any());
+        // container with name of application already exists
+        Function<DockerService, Collection<String>> names = (ds) -> {
+            List<String> list = new ArrayList<>(created);
+            list.add("app");
+            return list;
+        };
+        manager = new ContainerManager(registry, mock(NodeRegistry.class), null, new ContainersNameService(names),
+          mock(ContainerStorage.class), mock(NetworkManager.class), sourceFactory, mock(ImagesInventory.class));
+    }
+
+    @Test
+    public void testScale() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        AtomicInteger pulls = new AtomicInteger();
+        when(docker.pullImage(anyString(), any())).thenAnswer(invocation -> {
+            if(pulls.incrementAndGet() <= 2) {
+                // two first instances must be created concurrently
+                barrier.await(10, TimeUnit.SECONDS);
+            }
+            return mock(ImageDescriptor.class);
+        });
+        ScaleContainerResult result = manager.scale(CLUSTER, 4, TEMPLATE);
+        assertEquals(ResultCode.OK, result.getCode());
+        assertEquals(4, result.getContainers().size());
+        assertThat(created, containsInAnyOrder("app-1", "app-2", "app-3", "app-4"));
+    }
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        codes.put("app-2", ResultCode.ERROR);
+        ScaleContainerResult result = manager.scale(CLUSTER, 3, TEMPLATE);
+        assertEquals(ResultCode.ERROR, result.getCode());
+        List<CreateAndStartContainerResult> containers = result.getContainers();
+        assertEquals(3, containers.size());
+        // failed instance is not retried
+        assertEquals(2, containers.stream().filter(r -> r.getCode() == ResultCode.OK).count());
+        assertThat(created, containsInAnyOrder("app-1", "app-3"));
+    }
+
+    @Test
+    public void testConflict() throws Exception {
+        // name is occupied after it was allocated
+        codes.put("app-2", ResultCode.CONFLICT);
+        ScaleContainerResult result = manager.scale(CLUSTER, 3, TEMPLATE);
+        assertEquals(ResultCode.OK, result.getCode());
+        assertEquals(3, result.getContainers().size());
+        assertThat(created, hasSize(3));
+        assertThat(created, not(hasItem("app-2")));
+    }
+
+    @Test(expected = HttpException.class)
+    public void testNegativeScale() {
+        manager.scale(CLUSTER, -1, TEMPLATE);
+    }
+}
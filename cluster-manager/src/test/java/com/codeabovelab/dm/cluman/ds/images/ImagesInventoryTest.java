@@ -0,0 +1,149 @@
+package com.codeabovelab.dm.cluman.ds.images;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetImagesArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ImageItem;
+import com.codeabovelab.dm.cluman.model.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ImagesInventoryTest {
+
+    private static final String NGINX = "sha256:aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+    private static final String REDIS = "sha256:bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb";
+    private static final String NODE = "node1";
+
+    private static ImageItem image(String id, String ... tags) {
+        return ImageItem.builder().id(id).repoTags(Arrays.asList(tags)).size(100).build();
+    }
+
+    private static DockerContainer container(String id, String image, String imageId) {
+        return DockerContainer.builder()
+          .id(id)
+          .name(id)
+          .image(image)
+          .imageId(imageId)
+          .node(NodeInfoImpl.builder().name(NODE).build())
+          .build();
+    }
+
+    private static DockerLogEvent event(String action, String id, String image) {
+        ContainerBase.Builder cb = ContainerBase.builder();
+        cb.setId(id);
+        cb.setImage(image);
+        return DockerLogEvent.builder()
+          .type(EventType.CONTAINER)
+          .node(NODE)
+          .container(cb.build())
+          .action(action)
+          .build();
+    }
+
+    private static Map<String, InventoryImage> byId(List<InventoryImage> images) {
+        return images.stream().collect(Collectors.toMap(InventoryImage::getId, Function.identity()));
+    }
+
+    @Test
+    public void test() {
+        DockerService service = mock(DockerService.class);
+        when(service.getImages(any(GetImagesArg.class))).thenReturn(Arrays.asList(
+          image(NGINX, "nginx:latest"),
+          image(REDIS, "redis:3", "example.com/redis:3")));
+        when(service.getContainers(any(GetContainersArg.class))).thenReturn(Collections.singletonList(
+          container("c1", "nginx:latest", NGINX)));
+        ImagesInventory inventory = new ImagesInventory(n -> NODE.equals(n) ? service : null,
+          mock(ScheduledExecutorService.class));
+
+        Map<String, InventoryImage> images = byId(inventory.getImages(Arrays.asList(NODE, "unknown")));
+        assertEquals(2, images.size());
+        assertTrue(images.get(NGINX).isUsed());
+        assertFalse(images.get(REDIS).isUsed());
+        assertEquals(2, images.get(REDIS).getTags().size());
+        assertEquals(Collections.singleton(NODE), images.get(REDIS).getNodes().keySet());
+
+        // image name without tag must be resolved to 'latest'
+        inventory.onDockerLogEvent(event(StandardActions.CREATE, "c2", "nginx"));
+        inventory.onDockerLogEvent(event(StandardActions.CREATE, "c3", "redis:3"));
+        images = byId(inventory.getImages(Collections.singleton(NODE)));
+        assertEquals(2, images.get(NGINX).getContainers());
+        assertEquals(1, images.get(REDIS).getContainers());
+        assertEquals(1, inventory.getContainersCount(NODE, "nginx"));
+        assertEquals(1, inventory.getContainersCount(NODE, "nginx:latest"));
+
+        inventory.onDockerLogEvent(event(StandardActions.DELETE, "c3", "redis:3"));
+        inventory.onDockerLogEvent(event(StandardActions.DELETE, "c1", "nginx:latest"));
+        images = byId(inventory.getImages(Collections.singleton(NODE)));
+        assertEquals(1, images.get(NGINX).getContainers());
+        assertFalse(images.get(REDIS).isUsed());
+        assertEquals(0, inventory.getContainersCount(NODE, "nginx:latest"));
+
+        // node is listed only once, then it updated by events
+        verify(service, times(1)).getImages(any(GetImagesArg.class));
+        verify(service, times(1)).getContainers(any(GetContainersArg.class));
+    }
+
+    @Test
+    public void testEventsDuringLoad() {
+        DockerService service = mock(DockerService.class);
+        when(service.getImages(any(GetImagesArg.class))).thenReturn(Arrays.asList(
+          image(NGINX, "nginx:latest"),
+          image(REDIS, "redis:3")));
+        ImagesInventory inventory = new ImagesInventory(n -> service, mock(ScheduledExecutorService.class));
+        // events come after listing of containers, but before it applied
+        when(service.getContainers(any(GetContainersArg.class))).thenAnswer(i -> {
+            inventory.onDockerLogEvent(event(StandardActions.CREATE, "c2", "nginx:latest"));
+            return Collections.singletonList(container("c1", "nginx:latest", NGINX));
+        }).thenAnswer(i -> {
+            inventory.onDockerLogEvent(event(StandardActions.DELETE, "c1", "nginx:latest"));
+            inventory.onDockerLogEvent(event(StandardActions.CREATE, "c3", "redis:3"));
+            return Arrays.asList(container("c1", "nginx:latest", NGINX), container("c2", "nginx:latest", NGINX));
+        });
+        Map<String, InventoryImage> images = byId(inventory.getImages(Collections.singleton(NODE)));
+        assertEquals(2, images.get(NGINX).getContainers());
+
+        inventory.refresh(NODE);
+        images = byId(inventory.getImages(Collections.singleton(NODE)));
+        assertEquals(1, images.get(NGINX).getContainers());
+        assertEquals(1, images.get(REDIS).getContainers());
+        assertEquals(1, inventory.getContainersCount(NODE, "redis:3"));
+    }
+
+    @Test
+    public void testOfflineCancelsLoad() {
+        DockerService service = mock(DockerService.class);
+        when(service.getImages(any(GetImagesArg.class))).thenReturn(Collections.singletonList(image(NGINX, "nginx:latest")));
+        when(service.getContainers(any(GetContainersArg.class))).thenReturn(Collections.emptyList());
+        ScheduledExecutorService scheduledService = mock(ScheduledExecutorService.class);
+        ScheduledFuture future = mock(ScheduledFuture.class);
+        doReturn(future).when(scheduledService).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        ImagesInventory inventory = new ImagesInventory(n -> service, scheduledService);
+        assertEquals(1, inventory.getImages(Collections.singleton(NODE)).size());
+
+        inventory.onDockerLogEvent(DockerLogEvent.builder().type(EventType.IMAGE).node(NODE).action("pull").build());
+        verify(scheduledService).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        inventory.onNodeEvent(NodeEvent.builder()
+          .node(NodeInfoImpl.builder().name(NODE).build())
+          .action(StandardActions.OFFLINE)
+          .build());
+        verify(future).cancel(true);
+        assertEquals(0, inventory.getLoadedImages(Collections.singleton(NODE)).size());
+    }
+}
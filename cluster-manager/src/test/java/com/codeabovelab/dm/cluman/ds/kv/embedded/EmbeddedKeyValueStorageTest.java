@@ -0,0 +1,233 @@
+package com.codeabovelab.dm.cluman.ds.kv.embedded;
+
+import com.codeabovelab.dm.common.kv.DeleteDirOptions;
+import com.codeabovelab.dm.common.kv.KvNode;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.codeabovelab.dm.common.kv.WriteOptions;
+import com.codeabovelab.dm.common.utils.ExecutorUtils;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class EmbeddedKeyValueStorageTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private EmbeddedKeyValueStorage open(File dir) {
+        return EmbeddedKeyValueStorage.builder()
+          .dataDir(dir)
+          .eventsExecutor(ExecutorUtils.DIRECT)
+          .build();
+    }
+
+    @Test
+    public void testOperations() {
+        List<KvStorageEvent> events = new CopyOnWriteArrayList<>();
+        try (EmbeddedKeyValueStorage kvs = open(null)) {
+            kvs.subscriptions().subscribe(events::add);
+            kvs.setdir("/root", null);
+            KvNode node = kvs.set("/root/one/two", "2");
+            assertEquals(node, kvs.get("/root/one/two"));
+            assertTrue(kvs.get("/root/one").isDirectory());
+            kvs.set("/root/one/two", "22");
+            kvs.set("/root/three", "3");
+            assertEquals(new HashSet<>(Arrays.asList("/root/one", "/root/three")), new HashSet<>(kvs.list("/root")));
+            assertEquals("3", kvs.map("/root").get("/root/three"));
+            assertNull(kvs.list("/absent"));
+
+            try {
+                kvs.set("/root/three", "33", WriteOptions.builder().prevIndex((int) node.getIndex()).build());
+                fail("index does not match");
+            } catch (IllegalStateException e) {
+                //ok
+            }
+            try {
+                kvs.deletedir("/root", DeleteDirOptions.builder().build());
+                fail("dir is not empty");
+            } catch (IllegalStateException e) {
+                //ok
+            }
+            kvs.delete("/root/three", null);
+            kvs.deletedir("/root", DeleteDirOptions.builder().recursive(true).build());
+            assertNull(kvs.get("/root/one/two"));
+
+            List<KvStorageEvent.Crud> actions = new ArrayList<>();
+            long prev = 0;
+            for (KvStorageEvent e : events) {
+                assertTrue(e.getIndex() > prev);
+                prev = e.getIndex();
+                actions.add(e.getAction());
+            }
+            assertEquals(Arrays.asList(KvStorageEvent.Crud.CREATE, KvStorageEvent.Crud.CREATE, KvStorageEvent.Crud.UPDATE,
+              KvStorageEvent.Crud.CREATE, KvStorageEvent.Crud.DELETE, KvStorageEvent.Crud.DELETE), actions);
+            assertEquals(prev, kvs.getIndex());
+        }
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File dir = tmp.newFolder();
+        long index;
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            for (int i = 0; i < 100; ++i) {
+                kvs.set("/data/key" + i, "value" + i);
+            }
+            kvs.snapshot();
+            kvs.delete("/data/key0", null);
+            kvs.set("/data/key1", "updated");
+            kvs.setdir("/empty", null);
+            index = kvs.getIndex();
+        }
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            assertEquals(index, kvs.getIndex());
+            assertNull(kvs.get("/data/key0"));
+            assertEquals("updated", kvs.get("/data/key1").getValue());
+            assertEquals("value99", kvs.get("/data/key99").getValue());
+            assertEquals(99, kvs.list("/data").size());
+            assertTrue(kvs.get("/empty").isDirectory());
+            kvs.set("/data/last", "last");
+        }
+        // simulate crash in middle of write
+        List<File> segments = WriteAheadLog.segments(dir);
+        File last = segments.get(segments.size() - 1);
+        try (RandomAccessFile raf = new RandomAccessFile(last, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            assertEquals(index, kvs.getIndex());
+            assertNull(kvs.get("/data/last"));
+            kvs.set("/data/last", "again");
+        }
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            assertEquals("again", kvs.get("/data/last").getValue());
+        }
+    }
+
+    @Test
+    public void testDamagedMiddleSegment() throws Exception {
+        File dir = tmp.newFolder();
+        // each start of storage opens new segment
+        for (int s = 0; s < 3; ++s) {
+            try (EmbeddedKeyValueStorage kvs = open(dir)) {
+                for (int i = 0; i < 10; ++i) {
+                    kvs.set("/data/s" + s + "/key" + i, "value" + i);
+                }
+            }
+        }
+        List<File> segments = WriteAheadLog.segments(dir);
+        assertEquals(3, segments.size());
+        File middle = segments.get(1);
+        try (RandomAccessFile raf = new RandomAccessFile(middle, "rw")) {
+            long pos = raf.length() / 2;
+            raf.seek(pos);
+            int b = raf.read();
+            raf.seek(pos);
+            raf.write(~b);
+        }
+        long index;
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            index = kvs.getIndex();
+            assertTrue(index > 10 && index < 20);
+            assertEquals(10, kvs.list("/data/s0").size());
+            // records after damaged one are not applied
+            assertNull(kvs.get("/data/s2"));
+            assertNull(kvs.get("/data/s1/key9"));
+            kvs.set("/data/new", "new");
+        }
+        File[] damaged = dir.listFiles((d, name) -> name.endsWith(".damaged"));
+        assertEquals(1, damaged.length);
+        assertTrue(damaged[0].getName().startsWith(segments.get(2).getName()));
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            assertEquals(index + 1, kvs.getIndex());
+            assertEquals("new", kvs.get("/data/new").getValue());
+            assertNull(kvs.get("/data/s2"));
+        }
+    }
+
+    @Test
+    public void testCommitFailure() throws Exception {
+        File full = new File("/dev/full");
+        Assume.assumeTrue(full.exists());
+        File dir = tmp.newFolder();
+        List<KvStorageEvent> events = new CopyOnWriteArrayList<>();
+        File segment;
+        try (EmbeddedKeyValueStorage kvs = EmbeddedKeyValueStorage.builder()
+          .dataDir(dir)
+          .syncWrites(false)
+          .eventsExecutor(ExecutorUtils.DIRECT)
+          .build()) {
+            kvs.set("/data/one", "1");
+            long index = kvs.getIndex();
+            // next segment can not be written
+            segment = new File(dir, WriteAheadLog.segmentName(index + 1));
+            Files.createSymbolicLink(segment.toPath(), full.toPath());
+            kvs.snapshot();
+            kvs.subscriptions().subscribe(events::add);
+            try {
+                kvs.set("/data/two/three", "3");
+                fail("commit must fail");
+            } catch (IllegalStateException e) {
+                //ok
+            }
+            // failed change is rolled back
+            assertNull(kvs.get("/data/two"));
+            assertEquals(index, kvs.getIndex());
+            assertTrue(events.isEmpty());
+            try {
+                kvs.set("/data/one", "11");
+                fail("storage must not accept writes after failure");
+            } catch (IllegalStateException e) {
+                //ok
+            }
+            assertEquals("1", kvs.get("/data/one").getValue());
+        }
+        assertTrue(segment.delete());
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            assertEquals("1", kvs.get("/data/one").getValue());
+            assertNull(kvs.get("/data/two"));
+        }
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        File dir = tmp.newFolder();
+        List<KvStorageEvent> events = new CopyOnWriteArrayList<>();
+        try (EmbeddedKeyValueStorage kvs = EmbeddedKeyValueStorage.builder()
+          .dataDir(dir)
+          .ttlTick(50)
+          .eventsExecutor(ExecutorUtils.DIRECT)
+          .build()) {
+            kvs.subscriptions().subscribe(events::add);
+            kvs.set("/nodes/first", "1", WriteOptions.builder().ttl(1).build());
+            kvs.set("/nodes/second", "2", WriteOptions.builder().ttl(1).build());
+            // refresh of ttl
+            kvs.set("/nodes/second", "2", WriteOptions.builder().ttl(100).build());
+            assertNotNull(kvs.get("/nodes/first"));
+            Thread.sleep(1500);
+            assertNull(kvs.get("/nodes/first"));
+            assertNotNull(kvs.get("/nodes/second"));
+            KvStorageEvent last = events.get(events.size() - 1);
+            assertEquals(KvStorageEvent.Crud.DELETE, last.getAction());
+            assertEquals("/nodes/first", last.getKey());
+        }
+        try (EmbeddedKeyValueStorage kvs = open(dir)) {
+            assertNull(kvs.get("/nodes/first"));
+            assertNotNull(kvs.get("/nodes/second"));
+        }
+    }
+}
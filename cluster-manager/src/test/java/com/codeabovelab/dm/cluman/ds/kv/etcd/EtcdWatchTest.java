@@ -0,0 +1,123 @@
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.promises.EtcdResponsePromise;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test of watching for changes with window of concurrent requests.
+ */
+public class EtcdWatchTest {
+
+    private static final long WAIT_ANY = -1;
+    /**
+     * Handlers of sent requests by index of 'wait'.
+     */
+    private final Map<Long, ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>> handlers = new ConcurrentHashMap<>();
+    private final List<Long> events = new CopyOnWriteArrayList<>();
+    private EtcdClientWrapper wrapper;
+
+    @Before
+    public void before() {
+        EtcdClient etcd = mock(EtcdClient.class);
+        when(etcd.get("")).thenAnswer(i -> request());
+        wrapper = new EtcdClientWrapper(etcd, "/");
+        wrapper.subscriptions().subscribe(e -> events.add(e.getIndex()));
+    }
+
+    @After
+    public void after() {
+        wrapper.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private EtcdKeyGetRequest request() throws Exception {
+        EtcdKeyGetRequest req = mock(EtcdKeyGetRequest.class);
+        long[] index = {WAIT_ANY};
+        when(req.recursive()).thenReturn(req);
+        when(req.waitForChange()).thenReturn(req);
+        when(req.waitForChange(anyLong())).thenAnswer(i -> {
+            index[0] = (Long) i.getArguments()[0];
+            return req;
+        });
+        EtcdResponsePromise<EtcdKeysResponse> promise = mock(EtcdResponsePromise.class);
+        doAnswer(i -> {
+            handlers.put(index[0], (ResponsePromise.IsSimplePromiseResponseHandler<EtcdKeysResponse>) i.getArguments()[0]);
+            return null;
+        }).when(promise).addListener(any());
+        when(req.send()).thenReturn(promise);
+        return req;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respond(long wait, long modified, long etcdIndex) throws Exception {
+        HttpHeaders headers = new DefaultHttpHeaders();
+        headers.add("X-Etcd-Index", etcdIndex);
+        String json = "{\"action\":\"set\",\"node\":{\"key\":\"/key" + modified + "\",\"value\":\"val\"," +
+          "\"modifiedIndex\":" + modified + ",\"createdIndex\":" + modified + "}}";
+        EtcdKeysResponse response = EtcdKeysResponse.DECODER.decode(headers,
+          Unpooled.copiedBuffer(json, StandardCharsets.UTF_8));
+        EtcdResponsePromise<EtcdKeysResponse> promise = mock(EtcdResponsePromise.class);
+        when(promise.get()).thenReturn(response);
+        handlers.remove(wait).onResponse(promise);
+    }
+
+    @Test
+    public void testPartialWindow() throws Exception {
+        // watcher is lagged: etcd index is 10, but event is 5
+        respond(WAIT_ANY, 5, 10);
+        waitFor(() -> handlers.keySet().containsAll(asList(6L, 7L, 8L, 9L, 10L)));
+        // out of order responses are held till previous are received
+        respond(8, 8, 10);
+        respond(7, 7, 10);
+        waitFor(() -> events.contains(5L));
+        Thread.sleep(50);
+        assertEquals(asList(5L), events);
+        // events are dispatched without waiting for rest of window
+        respond(6, 6, 10);
+        waitFor(() -> events.size() == 4);
+        assertEquals(asList(5L, 6L, 7L, 8L), sorted());
+        assertTrue(handlers.containsKey(9L));
+        // response for index may be event with greater index, so it serve next requests too
+        respond(9, 10, 10);
+        waitFor(() -> events.size() == 5);
+        assertEquals(asList(5L, 6L, 7L, 8L, 10L), sorted());
+        // window is completed, so watcher wait for next event
+        waitFor(() -> handlers.containsKey(11L));
+    }
+
+    private List<Long> sorted() {
+        return events.stream().sorted().collect(Collectors.toList());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5_000;
+        while(!condition.getAsBoolean()) {
+            assertTrue("Timeout of waiting", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class PartitionedEventDispatcherTest {
+
+    @Test
+    public void testPartition() {
+        try (PartitionedEventDispatcher dispatcher = new PartitionedEventDispatcher("test", "/cluman", 3, e -> {})) {
+            assertEquals("nodes", dispatcher.getPartition("/cluman/nodes/node1"));
+            assertEquals("containers", dispatcher.getPartition("/cluman/containers"));
+            assertEquals("other", dispatcher.getPartition("/other/key"));
+            assertEquals("", dispatcher.getPartition(null));
+            assertEquals(dispatcher.getWorker("/cluman/nodes/a"), dispatcher.getWorker("/cluman/nodes/b/c"));
+        }
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        final int count = 1000;
+        String[] dirs = {"nodes", "containers", "clusters", "images"};
+        CountDownLatch latch = new CountDownLatch(count);
+        Map<String, List<Long>> received = new ConcurrentHashMap<>();
+        try (PartitionedEventDispatcher dispatcher = new PartitionedEventDispatcher("test", "/cluman", 3, e -> {
+            received.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e.getIndex());
+            latch.countDown();
+        })) {
+            List<KvStorageEvent> batch = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                String key = "/cluman/" + dirs[i % dirs.length] + "/key" + (i % 7);
+                batch.add(new KvStorageEvent(i, key, "v", 0, KvStorageEvent.Crud.UPDATE));
+                if (batch.size() == 50) {
+                    dispatcher.dispatch(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            dispatcher.dispatch(batch);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        for (List<Long> indexes : received.values()) {
+            for (int i = 1; i < indexes.size(); ++i) {
+                assertTrue(indexes.get(i - 1) < indexes.get(i));
+            }
+        }
+    }
+}
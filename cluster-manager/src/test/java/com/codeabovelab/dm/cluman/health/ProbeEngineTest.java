@@ -0,0 +1,192 @@
+package com.codeabovelab.dm.cluman.health;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ProbeEngineTest {
+
+    private final AtomicBoolean execHealthy = new AtomicBoolean(true);
+    /**
+     * Exec checks wait this latch, like slow call to docker.
+     */
+    private final CountDownLatch execLatch = new CountDownLatch(1);
+    private final AtomicBoolean execBlocked = new AtomicBoolean();
+    private final List<ContainerHealth> changes = new CopyOnWriteArrayList<>();
+    private ProbeEngine engine;
+    private HttpServer http;
+    private ServerSocket tcp;
+    private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        engine = new ProbeEngine("test-probes", 2, 2, t -> {
+            if(execBlocked.get()) {
+                execLatch.await();
+            }
+            return execHealthy.get() ? ProbeResult.healthy("ok") : ProbeResult.unhealthy("fail");
+        }, changes::add);
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1000);
+        http.createContext("/ok", e -> {
+            e.sendResponseHeaders(200, -1);
+            e.close();
+        });
+        http.createContext("/fail", e -> {
+            e.sendResponseHeaders(503, -1);
+            e.close();
+        });
+        http.start();
+        // accepts connections but never answers
+        tcp = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            try {
+                while(true) {
+                    accepted.add(tcp.accept());
+                }
+            } catch (Exception e) {
+                // closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void after() throws Exception {
+        execLatch.countDown();
+        engine.close();
+        http.stop(0);
+        tcp.close();
+        for(Socket socket: accepted) {
+            socket.close();
+        }
+    }
+
+    private static ProbeTarget target(String id, int port) {
+        return ProbeTarget.builder().id(id).name(id).node("node").host("127.0.0.1").port(port).build();
+    }
+
+    private static HealthProbe probe(HealthProbe.Type type, String path, long interval, long timeout, int threshold) {
+        return HealthProbe.builder()
+          .type(type)
+          .path(path)
+          .interval(interval)
+          .timeout(timeout)
+          .threshold(threshold)
+          .build();
+    }
+
+    private ProbeResult probeNow(ProbeTarget target, HealthProbe probe) throws Exception {
+        return engine.probe(target, probe).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        HealthProbe probe = probe(HealthProbe.Type.TCP, null, 1000, 1000, 1);
+        assertTrue(probeNow(target("tcp", tcp.getLocalPort()), probe).isHealthy());
+        int closedPort;
+        try(ServerSocket ss = new ServerSocket(0)) {
+            closedPort = ss.getLocalPort();
+        }
+        ProbeResult res = probeNow(target("closed", closedPort), probe);
+        assertFalse(res.isHealthy());
+        assertTrue(res.getMessage().startsWith("Can not connect"));
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        int port = http.getAddress().getPort();
+        ProbeResult ok = probeNow(target("http", port), probe(HealthProbe.Type.HTTP, "/ok", 1000, 1000, 1));
+        assertTrue(ok.getMessage(), ok.isHealthy());
+        assertTrue(ok.getMessage().contains("200"));
+        ProbeResult fail = probeNow(target("http", port), probe(HealthProbe.Type.HTTP, "/fail", 1000, 1000, 1));
+        assertFalse(fail.isHealthy());
+        assertTrue(fail.getMessage().contains("503"));
+        // server accepts connection, but does not answer
+        ProbeResult timeout = probeNow(target("silent", tcp.getLocalPort()), probe(HealthProbe.Type.HTTP, "/", 1000, 200, 1));
+        assertFalse(timeout.isHealthy());
+        assertTrue(timeout.getMessage().startsWith("Timeout"));
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        engine.register(target("exec", 0), probe(HealthProbe.Type.EXEC, null, 20, 1000, 3));
+        waitFor(() -> changes.size() == 1);
+        assertTrue(changes.get(0).isHealthy());
+        execHealthy.set(false);
+        waitFor(() -> changes.size() == 2);
+        ContainerHealth health = changes.get(1);
+        assertFalse(health.isHealthy());
+        assertEquals(3, health.getFailures());
+        assertEquals("fail", health.getMessage());
+        execHealthy.set(true);
+        waitFor(() -> changes.size() == 3);
+        assertTrue(engine.getHealth("exec").isHealthy());
+        assertTrue(engine.unregister("exec"));
+        assertNull(engine.getHealth("exec"));
+    }
+
+    @Test
+    public void testBlockedExec() throws Exception {
+        execBlocked.set(true);
+        HealthProbe exec = probe(HealthProbe.Type.EXEC, null, 1000, 5000, 1);
+        List<CompletableFuture<ProbeResult>> execs = new ArrayList<>();
+        for(int i = 0; i < 4; ++i) {
+            execs.add(engine.probe(target("exec" + i, 0), exec));
+        }
+        // all exec threads are busy, but network probes are not delayed
+        int port = http.getAddress().getPort();
+        ProbeResult ok = engine.probe(target("http", port), probe(HealthProbe.Type.HTTP, "/ok", 1000, 1000, 1))
+          .get(1, TimeUnit.SECONDS);
+        assertTrue(ok.getMessage(), ok.isHealthy());
+        assertFalse(execs.get(0).isDone());
+        execLatch.countDown();
+        for(CompletableFuture<ProbeResult> future: execs) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).isHealthy());
+        }
+    }
+
+    @Test
+    public void testManyContainers() throws Exception {
+        int count = 500;
+        HealthProbe probe = probe(HealthProbe.Type.HTTP, "/ok", 200, 2000, 1);
+        int port = http.getAddress().getPort();
+        for(int i = 0; i < count; ++i) {
+            engine.register(target("c" + i, port), probe);
+        }
+        assertEquals(count, engine.getCount());
+        waitFor(() -> engine.getHealths().size() == count);
+        for(ContainerHealth health: engine.getHealths()) {
+            assertTrue(health.getMessage(), health.isHealthy());
+        }
+        // same registration does not reset state
+        engine.register(target("c0", port), probe);
+        assertNotNull(engine.getHealth("c0"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while(!condition.getAsBoolean()) {
+            assertTrue("Timeout of waiting", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.codeabovelab.dm.cluman.job;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.*;
+
+/**
+ */
+public class JobExecutorTest {
+
+    private JobExecutor executor;
+
+    @After
+    public void after() {
+        if(executor != null) {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        executor = new JobExecutor("test", 1, 0, 0);
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        executor.submit(() -> await(latch), JobPriority.NORMAL, emptySet(), emptySet());
+        // worker must be busy before other jobs are submitted
+        waitQueue(0);
+        executor.submit(() -> order.add("low"), JobPriority.LOW, emptySet(), emptySet());
+        executor.submit(() -> order.add("normal"), JobPriority.NORMAL, emptySet(), emptySet());
+        Future<?> last = executor.submit(() -> order.add("high"), JobPriority.HIGH, emptySet(), emptySet());
+        Future<?> cancelled = executor.submit(() -> order.add("cancelled"), JobPriority.HIGH, emptySet(), emptySet());
+        waitQueue(4);
+        assertTrue(cancelled.cancel(false));
+        assertEquals(3, executor.getQueueSize());
+        latch.countDown();
+        executor.submit(() -> {}, JobPriority.LOW, emptySet(), emptySet()).get(5, TimeUnit.SECONDS);
+        assertTrue(last.isDone());
+        assertEquals(asList("high", "normal", "low"), order);
+        assertEquals(5, executor.getWaitTimer().getCount());
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        executor = new JobExecutor("test", 4, 1, 2);
+        AtomicInteger onCluster = new AtomicInteger();
+        AtomicInteger maxOnCluster = new AtomicInteger();
+        AtomicInteger onNode = new AtomicInteger();
+        AtomicInteger maxOnNode = new AtomicInteger();
+        CountDownLatch otherStarted = new CountDownLatch(1);
+        List<Future<?>> futures = new CopyOnWriteArrayList<>();
+        for(int i = 0; i < 4; ++i) {
+            futures.add(executor.submit(() -> {
+                maxOnCluster.accumulateAndGet(onCluster.incrementAndGet(), Math::max);
+                sleep(50);
+                onCluster.decrementAndGet();
+            }, JobPriority.NORMAL, singleton("one"), emptySet()));
+        }
+        for(int i = 0; i < 4; ++i) {
+            futures.add(executor.submit(() -> {
+                maxOnNode.accumulateAndGet(onNode.incrementAndGet(), Math::max);
+                sleep(50);
+                onNode.decrementAndGet();
+            }, JobPriority.NORMAL, Collections.emptySet(), asList("node1")));
+        }
+        // job on another cluster must not wait jobs of blocked cluster
+        futures.add(executor.submit(otherStarted::countDown, JobPriority.LOW, singleton("two"), emptySet()));
+        assertTrue(otherStarted.await(150, TimeUnit.MILLISECONDS));
+        for(Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1, maxOnCluster.get());
+        assertEquals(2, maxOnNode.get());
+    }
+
+    private void waitQueue(int size) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while(executor.getQueueSize() != size && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, executor.getQueueSize());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.codeabovelab.dm.cluman.job;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class JobHistoryTest {
+
+    private File dir;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("job-history").toFile();
+    }
+
+    @After
+    public void after() {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File file: files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static JobInfo info(String id, JobStatus status) {
+        LocalDateTime now = LocalDateTime.now();
+        JobInfo.Builder b = JobInfo.builder()
+          .id(id)
+          .type("test.job")
+          .title("Test " + id)
+          .status(status)
+          .createTime(now);
+        if(status.isEnd()) {
+            b.startTime(now).endTime(now);
+        }
+        return b.build();
+    }
+
+    private static void appendEvents(JobHistory history, String id, int count) {
+        for(int i = 0; i < count; ++i) {
+            history.append(new JobEvent(info(id, JobStatus.STARTED), "message " + i, null));
+        }
+    }
+
+    @Test
+    public void testPagedRead() throws Exception {
+        try(JobHistory history = new JobHistory(null, 1024, 0, 0, 0)) {
+            appendEvents(history, "first-1", 10);
+            appendEvents(history, "second-1", 3);
+            history.append(new JobEvent(info("first-1", JobStatus.FAILED_JOB), "fail", new IllegalStateException("test")));
+
+            assertEquals(11, history.getEventsEnd("first-1"));
+            List<JobEvent> page = history.getEvents("first-1", 4, 3);
+            assertEquals(3, page.size());
+            assertEquals("message 4", page.get(0).getMessage());
+            assertEquals("message 6", page.get(2).getMessage());
+            assertEquals(JobStatus.FAILED_JOB, history.getInfo("first-1").getStatus());
+            JobEvent last = history.getEvents("first-1", 10, 0).get(0);
+            assertTrue(last.getException().toString().contains("test"));
+            assertEquals(2, history.getInfosByType("test.job").size());
+            assertTrue(history.getEvents("unknown", 0, 0).isEmpty());
+        }
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        try(JobHistory history = new JobHistory(dir, 512, 0, 0, 0)) {
+            appendEvents(history, "job-1", 20);
+            appendEvents(history, "job-2", 5);
+        }
+        // simulate crash in middle of write
+        File[] segments = dir.listFiles();
+        assertNotNull(segments);
+        assertTrue(segments.length > 1);
+        File last = segments[0];
+        for(File segment: segments) {
+            if(segment.getName().compareTo(last.getName()) > 0) {
+                last = segment;
+            }
+        }
+        try(RandomAccessFile raf = new RandomAccessFile(last, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try(JobHistory history = new JobHistory(dir, 512, 0, 0, 0)) {
+            assertEquals(20, history.getEventsEnd("job-1"));
+            assertEquals(4, history.getEventsEnd("job-2"));
+            assertEquals("message 19", history.getEvents("job-1", 19, 1).get(0).getMessage());
+            appendEvents(history, "job-2", 1);
+            assertEquals(5, history.getEventsEnd("job-2"));
+        }
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        try(JobHistory history = new JobHistory(dir, 512, 2, 0, 5)) {
+            appendEvents(history, "job-1", 12);
+            // old events are trimmed, but offsets are stable
+            assertEquals(12, history.getEventsEnd("job-1"));
+            List<JobEvent> events = history.getEvents("job-1", 0, 0);
+            assertEquals(5, events.size());
+            assertEquals("message 7", events.get(0).getMessage());
+            assertEquals("message 10", history.getEvents("job-1", 10, 1).get(0).getMessage());
+
+            for(int i = 1; i <= 4; ++i) {
+                String id = "job-" + i;
+                appendEvents(history, id, 4);
+                history.append(new JobEvent(info(id, JobStatus.COMPLETED), "end", null));
+                Thread.sleep(2);
+            }
+            history.clean();
+            assertFalse(history.contains("job-1"));
+            assertFalse(history.contains("job-2"));
+            assertTrue(history.contains("job-4"));
+            assertEquals("end", history.getEvents("job-3", 4, 1).get(0).getMessage());
+        }
+        try(JobHistory history = new JobHistory(dir, 512, 2, 0, 5)) {
+            assertEquals(2, history.getInfos().size());
+            assertEquals(5, history.getEvents("job-4", 0, 0).size());
+        }
+    }
+
+    @Test
+    public void testCompactAndRestart() throws Exception {
+        try(JobHistory history = new JobHistory(dir, 512, 0, 0, 3)) {
+            history.append(new JobEvent(info("job-a", JobStatus.STARTED), "start", null));
+            // trimmed events make first segment sparse
+            appendEvents(history, "job-b", 12);
+            history.append(new JobEvent(info("job-a", JobStatus.COMPLETED), "end", null));
+            history.clean();
+            assertEquals(JobStatus.COMPLETED, history.getInfo("job-a").getStatus());
+        }
+        try(JobHistory history = new JobHistory(dir, 512, 0, 0, 3)) {
+            // moved event of job-a must not override its last status
+            assertEquals(JobStatus.COMPLETED, history.getInfo("job-a").getStatus());
+            List<JobEvent> events = history.getEvents("job-a", 0, 0);
+            assertEquals("start", events.get(0).getMessage());
+            assertEquals("end", events.get(1).getMessage());
+            // offsets of trimmed job are stable after restart
+            assertEquals(12, history.getEventsEnd("job-b"));
+            assertEquals("message 10", history.getEvents("job-b", 10, 1).get(0).getMessage());
+        }
+    }
+
+    @Test
+    public void testDeleteRunning() throws Exception {
+        try(JobHistory history = new JobHistory(dir, 512, 0, 0, 0)) {
+            appendEvents(history, "job-1", 2);
+            assertTrue(history.delete("job-1"));
+            // running job continues to send events
+            appendEvents(history, "job-1", 2);
+            assertFalse(history.contains("job-1"));
+        }
+        try(JobHistory history = new JobHistory(dir, 512, 0, 0, 0)) {
+            assertFalse(history.contains("job-1"));
+        }
+    }
+}
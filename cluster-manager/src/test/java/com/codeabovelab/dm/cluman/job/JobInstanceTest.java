@@ -0,0 +1,94 @@
+package com.codeabovelab.dm.cluman.job;
+
+import com.codeabovelab.dm.common.mb.MessageBus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class JobInstanceTest {
+
+    private JobsManagerImpl manager;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        manager = mock(JobsManagerImpl.class);
+        when(manager.getHistory()).thenReturn(mock(JobHistory.class));
+        when(manager.getBus()).thenReturn(mock(MessageBus.class));
+        when(manager.execute(any(Runnable.class))).then(i -> {
+            ((Runnable) i.getArguments()[0]).run();
+            return null;
+        });
+    }
+
+    @Test
+    public void testCancelAfterDequeue() throws Exception {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        doAnswer(i -> new FutureTask<>(captor.getValue(), null))
+          .when(manager).submit(any(AbstractJobInstance.class), captor.capture());
+        JobInstanceImpl ji = new JobInstanceImpl(config(JobParameters.builder().type("test").build()));
+        assertTrue(ji.start().get(1, TimeUnit.SECONDS));
+        assertEquals(JobStatus.QUEUED, ji.getInfo().getStatus());
+        // worker already took job from queue, but cancel come before it start the job
+        assertTrue(ji.cancel().get(1, TimeUnit.SECONDS));
+        captor.getValue().run();
+        assertEquals(0, runs.get());
+        assertEquals(JobStatus.CANCELLED, ji.getInfo().getStatus());
+        assertTrue(ji.atEnd().isDone());
+    }
+
+    @Test
+    public void testScheduleNextAfterIteration() throws Exception {
+        ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Runnable> submitted = ArgumentCaptor.forClass(Runnable.class);
+        doReturn(mock(ScheduledFuture.class)).when(manager).schedule(scheduled.capture(), any(Date.class));
+        doAnswer(i -> new FutureTask<>(submitted.getValue(), null))
+          .when(manager).submit(any(AbstractJobInstance.class), submitted.capture());
+        ScheduledJobInstanceImpl ji = new ScheduledJobInstanceImpl(config(JobParameters.builder()
+          .type("test")
+          .schedule("0 0 * * * *")
+          .build()));
+        assertTrue(ji.start().get(1, TimeUnit.SECONDS));
+        verify(manager, times(1)).schedule(any(Runnable.class), any(Date.class));
+        // scheduler thread only submit iteration and does not wait it
+        scheduled.getValue().run();
+        verify(manager, times(1)).schedule(any(Runnable.class), any(Date.class));
+        submitted.getValue().run();
+        assertEquals(1, runs.get());
+        assertEquals(JobStatus.SCHEDULED, ji.getInfo().getStatus());
+        verify(manager, times(2)).schedule(any(Runnable.class), any(Date.class));
+
+        assertTrue(ji.cancel().get(1, TimeUnit.SECONDS));
+        scheduled.getValue().run();
+        submitted.getValue().run();
+        assertEquals(1, runs.get());
+        verify(manager, times(2)).schedule(any(Runnable.class), any(Date.class));
+    }
+
+    private AbstractJobInstance.Config config(JobParameters parameters) {
+        AbstractJobInstance.Config config = new AbstractJobInstance.Config();
+        config.setJobsManager(manager);
+        config.setParameters(parameters);
+        config.setJob(runs::incrementAndGet);
+        config.setInfo(JobInfo.builder()
+          .id("test-1")
+          .type("test")
+          .createTime(LocalDateTime.now())
+          .build());
+        return config;
+    }
+}
@@ -0,0 +1,85 @@
+package com.codeabovelab.dm.cluman.source;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.model.DockerContainer;
+import com.codeabovelab.dm.cluman.model.NodeInfoImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ContainersInspectorTest {
+
+    private static final int NODES = 4;
+    private static final int PER_NODE = 10;
+    private static final long LATENCY = 50;
+
+    private static DockerContainer container(String id, String node) {
+        return DockerContainer.builder()
+          .id(id)
+          .name(id)
+          .image("nginx")
+          .imageId("sha256:nginx")
+          .node(NodeInfoImpl.builder().name(node).build())
+          .build();
+    }
+
+    private static String nodeOf(String id) {
+        return id.substring(0, id.indexOf('-'));
+    }
+
+    @Test
+    public void test() throws Exception {
+        List<DockerContainer> containers = new ArrayList<>();
+        for(int i = 0; i < PER_NODE; ++i) {
+            for(int n = 0; n < NODES; ++n) {
+                containers.add(container("node" + n + "-" + i, "node" + n));
+            }
+        }
+        // missing container
+        containers.add(container("node0-missing", "node0"));
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger maxOnNode = new AtomicInteger();
+        DockerService service = mock(DockerService.class);
+        when(service.getContainer(anyString())).thenAnswer(invocation -> {
+            String id = (String) invocation.getArguments()[0];
+            AtomicInteger counter = running.computeIfAbsent(nodeOf(id), (k) -> new AtomicInteger());
+            maxOnNode.accumulateAndGet(counter.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(LATENCY);
+            } finally {
+                counter.decrementAndGet();
+            }
+            if(id.endsWith("missing")) {
+                return null;
+            }
+            ContainerDetails cd = new ContainerDetails();
+            cd.setId(id);
+            return cd;
+        });
+        try(ContainersInspector inspector = new ContainersInspector(16, 2)) {
+            long begin = System.currentTimeMillis();
+            List<ContainerDetails> details = inspector.inspect(service, containers);
+            long time = System.currentTimeMillis() - begin;
+            assertEquals(containers.size(), details.size());
+            for(int i = 0; i < containers.size() - 1; ++i) {
+                assertEquals(containers.get(i).getId(), details.get(i).getId());
+            }
+            assertNull(details.get(containers.size() - 1));
+            assertEquals(2, maxOnNode.get());
+            // sequential inspection take (NODES * PER_NODE + 1) * LATENCY = 2050 ms
+            long expected = (PER_NODE / 2 + 1) * LATENCY;
+            assertTrue("Inspection take " + time + "ms, expected about " + expected + "ms", time < expected * 3);
+        }
+    }
+}
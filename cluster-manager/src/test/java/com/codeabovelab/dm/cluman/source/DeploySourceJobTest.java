@@ -0,0 +1,138 @@
+package com.codeabovelab.dm.cluman.source;
+
+import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceEvent;
+import com.codeabovelab.dm.cluman.ds.container.ContainerManager;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
+import com.codeabovelab.dm.cluman.ds.swarm.NetworkManager;
+import com.codeabovelab.dm.cluman.job.*;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = DeploySourceJobTest.TestConfiguration.class)
+public class DeploySourceJobTest {
+
+    @Configuration
+    @Import({JobConfiguration.class, DeploySourceJob.class})
+    public static class TestConfiguration {
+
+        @Bean
+        DiscoveryStorage discoveryStorage() {
+            return mock(DiscoveryStorage.class);
+        }
+
+        @Bean
+        ContainerManager containerManager() {
+            return mock(ContainerManager.class);
+        }
+
+        @Bean
+        ContainerStorage containerStorage() {
+            return mock(ContainerStorage.class);
+        }
+
+        @Bean
+        ApplicationService applicationService() {
+            return mock(ApplicationService.class);
+        }
+
+        @Bean
+        NodeStorage nodeStorage() {
+            return mock(NodeStorage.class);
+        }
+
+        @Bean
+        NetworkManager networkManager() {
+            return mock(NetworkManager.class);
+        }
+
+        @Bean(name = NodeEvent.BUS)
+        Subscriptions<?> nodeSubscriptions() {
+            return mock(Subscriptions.class);
+        }
+
+        @Bean(name = DockerServiceEvent.BUS)
+        Subscriptions<?> dockerServiceSubscriptions() {
+            return mock(Subscriptions.class);
+        }
+
+        @Bean(name = DockerLogEvent.BUS)
+        Subscriptions<?> dockerLogSubscriptions() {
+            return mock(Subscriptions.class);
+        }
+    }
+
+    @Autowired
+    private JobsManager jobsManager;
+
+    @Autowired
+    private DiscoveryStorage discoveryStorage;
+
+    @Autowired
+    private ContainerManager containerManager;
+
+    @Autowired
+    private NodeStorage nodeStorage;
+
+    private static ContainerSource container(String name, String link) {
+        ContainerSource cs = new ContainerSource();
+        cs.setName(name);
+        cs.setImage("image");
+        if(link != null) {
+            cs.getLinks().put(link, link);
+        }
+        return cs;
+    }
+
+    @Test
+    public void testCyclicSource() throws Exception {
+        ClusterSource cluster = new ClusterSource();
+        cluster.setName("cluster");
+        cluster.getContainers().add(container("independent", null));
+        ApplicationSource app = new ApplicationSource();
+        app.setName("app");
+        app.getContainers().add(container("first", "second"));
+        app.getContainers().add(container("second", "third"));
+        app.getContainers().add(container("third", "first"));
+        cluster.getApplications().add(app);
+        RootSource source = new RootSource();
+        source.getClusters().add(cluster);
+
+        JobInstance ji = jobsManager.create(JobParameters.builder()
+          .type(DeploySourceJob.NAME)
+          .parameter("source", source)
+          .build());
+        ji.start().get(1L, TimeUnit.SECONDS);
+        try {
+            ji.atEnd().get(30L, TimeUnit.SECONDS);
+            fail("Job with cyclic source must fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("cyclic"));
+        }
+        assertEquals(JobStatus.FAILED_JOB, ji.getInfo().getStatus());
+        // nothing is deployed, even containers which is not in cycle
+        verify(discoveryStorage, never()).getOrCreateCluster(anyString(), any());
+        verify(nodeStorage, never()).setNodeCluster(anyString(), anyString());
+        verify(containerManager, never()).createContainer(any());
+    }
+}
@@ -0,0 +1,65 @@
+package com.codeabovelab.dm.cluman.source;
+
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class EventWaiterTest {
+
+    @Test
+    public void testEvent() throws Exception {
+        MessageBus<String> bus = MessageBuses.create("test", String.class);
+        AtomicBoolean ready = new AtomicBoolean();
+        AtomicInteger checks = new AtomicInteger();
+        Thread thread = new Thread(() -> {
+            sleep(100);
+            bus.accept("other");
+            ready.set(true);
+            bus.accept("ready");
+        });
+        try(EventWaiter waiter = new EventWaiter(10, 10, TimeUnit.SECONDS).on(bus.asSubscriptions(), "ready"::equals)) {
+            long begin = System.currentTimeMillis();
+            thread.start();
+            assertTrue(waiter.await(() -> {
+                checks.incrementAndGet();
+                return ready.get();
+            }, 5, TimeUnit.SECONDS));
+            // we must not wait poll interval when event is received
+            assertTrue(System.currentTimeMillis() - begin < 5000);
+            assertEquals(2, checks.get());
+        }
+        thread.join();
+    }
+
+    @Test
+    public void testPoll() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+        try(EventWaiter waiter = new EventWaiter(10, 40, TimeUnit.MILLISECONDS)) {
+            long begin = System.currentTimeMillis();
+            assertFalse(waiter.await(() -> checks.incrementAndGet() < 0, 300, TimeUnit.MILLISECONDS));
+            assertTrue(System.currentTimeMillis() - begin >= 300);
+        }
+        // 10 + 20 + 40 + 40 ... ms, so count of checks is less than without backoff
+        assertTrue("checks: " + checks.get(), checks.get() > 3 && checks.get() < 30);
+        checks.set(0);
+        try(EventWaiter waiter = new EventWaiter(10, 40, TimeUnit.MILLISECONDS)) {
+            assertTrue(waiter.await(() -> checks.incrementAndGet() == 3, 1, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
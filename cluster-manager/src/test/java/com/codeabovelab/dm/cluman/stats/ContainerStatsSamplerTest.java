@@ -0,0 +1,128 @@
+package com.codeabovelab.dm.cluman.stats;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetStatisticsArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
+import com.codeabovelab.dm.cluman.cluster.docker.model.Statistics;
+import com.codeabovelab.dm.cluman.ds.container.ContainerRegistration;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.model.DockerLogEvent;
+import com.codeabovelab.dm.cluman.ui.model.UIStatistics;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ContainerStatsSamplerTest {
+
+    private final AtomicInteger streams = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger singleCalls = new AtomicInteger();
+    private ContainerStatsSampler sampler;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        DockerService service = mock(DockerService.class);
+        when(service.getStatistics(any(GetStatisticsArg.class))).thenAnswer(i -> stream(i.getArgumentAt(0, GetStatisticsArg.class)));
+        DockerServices dockerServices = mock(DockerServices.class);
+        when(dockerServices.getNodeService("node")).thenReturn(service);
+        ContainerStorage containerStorage = mock(ContainerStorage.class);
+        when(containerStorage.getContainer(anyString())).thenAnswer(i -> {
+            ContainerRegistration cr = mock(ContainerRegistration.class);
+            when(cr.getId()).thenReturn(i.getArgumentAt(0, String.class));
+            when(cr.getNode()).thenReturn("node");
+            return cr;
+        });
+        sampler = new ContainerStatsSampler(dockerServices, containerStorage, mock(Subscriptions.class), 2, 200);
+    }
+
+    @After
+    public void after() {
+        sampler.shutdown();
+    }
+
+    private ServiceCallResult stream(GetStatisticsArg arg) {
+        calls.incrementAndGet();
+        if(!arg.isStream()) {
+            singleCalls.incrementAndGet();
+            arg.getWatcher().accept(statistics());
+            return new ServiceCallResult().code(ResultCode.OK);
+        }
+        streams.incrementAndGet();
+        try {
+            while(!arg.getInterrupter().isDone()) {
+                arg.getWatcher().accept(statistics());
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } finally {
+            streams.decrementAndGet();
+        }
+        return new ServiceCallResult().code(ResultCode.OK);
+    }
+
+    private static Statistics statistics() {
+        Statistics s = new Statistics();
+        s.setCpuStats(ImmutableMap.of("cpu_usage", ImmutableMap.of("total_usage", 2000L), "system_cpu_usage", 20000L));
+        s.setPrecpuStats(ImmutableMap.of("cpu_usage", ImmutableMap.of("total_usage", 1000L), "system_cpu_usage", 10000L));
+        s.setMemoryStats(ImmutableMap.of("usage", 50L * 1024 * 1024, "max_usage", 60L * 1024 * 1024, "limit", 100L * 1024 * 1024));
+        s.setNetworks(ImmutableMap.of("eth0", ImmutableMap.of("rx_bytes", 100L, "tx_bytes", 200L)));
+        return s;
+    }
+
+    @Test
+    public void testSharedStream() throws Exception {
+        for(int i = 0; i < 10; ++i) {
+            UIStatistics statistics = sampler.getStatistics("c1");
+            assertNotNull(statistics);
+            assertEquals(50d, statistics.getMemoryMBUsage(), 0.001);
+        }
+        assertEquals(1, calls.get());
+        waitFor(() -> !sampler.getHistory("c1", StatsHistory.Resolution.SECOND).isEmpty());
+        StatsPoint point = sampler.getHistory("c1", StatsHistory.Resolution.SECOND).get(0);
+        assertEquals(100L, point.getRxBytes());
+        assertEquals(200L, point.getTxBytes());
+        assertEquals(1, streams.get());
+    }
+
+    @Test
+    public void testLimitAndIdle() throws Exception {
+        assertNotNull(sampler.getStatistics("c1"));
+        assertNotNull(sampler.getStatistics("c2"));
+        // limit is reached, so statistics is loaded by single call
+        assertNotNull(sampler.getStatistics("c3"));
+        assertEquals(1, singleCalls.get());
+        assertEquals(2, streams.get());
+        assertEquals(2, sampler.getWatched().size());
+
+        Thread.sleep(300);
+        sampler.getStatistics("c1");
+        sampler.stopIdle();
+        assertEquals(1, sampler.getWatched().size());
+        waitFor(() -> streams.get() == 1);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while(!condition.getAsBoolean()) {
+            assertTrue("Timeout of waiting", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
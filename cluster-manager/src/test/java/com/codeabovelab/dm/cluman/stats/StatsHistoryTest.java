@@ -0,0 +1,58 @@
+package com.codeabovelab.dm.cluman.stats;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class StatsHistoryTest {
+
+    @Test
+    public void testRollups() {
+        StatsHistory history = new StatsHistory();
+        // two samples per second during 2 minutes
+        long start = TimeUnit.HOURS.toMillis(400_000);
+        for(int i = 0; i < 240; ++i) {
+            long time = start + i * 500L;
+            history.add(new StatsHistory.Sample(time, i % 2 == 0 ? 10 : 30, 100 + i, i * 10L, i));
+        }
+        List<StatsPoint> seconds = history.get(StatsHistory.Resolution.SECOND);
+        assertEquals(120, seconds.size());
+        StatsPoint first = seconds.get(0);
+        assertEquals(start, first.getTime());
+        assertEquals(2, first.getSamples());
+        assertEquals(20d, first.getCpuPercentAvg(), 0.001);
+        assertEquals(30d, first.getCpuPercentMax(), 0.001);
+        assertEquals(100.5d, first.getMemoryMBAvg(), 0.001);
+        assertEquals(101d, first.getMemoryMBMax(), 0.001);
+        assertEquals(10L, first.getRxBytes());
+
+        List<StatsPoint> minutes = history.get(StatsHistory.Resolution.MINUTE);
+        assertEquals(2, minutes.size());
+        assertEquals(120, minutes.get(0).getSamples());
+        assertEquals(start + 60_000L, minutes.get(1).getTime());
+        assertEquals(2390L, minutes.get(1).getRxBytes());
+        assertEquals(239L, minutes.get(1).getTxBytes());
+
+        List<StatsPoint> hours = history.get(StatsHistory.Resolution.HOUR);
+        assertEquals(1, hours.size());
+        assertEquals(240, hours.get(0).getSamples());
+    }
+
+    @Test
+    public void testCapacity() {
+        StatsHistory history = new StatsHistory();
+        int capacity = StatsHistory.Resolution.SECOND.getCapacity();
+        for(int i = 0; i < capacity * 2; ++i) {
+            history.add(new StatsHistory.Sample(i * 1000L, 1, 1, 0, 0));
+        }
+        List<StatsPoint> seconds = history.get(StatsHistory.Resolution.SECOND);
+        // closed points and current point
+        assertEquals(capacity + 1, seconds.size());
+        assertEquals((capacity * 2 - 1) * 1000L, seconds.get(capacity).getTime());
+    }
+}
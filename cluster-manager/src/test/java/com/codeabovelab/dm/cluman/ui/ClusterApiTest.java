@@ -0,0 +1,72 @@
+package com.codeabovelab.dm.cluman.ui;
+
+import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
+import com.codeabovelab.dm.cluman.ds.clusters.ClusterSummaries;
+import com.codeabovelab.dm.cluman.ds.clusters.ClusterSummary;
+import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
+import com.codeabovelab.dm.cluman.model.NodesGroup;
+import com.codeabovelab.dm.cluman.security.AccessContext;
+import com.codeabovelab.dm.cluman.security.AccessContextFactory;
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
+import com.codeabovelab.dm.cluman.security.SecuredType;
+import com.codeabovelab.dm.cluman.ui.model.UiCluster;
+import com.codeabovelab.dm.common.security.Action;
+import com.codeabovelab.dm.common.security.dto.PermissionData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ClusterApiTest {
+
+    private static final String CLUSTER = "test";
+    private final DiscoveryStorage discoveryStorage = mock(DiscoveryStorage.class);
+    private final ClusterSummaries clusterSummaries = mock(ClusterSummaries.class);
+    private final AccessContext ac = mock(AccessContext.class);
+    private ClusterApi api;
+
+    @Before
+    public void before() {
+        NodesGroup cluster = mock(NodesGroup.class);
+        when(cluster.getName()).thenReturn(CLUSTER);
+        when(discoveryStorage.getCluster(CLUSTER)).thenReturn(cluster);
+        when(clusterSummaries.getSummary(cluster)).thenReturn(ClusterSummary.builder()
+          .nodes(2)
+          .containers(3)
+          .offContainers(1)
+          .build());
+        when(ac.getPermission(any())).thenReturn(PermissionData.NONE);
+        AccessContextFactory acf = mock(AccessContextFactory.class);
+        when(acf.getContext()).thenReturn(ac);
+        ApplicationService applicationService = mock(ApplicationService.class);
+        when(applicationService.getApplications(anyString())).thenReturn(Collections.emptyList());
+        api = new ClusterApi(null, null, null, null, discoveryStorage, applicationService,
+          null, null, acf, clusterSummaries, mock(ProvidersAclService.class));
+    }
+
+    @Test
+    public void testSummary() {
+        when(ac.isGranted(SecuredType.CLUSTER.id(CLUSTER), Action.READ)).thenReturn(true);
+        UiCluster uc = api.getCluster(CLUSTER);
+        assertNotNull(uc.getSummary());
+        assertEquals(new UiCluster.Entry(2, 0), uc.getNodes());
+        assertEquals(new UiCluster.Entry(3, 1), uc.getContainers());
+    }
+
+    @Test
+    public void testSummaryWithoutRead() {
+        when(ac.isGranted(any(), any())).thenReturn(false);
+        UiCluster uc = api.getCluster(CLUSTER);
+        assertNull(uc.getSummary());
+        assertEquals(new UiCluster.Entry(0, 0), uc.getNodes());
+        assertEquals(new UiCluster.Entry(0, 0), uc.getContainers());
+        verifyZeroInteractions(clusterSummaries);
+    }
+}
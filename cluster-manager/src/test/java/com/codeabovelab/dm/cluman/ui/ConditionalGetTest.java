@@ -0,0 +1,207 @@
+package com.codeabovelab.dm.cluman.ui;
+
+import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.registry.RegistryRepository;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
+import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
+import com.codeabovelab.dm.cluman.model.NodesGroup;
+import com.codeabovelab.dm.cluman.security.AccessContext;
+import com.codeabovelab.dm.cluman.security.AccessContextFactory;
+import com.codeabovelab.dm.cluman.security.AclProvider;
+import com.codeabovelab.dm.cluman.security.ProvidersAclService;
+import com.codeabovelab.dm.cluman.security.SecuredType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ConditionalGetTest {
+
+    private final ContainerStorage containerStorage = mock(ContainerStorage.class);
+    private final NodeStorage nodeStorage = mock(NodeStorage.class);
+    private final DiscoveryStorage discoveryStorage = mock(DiscoveryStorage.class);
+    private final ApplicationService applicationService = mock(ApplicationService.class);
+    private final DockerService dockerService = mock(DockerService.class);
+    private final ProvidersAclService aclService = mock(ProvidersAclService.class);
+
+    @Before
+    public void before() {
+        NodesGroup cluster = mock(NodesGroup.class);
+        when(cluster.getDocker()).thenReturn(dockerService);
+        when(discoveryStorage.getCluster(anyString())).thenReturn(cluster);
+        when(containerStorage.getVersion()).thenReturn(1L);
+        when(nodeStorage.getVersion()).thenReturn(1L);
+        authenticate("user", "ROLE_USER");
+    }
+
+    @After
+    public void after() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testClusterContainers() {
+        ClusterApi api = new ClusterApi(null, null, nodeStorage, null, discoveryStorage, applicationService,
+          containerStorage, null, mock(AccessContextFactory.class), null, aclService);
+        ServletWebRequest first = request(null);
+        assertNotNull(api.listContainers("test", first));
+        String etag = first.getResponse().getHeader("ETag");
+        assertNotNull(etag);
+        verify(dockerService).getContainers(any(GetContainersArg.class));
+
+        reset(dockerService);
+        ServletWebRequest second = request(etag);
+        assertNull(api.listContainers("test", second));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getResponse().getStatus());
+        verifyZeroInteractions(dockerService);
+        verify(discoveryStorage, times(1)).getCluster(anyString());
+        verify(containerStorage, never()).getContainer(anyString());
+
+        // another cluster has another tag
+        ServletWebRequest other = request(etag);
+        assertNotNull(api.listContainers("other", other));
+        verify(dockerService).getContainers(any(GetContainersArg.class));
+    }
+
+    @Test
+    public void testContainers() {
+        ContainerApi api = new ContainerApi(null, null, null, null, null, null, null, containerStorage, nodeStorage,
+          applicationService, null, null, aclService);
+        when(containerStorage.getContainers()).thenReturn(Collections.emptyList());
+        ServletWebRequest first = request(null);
+        assertNotNull(api.getAll(first));
+        String etag = first.getResponse().getHeader("ETag");
+
+        ServletWebRequest second = request(etag);
+        assertNull(api.getAll(second));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getResponse().getStatus());
+        verify(containerStorage, times(1)).getContainers();
+
+        // change of storage
+        when(containerStorage.getVersion()).thenReturn(2L);
+        ServletWebRequest changed = request(etag);
+        assertNotNull(api.getAll(changed));
+        assertNotEquals(etag, changed.getResponse().getHeader("ETag"));
+        verify(containerStorage, times(2)).getContainers();
+    }
+
+    @Test
+    public void testNodes() {
+        NodesApi api = new NodesApi(nodeStorage, null, discoveryStorage, null, containerStorage, aclService);
+        when(nodeStorage.getNodes(any())).thenReturn(Collections.emptyList());
+        ServletWebRequest first = request(null);
+        assertNotNull(api.listNodes(first));
+        String etag = first.getResponse().getHeader("ETag");
+
+        ServletWebRequest second = request(etag);
+        assertNull(api.listNodes(second));
+        verify(nodeStorage, times(1)).getNodes(any());
+
+        // other user may see other nodes
+        authenticate("admin", "ROLE_ADMIN");
+        ServletWebRequest admin = request(etag);
+        assertNotNull(api.listNodes(admin));
+        verify(nodeStorage, times(2)).getNodes(any());
+
+        // user may see other nodes after change of acl
+        authenticate("user", "ROLE_USER");
+        when(aclService.getVersion()).thenReturn(1L);
+        ServletWebRequest granted = request(etag);
+        assertNotNull(api.listNodes(granted));
+        verify(nodeStorage, times(3)).getNodes(any());
+    }
+
+    @Test
+    public void testImageCatalogs() {
+        ImagesInventory imagesInventory = mock(ImagesInventory.class);
+        RegistryRepository registryRepository = mock(RegistryRepository.class);
+        AccessContextFactory aclContextFactory = mock(AccessContextFactory.class);
+        when(aclContextFactory.getContext()).thenReturn(mock(AccessContext.class));
+        NodesGroup orphans = mock(NodesGroup.class);
+        when(orphans.getName()).thenReturn(DiscoveryStorage.GROUP_ID_ORPHANS);
+        when(discoveryStorage.getClusters()).thenReturn(Collections.singletonList(orphans));
+        ImagesApi api = new ImagesApi(null, discoveryStorage, registryRepository, null, imagesInventory, nodeStorage,
+          aclContextFactory, null, aclService);
+        ServletWebRequest first = request(null);
+        assertNotNull(api.listImageCatalogs(null, null, first));
+        String etag = first.getResponse().getHeader("ETag");
+        assertNotNull(etag);
+        verify(imagesInventory).getImages(any());
+        verify(registryRepository).getAvailableRegistries();
+
+        ServletWebRequest second = request(etag);
+        assertNull(api.listImageCatalogs(null, null, second));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getResponse().getStatus());
+        verify(discoveryStorage, times(1)).getClusters();
+        verify(imagesInventory, times(1)).getImages(any());
+        verify(registryRepository, times(1)).getAvailableRegistries();
+
+        // images on nodes are changed
+        when(imagesInventory.getVersion()).thenReturn(1L);
+        ServletWebRequest changed = request(etag);
+        assertNotNull(api.listImageCatalogs(null, null, changed));
+        verify(imagesInventory, times(2)).getImages(any());
+    }
+
+    @Test
+    public void testAuthentication() {
+        String user = ETagBuilder.of("test").addAuthentication(aclService).build();
+        authenticate("user", "ROLE_USER", "ROLE_OTHER");
+        String withAuthority = ETagBuilder.of("test").addAuthentication(aclService).build();
+        assertNotEquals(user, withAuthority);
+        // order of authorities does not matter
+        authenticate("user", "ROLE_OTHER", "ROLE_USER");
+        assertEquals(withAuthority, ETagBuilder.of("test").addAuthentication(aclService).build());
+        SecurityContextHolder.clearContext();
+        assertNotEquals(user, ETagBuilder.of("test").addAuthentication(aclService).build());
+    }
+
+    @Test
+    public void testAclVersion() {
+        ProvidersAclService service = new ProvidersAclService(null);
+        AclProvider provider = mock(AclProvider.class);
+        service.getProviders().put(SecuredType.CLUSTER.name(), provider);
+        String tag = ETagBuilder.of("test").addAuthentication(service).build();
+        assertEquals(tag, ETagBuilder.of("test").addAuthentication(service).build());
+
+        service.updateAclSource(SecuredType.CLUSTER.id("test"), b -> true);
+        verify(provider).update(eq("test"), any());
+        String updated = ETagBuilder.of("test").addAuthentication(service).build();
+        assertNotEquals(tag, updated);
+
+        // change of acl which is not made through service, for example loaded from KV storage
+        when(provider.getVersion()).thenReturn(1L);
+        assertNotEquals(updated, ETagBuilder.of("test").addAuthentication(service).build());
+    }
+
+    private static void authenticate(String name, String... authorities) {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(name, null, authorities));
+    }
+
+    private static ServletWebRequest request(String etag) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ui/api/test");
+        if(etag != null) {
+            request.addHeader("If-None-Match", etag);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+}
@@ -0,0 +1,58 @@
+package com.codeabovelab.dm.cluman.ui.health;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerConfig;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
+import com.codeabovelab.dm.cluman.health.ContainerHealthChecker;
+import com.codeabovelab.dm.cluman.health.HealthProbe;
+import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResult;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class HealthCheckServiceTest {
+
+    private static final String CLUSTER = "cluster";
+    private static final String ID = "container";
+
+    private ContainerHealthChecker checker;
+    private HealthCheckService service;
+
+    @Before
+    public void before() {
+        ContainerDetails details = new ContainerDetails();
+        details.setId(ID);
+        details.setConfig(ContainerConfig.builder()
+          .image("app")
+          .labels(ImmutableMap.of(HealthProbe.LABEL_TYPE, "http", HealthProbe.LABEL_PORT, "not a port"))
+          .build());
+        DockerService docker = mock(DockerService.class);
+        when(docker.getContainer(ID)).thenReturn(details);
+        DockerServiceRegistry registry = mock(DockerServiceRegistry.class);
+        when(registry.getService(CLUSTER)).thenReturn(docker);
+        checker = mock(ContainerHealthChecker.class);
+        when(checker.check(anyString(), any())).thenAnswer(i -> {
+            ContainerDetails container = (ContainerDetails) i.getArguments()[1];
+            // same as real checker
+            HealthProbe.fromLabels(container.getConfig().getLabels());
+            throw new AssertionError("Invalid probe is parsed.");
+        });
+        service = new HealthCheckService(registry, checker);
+    }
+
+    @Test
+    public void testInvalidProbe() throws Exception {
+        ServiceHealthCheckResult result = service.checkContainer(CLUSTER, ID, 1000);
+        assertFalse(result.isHealthy());
+        assertTrue(result.getResults().get(0).getMessage().startsWith("Invalid health probe"));
+        assertFalse(service.waitHealthy(CLUSTER, ID, 1000));
+    }
+}
@@ -0,0 +1,201 @@
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import com.codeabovelab.dm.cluman.cluster.application.ApplicationService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.model.*;
+import com.codeabovelab.dm.cluman.security.AccessContext;
+import com.codeabovelab.dm.cluman.security.SecuredType;
+import com.codeabovelab.dm.cluman.ui.model.UiContainer;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.codeabovelab.dm.common.security.Action;
+import com.codeabovelab.dm.common.security.dto.PermissionData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.acls.model.ObjectIdentity;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.*;
+
+/**
+ */
+public class ContainersDeltaTrackerTest {
+
+    private static final String CLUSTER = "cluster";
+    private final Map<String, DockerContainer> containers = new LinkedHashMap<>();
+    private DockerService service;
+    private ContainersDeltaTracker tracker;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        service = mock(DockerService.class);
+        when(service.getContainers(any(GetContainersArg.class))).thenAnswer(i -> new ArrayList<>(containers.values()));
+        NodesGroup ng = mock(NodesGroup.class);
+        when(ng.getName()).thenReturn(CLUSTER);
+        when(ng.getDocker()).thenReturn(service);
+        DiscoveryStorage discoveryStorage = mock(DiscoveryStorage.class);
+        when(discoveryStorage.getCluster(CLUSTER)).thenReturn(ng);
+        when(discoveryStorage.getClusterForNode(any(String.class))).thenReturn(ng);
+        tracker = new ContainersDeltaTracker(discoveryStorage, mock(ContainerStorage.class), mock(ApplicationService.class),
+          mock(Subscriptions.class), mock(Subscriptions.class));
+        put("c1", "Up 1 minute");
+        put("c2", "Up 1 minute");
+        put("c3", "Up 1 minute");
+    }
+
+    @After
+    public void after() {
+        tracker.shutdown();
+    }
+
+    private void put(String id, String status) {
+        put(id, status, DockerContainer.State.RUNNING);
+    }
+
+    private void put(String id, String status, DockerContainer.State state) {
+        DockerContainer.Builder b = DockerContainer.builder()
+          .id(id)
+          .name(id)
+          .image("image")
+          .imageId("imageId")
+          .command("cmd")
+          .created(1000L)
+          .status(status)
+          .node(NodeInfoImpl.builder().name("node").build());
+        b.setState(state);
+        containers.put(id, b.build());
+    }
+
+    /**
+     * Access context which can not read specified containers.
+     */
+    private static AccessContext access(String ... denied) {
+        Set<String> deniedIds = new HashSet<>(Arrays.asList(denied));
+        AccessContext ac = mock(AccessContext.class);
+        when(ac.isGranted(any(ObjectIdentity.class), anyVararg())).thenAnswer(i -> {
+            ObjectIdentity oid = i.getArgumentAt(0, ObjectIdentity.class);
+            return !deniedIds.contains(oid.getIdentifier().toString());
+        });
+        when(ac.getPermission(any(ObjectIdentity.class))).thenReturn(PermissionData.ALL);
+        return ac;
+    }
+
+    private static List<String> ids(UiContainersDelta delta) {
+        return delta.getContainers().stream().map(UiContainer::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testDeltas() throws Exception {
+        List<UiContainersDelta> user = new CopyOnWriteArrayList<>();
+        List<UiContainersDelta> admin = new CopyOnWriteArrayList<>();
+        AutoCloseable userSub = tracker.subscribe(CLUSTER, access("c3"), null, null, user::add);
+        tracker.subscribe(CLUSTER, access(), null, null, admin::add);
+        // list is loaded once for all subscribers
+        verify(service, times(1)).getContainers(any(GetContainersArg.class));
+
+        assertEquals(1, user.size());
+        UiContainersDelta snapshot = user.get(0);
+        assertEquals(UiContainersDelta.Type.SNAPSHOT, snapshot.getType());
+        assertEquals(Arrays.asList("c1", "c2"), ids(snapshot));
+        assertEquals(PermissionData.ALL.getExpression(), snapshot.getContainers().get(0).getPermission().getExpr());
+        assertEquals(Arrays.asList("c1", "c2", "c3"), ids(admin.get(0)));
+
+        // change of status text only is not sent
+        put("c1", "Up 2 minutes");
+        tracker.reconcile();
+        assertEquals(1, user.size());
+
+        containers.remove("c2");
+        put("c3", "Exited (0) 1 second ago", DockerContainer.State.EXITED);
+        put("c4", "Up 1 second");
+        tracker.reconcile();
+        // user does not see c3
+        assertEquals(3, user.size());
+        UiContainersDelta removed = user.get(1);
+        assertEquals(UiContainersDelta.Type.REMOVE, removed.getType());
+        assertEquals("c2", removed.getId());
+        UiContainersDelta added = user.get(2);
+        assertEquals(UiContainersDelta.Type.ADD, added.getType());
+        assertEquals(Collections.singletonList("c4"), ids(added));
+        assertTrue(added.getSeq() > removed.getSeq());
+        assertTrue(removed.getSeq() > snapshot.getSeq());
+        assertEquals(4, admin.size());
+        assertTrue(admin.stream().anyMatch(d -> d.getType() == UiContainersDelta.Type.UPDATE));
+
+        userSub.close();
+        containers.remove("c4");
+        tracker.reconcile();
+        assertEquals(3, user.size());
+        assertEquals(5, admin.size());
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        List<UiContainersDelta> first = new CopyOnWriteArrayList<>();
+        AutoCloseable sub = tracker.subscribe(CLUSTER, access(), null, null, first::add);
+        UiContainersDelta last = first.get(0);
+        sub.close();
+
+        containers.remove("c1");
+        put("c4", "Up 1 second");
+        tracker.reconcile();
+
+        List<UiContainersDelta> resumed = new CopyOnWriteArrayList<>();
+        tracker.subscribe(CLUSTER, access(), last.getEpoch(), last.getSeq(), resumed::add);
+        assertEquals(2, resumed.size());
+        assertEquals(EnumSet.of(UiContainersDelta.Type.ADD, UiContainersDelta.Type.REMOVE),
+          resumed.stream().map(UiContainersDelta::getType).collect(Collectors.toCollection(() -> EnumSet.noneOf(UiContainersDelta.Type.class))));
+
+        // client with unknown epoch receives snapshot
+        List<UiContainersDelta> other = new CopyOnWriteArrayList<>();
+        tracker.subscribe(CLUSTER, access(), last.getEpoch() - 1, last.getSeq(), other::add);
+        assertEquals(1, other.size());
+        assertEquals(UiContainersDelta.Type.SNAPSHOT, other.get(0).getType());
+        assertEquals(Arrays.asList("c2", "c3", "c4"), ids(other.get(0)));
+        // subscription of resumed client is alive
+        containers.remove("c2");
+        tracker.reconcile();
+        assertEquals(3, resumed.size());
+        assertEquals(resumed.get(2).getSeq(), other.get(1).getSeq());
+    }
+
+    @Test
+    public void testStaleLoad() throws Exception {
+        List<UiContainersDelta> deltas = new CopyOnWriteArrayList<>();
+        tracker.subscribe(CLUSTER, access(), null, null, deltas::add);
+        assertEquals(1, deltas.size());
+
+        // first refresh read old list and hangs, while second refresh read new list
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        List<DockerContainer> old = new ArrayList<>(containers.values());
+        when(service.getContainers(any(GetContainersArg.class))).thenAnswer(i -> {
+            loaded.countDown();
+            resume.await(5, TimeUnit.SECONDS);
+            return old;
+        }).thenAnswer(i -> new ArrayList<>(containers.values()));
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(tracker::reconcile);
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        containers.remove("c1");
+        tracker.reconcile();
+        assertEquals(2, deltas.size());
+        assertEquals(UiContainersDelta.Type.REMOVE, deltas.get(1).getType());
+
+        resume.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+        // old list must not return removed container
+        assertEquals(2, deltas.size());
+    }
+}
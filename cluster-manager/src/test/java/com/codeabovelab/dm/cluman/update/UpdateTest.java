@@ -14,6 +14,7 @@ import com.codeabovelab.dm.cluman.configs.container.ConfigProvider;
 import com.codeabovelab.dm.cluman.configs.container.DefaultParser;
 import com.codeabovelab.dm.cluman.configs.container.Parser;
 import com.codeabovelab.dm.cluman.ds.container.*;
+import com.codeabovelab.dm.cluman.ds.images.ImagesInventory;
 import com.codeabovelab.dm.cluman.ds.swarm.NetworkManager;
 import com.codeabovelab.dm.cluman.job.*;
 import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
@@ -52,6 +53,7 @@ import java.util.Set;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
@@ -119,7 +121,8 @@ public class UpdateTest {
               new ContainersNameService(new ContainerNamesSupplier()),
               contStorage,
               mock(NetworkManager.class),
-              containerSourceFactory
+              containerSourceFactory,
+              mock(ImagesInventory.class)
             );
             return cm;
         }
@@ -131,7 +134,7 @@ public class UpdateTest {
             when(s.checkContainer(anyString(), anyString(), anyLong())).thenReturn(ServiceHealthCheckResultImpl.builder()
               .healthy(true)
               .build());
-
+            when(s.waitHealthy(anyString(), anyString(), anyLong())).thenReturn(true);
             return s;
         }
 
@@ -217,12 +220,42 @@ public class UpdateTest {
         checkContainers(SRC_VERSION, this::checkNames);
     }
 
+    @Test
+    public void testParallelStopThenStartEach() throws Exception {
+        final int count = 50;
+        final long latency = 20;
+        for(int i = 0; i < count; ++i) {
+            addContainer("parallel-container-" + i, TESTIMAGE + ":" + SRC_VERSION);
+        }
+        DockerServiceMock ds = (DockerServiceMock) discoveryStorage.getService(TESTCLUSTER);
+        ds.setLatency(latency);
+        int updated = names.size() - 1;
+        long start = System.currentTimeMillis();
+        JobInstance ji = doStrategy("stopThenStartEach", b -> {
+            b.parameter(BatchUtils.JP_BATCH_SIZE, 10);
+            b.parameter(BatchUtils.JP_MAX_UNAVAILABLE, 10);
+        });
+        long time = System.currentTimeMillis() - start;
+        // stop, remove and create of each container
+        long sequentialTime = updated * latency * 3;
+        LOG.info("Update of {} containers took {} ms, sequential update take at least {} ms", updated, time, sequentialTime);
+        assertTrue("Update took " + time + " ms", time < sequentialTime / 2);
+        checkContainers(TARGET_VERSION, this::checkNames);
+        ds.setLatency(0);
+        testRollback(ji);
+        checkContainers(SRC_VERSION, this::checkNames);
+    }
+
     private void testRollback(JobInstance ji) throws InterruptedException, java.util.concurrent.ExecutionException {
         JobInstance rollbackJob = jobsManager.create(RollbackHandle.rollbackParams(ji.getInfo().getId()).build());
         executeJobInstance(rollbackJob);
     }
 
     private JobInstance doStrategy(String strategy) throws Exception {
+        return doStrategy(strategy, Consumers.nop());
+    }
+
+    private JobInstance doStrategy(String strategy, Consumer<JobParameters.Builder> customizer) throws Exception {
         JobParameters.Builder b = JobParameters.builder();
         b.type(UpdateContainersUtil.JOB_PREFIX + strategy);
         //b.parameter(LoadContainersOfImageTasklet.JP_PERCENTAGE, percentage);
@@ -233,6 +266,7 @@ public class UpdateTest {
 
         b.parameter(HealthCheckContainerTasklet.JP_HEALTH_CHECK_ENABLED, true);
         b.parameter("id", Uuids.liteRandom());
+        customizer.accept(b);
         JobParameters params = b.build();
         JobInstance jobInstance = jobsManager.create(params);
         executeJobInstance(jobInstance);
@@ -17,8 +17,12 @@
 package com.codeabovelab.dm.common.kv.mapping;
 
 import com.codeabovelab.dm.common.kv.KeyValueStorage;
+import com.codeabovelab.dm.common.kv.KvUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  */
 abstract class AbstractMapping<T> {
@@ -41,4 +45,21 @@ abstract class AbstractMapping<T> {
     abstract void save(String path, T object, KvSaveCallback callback);
     abstract void load(String path, T object);
     abstract <S extends T> S load(String path, String name, Class<S> type);
+
+    /**
+     * Load objects with specified names from directory. Absent objects are not placed into result.
+     * @param prefix path of directory
+     * @param types map of names to types of objects
+     * @return map of names to objects
+     */
+    abstract Map<String, T> loadAll(String prefix, Map<String, Class<? extends T>> types);
+
+    /**
+     * Some storages return names of children instead of full keys, so we convert it to full keys.
+     */
+    static Map<String, String> toFullKeys(String path, Map<String, String> map) {
+        Map<String, String> res = new HashMap<>(map.size());
+        map.forEach((k, v) -> res.put(k.startsWith("/") ? k : KvUtils.join(path, k), v));
+        return res;
+    }
 }
@@ -167,6 +167,18 @@ public class KvClassMapper<T> {
         return this.mapping.load(path, name, actualType);
     }
 
+    /**
+     * Load objects with specified names. Leaf objects are loaded by single 'map' call for all names, node
+     * objects - by one 'map' call per object.
+     * @param types map of names to null or subtype of {@link T}
+     * @return map of names to loaded objects, absent objects are not included
+     */
+    public Map<String, T> loadAll(Map<String, Class<? extends T>> types) {
+        Map<String, Class<? extends T>> resolved = new HashMap<>(types.size());
+        types.forEach((name, type) -> resolved.put(name, resolveType(type)));
+        return this.mapping.loadAll(prefix, resolved);
+    }
+
     @SuppressWarnings("unchecked")
     private <S extends T> Class<S> resolveType(Class<S> subType) {
         Class<S> actualType = (Class<S>) this.type;
@@ -21,12 +21,20 @@ import com.codeabovelab.dm.common.kv.KvUtils;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.Assert;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -34,12 +42,25 @@ import java.util.function.Function;
 
 /**
  * KeyValue storage map of directory. <p/>
- * It has internal cache on plain map, without timeouts, and also update it on KV events. We do not using
- * guava cache because want to add keys into map without loading values.
+ * It has internal cache on concurrent map, without timeouts, and also update it on KV events. We do not using
+ * guava cache because want to add keys into map without loading values. <p/>
+ * Reading of actual values does not take any locks. Values which is changed in KV storage become dirty: dirty
+ * value is reloaded in background, and readers receive previous value until reload is done. Only one reload of
+ * each key run at same time. Note that order of keys is not specified. <p/>
+ * Map has {@link #getVersion() version} which is incremented after each change of its content, it allow to detect
+ * changes without reading of values.
  */
 @Slf4j
 public class KvMap<T> {
 
+    /**
+     * Default executor for background reloads of dirty values.
+     */
+    private static final Executor RELOAD_EXECUTOR = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+      .setNameFormat(KvMap.class.getName() + "-reload-%d")
+      .setDaemon(true)
+      .build());
+
     @Data
     public static class Builder<T, V> {
         private KvMapperFactory mapper;
@@ -56,6 +77,10 @@ public class KvMap<T> {
          */
         private Consumer<KvMapEvent<T>> listener;
         private KvObjectFactory<V> factory;
+        /**
+         * Executor for background reloads of dirty values.
+         */
+        private Executor executor;
 
         public Builder(Class<T> type, Class<V> valueType) {
             Assert.notNull(type, "type is null");
@@ -103,96 +128,248 @@ public class KvMap<T> {
             return this;
         }
 
+        /**
+         * Executor for background reloads of dirty values, by default used shared pool.
+         * @param executor executor or null
+         * @return this
+         */
+        public Builder<T, V> executor(Executor executor) {
+            setExecutor(executor);
+            return this;
+        }
+
         public KvMap<T> build() {
             Assert.notNull(type);
             return new KvMap<>(this);
         }
     }
-    private final  class ValueHolder {
+
+    private final class ValueHolder {
         private final String key;
         private volatile T value;
         private final Map<String, Long> index = new ConcurrentHashMap<>();
+        /**
+         * Dirty flag and version are changed under lock of holder, but reading of flag is lock free.
+         */
         private volatile boolean dirty = true;
+        /**
+         * Version of value, it incremented at each change and at each invalidation. Guarded by this.
+         */
+        private long version;
+        /**
+         * Serialize modifications of value. Note that loading does not use it.
+         */
+        private final Object writeLock = new Object();
+        private final AtomicReference<CompletableFuture<T>> loading = new AtomicReference<>();
 
         ValueHolder(String key) {
             Assert.notNull(key, "key is null");
             this.key = key;
         }
 
-        synchronized T save(T val) {
+        T save(T val) {
             checkValue(val);
-            // we must not publish dirty value
-            T old = getIfPresent();
-            this.dirty = false;
-            if(val == value) {
-                return value;
+            synchronized (writeLock) {
+                // we must not publish dirty value
+                T old = getIfPresent();
+                T prev;
+                synchronized (this) {
+                    prev = this.value;
+                    this.dirty = false;
+                    this.version++;
+                    if(val == prev) {
+                        return prev;
+                    }
+                    this.value = val;
+                }
+                modified();
+                KvMapLocalEvent.Action action = prev == null ? KvMapLocalEvent.Action.CREATE : KvMapLocalEvent.Action.UPDATE;
+                onLocal(action, this, old, val);
+                flush();
+                return old;
             }
-            KvMapLocalEvent.Action action = this.value == null ? KvMapLocalEvent.Action.CREATE : KvMapLocalEvent.Action.UPDATE;
-            this.value = val;
-            onLocal(action, this, old, val);
-            flush();
-            return old;
         }
 
-        synchronized void flush() {
-            if(this.value == null) {
-                // no value set, nothing to flush
-                return;
+        void flush() {
+            synchronized (writeLock) {
+                T value = this.value;
+                if(value == null) {
+                    // no value set, nothing to flush
+                    return;
+                }
+                synchronized (this) {
+                    this.dirty = false;
+                    this.version++;
+                }
+                Object obj = adapter.get(this.key, value);
+                // Note that message will be concatenated with type of object by `Assert.isInstanceOf`
+                Assert.isInstanceOf(mapper.getType(), obj, "Adapter " + adapter + " return object of inappropriate");
+                Assert.notNull(obj, "Adapter " + adapter + " return null from " + value + " that is not allowed");
+                mapper.save(key, obj, (name, res) -> {
+                    index.put(toIndexKey(name), res.getIndex());
+                });
             }
-            this.dirty = false;
-            Object obj = adapter.get(this.key, this.value);
-            // Note that message will be concatenated with type of object by `Assert.isInstanceOf`
-            Assert.isInstanceOf(mapper.getType(), obj, "Adapter " + adapter + " return object of inappropriate");
-            Assert.notNull(obj, "Adapter " + adapter + " return null from " + this.value + " that is not allowed");
-            mapper.save(key, obj, (name, res) -> {
-                index.put(toIndexKey(name), res.getIndex());
-            });
         }
 
         private String toIndexKey(String name) {
             return name == null? THIS : name;
         }
 
-        synchronized void dirty(String prop, long newIndex) {
+        void dirty(String prop, long newIndex) {
             Long old = this.index.get(toIndexKey(prop));
             if(old != null && old != newIndex) {
                 dirty();
             }
         }
 
-        synchronized void dirty() {
-            this.dirty = true;
+        void dirty() {
+            synchronized (this) {
+                this.dirty = true;
+                this.version++;
+            }
+            modified();
         }
 
-        synchronized T get() {
-            if(dirty) {
-                load();
+        boolean isDirty() {
+            return dirty;
+        }
+
+        /**
+         * Return value without locking. When value is dirty it return previous value and schedule reload, or
+         * load value when there is no previous value.
+         * @return value or null
+         */
+        T get() {
+            if(!dirty) {
+                return value;
             }
-            return value;
+            T stale = value;
+            if(stale != null) {
+                reloadAsync();
+                return stale;
+            }
+            return reload();
+        }
+
+        /**
+         * Same as {@link #get()} but never return dirty value.
+         * @return value or null
+         */
+        T getActual() {
+            if(!dirty) {
+                return value;
+            }
+            return reload();
         }
 
         private void checkValue(T value) {
             Assert.notNull(value, "Null value is not allowed");
         }
 
-        synchronized void load() {
-            T old = getIfPresent();
-            Object obj = mapper.load(key, adapter.getType(old));
-            T newVal = null;
-            if(obj != null || old != null) {
-                newVal = adapter.set(this.key, old, obj);
-                if(newVal == null) {
-                    throw new IllegalStateException("Adapter " + adapter + " broke contract: it return null value for non null object.");
+        private void reloadAsync() {
+            if(loading.get() != null) {
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        reload();
+                    } catch (Exception e) {
+                        log.error("Can not reload {}", key, e);
+                    }
+                });
+            } catch (Exception e) {
+                log.error("Can not schedule reload of {}", key, e);
+            }
+        }
+
+        /**
+         * Load value or wait result of load which is already in progress.
+         * @return loaded value
+         */
+        T reload() {
+            while(true) {
+                CompletableFuture<T> current = loading.get();
+                if(current != null) {
+                    try {
+                        return current.join();
+                    } catch (CompletionException e) {
+                        Throwable cause = e.getCause();
+                        throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+                    }
+                }
+                CompletableFuture<T> future = new CompletableFuture<>();
+                if(!loading.compareAndSet(null, future)) {
+                    continue;
+                }
+                try {
+                    T val = load();
+                    future.complete(val);
+                    return val;
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    loading.compareAndSet(future, null);
+                }
+            }
+        }
+
+        private T load() {
+            long seen;
+            synchronized (this) {
+                seen = this.version;
+            }
+            Object obj = mapper.load(key, adapter.getType(this.value));
+            return applyLoaded(obj, seen);
+        }
+
+        /**
+         * Set loaded object as value.
+         * @param obj loaded object or null
+         * @param seen version of holder before loading
+         * @return actual value
+         */
+        T applyLoaded(Object obj, long seen) {
+            T newVal;
+            boolean invalidated;
+            synchronized (this) {
+                invalidated = this.version != seen;
+                if(invalidated && !this.dirty) {
+                    // value was saved while loading, so loaded value is obsolete
+                    return this.value;
+                }
+                newVal = null;
+                if(obj != null) {
+                    // adapter may update held value in place, therefore it called under lock of holder
+                    newVal = adapter.set(this.key, this.value, obj);
+                    if(newVal == null) {
+                        throw new IllegalStateException("Adapter " + adapter + " broke contract: it return null value for non null object.");
+                    }
                 }
+                // when value was invalidated again while loading, it remains dirty
+                this.dirty = invalidated;
+                this.value = newVal;
+            }
+            modified();
+            if(invalidated) {
+                return newVal;
             }
-            this.dirty = false;
             //here we must raise local event, but need to use another action like LOAD or SET,
             // UPDATE and CREATE - is not acceptable here
-            this.value = newVal;
-            onLocal(KvMapLocalEvent.Action.LOAD, this, old, newVal);
+            onLocal(KvMapLocalEvent.Action.LOAD, this, null, newVal);
+            return newVal;
         }
 
-        synchronized T getIfPresent() {
+        synchronized long getVersion() {
+            return version;
+        }
+
+        boolean isLoading() {
+            return loading.get() != null;
+        }
+
+        T getIfPresent() {
             if(dirty) {
                 // returning dirty value may cause unexpected effects
                 return null;
@@ -200,25 +377,31 @@ public class KvMap<T> {
             return value;
         }
 
-        synchronized T computeIfAbsent(Function<String, ? extends T> func) {
-            get(); // we must try to load before compute
-            if(value == null) {
-                save(func.apply(key));
+        T computeIfAbsent(Function<String, ? extends T> func) {
+            synchronized (writeLock) {
+                // we must try to load before compute
+                T value = getActual();
+                if(value == null) {
+                    save(func.apply(key));
+                }
+                // get - is load value if its present, but dirty
+                return getActual();
             }
-            // get - is load value if its present, but dirty
-            return get();
         }
 
-        synchronized T compute(BiFunction<String, ? super T, ? extends T> func) {
-            get(); // we must try to load before compute
-            T newVal = func.apply(key, value);
-            if(newVal != null) {
-                save(newVal);
-            } else {
-                return null;
+        T compute(BiFunction<String, ? super T, ? extends T> func) {
+            synchronized (writeLock) {
+                // we must try to load before compute
+                T value = getActual();
+                T newVal = func.apply(key, value);
+                if(newVal != null) {
+                    save(newVal);
+                } else {
+                    return null;
+                }
+                // get - is load value if its present, but dirty
+                return getActual();
             }
-            // get - is load value if its present, but dirty
-            return get();
         }
     }
 
@@ -230,7 +413,9 @@ public class KvMap<T> {
     private final KvMapAdapter<T> adapter;
     private final Consumer<KvMapLocalEvent<T>> localListener;
     private final Consumer<KvMapEvent<T>> listener;
-    private final Map<String, ValueHolder> map = new LinkedHashMap<>();
+    private final Executor executor;
+    private final ConcurrentMap<String, ValueHolder> map = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
 
     @SuppressWarnings("unchecked")
     private KvMap(Builder builder) {
@@ -239,6 +424,7 @@ public class KvMap<T> {
         this.adapter = builder.adapter;
         this.localListener = builder.localListener;
         this.listener = builder.listener;
+        this.executor = MoreObjects.firstNonNull(builder.executor, RELOAD_EXECUTOR);
         Class<Object> mapperType = MoreObjects.firstNonNull(builder.valueType, (Class<Object>)builder.type);
         this.mapper = builder.mapper.buildClassMapper(mapperType)
           .prefix(builder.path)
@@ -271,11 +457,14 @@ public class KvMap<T> {
             if(action == KvStorageEvent.Crud.DELETE) {
                 // it meat that someone remove mapped node with all entries, we must clear map
                 // note that current implementation does not support consistency
-                List<ValueHolder> set;
-                synchronized (map) {
-                    set = new ArrayList<>(map.values());
-                    map.clear();
+                List<ValueHolder> set = new ArrayList<>();
+                for(String holderKey : map.keySet()) {
+                    ValueHolder holder = map.remove(holderKey);
+                    if(holder != null) {
+                        set.add(holder);
+                    }
                 }
+                modified();
                 set.forEach((holder) -> {
                     onLocal(KvMapLocalEvent.Action.DELETE, holder, holder.getIfPresent(), null);
                     invokeListener(KvStorageEvent.Crud.DELETE, holder.key, holder);
@@ -302,17 +491,31 @@ public class KvMap<T> {
                     holder.dirty(null, index);
                     break;
                 case DELETE:
-                    synchronized (map) {
-                        holder = map.remove(key);
-                        if(holder != null) {
-                            onLocal(KvMapLocalEvent.Action.DELETE, holder, holder.getIfPresent(), null);
-                        }
+                    holder = map.remove(key);
+                    if(holder != null) {
+                        onLocal(KvMapLocalEvent.Action.DELETE, holder, holder.getIfPresent(), null);
                     }
             }
         }
+        if(action != KvStorageEvent.Crud.READ) {
+            modified();
+        }
         invokeListener(action, key, holder);
     }
 
+    private void modified() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Version of map content. It is incremented after each change of keys or values, including changes which
+     * came from KV storage and reloading of dirty values. Note that it is not persisted and starts from zero.
+     * @return version
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     private void invokeListener(KvStorageEvent.Crud action, String key, ValueHolder holder) {
         if(listener != null) {
             T value = null;
@@ -333,7 +536,8 @@ public class KvMap<T> {
     }
 
     /**
-     * Get exists or load value from storage.
+     * Get exists or load value from storage. When value is changed in storage it may return previous value
+     * while new value is loading.
      * @param key key
      * @return value or null if not exists
      */
@@ -341,12 +545,9 @@ public class KvMap<T> {
         ValueHolder holder = getOrCreateHolder(key);
         T val = holder.get();
         if(val == null) {
-            synchronized (map) {
-                map.remove(key, holder);
-            }
-            return null;
+            map.remove(key, holder);
         }
-        return holder.get();
+        return val;
     }
 
     /**
@@ -355,10 +556,7 @@ public class KvMap<T> {
      * @return value or null if not exists or dirty.
      */
     public T getIfPresent(String key) {
-        ValueHolder holder;
-        synchronized (map) {
-            holder = map.get(key);
-        }
+        ValueHolder holder = map.get(key);
         if(holder == null) {
             return null;
         }
@@ -383,12 +581,10 @@ public class KvMap<T> {
      * @return gives value only if present, not load it, this mean that you may obtain null, event storage has value
      */
     public T remove(String key) {
-        ValueHolder valueHolder;
-        synchronized (map) {
-            valueHolder = map.get(key);
-            // we not delete holder here, it mus tbe deleter from kv-event listener
-        }
+        // we not delete holder here, it mus tbe deleter from kv-event listener
+        ValueHolder valueHolder = map.get(key);
         mapper.delete(key);
+        modified();
         if (valueHolder != null) {
             // we must not load value
             return valueHolder.getIfPresent();
@@ -411,9 +607,7 @@ public class KvMap<T> {
         ValueHolder holder = getOrCreateHolder(key);
         T newVal = holder.compute(func);
         if(newVal == null) {
-            synchronized (map) {
-                map.remove(key, holder);
-            }
+            map.remove(key, holder);
         }
         return newVal;
     }
@@ -423,19 +617,19 @@ public class KvMap<T> {
      * @param key key of value.
      */
     public void flush(String key) {
-        ValueHolder holder;
-        synchronized (map) {
-            holder = map.get(key);
-        }
+        ValueHolder holder = map.get(key);
         if(holder != null) {
             holder.flush();
         }
     }
 
     private ValueHolder getOrCreateHolder(String key) {
-        synchronized (map) {
-            return map.computeIfAbsent(key, ValueHolder::new);
+        // computeIfAbsent lock bin of map even when key is present, so we try to get holder first
+        ValueHolder holder = map.get(key);
+        if(holder == null) {
+            holder = map.computeIfAbsent(key, ValueHolder::new);
         }
+        return holder;
     }
 
     /**
@@ -444,9 +638,48 @@ public class KvMap<T> {
      * @return set of keys, never null.
      */
     public Set<String> list() {
-        synchronized (map) {
-            return ImmutableSet.copyOf(this.map.keySet());
+        return ImmutableSet.copyOf(this.map.keySet());
+    }
+
+    /**
+     * Load all dirty values of map. Leaf values are loaded by one request to storage, node values by one request
+     * per value.
+     */
+    public void prefetch() {
+        prefetch(new ArrayList<>(map.values()));
+    }
+
+    private void prefetch(Collection<ValueHolder> holders) {
+        Map<String, ValueHolder> dirty = new HashMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        Map<String, Class<?>> types = new HashMap<>();
+        for(ValueHolder holder : holders) {
+            // holders which already loading we skip
+            if(!holder.isDirty() || holder.isLoading()) {
+                continue;
+            }
+            dirty.put(holder.key, holder);
+            versions.put(holder.key, holder.getVersion());
+            types.put(holder.key, adapter.getType(holder.value));
         }
+        if(dirty.size() < 2) {
+            // usual loading is enough
+            return;
+        }
+        Map<String, Object> loaded;
+        try {
+            loaded = mapper.loadAll(types);
+        } catch (Exception e) {
+            log.error("Can not prefetch values of {}", mapper.getPrefix(), e);
+            return;
+        }
+        dirty.forEach((key, holder) -> {
+            try {
+                holder.applyLoaded(loaded.get(key), versions.get(key));
+            } catch (Exception e) {
+                log.error("Can not load {}", key, e);
+            }
+        });
     }
 
     /**
@@ -454,30 +687,28 @@ public class KvMap<T> {
      * @return immutable collection of values
      */
     public Collection<T> values() {
+        List<ValueHolder> holders = new ArrayList<>(this.map.values());
+        prefetch(holders);
         ImmutableList.Builder<T> b = ImmutableList.builder();
-        synchronized (map) {
-            this.map.values().forEach(valueHolder -> {
-                T element = safeGet(valueHolder);
-                // map does not contain holders with null elements, but sometime it happen
-                // due to multithread access , for example in `put()` method
-                if(element != null) {
-                    b.add(element);
-                }
-            });
-        }
+        holders.forEach(valueHolder -> {
+            T element = safeGet(valueHolder);
+            // map does not contain holders with null elements, but sometime it happen
+            // due to multithread access , for example in `put()` method
+            if(element != null) {
+                b.add(element);
+            }
+        });
         return b.build();
     }
 
     public void forEach(BiConsumer<String, ? super T> action) {
         // we use copy for prevent call external code in lock
-        Map<String, ValueHolder> copy;
-        synchronized (map) {
-            copy = new LinkedHashMap<>(this.map);
-        }
-        copy.forEach((key, holder) -> {
+        List<ValueHolder> holders = new ArrayList<>(this.map.values());
+        prefetch(holders);
+        holders.forEach((holder) -> {
             T value = safeGet(holder);
             if(value != null) {
-                action.accept(key, value);
+                action.accept(holder.key, value);
             }
         });
     }
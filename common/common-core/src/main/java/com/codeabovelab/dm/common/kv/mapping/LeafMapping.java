@@ -17,8 +17,12 @@
 package com.codeabovelab.dm.common.kv.mapping;
 
 import com.codeabovelab.dm.common.kv.KvNode;
+import com.codeabovelab.dm.common.kv.KvUtils;
 import com.fasterxml.jackson.databind.ObjectReader;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  */
 class LeafMapping<T> extends AbstractMapping<T> {
@@ -67,4 +71,28 @@ class LeafMapping<T> extends AbstractMapping<T> {
             throw new RuntimeException("Can not load object at path: " + path, e);
         }
     }
+
+    @Override
+    Map<String, T> loadAll(String prefix, Map<String, Class<? extends T>> types) {
+        // all leafs of directory are loaded by single call
+        Map<String, String> values = getStorage().map(prefix);
+        Map<String, T> res = new HashMap<>();
+        if(values == null) {
+            return res;
+        }
+        values = toFullKeys(prefix, values);
+        for(Map.Entry<String, Class<? extends T>> e : types.entrySet()) {
+            String path = KvUtils.join(prefix, e.getKey());
+            String str = values.get(path);
+            if(str == null) {
+                continue;
+            }
+            try {
+                res.put(e.getKey(), getObjectMapper().readValue(str, e.getValue()));
+            } catch (Exception ex) {
+                throw new RuntimeException("Can not load object at path: " + path, ex);
+            }
+        }
+        return res;
+    }
 }
@@ -29,6 +29,7 @@ import java.lang.annotation.Annotation;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  */
@@ -93,12 +94,21 @@ class NodeMapping<T> extends AbstractMapping<T> {
 
     @Override
     void load(String path, T object) {
-        KeyValueStorage storage = getStorage();
+        load(path, object, getStorage()::get);
+    }
+
+    /**
+     * Load object properties from source.
+     * @param path path of object
+     * @param object object
+     * @param source function which return node for its key, or null when node is absent
+     */
+    private void load(String path, T object, Function<String, KvNode> source) {
         for(KvProperty property: getProps(object)) {
             String proppath = KvUtils.join(path, property.getKey());
             KvNode node;
             try {
-                node = storage.get(proppath);
+                node = source.apply(proppath);
                 if(node == null) {
                     // when node is absent we must not invoke setter
                     continue;
@@ -113,20 +123,41 @@ class NodeMapping<T> extends AbstractMapping<T> {
 
     @Override
     <S extends T> S load(String path, String name, Class<S> type) {
-        Class<S> actualType = resolveType(path, type);
+        return load(path, name, type, getStorage()::get);
+    }
+
+    private <S extends T> S load(String path, String name, Class<S> type, Function<String, KvNode> source) {
+        Class<S> actualType = resolveType(path, type, source);
         S object = actualType.cast(factory.create(name, actualType));
-        load(path, object);
+        load(path, object, source);
         return actualType.cast(object);
     }
 
+    @Override
+    Map<String, T> loadAll(String prefix, Map<String, Class<? extends T>> types) {
+        Map<String, T> res = new HashMap<>();
+        for(Map.Entry<String, Class<? extends T>> e : types.entrySet()) {
+            String name = e.getKey();
+            String path = KvUtils.join(prefix, name);
+            // all properties of object are loaded by single call
+            Map<String, String> values = getStorage().map(path);
+            if(values == null) {
+                continue;
+            }
+            Map<String, String> props = toFullKeys(path, values);
+            T object = load(path, name, e.getValue(), (k) -> props.containsKey(k) ? KvNode.leaf(0, props.get(k)) : null);
+            res.put(name, object);
+        }
+        return res;
+    }
 
-    private <S extends T> Class<S> resolveType(String path, Class<S> actualType) {
+    private <S extends T> Class<S> resolveType(String path, Class<S> actualType, Function<String, KvNode> source) {
         // we prefer json type mapping, and try load custom type only when no json mapping
-        Class<S> jsonType = resolveJsonType(path, actualType);
+        Class<S> jsonType = resolveJsonType(path, actualType, source);
         if(jsonType != null) {
             actualType = jsonType;
         } else {
-            Class<S> savedType = loadType(path);
+            Class<S> savedType = loadType(path, source);
             if(savedType != null) {
                 actualType = savedType;
             }
@@ -135,8 +166,8 @@ class NodeMapping<T> extends AbstractMapping<T> {
     }
 
     @SuppressWarnings("unchecked")
-    private <S extends T> Class<S> loadType(String path) {
-        KvNode node = getStorage().get(KvUtils.join(path, PROP_TYPE));
+    private <S extends T> Class<S> loadType(String path, Function<String, KvNode> source) {
+        KvNode node = source.apply(KvUtils.join(path, PROP_TYPE));
         if(node == null) {
             return null;
         }
@@ -155,7 +186,7 @@ class NodeMapping<T> extends AbstractMapping<T> {
     }
 
     @SuppressWarnings("unchecked")
-    private <S> Class<S> resolveJsonType(String path, Class<S> type) {
+    private <S> Class<S> resolveJsonType(String path, Class<S> type, Function<String, KvNode> source) {
         JsonTypeInfo typeInfo = AnnotationUtils.findAnnotation(type, JsonTypeInfo.class);
         if (typeInfo == null) {
             return null;
@@ -163,7 +194,7 @@ class NodeMapping<T> extends AbstractMapping<T> {
         String property = getPropertyName(typeInfo);
         String proppath = KvUtils.join(path, property);
         try {
-            KvNode node = getStorage().get(proppath);
+            KvNode node = source.apply(proppath);
             if(node == null) {
                 return null;
             }
@@ -16,31 +16,63 @@
 
 package com.codeabovelab.dm.common.meter;
 
+import com.codahale.metrics.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpression;
 import org.springframework.util.Assert;
 
 import java.util.concurrent.TimeUnit;
 
 /**
- * limit checked which limits defined by expression
+ * limit checked which limits defined by expression. <p/>
+ * When compilation is enabled {@link SpelExpression} is compiled after evaluation, because compiler need types
+ * which are resolved by interpreter. Expression which is not compilable is evaluated in interpreted mode, also
+ * it must be parsed in {@link org.springframework.expression.spel.SpelCompilerMode#MIXED mixed} mode to fall
+ * back when compiled code fails (see {@link ExpressionLimitCheckerFactory}).
  */
 public class ExpressionLimitChecker implements LimitChecker {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpressionLimitChecker.class);
+    /**
+     * Parts of expression may be not evaluated (for example 'and' with false left operand), so it
+     * can not be compiled after first evaluation.
+     */
+    private static final int MAX_COMPILE_ATTEMPTS = 10;
 
     private final long period;
     private final TimeUnit timeUnit;
     private final Expression expression;
+    private final boolean compile;
+    private volatile MetricExpressionRoot root;
+    private volatile int compileAttempts;
+    private volatile boolean compiled;
 
     public ExpressionLimitChecker(Expression expression, long period, TimeUnit timeUnit) {
+        this(expression, period, timeUnit, false);
+    }
+
+    /**
+     * @param expression limit expression
+     * @param period period of check
+     * @param timeUnit unit of period
+     * @param compile compile expression, it has effect only for {@link SpelExpression}
+     */
+    public ExpressionLimitChecker(Expression expression, long period, TimeUnit timeUnit, boolean compile) {
         Assert.notNull(expression);
         Assert.notNull(timeUnit);
         this.period = period;
         this.timeUnit = timeUnit;
         this.expression = expression;
+        this.compile = compile && expression instanceof SpelExpression;
     }
 
     @Override
     public LimitExcess check(LimitCheckContext context) {
-        Object value = expression.getValue(new MetricExpressionRoot(context.getMetric()));
+        Object value = expression.getValue(getRoot(context.getMetric()));
+        if(compile && !compiled && compileAttempts < MAX_COMPILE_ATTEMPTS) {
+            compile();
+        }
         if(value == null || value instanceof Boolean && !((Boolean) value)) {
             return null;
         }
@@ -51,6 +83,40 @@ public class ExpressionLimitChecker implements LimitChecker {
           .build();
     }
 
+    private MetricExpressionRoot getRoot(Metric metric) {
+        MetricExpressionRoot root = this.root;
+        if(root == null || root.getMetric() != metric) {
+            root = new MetricExpressionRoot(metric);
+            this.root = root;
+        }
+        return root;
+    }
+
+    private void compile() {
+        ++compileAttempts;
+        try {
+            compiled = ((SpelExpression) expression).compileExpression();
+        } catch (Exception e) {
+            LOG.warn("Can not compile '{}': {}", expression.getExpressionString(), e.toString());
+        }
+        if(!compiled && compileAttempts == MAX_COMPILE_ATTEMPTS) {
+            LOG.debug("Expression '{}' is not compilable, it will be interpreted.", expression.getExpressionString());
+        }
+    }
+
+    /**
+     * Is expression compiled by SpEL compiler. Note that compiled expression may be reverted to interpreted
+     * mode when its code fails.
+     * @return true when expression has been compiled
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
     @Override
     public long getPeriod() {
         return timeUnit.toMillis(this.period);
@@ -20,15 +20,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.util.Assert;
 
 /**
- * Factory for expression limit checker
+ * Factory for expression limit checker. Limit expressions are parsed in {@link SpelCompilerMode#MIXED mixed} mode,
+ * so they are compiled when possible and fall back to interpretation otherwise.
  */
 final class ExpressionLimitCheckerFactory {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionLimitCheckerFactory.class);
     private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final SpelExpressionParser limitParser = new SpelExpressionParser(
+      new SpelParserConfiguration(SpelCompilerMode.MIXED, ExpressionLimitCheckerFactory.class.getClassLoader()));
     private final Environment environment;
 
     public ExpressionLimitCheckerFactory(Environment environment) {
@@ -47,8 +52,9 @@ final class ExpressionLimitCheckerFactory {
         if(expressionSource == null) {
             return null;
         }
-        Expression expression = parser.parseExpression(expressionSource);
-        ExpressionLimitChecker limitChecker = new ExpressionLimitChecker(expression, checkerSource.getPeriod(), checkerSource.getTimeUnit());
+        Expression expression = limitParser.parseExpression(expressionSource);
+        ExpressionLimitChecker limitChecker = new ExpressionLimitChecker(expression, checkerSource.getPeriod(),
+          checkerSource.getTimeUnit(), true);
         return limitChecker;
     }
 
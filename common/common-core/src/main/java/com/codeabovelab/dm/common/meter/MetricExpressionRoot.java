@@ -19,9 +19,9 @@ package com.codeabovelab.dm.common.meter;
 import com.codahale.metrics.*;
 
 /**
- * root of metric expression
+ * root of metric expression. It must be public, because compiled expressions access it directly.
  */
-class MetricExpressionRoot {
+public class MetricExpressionRoot {
     private final Metric metric;
 
     MetricExpressionRoot(Metric metric) {
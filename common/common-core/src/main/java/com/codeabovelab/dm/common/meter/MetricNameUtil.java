@@ -52,6 +52,40 @@ public final class MetricNameUtil {
         return MetricRegistry.name(clazz.getCanonicalName(), name);
     }
 
+    /**
+     * Append tags to name of metric in form 'name{key1=value1,key2=value2}'. Dropwizard metrics does not support
+     * tags, therefore they are encoded in name, and reporters which support tags may parse them back.
+     * Characters which break this form are replaced by '_' in values.
+     * @param name name of metric
+     * @param keyValues pairs of tag key and value, tags with null value are skipped
+     * @return name with tags
+     */
+    public static String withTags(String name, String... keyValues) {
+        if((keyValues.length & 1) != 0) {
+            throw new IllegalArgumentException("Odd count of keys and values: " + keyValues.length);
+        }
+        StringBuilder sb = new StringBuilder(name.length() + keyValues.length * 16);
+        sb.append(name);
+        boolean first = true;
+        for(int i = 0; i < keyValues.length; i += 2) {
+            String value = keyValues[i + 1];
+            if(value == null) {
+                continue;
+            }
+            sb.append(first ? '{' : ',');
+            first = false;
+            sb.append(keyValues[i]).append('=');
+            for(int j = 0; j < value.length(); ++j) {
+                char c = value.charAt(j);
+                sb.append(c == ',' || c == '=' || c == '{' || c == '}' ? '_' : c);
+            }
+        }
+        if(!first) {
+            sb.append('}');
+        }
+        return sb.toString();
+    }
+
     /**
      * algorithm copied from
      * https://github.com/ryantenney/metrics-spring/blob/master/src/main/java/com/ryantenney/metrics/spring/Util.java
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.meter;
+
+import com.codahale.metrics.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders {@link MetricRegistry} in Prometheus text format (version 0.0.4). Tags encoded in names by
+ * {@link MetricNameUtil#withTags(String, String...)} become labels, so series of one metric form one family.
+ * Rendered output is cached for short time, therefore concurrent scrapes do not render registry each time. <p/>
+ * Mapping of metric types: gauges and counters are 'gauge' (dropwizard counter can be decremented),
+ * meters are 'counter' with '_total' suffix. Histograms and timers do not have sum of observed values, which is
+ * required by 'summary', so their quantiles are 'gauge' with 'quantile' label and count is 'counter' with '_count'
+ * suffix, timers are in seconds.
+ */
+public class PrometheusMetricsWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS;
+    private static final double NANOS_IN_SECOND = 1_000_000_000d;
+
+    static {
+        QUANTILE_LABELS = new String[QUANTILES.length];
+        for(int i = 0; i < QUANTILES.length; ++i) {
+            QUANTILE_LABELS[i] = "quantile=\"" + QUANTILES[i] + "\"";
+        }
+    }
+
+    /**
+     * Parsed name of metric.
+     */
+    private static final class Name {
+        private final String family;
+        /**
+         * Rendered labels without braces, like 'key="value",key2="value2"', or empty string.
+         */
+        private final String labels;
+
+        Name(String family, String labels) {
+            this.family = family;
+            this.labels = labels;
+        }
+    }
+
+    private static final class Family {
+        /**
+         * Resolved name of family, it may differ from requested when name is used by family of other type.
+         */
+        private final String name;
+        private final String type;
+        private final StringBuilder body = new StringBuilder();
+
+        Family(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        void append(String labels, String extraLabel, double value) {
+            appendSample(body, name, labels, extraLabel, value);
+        }
+
+        void append(String labels, long value) {
+            appendSample(body, name, labels, null, value);
+        }
+    }
+
+    private static final class Rendered {
+        private final byte[] data;
+        private final long time;
+
+        Rendered(byte[] data, long time) {
+            this.data = data;
+            this.time = time;
+        }
+    }
+
+    private final MetricRegistry registry;
+    private final long cacheMillis;
+    private final ConcurrentMap<String, Name> names = new ConcurrentHashMap<>();
+    private volatile Rendered rendered;
+
+    /**
+     * @param registry registry
+     * @param cacheMillis time in ms while rendered output is reused, zero disables caching
+     */
+    public PrometheusMetricsWriter(MetricRegistry registry, long cacheMillis) {
+        this.registry = registry;
+        this.cacheMillis = cacheMillis;
+    }
+
+    /**
+     * Rendered registry in UTF-8, it may be cached.
+     * @return bytes of text
+     */
+    public byte[] render() {
+        Rendered r = this.rendered;
+        if(r != null && System.currentTimeMillis() - r.time < cacheMillis) {
+            return r.data;
+        }
+        synchronized (this) {
+            r = this.rendered;
+            if(r != null && System.currentTimeMillis() - r.time < cacheMillis) {
+                return r.data;
+            }
+            byte[] data = renderText().getBytes(StandardCharsets.UTF_8);
+            this.rendered = new Rendered(data, System.currentTimeMillis());
+            return data;
+        }
+    }
+
+    /**
+     * Render registry without cache.
+     * @return text
+     */
+    public String renderText() {
+        Map<String, Family> families = new HashMap<>();
+        int series = 0;
+        for(Map.Entry<String, Gauge> e: registry.getGauges().entrySet()) {
+            Object value;
+            try {
+                value = e.getValue().getValue();
+            } catch (Exception ex) {
+                continue;
+            }
+            double val;
+            if(value instanceof Number) {
+                val = ((Number) value).doubleValue();
+            } else if(value instanceof Boolean) {
+                val = (Boolean) value ? 1 : 0;
+            } else {
+                continue;
+            }
+            Name name = parse(e.getKey());
+            family(families, name.family, "gauge").append(name.labels, null, val);
+            series++;
+        }
+        for(Map.Entry<String, Counter> e: registry.getCounters().entrySet()) {
+            Name name = parse(e.getKey());
+            family(families, name.family, "gauge").append(name.labels, e.getValue().getCount());
+            series++;
+        }
+        for(Map.Entry<String, Meter> e: registry.getMeters().entrySet()) {
+            Name name = parse(e.getKey());
+            family(families, name.family + "_total", "counter").append(name.labels, e.getValue().getCount());
+            series++;
+        }
+        for(Map.Entry<String, Histogram> e: registry.getHistograms().entrySet()) {
+            Name name = parse(e.getKey());
+            Histogram histogram = e.getValue();
+            appendQuantiles(families, name.family, name.labels, histogram.getSnapshot(), histogram.getCount(), 1d);
+            series++;
+        }
+        for(Map.Entry<String, Timer> e: registry.getTimers().entrySet()) {
+            Name name = parse(e.getKey());
+            Timer timer = e.getValue();
+            appendQuantiles(families, name.family + "_seconds", name.labels, timer.getSnapshot(), timer.getCount(), NANOS_IN_SECOND);
+            series++;
+        }
+        if(names.size() > series * 2) {
+            // metrics were removed from registry
+            names.clear();
+        }
+        StringBuilder sb = new StringBuilder(series * 64);
+        for(Family family: new TreeMap<>(families).values()) {
+            sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            sb.append(family.body);
+        }
+        return sb.toString();
+    }
+
+    private static Family family(Map<String, Family> families, String name, String type) {
+        Family family = families.get(name);
+        if(family == null) {
+            family = new Family(name, type);
+            families.put(name, family);
+        } else if(!family.type.equals(type)) {
+            // one family can not have different types
+            return family(families, name + "_" + type, type);
+        }
+        return family;
+    }
+
+    private static void appendQuantiles(Map<String, Family> families, String family, String labels, Snapshot snapshot,
+                                        long count, double divider) {
+        Family quantiles = family(families, family, "gauge");
+        for(int i = 0; i < QUANTILES.length; ++i) {
+            quantiles.append(labels, QUANTILE_LABELS[i], snapshot.getValue(QUANTILES[i]) / divider);
+        }
+        family(families, family + "_count", "counter").append(labels, count);
+    }
+
+    private static void appendSample(StringBuilder sb, String family, String labels, String extraLabel, double value) {
+        sb.append(family);
+        appendLabels(sb, labels, extraLabel);
+        sb.append(' ');
+        if(Double.isNaN(value)) {
+            sb.append("NaN");
+        } else if(Double.isInfinite(value)) {
+            sb.append(value > 0 ? "+Inf" : "-Inf");
+        } else if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+
+    private static void appendSample(StringBuilder sb, String family, String labels, String extraLabel, long value) {
+        sb.append(family);
+        appendLabels(sb, labels, extraLabel);
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static void appendLabels(StringBuilder sb, String labels, String extraLabel) {
+        boolean hasLabels = !labels.isEmpty();
+        if(!hasLabels && extraLabel == null) {
+            return;
+        }
+        sb.append('{').append(labels);
+        if(extraLabel != null) {
+            if(hasLabels) {
+                sb.append(',');
+            }
+            sb.append(extraLabel);
+        }
+        sb.append('}');
+    }
+
+    private Name parse(String name) {
+        Name parsed = names.get(name);
+        if(parsed == null) {
+            parsed = parseName(name);
+            names.put(name, parsed);
+        }
+        return parsed;
+    }
+
+    static Name parseName(String name) {
+        int brace = name.indexOf('{');
+        if(brace <= 0 || !name.endsWith("}")) {
+            return new Name(sanitize(name, true), "");
+        }
+        StringBuilder labels = new StringBuilder();
+        String tags = name.substring(brace + 1, name.length() - 1);
+        for(String tag: tags.split(",")) {
+            int eq = tag.indexOf('=');
+            if(eq <= 0) {
+                continue;
+            }
+            if(labels.length() > 0) {
+                labels.append(',');
+            }
+            labels.append(sanitize(tag.substring(0, eq), false)).append("=\"");
+            escape(labels, tag.substring(eq + 1));
+            labels.append('"');
+        }
+        return new Name(sanitize(name.substring(0, brace), true), labels.toString());
+    }
+
+    private static String sanitize(String name, boolean allowColon) {
+        StringBuilder sb = new StringBuilder(name.length() + 1);
+        for(int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' ||
+              (c >= '0' && c <= '9' && i > 0) || (allowColon && c == ':');
+            sb.append(valid ? c : '_');
+        }
+        if(sb.length() > 0 && name.charAt(0) >= '0' && name.charAt(0) <= '9') {
+            sb.insert(0, '_');
+            sb.setCharAt(1, name.charAt(0));
+        }
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for(int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
@@ -18,29 +18,61 @@ package com.codeabovelab.dm.common.meter;
 
 import com.codahale.metrics.Metric;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * monitor which periodically analyze state of Meters and raise alarm if it's limits exceeded
+ * monitor which periodically analyze state of Meters and raise alarm if it's limits exceeded. <p/>
+ * Scheduler thread only submits checks to small pool of workers, therefore slow check does not delay others.
+ * Check which is not completed in timeout is interrupted and reported as limit excess,
+ * also check is skipped when previous check of same task is still running.
  */
 @Component
 public class Watchdog /*TODO implements HealthIndicator*/ {
     private final ConcurrentMap<Metric, WatchdogTask> tasks = new ConcurrentHashMap<>();
     final ScheduledExecutorService scheduledExecutorService;
+    final ExecutorService checkExecutorService;
     private final List<LimitExcessListener> listeners;
+    private final long checkTimeout;
+    private final AtomicLong hangs = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
 
+    /**
+     * @param listeners listeners of limit excess
+     * @param threads count of threads which run checks
+     * @param checkTimeout max time of check in ms, also check is limited by its period
+     */
     @Autowired
-    Watchdog(List<LimitExcessListener> listeners) {
+    Watchdog(List<LimitExcessListener> listeners,
+             @Value("${meter.watchdog.threads:2}") int threads,
+             @Value("${meter.watchdog.timeout:10000}") long checkTimeout) {
+        Assert.isTrue(threads > 0, "threads must be greater than zero");
+        Assert.isTrue(checkTimeout > 0, "checkTimeout must be greater than zero");
         this.listeners = Collections.unmodifiableList(new ArrayList<>(listeners));
-        //we need executor which cannot blocked by unknown task
-        // also in health() we need to check for hangs tasks and report it
-        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("watchdog-"));
+        this.checkTimeout = checkTimeout;
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(daemonFactory("watchdog-"));
+        this.checkExecutorService = Executors.newFixedThreadPool(threads, daemonFactory("watchdog-check-"));
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        CustomizableThreadFactory factory = new CustomizableThreadFactory(prefix);
+        factory.setDaemon(true);
+        return factory;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduledExecutorService.shutdownNow();
+        checkExecutorService.shutdownNow();
     }
 
     /**
@@ -76,6 +108,34 @@ public class Watchdog /*TODO implements HealthIndicator*/ {
         task.cancel();
     }
 
+    /**
+     * Count of checks which were interrupted by timeout.
+     * @return count
+     */
+    public long getHangs() {
+        return hangs.get();
+    }
+
+    /**
+     * Count of checks which were skipped because previous check was still running.
+     * @return count
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    long getCheckTimeout(long period) {
+        return Math.min(checkTimeout, period);
+    }
+
+    void onHang() {
+        hangs.incrementAndGet();
+    }
+
+    void onOverrun() {
+        overruns.incrementAndGet();
+    }
+
     void fireLimitExcess(LimitExcessEvent event) {
         for(LimitExcessListener limitExcessListener: this.listeners) {
             limitExcessListener.listen(event);
@@ -24,9 +24,8 @@ import org.springframework.util.Assert;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -136,6 +135,7 @@ public final class WatchdogTask {
     private static class WatchdogTaskRunnable implements Runnable {
 
         private final WatchdogTask watchdogTask;
+        private final AtomicReference<Check> current = new AtomicReference<>();
 
         WatchdogTaskRunnable(WatchdogTask watchdogTask) {
             this.watchdogTask = watchdogTask;
@@ -143,6 +143,70 @@ public final class WatchdogTask {
 
         @Override
         public void run() {
+            // it run in scheduler thread, and must not block it
+            Check prev = current.get();
+            // timed out check may ignore interruption, so we wait end of its worker
+            if(prev != null && (!prev.isDone() || !prev.isFinished())) {
+                watchdogTask.watchdog.onOverrun();
+                LOG.warn("Check of '{}' is skipped, because previous check is still running.", watchdogTask.name);
+                return;
+            }
+            Check check = new Check(watchdogTask);
+            current.set(check);
+            Watchdog watchdog = watchdogTask.watchdog;
+            long timeout = watchdog.getCheckTimeout(watchdogTask.getPeriod());
+            try {
+                check.future = watchdog.checkExecutorService.submit(check);
+                watchdog.scheduledExecutorService.schedule(check::timeout, timeout, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // watchdog is shutdown
+            }
+        }
+    }
+
+    /**
+     * Single run of limit checkers.
+     */
+    private static class Check implements Runnable {
+        private final WatchdogTask watchdogTask;
+        private final long start = System.currentTimeMillis();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean finished;
+        private volatile Future<?> future;
+
+        Check(WatchdogTask watchdogTask) {
+            this.watchdogTask = watchdogTask;
+        }
+
+        /**
+         * @return true when check is completed or timed out
+         */
+        boolean isDone() {
+            return done.get();
+        }
+
+        /**
+         * @return true when worker is not run and will not run this check
+         */
+        boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void run() {
+            if(!started.compareAndSet(false, true)) {
+                // check is timed out before start
+                return;
+            }
+            try {
+                check();
+            } finally {
+                finished = true;
+            }
+        }
+
+        private void check() {
             List<LimitExcess> excesses = new ArrayList<>();
             LimitCheckContext limitCheckContext = new LimitCheckContext(watchdogTask.metric, watchdogTask.name);
             for(LimitChecker limitChecker: watchdogTask.limitCheckers) {
@@ -156,7 +220,32 @@ public final class WatchdogTask {
                     excesses.add(excess);
                 }
             }
-            this.watchdogTask.updateState(limitCheckContext, excesses);
+            // result of check which is timed out is ignored
+            if(done.compareAndSet(false, true)) {
+                this.watchdogTask.updateState(limitCheckContext, excesses);
+            }
+        }
+
+        void timeout() {
+            if(!done.compareAndSet(false, true)) {
+                return;
+            }
+            if(started.compareAndSet(false, true)) {
+                finished = true;
+            }
+            Future<?> future = this.future;
+            if(future != null) {
+                future.cancel(true);
+            }
+            long time = System.currentTimeMillis() - start;
+            LOG.warn("Check of '{}' is not completed in {} ms, it is interrupted.", watchdogTask.name, time);
+            LimitExcess excess = LimitExcess.builder()
+              .metric(watchdogTask.name)
+              .message("Check is not completed in " + time + " ms")
+              .build();
+            LimitCheckContext context = new LimitCheckContext(watchdogTask.metric, watchdogTask.name);
+            watchdogTask.updateState(context, Collections.singletonList(excess));
+            watchdogTask.watchdog.onHang();
         }
     }
 }
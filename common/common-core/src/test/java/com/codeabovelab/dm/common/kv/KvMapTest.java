@@ -17,8 +17,10 @@
 package com.codeabovelab.dm.common.kv;
 
 import com.codeabovelab.dm.common.kv.mapping.KvMap;
+import com.codeabovelab.dm.common.kv.mapping.KvMapAdapter;
 import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
 import com.codeabovelab.dm.common.kv.mapping.KvMapping;
+import com.codeabovelab.dm.common.mb.ConditionalSubscriptions;
 import com.codeabovelab.dm.common.utils.ExecutorUtils;
 import com.codeabovelab.dm.common.utils.Uuids;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,6 +32,13 @@ import org.springframework.security.crypto.encrypt.TextEncryptor;
 
 import javax.validation.Validator;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.Matchers.*;
@@ -104,10 +113,278 @@ public class KvMapTest {
         Assert.assertThat(map.list(), contains(twoKey));
     }
 
+    @Test
+    public void testVersion() throws Exception {
+        KvMapperFactory factory = factory();
+        KvMap<Bean> first = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/test/version")
+          .executor(executor)
+          .build();
+        KvMap<Bean> second = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/test/version")
+          .build();
+        long version = first.getVersion();
+        first.put("one", new Bean());
+        executor.flush();
+        version = assertIncremented(version, first);
+        // reading does not change version
+        first.get("one");
+        first.values();
+        Assert.assertEquals(version, first.getVersion());
+        long secondVersion = second.getVersion();
+        second.put("one", new Bean());
+        executor.flush();
+        // changes from storage also change version
+        version = assertIncremented(version, first);
+        assertIncremented(secondVersion, second);
+        // background loading of dirty value
+        first.get("one");
+        executor.flush();
+        version = assertIncremented(version, first);
+        first.remove("one");
+        executor.flush();
+        assertIncremented(version, first);
+    }
+
+    private static long assertIncremented(long old, KvMap<?> map) {
+        long version = map.getVersion();
+        Assert.assertThat(version, greaterThan(old));
+        return version;
+    }
+
+    /**
+     * Value which hold bean and some runtime state, which is not saved.
+     */
+    @Data
+    @AllArgsConstructor
+    private static class BeanHolder {
+        private Bean bean;
+        private String state;
+    }
+
+    private static class BeanHolderAdapter implements KvMapAdapter<BeanHolder> {
+        private final List<BeanHolder> typeSources = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object get(String key, BeanHolder source) {
+            return source.getBean();
+        }
+
+        @Override
+        public BeanHolder set(String key, BeanHolder source, Object value) {
+            if(source == null) {
+                return new BeanHolder((Bean) value, null);
+            }
+            source.setBean((Bean) value);
+            return source;
+        }
+
+        @Override
+        public Class<?> getType(BeanHolder source) {
+            typeSources.add(source);
+            return source == null ? null : source.getBean().getClass();
+        }
+    }
+
+    @Test
+    public void testReloadWithSource() throws Exception {
+        KvMapperFactory factory = factory();
+        BeanHolderAdapter adapter = new BeanHolderAdapter();
+        KvMap<BeanHolder> first = KvMap.builder(BeanHolder.class, Bean.class)
+          .mapper(factory)
+          .path("/test/source")
+          .adapter(adapter)
+          .executor(executor)
+          .build();
+        KvMap<Bean> second = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/test/source")
+          .build();
+        List<BeanHolder> holders = new ArrayList<>();
+        for(int i = 0; i < 2; ++i) {
+            BeanHolder holder = new BeanHolder(new Bean(), "state" + i);
+            holders.add(holder);
+            first.put("key" + i, holder);
+        }
+        executor.flush();
+
+        Bean updated = new Bean();
+        second.put("key0", updated);
+        executor.flush();
+        // stale value is returned while background reload
+        Assert.assertSame(holders.get(0), first.get("key0"));
+        executor.flush();
+        BeanHolder reloaded = first.get("key0");
+        // adapter receive held value, therefore runtime state is retained
+        Assert.assertSame(holders.get(0), reloaded);
+        Assert.assertEquals("state0", reloaded.getState());
+        Assert.assertEquals(updated.getText(), reloaded.getBean().getText());
+        Assert.assertThat(adapter.typeSources, hasItem(sameInstance(holders.get(0))));
+        adapter.typeSources.clear();
+
+        // prefetch of dirty values
+        for(int i = 0; i < 2; ++i) {
+            second.put("key" + i, new Bean());
+        }
+        executor.flush();
+        Assert.assertThat(first.values(), containsInAnyOrder(holders.toArray()));
+        for(int i = 0; i < 2; ++i) {
+            BeanHolder holder = holders.get(i);
+            Assert.assertEquals("state" + i, holder.getState());
+            Assert.assertEquals(second.get("key" + i).getText(), holder.getBean().getText());
+        }
+        Assert.assertThat(adapter.typeSources, containsInAnyOrder(holders.toArray()));
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        CountingStorage storage = new CountingStorage(InMemoryKeyValueStorage.builder().eventsExecutor(executor).build());
+        KvMapperFactory factory = factory(storage);
+        KvMap<Bean> first = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/test/prefetch")
+          .build();
+        KvMap<Bean> second = KvMap.builder(Bean.class)
+          .mapper(factory)
+          .path("/test/prefetch")
+          .build();
+        List<String> keys = new ArrayList<>();
+        for(int i = 0; i < 10; ++i) {
+            String key = "key" + i;
+            keys.add(key);
+            first.put(key, new Bean());
+        }
+        executor.flush();
+        List<Bean> updated = new ArrayList<>();
+        for(String key : keys) {
+            Bean bean = new Bean();
+            updated.add(bean);
+            second.put(key, bean);
+        }
+        // now values of first map are dirty
+        executor.flush();
+        Assert.assertNull(first.getIfPresent("key0"));
+        storage.gets.set(0);
+        storage.maps.set(0);
+        Assert.assertThat(first.values(), containsInAnyOrder(updated.toArray()));
+        // each node is loaded by single map call
+        Assert.assertEquals(0, storage.gets.get());
+        Assert.assertEquals(keys.size(), storage.maps.get());
+        Assert.assertEquals(updated.get(0), first.getIfPresent("key0"));
+    }
+
+    /**
+     * Concurrent readers of map while another map write same keys. Throughput of it is measured by KvMapBenchmark.
+     */
+    @Test
+    public void testConcurrentReads() throws Exception {
+        KvMapperFactory factory = new KvMapperFactory(new ObjectMapper(),
+          InMemoryKeyValueStorage.builder().eventsExecutor(ExecutorUtils.DIRECT).build(),
+          mock(TextEncryptor.class),
+          mock(Validator.class));
+        KvMap<Bean> reader = KvMap.builder(Bean.class).mapper(factory).path("/test/concurrent").build();
+        KvMap<Bean> writer = KvMap.builder(Bean.class).mapper(factory).path("/test/concurrent").build();
+        final int keys = 100;
+        for(int i = 0; i < keys; ++i) {
+            reader.put("key" + i, new Bean());
+        }
+        final int threads = 8;
+        final int reads = 10_000;
+        final int writes = 1_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int t = 0; t < threads; ++t) {
+                futures.add(pool.submit(() -> {
+                    for(int i = 0; i < reads; ++i) {
+                        Bean bean = reader.get("key" + (i % keys));
+                        // dirty values are served stale until reload, so value is never absent
+                        Assert.assertNotNull(bean);
+                    }
+                }));
+            }
+            futures.add(pool.submit(() -> {
+                for(int i = 0; i < writes; ++i) {
+                    writer.put("key" + (i % keys), new Bean());
+                }
+            }));
+            for(Future<?> future : futures) {
+                future.get();
+            }
+            // after writes reader must see last written values
+            Assert.assertThat(reader.values(), containsInAnyOrder(writer.values().toArray()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     private KvMapperFactory factory() {
+        return factory(InMemoryKeyValueStorage.builder().eventsExecutor(executor).build());
+    }
+
+    private KvMapperFactory factory(KeyValueStorage storage) {
         return new KvMapperFactory(new ObjectMapper(),
-          InMemoryKeyValueStorage.builder().eventsExecutor(executor).build(),
+          storage,
           mock(TextEncryptor.class),
           mock(Validator.class));
     }
+
+    private static class CountingStorage implements KeyValueStorage {
+        private final KeyValueStorage storage;
+        private final AtomicInteger gets = new AtomicInteger();
+        private final AtomicInteger maps = new AtomicInteger();
+
+        CountingStorage(KeyValueStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public KvNode get(String key) {
+            gets.incrementAndGet();
+            return storage.get(key);
+        }
+
+        @Override
+        public KvNode set(String key, String value, WriteOptions ops) {
+            return storage.set(key, value, ops);
+        }
+
+        @Override
+        public KvNode setdir(String key, WriteOptions ops) {
+            return storage.setdir(key, ops);
+        }
+
+        @Override
+        public KvNode deletedir(String key, DeleteDirOptions ops) {
+            return storage.deletedir(key, ops);
+        }
+
+        @Override
+        public KvNode delete(String key, WriteOptions ops) {
+            return storage.delete(key, ops);
+        }
+
+        @Override
+        public List<String> list(String key) {
+            return storage.list(key);
+        }
+
+        @Override
+        public Map<String, String> map(String key) {
+            maps.incrementAndGet();
+            return storage.map(key);
+        }
+
+        @Override
+        public ConditionalSubscriptions<KvStorageEvent, String> subscriptions() {
+            return storage.subscriptions();
+        }
+
+        @Override
+        public String getPrefix() {
+            return storage.getPrefix();
+        }
+    }
 }
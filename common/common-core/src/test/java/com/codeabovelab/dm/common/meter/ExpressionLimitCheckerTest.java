@@ -0,0 +1,54 @@
+package com.codeabovelab.dm.common.meter;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class ExpressionLimitCheckerTest {
+
+    private static final String EXPRESSION = "meter.count > 10L and meter.meanRate > 0.0";
+
+    private static ExpressionLimitChecker checker(SpelCompilerMode mode, String expression) {
+        SpelExpressionParser parser = new SpelExpressionParser(new SpelParserConfiguration(mode, null));
+        Expression expr = parser.parseExpression(expression);
+        return new ExpressionLimitChecker(expr, 1, TimeUnit.SECONDS, mode != SpelCompilerMode.OFF);
+    }
+
+    @Test
+    public void testCompiled() {
+        Meter meter = new Meter();
+        LimitCheckContext ctx = new LimitCheckContext(meter, "meter");
+        ExpressionLimitChecker checker = checker(SpelCompilerMode.MIXED, EXPRESSION);
+        // right operand of 'and' is not evaluated, therefore it can not be compiled
+        assertNull(checker.check(ctx));
+        assertFalse(checker.isCompiled());
+        meter.mark(20);
+        LimitExcess excess = checker.check(ctx);
+        assertNotNull(excess);
+        assertEquals("meter", excess.getMetric());
+        assertTrue(checker.isCompiled());
+        assertNotNull(checker.check(ctx));
+    }
+
+    @Test
+    public void testFallback() {
+        // 'timer' is null for meter, so compiled code fails and expression is interpreted again
+        ExpressionLimitChecker checker = checker(SpelCompilerMode.MIXED, "timer?.count > 10L or meter?.count > 10L");
+        Meter meter = new Meter();
+        meter.mark(20);
+        assertNotNull(checker.check(new LimitCheckContext(meter, "meter")));
+        Timer timer = new Timer();
+        assertNull(checker.check(new LimitCheckContext(timer, "timer")));
+        assertNotNull(checker.check(new LimitCheckContext(meter, "meter")));
+    }
+}
@@ -0,0 +1,70 @@
+package com.codeabovelab.dm.common.meter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class PrometheusMetricsWriterTest {
+
+    @Test
+    public void testFormat() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.register("jvm.threads", (Gauge<Integer>) () -> 12);
+        registry.register("1st.flag", (Gauge<Boolean>) () -> true);
+        registry.register("some.text", (Gauge<String>) () -> "skipped");
+        registry.counter(MetricNameUtil.withTags("jobs.active", "node", "n\"1")).inc(3);
+        registry.counter(MetricNameUtil.withTags("jobs.active", "node", "n2")).inc(1);
+        registry.meter("events").mark(5);
+        registry.timer(MetricNameUtil.withTags("docker.requests", "node", "n1", "outcome", "ok"))
+          .update(250, TimeUnit.MILLISECONDS);
+
+        String text = new PrometheusMetricsWriter(registry, 0).renderText();
+        assertTrue(text, text.contains("# TYPE jvm_threads gauge\njvm_threads 12\n"));
+        assertTrue(text, text.contains("_1st_flag 1\n"));
+        assertFalse(text, text.contains("some_text"));
+        assertTrue(text, text.contains("# TYPE jobs_active gauge\n"));
+        assertTrue(text, text.contains("jobs_active{node=\"n\\\"1\"} 3\n"));
+        assertTrue(text, text.contains("jobs_active{node=\"n2\"} 1\n"));
+        assertEquals("one TYPE line per family", text.indexOf("# TYPE jobs_active"), text.lastIndexOf("# TYPE jobs_active"));
+        assertTrue(text, text.contains("# TYPE events_total counter\nevents_total 5\n"));
+        // timer does not have sum of values, so it can not be rendered as summary
+        assertFalse(text, text.contains("summary"));
+        assertTrue(text, text.contains("# TYPE docker_requests_seconds gauge\n"));
+        assertTrue(text, text.contains("docker_requests_seconds{node=\"n1\",outcome=\"ok\",quantile=\"0.5\"} 0.25\n"));
+        assertTrue(text, text.contains("# TYPE docker_requests_seconds_count counter\n"));
+        assertTrue(text, text.contains("docker_requests_seconds_count{node=\"n1\",outcome=\"ok\"} 1\n"));
+    }
+
+    @Test
+    public void testTypeCollision() {
+        MetricRegistry registry = new MetricRegistry();
+        // count of timer 'req' is 'req_seconds_count' counter, but it already is gauge of dropwizard counter
+        registry.counter("req.seconds.count").inc(7);
+        registry.timer("req").update(1, TimeUnit.SECONDS);
+
+        String text = new PrometheusMetricsWriter(registry, 0).renderText();
+        assertTrue(text, text.contains("# TYPE req_seconds_count gauge\nreq_seconds_count 7\n"));
+        assertTrue(text, text.contains("# TYPE req_seconds_count_counter counter\nreq_seconds_count_counter 1\n"));
+        assertTrue(text, text.contains("req_seconds{quantile=\"0.5\"} 1\n"));
+    }
+
+    @Test
+    public void testCache() {
+        MetricRegistry registry = new MetricRegistry();
+        for(int i = 0; i < 20_000; ++i) {
+            registry.counter(MetricNameUtil.withTags("requests", "node", "node-" + (i % 100), "operation", "op" + i)).inc(i);
+        }
+        PrometheusMetricsWriter writer = new PrometheusMetricsWriter(registry, 60_000);
+        byte[] first = writer.render();
+        assertSame(first, writer.render());
+        String text = new String(first, StandardCharsets.UTF_8);
+        assertTrue(text.contains("requests{node=\"node-7\",operation=\"op107\"} 107\n"));
+    }
+}
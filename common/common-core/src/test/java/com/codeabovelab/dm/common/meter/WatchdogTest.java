@@ -0,0 +1,109 @@
+package com.codeabovelab.dm.common.meter;
+
+import com.codahale.metrics.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class WatchdogTest {
+
+    private final List<LimitExcessEvent> events = new CopyOnWriteArrayList<>();
+    private Watchdog watchdog;
+
+    @Before
+    public void before() {
+        watchdog = new Watchdog(Collections.singletonList(events::add), 2, 100);
+    }
+
+    @After
+    public void after() {
+        watchdog.shutdown();
+    }
+
+    @Test
+    public void testHang() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Counter hung = new Counter();
+        watchdog.registerTask(hung, "hung").addLimitChecker(new BaseLimitChecker(50) {
+            @Override
+            public LimitExcess check(LimitCheckContext context) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        Counter fast = new Counter();
+        watchdog.registerTask(fast, "fast").addLimitChecker(new BaseLimitChecker(20) {
+            @Override
+            public LimitExcess check(LimitCheckContext context) {
+                return LimitExcess.builder().metric(context.getMetricId()).message("fast").build();
+            }
+        });
+        waitFor(() -> watchdog.getHangs() > 0);
+        WatchdogTaskState state = watchdog.getTask(hung).getState();
+        assertEquals(1, state.getExcesses().size());
+        assertTrue(state.getExcesses().get(0).getMessage().startsWith("Check is not completed"));
+        // hung check does not block others
+        waitFor(() -> events.stream().anyMatch(e -> "fast".equals(e.getLimitCheckContext().getMetricId())));
+        latch.countDown();
+    }
+
+    @Test
+    public void testNotInterruptibleHang() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Counter hung = new Counter();
+        watchdog.registerTask(hung, "hung").addLimitChecker(new BaseLimitChecker(30) {
+            @Override
+            public LimitExcess check(LimitCheckContext context) {
+                calls.incrementAndGet();
+                while(latch.getCount() > 0) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        // check ignores interruption
+                    }
+                }
+                return null;
+            }
+        });
+        waitFor(() -> watchdog.getHangs() > 0 && watchdog.getOverruns() > 3);
+        // hung check is not submitted again while its worker is busy
+        assertEquals(1, calls.get());
+        // so second worker is free for other checks
+        Counter fast = new Counter();
+        watchdog.registerTask(fast, "fast").addLimitChecker(new BaseLimitChecker(20) {
+            @Override
+            public LimitExcess check(LimitCheckContext context) {
+                return LimitExcess.builder().metric(context.getMetricId()).message("fast").build();
+            }
+        });
+        waitFor(() -> events.stream().anyMatch(e -> "fast".equals(e.getLimitCheckContext().getMetricId())));
+        assertEquals(1, watchdog.getHangs());
+        latch.countDown();
+        waitFor(() -> calls.get() > 1);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5_000;
+        while(!condition.getAsBoolean()) {
+            assertTrue("Timeout of waiting", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
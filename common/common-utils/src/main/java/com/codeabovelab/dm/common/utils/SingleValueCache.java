@@ -16,22 +16,41 @@
 
 package com.codeabovelab.dm.common.utils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.Assert;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 /**
- * Provide cache of single value.
- *
+ * Provide cache of single value. <p/>
+ * Only one load of value is run at same time, other threads wait its result (without spinning). When value is
+ * older than 'refreshAfterWrite' it is refreshed in background, and when it older than 'timeAfterWrite' it still
+ * returned while background refresh is in progress, but not longer than 'maxStale'. After that callers wait new value.
  */
+@Slf4j
 public class SingleValueCache<T> implements Supplier<T> {
 
+    private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+      .setNameFormat(SingleValueCache.class.getName() + "-refresh-%d")
+      .setDaemon(true)
+      .build());
+
     public static class Builder<T> {
         private final Supplier<T> supplier;
         private long timeAfterWrite;
+        private long refreshAfterWrite = -1;
+        private long maxStale = -1;
+        private Executor executor;
+        private LongSupplier clock;
 
         Builder(Supplier<T> supplier) {
             this.supplier = supplier;
@@ -59,20 +78,114 @@ public class SingleValueCache<T> implements Supplier<T> {
             this.timeAfterWrite = timeAfterWrite;
         }
 
+        public long getRefreshAfterWrite() {
+            return refreshAfterWrite;
+        }
+
+        /**
+         * Time in ms after which value is refreshed in background. By default it is 80% of 'timeAfterWrite'.
+         * @param refreshAfterWrite time in ms
+         * @return this
+         */
+        public Builder<T> refreshAfterWrite(long refreshAfterWrite) {
+            setRefreshAfterWrite(refreshAfterWrite);
+            return this;
+        }
+
+        public void setRefreshAfterWrite(long refreshAfterWrite) {
+            this.refreshAfterWrite = refreshAfterWrite;
+        }
+
+        public long getMaxStale() {
+            return maxStale;
+        }
+
+        /**
+         * Time in ms after expiration, while expired value is returned during refresh. By default it is equal to
+         * 'timeAfterWrite'. Zero disable returning of expired value.
+         * @param maxStale time in ms
+         * @return this
+         */
+        public Builder<T> maxStale(long maxStale) {
+            setMaxStale(maxStale);
+            return this;
+        }
+
+        public void setMaxStale(long maxStale) {
+            this.maxStale = maxStale;
+        }
+
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Executor for background refresh, by default used shared pool.
+         * @param executor executor
+         * @return this
+         */
+        public Builder<T> executor(Executor executor) {
+            setExecutor(executor);
+            return this;
+        }
+
+        public void setExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        public LongSupplier getClock() {
+            return clock;
+        }
+
+        /**
+         * Source of current time in ms, by default it is {@link System#currentTimeMillis()}.
+         * @param clock clock
+         * @return this
+         */
+        public Builder<T> clock(LongSupplier clock) {
+            setClock(clock);
+            return this;
+        }
+
+        public void setClock(LongSupplier clock) {
+            this.clock = clock;
+        }
+
         public SingleValueCache<T> build() {
             return new SingleValueCache<>(this);
         }
     }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long time;
+
+        Entry(T value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
     private final Supplier<T> supplier;
-    private volatile T value;
+    private volatile Entry<T> entry;
     private volatile T oldValue;
-    private volatile long writeTime;
-    private final Lock lock = new ReentrantLock();
+    private final AtomicReference<CompletableFuture<T>> loading = new AtomicReference<>();
     private final long taw;
+    private final long refreshAfter;
+    private final long maxStale;
+    private final Executor executor;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
 
     private SingleValueCache(Builder<T> builder) {
         this.supplier = builder.supplier;
         this.taw = builder.timeAfterWrite;
+        this.refreshAfter = builder.refreshAfterWrite >= 0 ? Math.min(builder.refreshAfterWrite, taw) : taw * 8 / 10;
+        this.maxStale = builder.maxStale >= 0 ? builder.maxStale : taw;
+        this.executor = builder.executor == null ? DEFAULT_EXECUTOR : builder.executor;
+        this.clock = builder.clock == null ? System::currentTimeMillis : builder.clock;
     }
 
     public static <T> Builder<T> builder(Supplier<T> supplier) {
@@ -81,15 +194,24 @@ public class SingleValueCache<T> implements Supplier<T> {
 
     @Override
     public T get() {
-        while(true) {
-            if(lock.tryLock()) {
-                try {
-                    return loadIfNeed();
-                } finally {
-                    lock.unlock();
+        Entry<T> e = this.entry;
+        if(e != null) {
+            long age = clock.getAsLong() - e.time;
+            if(age <= taw) {
+                if(age > refreshAfter) {
+                    refreshAsync();
                 }
+                hits.increment();
+                return e.value;
+            }
+            if(age <= taw + maxStale) {
+                refreshAsync();
+                staleHits.increment();
+                return e.value;
             }
         }
+        misses.increment();
+        return load();
     }
 
     /**
@@ -97,23 +219,90 @@ public class SingleValueCache<T> implements Supplier<T> {
      * @return previous value or null
      */
     public T getOldValue() {
-        lock.lock();
+        return oldValue;
+    }
+
+    /**
+     * Count of calls which return actual value.
+     * @return count of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Count of calls which wait for loading of value.
+     * @return count of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Count of calls which return expired value while it refreshed.
+     * @return count of stale hits
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    private void refreshAsync() {
+        if(loading.get() != null) {
+            return;
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if(!loading.compareAndSet(null, future)) {
+            return;
+        }
         try {
-            return oldValue;
-        } finally {
-            lock.unlock();
+            executor.execute(() -> {
+                try {
+                    doLoad(future);
+                } catch (Exception e) {
+                    log.error("Can not refresh value of '{}'", supplier, e);
+                }
+            });
+        } catch (Exception e) {
+            loading.compareAndSet(future, null);
+            future.completeExceptionally(e);
+            log.error("Can not schedule refresh of '{}'", supplier, e);
+        }
+    }
+
+    private T load() {
+        while(true) {
+            CompletableFuture<T> current = loading.get();
+            if(current != null) {
+                try {
+                    return current.join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+                }
+            }
+            CompletableFuture<T> future = new CompletableFuture<>();
+            if(loading.compareAndSet(null, future)) {
+                return doLoad(future);
+            }
         }
     }
 
-    private T loadIfNeed() {
-        long time = System.currentTimeMillis();
-        if(value != null && writeTime + taw >= time) {
+    private T doLoad(CompletableFuture<T> future) {
+        try {
+            long time = clock.getAsLong();
+            Entry<T> old = this.entry;
+            this.oldValue = old == null ? null : old.value;
+            T value = supplier.get();
+            Assert.notNull(value, "Supplier '" + supplier + "' return null value");
+            this.entry = new Entry<>(value, time);
+            future.complete(value);
             return value;
+        } catch (Throwable e) {
+            // waiters must be released at any error
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.compareAndSet(future, null);
         }
-        writeTime = time;
-        oldValue = value;
-        value = supplier.get();
-        Assert.notNull(value, "Supplier '" + supplier + "' return null value");
-        return value;
     }
 }
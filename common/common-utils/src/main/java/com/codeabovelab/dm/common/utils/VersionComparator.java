@@ -16,13 +16,92 @@
 
 package com.codeabovelab.dm.common.utils;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 import java.util.*;
 
 /**
+ * Comparator of versions. For sorting of many versions use {@link #key(String) keys} or {@link #sort(List)},
+ * because they parse each version only once.
  */
 public final class VersionComparator implements Comparator<String> {
 
     private static final String NO_SUFFIX = "";
+    private static final int KEYS_CACHE_SIZE = 16 * 1024;
+
+    /**
+     * Parsed version, it is compared in same order as its string by {@link VersionComparator} which create it.
+     * Keys from different comparators must not be compared.
+     */
+    public static final class Key implements Comparable<Key> {
+        private final VersionComparator comparator;
+        private final String version;
+        private final Integer latest;
+        private final Segment[] segments;
+
+        private Key(VersionComparator comparator, String version) {
+            this.comparator = comparator;
+            this.version = version;
+            this.latest = comparator.latestMap.get(version);
+            this.segments = comparator.parse(version);
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        private Segment getSegment(int i) {
+            return i < segments.length ? segments[i] : comparator.emptySegment;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            return comparator.compare(this, o);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return comparator == key.comparator && version.equals(key.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return version.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return version;
+        }
+    }
+
+    /**
+     * Part of version between dots, which is split to leading number and suffix.
+     */
+    private static final class Segment {
+        private final String number;
+        private final Integer numberValue;
+        private final boolean hasRest;
+        private final String suffix;
+        private final Integer suffixOrder;
+
+        Segment(String number, Integer numberValue, boolean hasRest, String suffix, Integer suffixOrder) {
+            this.number = number;
+            this.numberValue = numberValue;
+            this.hasRest = hasRest;
+            this.suffix = suffix;
+            this.suffixOrder = suffixOrder;
+        }
+    }
 
     public static final class Builder {
 
@@ -162,6 +241,10 @@ public final class VersionComparator implements Comparator<String> {
     private final boolean emptySuffixLast;
     private final Map<String, Integer> latestMap = new TreeMap<>();
     private final Map<String, Integer> suffixMap = new TreeMap<>();
+    private final Segment emptySegment;
+    private final LoadingCache<String, Key> keys = CacheBuilder.newBuilder()
+      .maximumSize(KEYS_CACHE_SIZE)
+      .build(CacheLoader.from(v -> new Key(this, v)));
 
     private VersionComparator(Builder b) {
         this.suffixDelimiter = b.suffixDelimiter;
@@ -169,6 +252,161 @@ public final class VersionComparator implements Comparator<String> {
         load(b.suffix, this.suffixMap);
         this.emptySuffixLast = b.emptySuffixLast;
         suffixMap.put(NO_SUFFIX, (b.emptySuffixLast)? Integer.MAX_VALUE : Integer.MIN_VALUE);
+        // shorter version is compared as it has empty segments
+        this.emptySegment = new Segment(NO_SUFFIX, null, false, NO_SUFFIX, suffixMap.get(NO_SUFFIX));
+    }
+
+    /**
+     * Parsed key of version, keys are cached.
+     * @param version version, may be null
+     * @return key or null when version is null
+     */
+    public Key key(String version) {
+        if(version == null) {
+            return null;
+        }
+        return keys.getUnchecked(version);
+    }
+
+    /**
+     * Sort list of versions in ascending order. It give same result as sorting by this comparator, but parse each
+     * version only once.
+     * @param versions list of versions, may contain nulls
+     */
+    public void sort(List<String> versions) {
+        sort(versions, false);
+    }
+
+    /**
+     * Sort list of versions. It give same result as sorting by this comparator (or its
+     * {@link #reversed()} when descending), but parse each version only once.
+     * @param versions list of versions, may contain nulls
+     * @param descending order
+     */
+    public void sort(List<String> versions, boolean descending) {
+        if(versions.size() < 2) {
+            return;
+        }
+        Key[] arr = toKeys(versions);
+        Comparator<Key> comparator = this::compare;
+        Arrays.sort(arr, descending ? comparator.reversed() : comparator);
+        ListIterator<String> iter = versions.listIterator();
+        for(Key key: arr) {
+            iter.next();
+            iter.set(key == null ? null : key.getVersion());
+        }
+    }
+
+    /**
+     * Find latest version. Result is same as last element of list which is sorted by this comparator. Note that
+     * comparison of versions with different formats may be non transitive, therefore it sort keys instead of
+     * linear search.
+     * @param versions versions
+     * @return latest version or null when collection is empty
+     */
+    public String max(Collection<String> versions) {
+        if(versions.isEmpty()) {
+            return null;
+        }
+        Key[] arr = toKeys(versions);
+        Arrays.sort(arr, this::compare);
+        Key max = arr[arr.length - 1];
+        return max == null ? null : max.getVersion();
+    }
+
+    private Key[] toKeys(Collection<String> versions) {
+        Key[] arr = new Key[versions.size()];
+        int i = 0;
+        for(String version: versions) {
+            arr[i++] = key(version);
+        }
+        return arr;
+    }
+
+    /**
+     * Compare keys, result is same as comparing of their versions.
+     * @param left key, may be null
+     * @param right key, may be null
+     * @return result of comparison
+     */
+    public int compare(Key left, Key right) {
+        if(left == null || right == null) {
+            if(left == null) {
+                return (right == null)? 0 : -1;
+            }
+            return 1;
+        }
+        if(left == right) {
+            return 0;
+        }
+        final String lv = left.version;
+        final String rv = right.version;
+        if(lv.equals(rv)) {
+            return 0;
+        }
+        if (lv.isEmpty() || rv.isEmpty()) {
+            return Integer.compare(lv.length(), rv.length());
+        }
+        if(left.latest != null || right.latest != null) {
+            return compareOrders(left.latest, right.latest);
+        }
+        // it repeat steps of compare(String, String), see comments there
+        final int last = Math.max(left.segments.length, right.segments.length) - 1;
+        for(int i = 0; ; ++i) {
+            Segment ls = left.getSegment(i);
+            Segment rs = right.getSegment(i);
+            int res = compareNumbers(ls, rs);
+            if(res != 0) {
+                return res;
+            }
+            boolean end = i >= last;
+            if(ls.hasRest || rs.hasRest || end) {
+                res = compareSuffixes(ls.suffix, ls.suffixOrder, rs.suffix, rs.suffixOrder);
+                if(res != 0 || end) {
+                    return res;
+                }
+            }
+        }
+    }
+
+    private int compareNumbers(Segment left, Segment right) {
+        if(left.number.equals(right.number)) {
+            return 0;
+        }
+        if(left.numberValue != null && right.numberValue != null) {
+            return Integer.compare(left.numberValue, right.numberValue);
+        }
+        return compareStrings(left.number, right.number);
+    }
+
+    private Segment[] parse(String version) {
+        List<Segment> list = new ArrayList<>();
+        final int len = version.length();
+        int start = 0;
+        while(true) {
+            int end = version.indexOf('.', start);
+            if(end < 0) {
+                end = len;
+            }
+            // dot is not digit, so number can not be longer than segment
+            int numEnd = getNumEnd(version, start);
+            String number = version.substring(start, numEnd);
+            Integer numberValue = null;
+            if(!number.isEmpty()) {
+                try {
+                    numberValue = Integer.parseInt(number);
+                } catch (NumberFormatException e) {
+                    // too big number is compared as string
+                }
+            }
+            String suffix = getSuffix(version.substring(numEnd, end), 0);
+            list.add(new Segment(number, numberValue, numEnd < end, suffix, suffixMap.get(suffix)));
+            if(end == len) {
+                break;
+            }
+            start = end + 1;
+        }
+        return list.toArray(new Segment[list.size()]);
     }
 
     private void load(Collection<String> src, Map<String, Integer> map) {
@@ -258,22 +496,24 @@ public final class VersionComparator implements Comparator<String> {
         if(res == 0 && (lsp >= 0 || rsp >= 0)) {
             String ls = getSuffix(ltoken, lsp);
             String rs = getSuffix(rtoken, rsp);
-            Integer lo = suffixMap.get(ls);
-            Integer ro = suffixMap.get(rs);
-            if(lo == null && ro == null) {
-                return compareStrings(ls, rs);
+            return compareSuffixes(ls, suffixMap.get(ls), rs, suffixMap.get(rs));
+        }
+        return res;
+    }
+
+    private int compareSuffixes(String ls, Integer lo, String rs, Integer ro) {
+        if(lo == null && ro == null) {
+            return compareStrings(ls, rs);
+        }
+        if(lo == null || ro == null) {
+            if(ls.isEmpty()) {
+                return emptySuffixLast? 1 : -1;
             }
-            if(lo == null || ro == null) {
-                if(ls.isEmpty()) {
-                    return emptySuffixLast? 1 : -1;
-                }
-                if(rs.isEmpty()) {
-                    return emptySuffixLast? -1 : 1;
-                }
+            if(rs.isEmpty()) {
+                return emptySuffixLast? -1 : 1;
             }
-            return compareOrders(lo, ro);
         }
-        return res;
+        return compareOrders(lo, ro);
     }
 
     private String getSuffix(String token, int pos) {
@@ -0,0 +1,117 @@
+package com.codeabovelab.dm.common.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class SingleValueCacheTest {
+
+    private final AtomicLong time = new AtomicLong(1000);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger concurrentLoads = new AtomicInteger();
+    private final AtomicInteger maxConcurrentLoads = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private Integer load() {
+        int current = concurrentLoads.incrementAndGet();
+        maxConcurrentLoads.accumulateAndGet(current, Math::max);
+        try {
+            release.await();
+            return loads.incrementAndGet();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            concurrentLoads.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testManyThreads() throws Exception {
+        ExecutorUtils.DeferredExecutor executor = ExecutorUtils.deferred();
+        SingleValueCache<Integer> cache = SingleValueCache.builder(this::load)
+          .timeAfterWrite(50)
+          .maxStale(TimeUnit.SECONDS.toMillis(10))
+          .executor(executor)
+          .clock(time::get)
+          .build();
+        final int threads = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(pool.submit(cache::get));
+            }
+            while(cache.getMisses() < threads) {
+                Thread.sleep(1);
+            }
+            // all threads wait for single load
+            release.countDown();
+            for (Future<Integer> future : futures) {
+                assertEquals((Integer) 1, future.get());
+            }
+            assertEquals(1, loads.get());
+            assertEquals(1, maxConcurrentLoads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // expired value is returned while single refresh is scheduled
+        time.addAndGet(100);
+        for (int i = 0; i < threads; ++i) {
+            assertEquals((Integer) 1, cache.get());
+        }
+        assertEquals(threads, cache.getStaleHits());
+        executor.flush();
+        assertEquals(2, loads.get());
+        assertEquals((Integer) 2, cache.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(threads, cache.getMisses());
+    }
+
+    @Test
+    public void testMaxStale() throws Exception {
+        release.countDown();
+        SingleValueCache<Integer> cache = SingleValueCache.builder(this::load)
+          .timeAfterWrite(50)
+          .maxStale(0)
+          .clock(time::get)
+          .build();
+        assertEquals((Integer) 1, cache.get());
+        assertEquals((Integer) 1, cache.get());
+        time.addAndGet(100);
+        // too old value must not be returned
+        assertEquals((Integer) 2, cache.get());
+        assertEquals((Integer) 1, cache.getOldValue());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getStaleHits());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        release.countDown();
+        SingleValueCache<Integer> cache = SingleValueCache.builder(this::load)
+          .timeAfterWrite(1000)
+          .refreshAfterWrite(20)
+          .executor(ExecutorUtils.DIRECT)
+          .clock(time::get)
+          .build();
+        assertEquals((Integer) 1, cache.get());
+        time.addAndGet(40);
+        // value is not expired, but refresh is started
+        assertEquals((Integer) 1, cache.get());
+        assertEquals((Integer) 2, cache.get());
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -2,7 +2,11 @@ package com.codeabovelab.dm.common.utils;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -84,6 +88,72 @@ public class VersionComparatorTest {
         assertArrayEquals(exp, src);
     }
 
+    @Test
+    public void testKeys() {
+        List<VersionComparator> comparators = Arrays.asList(
+          vc,
+          VersionComparator.builder().addLatest("latest").build(),
+          VersionComparator.builder().suffixDelimiter('-').emptySuffixLast(false).addSuffix("rc").addSuffix("alpha").build()
+        );
+        for(int seed = 0; seed < 5; ++seed) {
+            Random random = new Random(seed);
+            List<String> versions = new ArrayList<>();
+            for(int i = 0; i < 500; ++i) {
+                versions.add(randomVersion(random));
+            }
+            versions.add(null);
+            versions.add("");
+            for(VersionComparator comparator: comparators) {
+                for(String left: versions) {
+                    for(int i = 0; i < 50; ++i) {
+                        String right = versions.get(random.nextInt(versions.size()));
+                        int expected = comparator.compare(left, right);
+                        int actual = comparator.compare(comparator.key(left), comparator.key(right));
+                        assertEquals("'" + left + "' - '" + right + "'", Integer.signum(expected), Integer.signum(actual));
+                    }
+                }
+                for(boolean desc: new boolean[]{false, true}) {
+                    List<String> expected = new ArrayList<>(versions);
+                    Collections.shuffle(expected, random);
+                    List<String> actual = new ArrayList<>(expected);
+                    String max = comparator.max(actual);
+                    expected.sort(desc ? comparator.reversed() : comparator);
+                    comparator.sort(actual, desc);
+                    assertEquals(expected, actual);
+                    if(!desc) {
+                        assertEquals(expected.get(expected.size() - 1), max);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final String[] WORDS = {"latest", "nightly", "rc", "ga", "alpha", "dev", "sha", "dirty", "a"};
+    private static final char[] DELIMITERS = {'.', '.', '.', '_', '-'};
+
+    private static String randomVersion(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int parts = 1 + random.nextInt(5);
+        for(int i = 0; i < parts; ++i) {
+            if(i > 0) {
+                sb.append(DELIMITERS[random.nextInt(DELIMITERS.length)]);
+            }
+            int kind = random.nextInt(10);
+            if(kind < 6) {
+                // leading zeros and numbers which exceed int are also possible
+                int digits = kind == 0 ? 11 : 1 + random.nextInt(3);
+                for(int j = 0; j < digits; ++j) {
+                    sb.append((char)('0' + random.nextInt(10)));
+                }
+            } else if(kind < 9) {
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            // else empty part
+        }
+        String res = sb.toString();
+        return random.nextInt(20) == 0 ? WORDS[random.nextInt(2)] : res;
+    }
+
     private void compare(int expected,  String left, String right) {
         String desc = "'" + left + "' - '" + right + "'";
         int compare = 0, invCompare = 0;